@@ -882,6 +882,13 @@ public class DataFileServiceBean implements java.io.Serializable {
             .getResultList();
     }
     
+    public List<Long> findHarvestedFileIdsByClient(HarvestingClient harvestingClient) {
+        String qr = "SELECT d.id FROM DataFile d, DvObject o, Dataset s WHERE o.id = d.id AND o.owner.id = s.id AND s.harvestedFrom.id = :harvestingClientId";
+        return em.createQuery(qr, Long.class)
+            .setParameter("harvestingClientId", harvestingClient.getId())
+            .getResultList();
+    }
+    
     /*moving to the fileutil*/
     
     public void generateStorageIdentifier(DataFile dataFile) {
@@ -929,8 +936,10 @@ public class DataFileServiceBean implements java.io.Serializable {
     
     /*
      * This method will return true if the thumbnail is *actually available* and
-     * ready to be downloaded. (it will try to generate a thumbnail for supported
-     * file types, if not yet available)
+     * ready to be downloaded. If it has not been generated yet, it is generated
+     * in the background, and false is returned in the meantime, so that the
+     * page asking shows the placeholder icon rather than waiting for the
+     * original to be decoded.
      */
     public boolean isThumbnailAvailable (DataFile file) {
         if (file == null) {
@@ -962,17 +971,31 @@ public class DataFileServiceBean implements java.io.Serializable {
         */
         
         file = this.find(file.getId());
-        if (ImageThumbConverter.isThumbnailAvailable(file)) {
-            file.setPreviewImageAvailable(true);
-            this.save(file);
+        if (file.isHarvested() || file.isPreviewImageFail()) {
+            return false;
+        }
+        if (ImageThumbConverter.isThumbnailCached(file, ImageThumbConverter.DEFAULT_THUMBNAIL_SIZE)) {
+            setPreviewImageStatus(file.getId(), true);
             return true;
         }
-        file.setPreviewImageFail(true);
-        file.setPreviewImageAvailable(false);
-        this.save(file);
+        // (the outcome is recorded on the file once the generation is over)
+        ImageThumbConverter.generateThumbnailsInBackground(file);
         return false;
     }
 
+    /**
+     * Records whether the thumbnails of a file could be generated, without
+     * merging the rest of the DataFile, e.g. from the thread generating them
+     * while the file is being edited.
+     */
+    public void setPreviewImageStatus(Long fileId, boolean available) {
+        em.createNativeQuery("UPDATE dvobject SET previewimageavailable = ?, previewimagefail = ? WHERE id = ?")
+                .setParameter(1, available)
+                .setParameter(2, !available)
+                .setParameter(3, fileId)
+                .executeUpdate();
+    }
+
     
     /* 
      * Methods for identifying "classes" (groupings) of files by type:
@@ -1,6 +1,5 @@
 package edu.harvard.iq.dataverse;
 
-import java.io.IOException;
 import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -12,10 +11,13 @@ import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -41,16 +43,8 @@ import jakarta.persistence.TypedQuery;
 
 import jakarta.persistence.criteria.*;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpResponseInterceptor;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
+import edu.harvard.iq.dataverse.ExternalVocabularyClient.Retrieval;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 
 /**
@@ -69,6 +63,15 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     @EJB
     SettingsServiceBean settingsService;
 
+    @EJB
+    MetadataFieldRegistryServiceBean fieldRegistry;
+
+    @EJB
+    ExternalVocabularyServiceBean externalVocabularyService;
+
+    // The number of term uris looked up in the externalvocabularyvalue table per query
+    private static final int TERM_URI_QUERY_BATCH_SIZE = 1000;
+
     private static final String NAME_QUERY = "SELECT dsfType from DatasetFieldType dsfType where dsfType.name= :fieldName";
     
     /*
@@ -123,6 +126,10 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     }
 
     public DatasetFieldType findByName(String name) {
+        MetadataFieldRegistryServiceBean.Registry registry = getRegistry();
+        if (registry != null) {
+            return find(DatasetFieldType.class, registry.findFieldTypeId(name));
+        }
         try {
             return  (DatasetFieldType) em.createQuery(NAME_QUERY).setParameter("fieldName", name).getSingleResult();
         } catch (NoResultException e) {
@@ -140,6 +147,10 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * @see #findByName(java.lang.String)
      */
     public DatasetFieldType findByNameOpt(String name) {
+        MetadataFieldRegistryServiceBean.Registry registry = getRegistry();
+        if (registry != null) {
+            return find(DatasetFieldType.class, registry.findFieldTypeId(name));
+        }
         try {
             return em.createNamedQuery("DatasetFieldType.findByName", DatasetFieldType.class)
                     .setParameter("name", name)
@@ -157,6 +168,10 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * foreign format.
      */
     public ForeignMetadataFieldMapping findFieldMapping(String formatName, String pathName) {
+        MetadataFieldRegistryServiceBean.Registry registry = getRegistry();
+        if (registry != null) {
+            return find(ForeignMetadataFieldMapping.class, registry.findFieldMappingId(formatName, pathName));
+        }
         try {
             return em.createNamedQuery("ForeignMetadataFieldMapping.findByPath", ForeignMetadataFieldMapping.class)
                     .setParameter("formatName", formatName)
@@ -165,7 +180,6 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
         } catch (NoResultException nre) {
             return null;
         }
-        // TODO: cache looked up results.
     }
 
     public ControlledVocabularyValue findControlledVocabularyValue(Object pk) {
@@ -182,6 +196,10 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * @return The ControlledVocabularyValue found or null.
      */
     public ControlledVocabularyValue findControlledVocabularyValueByDatasetFieldTypeAndStrValue(DatasetFieldType dsft, String strValue, boolean lenient) {
+        MetadataFieldRegistryServiceBean.Registry registry = getRegistry();
+        if (registry != null && dsft != null && dsft.getId() != null) {
+            return find(ControlledVocabularyValue.class, registry.findVocabularyValueId(dsft.getId(), strValue));
+        }
         TypedQuery<ControlledVocabularyValue> typedQuery = em.createQuery("SELECT OBJECT(o) FROM ControlledVocabularyValue AS o WHERE o.strValue = :strvalue AND o.datasetFieldType = :dsft", ControlledVocabularyValue.class);       
         typedQuery.setParameter("strvalue", strValue);
         typedQuery.setParameter("dsft", dsft);
@@ -203,6 +221,10 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     }
     
     public ControlledVocabAlternate findControlledVocabAlternateByControlledVocabularyValueAndStrValue(ControlledVocabularyValue cvv, String strValue){
+        MetadataFieldRegistryServiceBean.Registry registry = getRegistry();
+        if (registry != null && cvv != null && cvv.getId() != null) {
+            return find(ControlledVocabAlternate.class, registry.findAlternateId(cvv.getId(), strValue));
+        }
         TypedQuery<ControlledVocabAlternate> typedQuery = em.createQuery("SELECT OBJECT(o) FROM ControlledVocabAlternate AS o WHERE o.strValue = :strvalue AND o.controlledVocabularyValue = :cvv", ControlledVocabAlternate.class);
         typedQuery.setParameter("strvalue", strValue);
         typedQuery.setParameter("cvv", cvv);
@@ -226,6 +248,10 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * @return The ControlledVocabularyValue found or null.
      */
     public ControlledVocabularyValue findControlledVocabularyValueByDatasetFieldTypeAndIdentifier (DatasetFieldType dsft, String identifier)  {
+        MetadataFieldRegistryServiceBean.Registry registry = getRegistry();
+        if (registry != null && dsft != null && dsft.getId() != null) {
+            return find(ControlledVocabularyValue.class, registry.findVocabularyValueIdByIdentifier(dsft.getId(), identifier));
+        }
         TypedQuery<ControlledVocabularyValue> typedQuery = em.createQuery("SELECT OBJECT(o) FROM ControlledVocabularyValue AS o WHERE o.identifier = :identifier AND o.datasetFieldType = :dsft", ControlledVocabularyValue.class);       
         typedQuery.setParameter("identifier", identifier);
         typedQuery.setParameter("dsft", dsft);
@@ -239,26 +265,56 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
 
     // return singleton NA Controled Vocabulary Value
     public ControlledVocabularyValue findNAControlledVocabularyValue() {
+        MetadataFieldRegistryServiceBean.Registry registry = getRegistry();
+        if (registry != null) {
+            ControlledVocabularyValue naValue = find(ControlledVocabularyValue.class, registry.findVocabularyValueId(null, DatasetField.NA_VALUE));
+            if (naValue != null) {
+                return naValue;
+            }
+        }
         TypedQuery<ControlledVocabularyValue> typedQuery = em.createQuery("SELECT OBJECT(o) FROM ControlledVocabularyValue AS o WHERE o.datasetFieldType is null AND o.strValue = :strvalue", ControlledVocabularyValue.class);
         typedQuery.setParameter("strvalue", DatasetField.NA_VALUE);
         return typedQuery.getSingleResult();
     }
 
     public DatasetFieldType save(DatasetFieldType dsfType) {
+        invalidateRegistry();
         return em.merge(dsfType);
     }
 
     public MetadataBlock save(MetadataBlock mdb) {
+        invalidateRegistry();
         return em.merge(mdb);
     }
 
     public ControlledVocabularyValue save(ControlledVocabularyValue cvv) {
+        invalidateRegistry();
         return em.merge(cvv);
     }
     
     public ControlledVocabAlternate save(ControlledVocabAlternate alt) {
+        invalidateRegistry();
         return em.merge(alt);
     } 
+
+    /**
+     * @return the registry of the field types and vocabulary values, or null
+     *         if it is not available, in which case the lookups query the
+     *         database
+     */
+    private MetadataFieldRegistryServiceBean.Registry getRegistry() {
+        return fieldRegistry == null ? null : fieldRegistry.getRegistry();
+    }
+
+    private void invalidateRegistry() {
+        if (fieldRegistry != null) {
+            fieldRegistry.invalidate();
+        }
+    }
+
+    private <T> T find(Class<T> entityClass, Long id) {
+        return id == null ? null : em.find(entityClass, id);
+    }
     
 
     /**
@@ -358,30 +414,44 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * @param df - the primitive/parent compound field containing a newly saved value
      */
     public void registerExternalVocabValues(DatasetField df) {
-        DatasetFieldType dft = df.getDatasetFieldType();
-        logger.fine("Registering for field: " + dft.getName());
-        JsonObject cvocEntry = getCVocConf(true).get(dft.getId());
-        if (dft.isPrimitive()) {
-            List<DatasetField> siblingsDatasetFields = new ArrayList<>();
-            if(dft.getParentDatasetFieldType()!=null) {
-                siblingsDatasetFields = df.getParentDatasetFieldCompoundValue().getChildDatasetFields();
-            }
-            for (DatasetFieldValue dfv : df.getDatasetFieldValues()) {
-                registerExternalTerm(cvocEntry, dfv.getValue(), siblingsDatasetFields);
-            }
-        } else {
-            if (df.getDatasetFieldType().isCompound()) {
-                DatasetFieldType termdft = findByNameOpt(cvocEntry.getString("term-uri-field"));
-                for (DatasetFieldCompoundValue cv : df.getDatasetFieldCompoundValues()) {
-                    for (DatasetField cdf : cv.getChildDatasetFields()) {
-                        logger.fine("Found term uri field type id: " + cdf.getDatasetFieldType().getId());
-                        if (cdf.getDatasetFieldType().equals(termdft)) {
-                            registerExternalTerm(cvocEntry, cdf.getValue(), cv.getChildDatasetFields());
+        registerExternalVocabValues(List.of(df));
+    }
+
+    /**
+     * Adds information about the external vocabulary terms being used in these DatasetFields to the ExternalVocabularyValue table if it doesn't already exist.
+     * The terms missing from the table are retrieved from their services in parallel.
+     * @param dfs - the primitive/parent compound fields containing newly saved values
+     */
+    public void registerExternalVocabValues(Collection<DatasetField> dfs) {
+        Map<Long, JsonObject> cvocMap = getCVocConf(true);
+        List<ExternalTerm> terms = new ArrayList<>();
+        for (DatasetField df : dfs) {
+            DatasetFieldType dft = df.getDatasetFieldType();
+            logger.fine("Registering for field: " + dft.getName());
+            JsonObject cvocEntry = cvocMap.get(dft.getId());
+            if (dft.isPrimitive()) {
+                List<DatasetField> siblingsDatasetFields = new ArrayList<>();
+                if(dft.getParentDatasetFieldType()!=null) {
+                    siblingsDatasetFields = df.getParentDatasetFieldCompoundValue().getChildDatasetFields();
+                }
+                for (DatasetFieldValue dfv : df.getDatasetFieldValues()) {
+                    terms.add(new ExternalTerm(cvocEntry, dfv.getValue(), siblingsDatasetFields));
+                }
+            } else {
+                if (df.getDatasetFieldType().isCompound()) {
+                    DatasetFieldType termdft = findByNameOpt(cvocEntry.getString("term-uri-field"));
+                    for (DatasetFieldCompoundValue cv : df.getDatasetFieldCompoundValues()) {
+                        for (DatasetField cdf : cv.getChildDatasetFields()) {
+                            logger.fine("Found term uri field type id: " + cdf.getDatasetFieldType().getId());
+                            if (cdf.getDatasetFieldType().equals(termdft)) {
+                                terms.add(new ExternalTerm(cvocEntry, cdf.getValue(), cv.getChildDatasetFields()));
+                            }
                         }
                     }
                 }
             }
         }
+        registerExternalTerms(terms);
     }
 
     /**
@@ -466,29 +536,87 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     }
 
     /**
-     * Perform a query to retrieve a cached value from the externalvocabularvalue table
+     * Retrieve a cached value from the externalvocabularvalue table, from the
+     * in-memory cache of the table if the term has been looked up recently
      * @param termUri
      * @return - the entry's value as a JsonObject
      */
     public JsonObject getExternalVocabularyValue(String termUri) {
+        Optional<JsonObject> cached = externalVocabularyService == null ? null
+                : externalVocabularyService.getCachedValue(termUri);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        JsonObject value = null;
         try {
             ExternalVocabularyValue evv = em
                     .createQuery("select object(o) from ExternalVocabularyValue as o where o.uri=:uri",
                             ExternalVocabularyValue.class)
                     .setParameter("uri", termUri).getSingleResult();
-            String valString = evv.getValue();
-            try (JsonReader jr = Json.createReader(new StringReader(valString))) {
-                return jr.readObject();
-            } catch (Exception e) {
-                logger.warning("Problem parsing external vocab value for uri: " + termUri + " : " + e.getMessage());
-            }
+            value = parseExternalVocabularyValue(termUri, evv.getValue());
         } catch (NoResultException nre) {
             //Could just be a plain text value
             logger.fine("No external vocab value for uri: " + termUri);
         }
+        if (externalVocabularyService != null) {
+            externalVocabularyService.cacheValue(termUri, value);
+        }
+        return value;
+    }
+
+    /**
+     * Looks up the values of the given term uris in the externalvocabularyvalue
+     * table at once (rather than one at a time in getExternalVocabularyValue),
+     * and caches them in memory for the following calls to
+     * getExternalVocabularyValue, e.g. while indexing a dataset version.
+     * @param termUris - the values of fields managed by an external vocabulary
+     */
+    public void cacheExternalVocabularyValues(Collection<String> termUris) {
+        if (externalVocabularyService == null) {
+            return;
+        }
+        Set<String> uncached = new HashSet<>();
+        for (String termUri : termUris) {
+            if (StringUtils.isNotBlank(termUri) && externalVocabularyService.getCachedValue(termUri) == null) {
+                uncached.add(termUri);
+            }
+        }
+        Map<String, ExternalVocabularyValue> evvs = findExternalVocabularyValues(uncached);
+        for (String termUri : uncached) {
+            ExternalVocabularyValue evv = evvs.get(termUri);
+            externalVocabularyService.cacheValue(termUri,
+                    evv == null ? null : parseExternalVocabularyValue(termUri, evv.getValue()));
+        }
+    }
+
+    private JsonObject parseExternalVocabularyValue(String termUri, String valString) {
+        try (JsonReader jr = Json.createReader(new StringReader(valString))) {
+            return jr.readObject();
+        } catch (Exception e) {
+            logger.warning("Problem parsing external vocab value for uri: " + termUri + " : " + e.getMessage());
+        }
         return null;
     }
 
+    /**
+     * @return the entries of the externalvocabularyvalue table for the given
+     *         term uris, by uri
+     */
+    private Map<String, ExternalVocabularyValue> findExternalVocabularyValues(Collection<String> termUris) {
+        Map<String, ExternalVocabularyValue> evvs = new HashMap<>();
+        List<String> uris = new ArrayList<>(termUris);
+        for (int i = 0; i < uris.size(); i += TERM_URI_QUERY_BATCH_SIZE) {
+            List<String> batch = uris.subList(i, Math.min(i + TERM_URI_QUERY_BATCH_SIZE, uris.size()));
+            for (ExternalVocabularyValue evv : em
+                    .createQuery("select object(o) from ExternalVocabularyValue as o where o.uri in :uris",
+                            ExternalVocabularyValue.class)
+                    .setParameter("uris", batch).getResultList()) {
+                evvs.put(evv.getUri(), evv);
+            }
+        }
+        return evvs;
+    }
+
     /**
      * Perform a call to the external service to retrieve information about the term URI
      *
@@ -497,112 +625,144 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * @param relatedDatasetFields  - siblings or childs of the term
      */
     public void registerExternalTerm(JsonObject cvocEntry, String term, List<DatasetField> relatedDatasetFields) {
-        String retrievalUri = cvocEntry.getString("retrieval-uri");
-        String termUriFieldName = cvocEntry.getString("term-uri-field");
-        String prefix = cvocEntry.getString("prefix", null);
-        if(StringUtils.isBlank(term)) {
-            logger.fine("Ignoring blank term");
+        registerExternalTerms(List.of(new ExternalTerm(cvocEntry, term, relatedDatasetFields)));
+    }
+
+    /**
+     * A term of an external vocabulary used in a dataset, with the
+     * configuration of its field and its sibling/child fields
+     */
+    private record ExternalTerm(JsonObject cvocEntry, String term, List<DatasetField> relatedDatasetFields) {
+    }
+
+    /**
+     * Registers the terms missing from the ExternalVocabularyValue table: their
+     * entries are looked up at once, the missing ones are retrieved from the
+     * external services in parallel, and then written to the table in the
+     * current transaction.
+     */
+    private void registerExternalTerms(List<ExternalTerm> terms) {
+        Map<String, ExternalTerm> externalTerms = new LinkedHashMap<>();
+        for (ExternalTerm externalTerm : terms) {
+            String term = externalTerm.term();
+            if (StringUtils.isBlank(term)) {
+                logger.fine("Ignoring blank term");
+                continue;
+            }
+            if (!isExternalTerm(externalTerm.cvocEntry(), term)) {
+                logger.fine("Ignoring free text entry: " + term);
+                continue;
+            }
+            try {
+                //Assure the term is in URI form - should be if the uriSpace entry was correct
+                new URI(term);
+            } catch (URISyntaxException e) {
+                logger.fine("Term is not a URI: " + term);
+                continue;
+            }
+            logger.fine("Registering term: " + term);
+            externalTerms.putIfAbsent(term, externalTerm);
+        }
+        if (externalTerms.isEmpty()) {
             return;
         }
 
-        boolean isExternal = false;
+        Map<String, ExternalVocabularyValue> evvs = findExternalVocabularyValues(externalTerms.keySet());
+        Map<String, Retrieval> retrievals = new LinkedHashMap<>();
+        for (ExternalTerm externalTerm : externalTerms.values()) {
+            String term = externalTerm.term();
+            ExternalVocabularyValue evv = evvs.get(term);
+            if (evv == null || evv.getValue() == null) {
+                String retrievalUri = getRetrievalUri(externalTerm);
+                if (retrievalUri != null) {
+                    logger.fine("Didn't find " + term + ", calling " + retrievalUri);
+                    retrievals.put(term, new Retrieval(retrievalUri, externalTerm.cvocEntry().getJsonObject("headers")));
+                }
+            }
+        }
+
+        Map<String, String> responses = retrieveAll(retrievals);
+        for (Map.Entry<String, Retrieval> retrieval : retrievals.entrySet()) {
+            String term = retrieval.getKey();
+            String retrievalUri = retrieval.getValue().uri();
+            String data = responses.get(term);
+            if (data == null) {
+                continue;
+            }
+            logger.fine("Returned data: " + data);
+            ExternalVocabularyValue evv = evvs.getOrDefault(term, new ExternalVocabularyValue(term, null));
+            try (JsonReader jsonReader = Json.createReader(new StringReader(data))) {
+                JsonObject filtered = filterResponse(externalTerms.get(term).cvocEntry(), jsonReader.readObject(), term);
+                String dataObj = filtered.toString();
+                evv.setValue(dataObj);
+                evv.setLastUpdateDate(Timestamp.from(Instant.now()));
+                logger.fine("JsonObject: " + dataObj);
+                em.merge(evv);
+                em.flush();
+                logger.fine("Wrote value for term: " + term);
+                if (externalVocabularyService != null) {
+                    externalVocabularyService.cacheValueAfterCommit(term, filtered);
+                }
+            } catch (JsonException je) {
+                logger.severe("Error retrieving: " + retrievalUri + " : " + je.getMessage());
+            } catch (PersistenceException e) {
+                logger.fine("Problem persisting: " + retrievalUri + " : " + e.getMessage());
+                if (externalVocabularyService != null) {
+                    externalVocabularyService.invalidateValue(term);
+                }
+            }
+        }
+    }
+
+    private boolean isExternalTerm(JsonObject cvocEntry, String term) {
         JsonObject vocabs = cvocEntry.getJsonObject("vocabs");
         for (String key: vocabs.keySet()) {
             JsonObject vocab = vocabs.getJsonObject(key);
             if (vocab.containsKey("uriSpace")) {
                 if (term.startsWith(vocab.getString("uriSpace"))) {
-                    isExternal = true;
-                    break;
+                    return true;
                 }
             }
         }
-        if (!isExternal) {
-            logger.fine("Ignoring free text entry: " + term);
-            return;
-        }
-        logger.fine("Registering term: " + term);
-        try {
-            //Assure the term is in URI form - should be if the uriSpace entry was correct
-            new URI(term);
-            ExternalVocabularyValue evv = null;
-            try {
-                evv = em.createQuery("select object(o) from ExternalVocabularyValue as o where o.uri=:uri",
-                        ExternalVocabularyValue.class).setParameter("uri", term).getSingleResult();
-            } catch (NoResultException nre) {
-                evv = new ExternalVocabularyValue(term, null);
-            }
-            if (evv.getValue() == null) {
-                String adjustedTerm = (prefix==null)? term: term.replace(prefix, "");
+        return false;
+    }
 
-                try {
-                    retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, "0", adjustedTerm);
-                    retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, termUriFieldName, adjustedTerm);
-                    for (DatasetField f : relatedDatasetFields) {
-                        retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, f.getDatasetFieldType().getName(), f.getValue());
-                    }
-                } catch (InvalidParameterException e) {
-                    logger.warning("InvalidParameterException in tryReplaceRetrievalUriParam : " + e.getMessage());
-                    return;
-                }
-                if (retrievalUri.contains("{")) {
-                    logger.severe("Retrieval URI still contains unreplaced parameter :" + retrievalUri);
-                    return;
-                }
+    /**
+     * @return the uri to retrieve the term from its service, or null if it
+     *         could not be built
+     */
+    private String getRetrievalUri(ExternalTerm externalTerm) {
+        JsonObject cvocEntry = externalTerm.cvocEntry();
+        String term = externalTerm.term();
+        String retrievalUri = cvocEntry.getString("retrieval-uri");
+        String termUriFieldName = cvocEntry.getString("term-uri-field");
+        String prefix = cvocEntry.getString("prefix", null);
+        String adjustedTerm = (prefix==null)? term: term.replace(prefix, "");
 
-                logger.fine("Didn't find " + term + ", calling " + retrievalUri);
-                try (CloseableHttpClient httpClient = HttpClients.custom()
-                        .addInterceptorLast(new HttpResponseInterceptor() {
-                            @Override
-                            public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
-                                int statusCode = response.getStatusLine().getStatusCode();
-                                if (statusCode == 504) {
-                                    //Throwing an exception triggers the retry handler
-                                    throw new IOException("Retry due to 504 response");
-                                }
-                            }
-                        })
-                        //The retry handler will also do retries for network errors/other things that cause an IOException
-                        .setRetryHandler(new DefaultHttpRequestRetryHandler(3, false))
-                        .build()) {
-                    HttpGet httpGet = new HttpGet(retrievalUri);
-                    //application/json+ld is for backward compatibility
-                    httpGet.addHeader("Accept", "application/ld+json, application/json+ld, application/json");
-                    //Adding others custom HTTP request headers if exists
-                    final JsonObject headers = cvocEntry.getJsonObject("headers");
-                    if (headers != null) {
-                        final Set<String> headerKeys = headers.keySet();
-                        for (final String hKey: headerKeys) {
-                            httpGet.addHeader(hKey, headers.getString(hKey));
-                        }
-                    }
-                    HttpResponse response = httpClient.execute(httpGet);
-                    String data = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    if (statusCode == 200) {
-                        logger.fine("Returned data: " + data);
-                        try (JsonReader jsonReader = Json.createReader(new StringReader(data))) {
-                            String dataObj = filterResponse(cvocEntry, jsonReader.readObject(), term).toString();
-                            evv.setValue(dataObj);
-                            evv.setLastUpdateDate(Timestamp.from(Instant.now()));
-                            logger.fine("JsonObject: " + dataObj);
-                            em.merge(evv);
-                            em.flush();
-                            logger.fine("Wrote value for term: " + term);
-                        } catch (JsonException je) {
-                            logger.severe("Error retrieving: " + retrievalUri + " : " + je.getMessage());
-                        } catch (PersistenceException e) {
-                            logger.fine("Problem persisting: " + retrievalUri + " : " + e.getMessage());
-                        }
-                    } else {
-                        logger.severe("Received response code : " + statusCode + " when retrieving " + retrievalUri
-                                + " : " + data);
-                    }
-                } catch (IOException ioe) {
-                    logger.severe("IOException when retrieving url: " + retrievalUri + " : " + ioe.getMessage());
-                }
+        try {
+            retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, "0", adjustedTerm);
+            retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, termUriFieldName, adjustedTerm);
+            for (DatasetField f : externalTerm.relatedDatasetFields()) {
+                retrievalUri = tryToReplaceRetrievalUriParam(retrievalUri, f.getDatasetFieldType().getName(), f.getValue());
             }
-        } catch (URISyntaxException e) {
-            logger.fine("Term is not a URI: " + term);
+        } catch (InvalidParameterException e) {
+            logger.warning("InvalidParameterException in tryReplaceRetrievalUriParam : " + e.getMessage());
+            return null;
+        }
+        if (retrievalUri.contains("{")) {
+            logger.severe("Retrieval URI still contains unreplaced parameter :" + retrievalUri);
+            return null;
+        }
+        return retrievalUri;
+    }
+
+    private Map<String, String> retrieveAll(Map<String, Retrieval> retrievals) {
+        if (externalVocabularyService != null) {
+            return externalVocabularyService.retrieveAll(retrievals);
+        }
+        // Not deployed, e.g. in tests: retrieve the terms one at a time
+        try (ExternalVocabularyClient client = new ExternalVocabularyClient(1, 1, ExternalVocabularyServiceBean.DEFAULT_TIMEOUT)) {
+            return client.retrieveAll(retrievals, Runnable::run);
         }
     }
 
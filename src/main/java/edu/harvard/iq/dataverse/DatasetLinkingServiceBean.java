@@ -75,4 +75,43 @@ public class DatasetLinkingServiceBean implements java.io.Serializable {
         return findDatasetLinkingDataverse(dataset.getId(), dataverse.getId()) != null;        
     }
 
+    /**
+     * @return the number of links of the datasets in any of the dataverses to
+     * any of the linking dataverses, counted in one query
+     */
+    public long countLinks(List<Long> datasetOwnerIds, List<Long> linkingDataverseIds) {
+        return em.createQuery("SELECT COUNT(l) FROM DatasetLinkingDataverse l"
+                + " WHERE l.dataset.owner.id IN :ownerIds AND l.linkingDataverse.id IN :linkingDataverseIds", Long.class)
+                .setParameter("ownerIds", datasetOwnerIds)
+                .setParameter("linkingDataverseIds", linkingDataverseIds)
+                .getSingleResult();
+    }
+
+    /**
+     * Deletes the links of the datasets in any of the dataverses to any of the
+     * linking dataverses, in one statement, instead of removing them one by
+     * one. The bulk delete bypasses the persistence context: the caller must
+     * drop the deleted links from the link collections of the entities it
+     * holds.
+     *
+     * @return the ids of the datasets whose links were deleted
+     */
+    public List<Long> deleteLinks(List<Long> datasetOwnerIds, List<Long> linkingDataverseIds) {
+        List<Long> datasetIds = em.createQuery("SELECT DISTINCT l.dataset.id FROM DatasetLinkingDataverse l"
+                + " WHERE l.dataset.owner.id IN :ownerIds AND l.linkingDataverse.id IN :linkingDataverseIds", Long.class)
+                .setParameter("ownerIds", datasetOwnerIds)
+                .setParameter("linkingDataverseIds", linkingDataverseIds)
+                .getResultList();
+        if (datasetIds.isEmpty()) {
+            return datasetIds;
+        }
+        int deleted = em.createQuery("DELETE FROM DatasetLinkingDataverse l"
+                + " WHERE l.dataset.id IN :datasetIds AND l.linkingDataverse.id IN :linkingDataverseIds")
+                .setParameter("datasetIds", datasetIds)
+                .setParameter("linkingDataverseIds", linkingDataverseIds)
+                .executeUpdate();
+        logger.fine("Deleted " + deleted + " links of datasets " + datasetIds);
+        return datasetIds;
+    }
+
 }
@@ -152,6 +152,7 @@ import org.primefaces.event.TabChangeEvent;
 import org.primefaces.event.data.PageEvent;
 
 import edu.harvard.iq.dataverse.search.FacetLabel;
+import edu.harvard.iq.dataverse.search.FileSearchCacheServiceBean;
 import edu.harvard.iq.dataverse.search.SearchConstants;
 import edu.harvard.iq.dataverse.search.SearchFields;
 import edu.harvard.iq.dataverse.search.SearchServiceBean;
@@ -247,6 +248,8 @@ public class DatasetPage implements java.io.Serializable {
     @EJB
     SolrClientService solrClientService;
     @EJB
+    FileSearchCacheServiceBean fileSearchCache;
+    @EJB
     DvObjectServiceBean dvObjectService;
     @EJB
     CacheFactoryBean cacheFactory;
@@ -944,6 +947,19 @@ public class DatasetPage implements java.io.Serializable {
      *
      */
     public Set<Long> getFileIdsInVersionFromSolr(Long datasetVersionId, String pattern) {
+        // The same searches (most commonly, the one with no search term and
+        // no facets selected, made on every page load) are answered from the
+        // cache for as long as the dataset hasn't been reindexed:
+        FileSearchCacheServiceBean.Key cacheKey = datasetVersionId.equals(workingVersion.getId())
+                ? fileSearchCache.keyFor(workingVersion, pattern, fileTypeFacet, fileAccessFacet, fileTagsFacet)
+                : null;
+        FileSearchCacheServiceBean.Result cached = fileSearchCache.get(cacheKey);
+        if (cached != null) {
+            logger.fine("file ids and facets found in the cache");
+            facetLabelsMap = new HashMap<>(cached.facetLabels());
+            return new HashSet<>(cached.fileIds());
+        }
+
         logger.fine("searching for file ids, in solr");
 
         SolrQuery solrQuery = new SolrQuery();
@@ -1109,6 +1125,8 @@ public class DatasetPage implements java.io.Serializable {
             resultIds.add(entityid);
         }
 
+        fileSearchCache.put(cacheKey, resultIds, facetLabelsMap);
+
         return resultIds;
     }
 
@@ -16,10 +16,13 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.impl.DestroyDatasetCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.FinalizeDatasetPublicationCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.GetDatasetStorageSizeCommand;
+import edu.harvard.iq.dataverse.export.ExportAllProgress;
 import edu.harvard.iq.dataverse.export.ExportService;
+import io.gdcc.spi.export.ExportException;
 import edu.harvard.iq.dataverse.globus.GlobusServiceBean;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
@@ -27,7 +30,10 @@ import edu.harvard.iq.dataverse.workflows.WorkflowComment;
 
 import java.io.*;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -57,6 +63,11 @@ import org.apache.commons.lang3.StringUtils;
 public class DatasetServiceBean implements java.io.Serializable {
 
     private static final Logger logger = Logger.getLogger(DatasetServiceBean.class.getCanonicalName());
+
+    // how often the progress of an export all job is logged, in datasets
+    private static final int PROGRESS_INTERVAL = 100;
+    // the current, or last, export all job on this server
+    private static volatile ExportAllProgress exportAllProgress = null;
     @EJB
     IndexServiceBean indexService;
 
@@ -186,6 +197,37 @@ public class DatasetServiceBean implements java.io.Serializable {
         }
     }
 
+    /**
+     * @return the number of datasets in any of the dataverses that have a
+     * guestbook other than the ones given (any guestbook, if none are given)
+     */
+    public long countByOwnersWithGuestbookNotIn(List<Long> ownerIds, List<Long> guestbookIds) {
+        TypedQuery<Long> query = em.createQuery("SELECT COUNT(d) FROM Dataset d WHERE d.owner.id IN :ownerIds AND d.guestbook IS NOT NULL"
+                + (guestbookIds.isEmpty() ? "" : " AND d.guestbook.id NOT IN :guestbookIds"), Long.class)
+                .setParameter("ownerIds", ownerIds);
+        if (!guestbookIds.isEmpty()) {
+            query.setParameter("guestbookIds", guestbookIds);
+        }
+        return query.getSingleResult();
+    }
+
+    /**
+     * Removes, in one statement, the guestbooks of the datasets in any of the
+     * dataverses that have a guestbook other than the ones given (any
+     * guestbook, if none are given).
+     *
+     * @return the number of datasets updated
+     */
+    public int removeGuestbooksNotIn(List<Long> ownerIds, List<Long> guestbookIds) {
+        Query query = em.createQuery("UPDATE Dataset d SET d.guestbook = NULL WHERE d.owner.id IN :ownerIds AND d.guestbook IS NOT NULL"
+                + (guestbookIds.isEmpty() ? "" : " AND d.guestbook.id NOT IN :guestbookIds"))
+                .setParameter("ownerIds", ownerIds);
+        if (!guestbookIds.isEmpty()) {
+            query.setParameter("guestbookIds", guestbookIds);
+        }
+        return query.executeUpdate();
+    }
+
     public List<Dataset> findByCreatorId(Long creatorId) {
         return em.createNamedQuery("Dataset.findByCreatorId").setParameter("creatorId", creatorId).getResultList();
     }
@@ -229,6 +271,30 @@ public class DatasetServiceBean implements java.io.Serializable {
         return em.createQuery("SELECT o.id FROM Dataset o WHERE o.harvestedFrom IS null ORDER BY o.id", Long.class).getResultList();
     }
 
+    /**
+     * @param forceReExport if false, only the datasets not exported since their
+     *                      last publication are returned
+     * @return the ids of the published, local datasets that need to be exported
+     */
+    public List<Long> findIdsToExport(boolean forceReExport) {
+        // Same test as isExportNeeded(): the dataset has a released version
+        // (i.e. it has been published and not entirely deaccessioned), released
+        // after its last export
+        String releasedVersionTest = forceReExport ? ""
+                : " AND v.releaseTime IS NOT NULL AND (o.lastExportTime IS NULL OR o.lastExportTime < v.releaseTime)";
+        return em.createQuery("SELECT o.id FROM Dataset o WHERE o.harvestedFrom IS null AND o.publicationDate IS NOT null"
+                + " AND EXISTS (SELECT v.id FROM DatasetVersion v WHERE v.dataset = o AND v.versionState = :released"
+                + releasedVersionTest + ") ORDER BY o.id", Long.class)
+                .setParameter("released", VersionState.RELEASED)
+                .getResultList();
+    }
+
+    public List<Long> findIdsByHarvestingClient(Long harvestingClientId) {
+        return em.createQuery("SELECT o.id FROM Dataset o WHERE o.harvestedFrom.id = :harvestingClientId ORDER BY o.id", Long.class)
+                .setParameter("harvestingClientId", harvestingClientId)
+                .getResultList();
+    }
+
     public List<Long> findAllUnindexed() {
         return em.createQuery("SELECT o.id FROM Dataset o WHERE o.indexTime IS null ORDER BY o.id DESC", Long.class).getResultList();
     }
@@ -706,9 +772,6 @@ public class DatasetServiceBean implements java.io.Serializable {
     }
 
     public void exportAllDatasets(boolean forceReExport) {
-        Integer countAll = 0;
-        Integer countSuccess = 0;
-        Integer countError = 0;
         String logTimestamp = logFormatter.format(new Date());
         Logger exportLogger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.client.DatasetServiceBean." + "ExportAll" + logTimestamp);
         String logFileName = System.getProperty("com.sun.aas.instanceRoot") + File.separator + "logs" + File.separator + "export_" + logTimestamp + ".log";
@@ -731,41 +794,37 @@ public class DatasetServiceBean implements java.io.Serializable {
 
         exportLogger.info("Starting an export all job");
 
-        for (Long datasetId : findAllLocalDatasetIds()) {
-            // Potentially, there's a godzillion datasets in this Dataverse.
-            // This is why we go through the list of ids here, and instantiate
-            // only one dataset at a time.
-            Dataset dataset = this.find(datasetId);
-            if (dataset != null) {
-                // Accurate "is published?" test - ?
-                // Answer: Yes, it is! We can't trust dataset.isReleased() alone; because it is a dvobject method
-                // that returns (publicationDate != null). And "publicationDate" is essentially
-                // "the first publication date"; that stays the same as versions get
-                // published and/or deaccessioned. But in combination with !isDeaccessioned()
-                // it is indeed an accurate test.
-                if (dataset.isReleased() && dataset.getReleasedVersion() != null && !dataset.isDeaccessioned()) {
-
-                    // can't trust dataset.getPublicationDate(), no.
-                    Date publicationDate = dataset.getReleasedVersion().getReleaseTime(); // we know this dataset has a non-null released version! Maybe not - SEK 8/19 (We do now! :)
-                    if (forceReExport || (publicationDate != null
-                            && (dataset.getLastExportTime() == null
-                            || dataset.getLastExportTime().before(publicationDate)))) {
-                        countAll++;
-                        try {
-                            recordService.exportAllFormatsInNewTransaction(dataset);
-                            exportLogger.info("Success exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString());
-                            countSuccess++;
-                        } catch (Exception ex) {
-                            exportLogger.log(Level.INFO, "Error exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString() + "; " + ex.getMessage(), ex);
-                            countError++;
-                        }
-                    }
-                }
+        // The datasets that need to be exported are selected in the database,
+        // and exported several at a time, each in its own transaction, on
+        // container threads. Potentially, there's a godzillion datasets in this
+        // Dataverse: only their ids are loaded here.
+        List<Long> datasetIds = findIdsToExport(forceReExport);
+        int threads = Math.max(1, JvmSettings.EXPORT_ALL_THREADS.lookupOptional(Integer.class).orElse(4));
+        ExportAllProgress progress = new ExportAllProgress(forceReExport, datasetIds.size(), threads);
+        exportAllProgress = progress;
+        exportLogger.info("Datasets to export: " + datasetIds.size() + ", " + threads + " at a time");
+
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        for (Long datasetId : datasetIds) {
+            if (pending.size() >= threads) {
+                collectExport(pending.removeFirst(), progress, exportLogger);
+            }
+            try {
+                pending.add(recordService.exportAllFormatsAsync(datasetId));
+            } catch (ExportException ex) {
+                // (failures are normally reported by the Future)
+                exportLogger.log(Level.INFO, "Error exporting dataset: " + ex.getMessage(), ex);
+                progress.failed();
             }
         }
-        exportLogger.info("Datasets processed: " + countAll.toString());
-        exportLogger.info("Datasets exported successfully: " + countSuccess.toString());
-        exportLogger.info("Datasets failures: " + countError.toString());
+        while (!pending.isEmpty()) {
+            collectExport(pending.removeFirst(), progress, exportLogger);
+        }
+        progress.finish();
+
+        exportLogger.info("Datasets processed: " + progress.getProcessed());
+        exportLogger.info("Datasets exported successfully: " + progress.getSucceeded());
+        exportLogger.info("Datasets failures: " + progress.getFailed());
         exportLogger.info("Finished export-all job.");
 
         if (fileHandlerSuceeded) {
@@ -774,6 +833,33 @@ public class DatasetServiceBean implements java.io.Serializable {
 
     }
 
+    private void collectExport(Future<String> export, ExportAllProgress progress, Logger exportLogger) {
+        try {
+            exportLogger.info("Success exporting dataset: " + export.get());
+            progress.succeeded();
+        } catch (ExecutionException ex) {
+            exportLogger.log(Level.INFO, "Error exporting dataset: " + ex.getCause().getMessage(), ex.getCause());
+            progress.failed();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            exportLogger.warning("Interrupted while waiting for an export");
+            progress.failed();
+        }
+        if (progress.getProcessed() % PROGRESS_INTERVAL == 0) {
+            Duration remaining = progress.getEstimatedTimeRemaining();
+            exportLogger.info("Datasets processed: " + progress.getProcessed() + " of " + progress.getTotal()
+                    + (remaining != null ? ", about " + remaining.toMinutes() + " minutes remaining" : ""));
+        }
+    }
+
+    /**
+     * @return the progress of the current, or last, export all job on this
+     *         server, or null if there was none since it was started
+     */
+    public ExportAllProgress getExportAllProgress() {
+        return exportAllProgress;
+    }
+
     @Asynchronous
     public void reExportDatasetAsync(Dataset dataset) {
         exportDataset(dataset, true);
@@ -783,25 +869,35 @@ public class DatasetServiceBean implements java.io.Serializable {
         if (dataset != null) {
             // Note that the logic for handling a dataset is similar to what is implemented in exportAllDatasets,
             // but when only one dataset is exported we do not log in a separate export logging file
-            if (dataset.isReleased() && dataset.getReleasedVersion() != null && !dataset.isDeaccessioned()) {
-
-                // can't trust dataset.getPublicationDate(), no.
-                Date publicationDate = dataset.getReleasedVersion().getReleaseTime(); // we know this dataset has a non-null released version! Maybe not - SEK 8/19 (We do now! :)
-                if (forceReExport || (publicationDate != null
-                        && (dataset.getLastExportTime() == null
-                        || dataset.getLastExportTime().before(publicationDate)))) {
-                    try {
-                        recordService.exportAllFormatsInNewTransaction(dataset);
-                        logger.info("Success exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString());
-                    } catch (Exception ex) {
-                        logger.log(Level.INFO, "Error exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString() + "; " + ex.getMessage(), ex);
-                    }
+            if (isExportNeeded(dataset, forceReExport)) {
+                try {
+                    recordService.exportAllFormatsInNewTransaction(dataset);
+                    logger.info("Success exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString());
+                } catch (Exception ex) {
+                    logger.log(Level.INFO, "Error exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString() + "; " + ex.getMessage(), ex);
                 }
             }
         }
 
     }
 
+    /**
+     * The test of {@link #findIdsToExport(boolean)}, on a loaded dataset.
+     *
+     * @return true if the dataset is published, and not entirely deaccessioned,
+     *         and was not exported since its last publication (or forceReExport)
+     */
+    static boolean isExportNeeded(Dataset dataset, boolean forceReExport) {
+        if (dataset.isReleased() && dataset.getReleasedVersion() != null && !dataset.isDeaccessioned()) {
+            // can't trust dataset.getPublicationDate(), no.
+            Date publicationDate = dataset.getReleasedVersion().getReleaseTime(); // we know this dataset has a non-null released version! Maybe not - SEK 8/19 (We do now! :)
+            return forceReExport || (publicationDate != null
+                    && (dataset.getLastExportTime() == null
+                    || dataset.getLastExportTime().before(publicationDate)));
+        }
+        return false;
+    }
+
     //get a string to add to save success message
     //depends on page (dataset/file) and user privleges
     public String getReminderString(Dataset dataset, boolean canPublishDataset, boolean filePage, boolean isValid) {
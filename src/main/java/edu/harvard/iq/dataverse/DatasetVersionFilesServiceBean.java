@@ -181,6 +181,47 @@ public class DatasetVersionFilesServiceBean implements Serializable {
         return typedQuery.getResultList();
     }
 
+    /**
+     * Returns a page of the FileMetadatas of a DatasetVersion, ordered by label
+     * (and id, for files with the same label), starting right after the given
+     * FileMetadata. Unlike an offset, the position in the list is looked up
+     * through the index, so going through all the pages of a version with a
+     * large number of files stays linear. The data files and their related
+     * entities are fetched along with each page, as in
+     * {@link DatasetVersionServiceBean#findDeep(Object)}.
+     *
+     * @param datasetVersionId the id of the DatasetVersion to access
+     * @param after            the last FileMetadata of the previous page, or
+     *                         null for the first page
+     * @param limit            the maximum number of FileMetadatas to return
+     * @return a FileMetadata list, shorter than the limit on the last page
+     */
+    public List<FileMetadata> getFileMetadatasPage(Long datasetVersionId, FileMetadata after, int limit) {
+        TypedQuery<FileMetadata> typedQuery = em.createQuery("SELECT o FROM FileMetadata o WHERE o.datasetVersion.id = :datasetVersionId"
+                + (after == null ? "" : " AND (o.label > :label OR (o.label = :label AND o.id > :id))")
+                + " ORDER BY o.label, o.id", FileMetadata.class)
+                .setParameter("datasetVersionId", datasetVersionId)
+                .setMaxResults(limit)
+                // The to-one relations are joined; the collections are batch
+                // loaded, since joining them would break the limit of the page
+                .setHint("eclipselink.left-join-fetch", "o.datasetVersion")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile.ingestRequest")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile.thumbnailForDataset")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile.embargo")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile.retention")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile.releaseUser")
+                .setHint("eclipselink.left-join-fetch", "o.dataFile.creator")
+                .setHint("eclipselink.batch.type", "IN")
+                .setHint("eclipselink.batch", "o.dataFile.dataTables")
+                .setHint("eclipselink.batch", "o.dataFile.dataFileTags")
+                .setHint("eclipselink.batch", "o.fileCategories");
+        if (after != null) {
+            typedQuery.setParameter("label", after.getLabel()).setParameter("id", after.getId());
+        }
+        return typedQuery.getResultList();
+    }
+
     /**
      * Returns the total download size of all files for a particular DatasetVersion
      *
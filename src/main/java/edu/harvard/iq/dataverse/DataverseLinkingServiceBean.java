@@ -75,4 +75,42 @@ public class DataverseLinkingServiceBean implements java.io.Serializable {
     public boolean alreadyLinked(Dataverse definitionPoint, Dataverse dataverseToLinkTo) {
         return findDataverseLinkingDataverse(dataverseToLinkTo.getId(), definitionPoint.getId()) != null;
     }
+
+    /**
+     * @return the number of links of any of the dataverses to any of the
+     * linking dataverses, counted in one query
+     */
+    public long countLinks(List<Long> dataverseIds, List<Long> linkingDataverseIds) {
+        return em.createQuery("SELECT COUNT(l) FROM DataverseLinkingDataverse l"
+                + " WHERE l.dataverse.id IN :dataverseIds AND l.linkingDataverse.id IN :linkingDataverseIds", Long.class)
+                .setParameter("dataverseIds", dataverseIds)
+                .setParameter("linkingDataverseIds", linkingDataverseIds)
+                .getSingleResult();
+    }
+
+    /**
+     * Deletes the links of any of the dataverses to any of the linking
+     * dataverses, in one statement, instead of removing them one by one. The
+     * bulk delete bypasses the persistence context: the caller must drop the
+     * deleted links from the link collections of the dataverses it holds.
+     *
+     * @return the ids of the linked dataverses whose links were deleted
+     */
+    public List<Long> deleteLinks(List<Long> dataverseIds, List<Long> linkingDataverseIds) {
+        List<Long> linkedIds = em.createQuery("SELECT DISTINCT l.dataverse.id FROM DataverseLinkingDataverse l"
+                + " WHERE l.dataverse.id IN :dataverseIds AND l.linkingDataverse.id IN :linkingDataverseIds", Long.class)
+                .setParameter("dataverseIds", dataverseIds)
+                .setParameter("linkingDataverseIds", linkingDataverseIds)
+                .getResultList();
+        if (linkedIds.isEmpty()) {
+            return linkedIds;
+        }
+        int deleted = em.createQuery("DELETE FROM DataverseLinkingDataverse l"
+                + " WHERE l.dataverse.id IN :dataverseIds AND l.linkingDataverse.id IN :linkingDataverseIds")
+                .setParameter("dataverseIds", linkedIds)
+                .setParameter("linkingDataverseIds", linkingDataverseIds)
+                .executeUpdate();
+        logger.fine("Deleted " + deleted + " links of dataverses " + linkedIds);
+        return linkedIds;
+    }
 }
@@ -730,40 +730,40 @@ public class DataverseServiceBean implements java.io.Serializable {
         }
     }
     
-    // function to recursively find ids of all children of a dataverse that 
-    // are also of type dataverse
+    /**
+     * @return the ids of all the dataverses below the dataverse, at any depth,
+     * in a single recursive query; a parent always comes before its children
+     */
     public List<Long> findAllDataverseDataverseChildren(Long dvId) {
-        // get list of Dataverse children
-        List<Long> dataverseChildren = findIdsByOwnerId(dvId);
-        
-        if (dataverseChildren == null) {
-            return dataverseChildren;
-        } else {
-            List<Long> newChildren = new ArrayList<>();
-            for (Long childDvId : dataverseChildren) {
-                newChildren.addAll(findAllDataverseDataverseChildren(childDvId));
-            }
-            dataverseChildren.addAll(newChildren);
-            return dataverseChildren;
+        String qstr = "WITH RECURSIVE subtree AS ("
+                + " SELECT o.id, 1 AS depth FROM dvobject o WHERE o.owner_id = ?1 AND o.dtype = 'Dataverse'"
+                + " UNION ALL"
+                + " SELECT o.id, s.depth + 1 FROM subtree s JOIN dvobject o ON o.owner_id = s.id WHERE o.dtype = 'Dataverse')"
+                + " SELECT id FROM subtree ORDER BY depth, id";
+        List<Object> result = em.createNativeQuery(qstr).setParameter(1, dvId).getResultList();
+        List<Long> dataverseChildren = new ArrayList<>(result.size());
+        for (Object id : result) {
+            dataverseChildren.add(((Number) id).longValue());
         }
+        return dataverseChildren;
     }
-    
-    // function to recursively find ids of all children of a dataverse that are 
-    // of type dataset
+
+    /**
+     * @return the ids of all the datasets in the dataverse, or in any of the
+     * dataverses below it, in a single recursive query
+     */
     public List<Long> findAllDataverseDatasetChildren(Long dvId) {
-        // get list of Dataverse children
-        List<Long> dataverseChildren = findIdsByOwnerId(dvId);
-        // get list of Dataset children
-        List<Long> datasetChildren = datasetService.findIdsByOwnerId(dvId);
-        
-        if (dataverseChildren == null) {
-            return datasetChildren;
-        } else {
-            for (Long childDvId : dataverseChildren) {
-                datasetChildren.addAll(findAllDataverseDatasetChildren(childDvId));
-            }
-            return datasetChildren;
+        String qstr = "WITH RECURSIVE subtree AS ("
+                + " SELECT o.id FROM dvobject o WHERE o.id = ?1"
+                + " UNION ALL"
+                + " SELECT o.id FROM subtree s JOIN dvobject o ON o.owner_id = s.id WHERE o.dtype = 'Dataverse')"
+                + " SELECT d.id FROM dvobject d JOIN subtree s ON d.owner_id = s.id WHERE d.dtype = 'Dataset' ORDER BY d.id";
+        List<Object> result = em.createNativeQuery(qstr).setParameter(1, dvId).getResultList();
+        List<Long> datasetChildren = new ArrayList<>(result.size());
+        for (Object id : result) {
+            datasetChildren.add(((Number) id).longValue());
         }
+        return datasetChildren;
     }
     
     public String addRoleAssignmentsToChildren(Dataverse owner, ArrayList<String> rolesToInherit,
@@ -0,0 +1,594 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import static jakarta.ejb.LockType.READ;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import static jakarta.ejb.TransactionAttributeType.SUPPORTS;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
+
+/**
+ * An in-memory index of the collection hierarchy: the parent of every
+ * collection, and the collections linking to each collection and dataset. It
+ * lets the indexing code work out the ancestor paths and the linking
+ * collections of an object without loading the owner chain entity by entity,
+ * or querying the linking tables once for every ancestor.
+ *
+ * The index only holds ids, and is loaded with three queries. The commands
+ * that create, move, link, unlink or delete collections and datasets record
+ * their change (e.g. {@link #collectionSaved(Long, Long)}); once their
+ * transaction has committed, the change is published in a cluster-wide cache,
+ * under a new "generation" of the hierarchy, and every node applies it to its
+ * copy of the index on its next lookup, without reloading it. A node reloads
+ * the whole index only when it has missed a change (e.g. the change has
+ * expired from the cache, or was published while the index was being
+ * loaded), after {@link #invalidate()} (for the changes that are not recorded
+ * one by one, e.g. the links deleted when a collection is moved), and, as a
+ * safeguard against changes made outside of the commands (e.g. directly in
+ * the database), when the index is older than {@link #MAX_AGE_MILLIS}.
+ *
+ * Lookups return null for the objects that are not in the index (e.g. a
+ * collection created in the current, not yet committed transaction), and for
+ * all the objects within a transaction that has changed the hierarchy; the
+ * callers are expected to fall back to the entities in that case.
+ */
+@Lock(READ)
+@Singleton
+@Startup
+@TransactionAttribute(SUPPORTS)
+public class DvObjectHierarchyServiceBean {
+
+    private static final Logger logger = Logger.getLogger(DvObjectHierarchyServiceBean.class.getCanonicalName());
+
+    public static final String HIERARCHY_CACHE = "dvObjectHierarchyCache";
+    public static final String HIERARCHY_CHANGES_CACHE = "dvObjectHierarchyChangesCache";
+    private static final String GENERATION_KEY = "generation";
+    private static final String INVALIDATED_KEY = DvObjectHierarchyServiceBean.class.getName() + ".invalidated";
+    private static final String CHANGES_KEY = DvObjectHierarchyServiceBean.class.getName() + ".changes";
+    static final long MAX_AGE_MILLIS = 10 * 60 * 1000;
+    // beyond this number of generations behind, the index is reloaded instead
+    static final int MAX_GENERATIONS_APPLIED = 1000;
+    private static final int MAX_PUBLISH_ATTEMPTS = 10;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+
+    @Inject
+    CacheManager manager;
+
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+
+    // Retrieved from Hazelcast, shared by all the nodes of a cluster
+    private Cache<String, String> generationCache;
+    // generation -> the previous generation, and the changes between them
+    // (see encodeChanges); they only need to be kept as long as the index
+    private Cache<String, String> changesCache;
+
+    private volatile Hierarchy hierarchy = null;
+    private final Object buildLock = new Object();
+
+    enum ChangeType {
+        COLLECTION_SAVED, COLLECTION_DELETED, COLLECTION_LINKED, COLLECTION_UNLINKED,
+        DATASET_LINKED, DATASET_UNLINKED, DATASET_DELETED
+    }
+
+    /**
+     * A change of the hierarchy: the collection or dataset changed, and its
+     * new owner, or the collection linking to it (null for the deletions).
+     */
+    record Change(ChangeType type, Long id, Long otherId) {
+    }
+
+    /**
+     * The changes recorded in a transaction, published once it has committed,
+     * unless the whole index has been invalidated.
+     */
+    private static class TransactionChanges {
+        final List<Change> changes = new ArrayList<>();
+        boolean invalidated = false;
+    }
+
+    /**
+     * An immutable snapshot of the hierarchy.
+     */
+    static class Hierarchy {
+
+        final String generation;
+        final long builtAt;
+        // collection id -> owner id (null for the root)
+        final Map<Long, Long> collectionOwners;
+        final Map<Long, Set<Long>> collectionLinks;
+        final Map<Long, Set<Long>> datasetLinks;
+
+        Hierarchy(String generation, Map<Long, Long> collectionOwners,
+                Map<Long, Set<Long>> collectionLinks, Map<Long, Set<Long>> datasetLinks) {
+            this(generation, System.currentTimeMillis(), collectionOwners, collectionLinks, datasetLinks);
+        }
+
+        private Hierarchy(String generation, long builtAt, Map<Long, Long> collectionOwners,
+                Map<Long, Set<Long>> collectionLinks, Map<Long, Set<Long>> datasetLinks) {
+            this.generation = generation;
+            this.builtAt = builtAt;
+            this.collectionOwners = collectionOwners;
+            this.collectionLinks = collectionLinks;
+            this.datasetLinks = datasetLinks;
+        }
+
+        /**
+         * @return the ids of the collections on the path from the root
+         *         (excluded) down to the collection (included), or null if the
+         *         collection is not known
+         */
+        List<Long> findPathIds(Long collectionId) {
+            if (!collectionOwners.containsKey(collectionId)) {
+                return null;
+            }
+            List<Long> path = new ArrayList<>();
+            Long id = collectionId;
+            // the depth is bounded, in case of a cycle in inconsistent data
+            for (int depth = 0; depth <= collectionOwners.size(); depth++) {
+                Long ownerId = collectionOwners.get(id);
+                if (ownerId == null) {
+                    // id is the root collection
+                    Collections.reverse(path);
+                    return path;
+                }
+                path.add(id);
+                if (!collectionOwners.containsKey(ownerId)) {
+                    return null;
+                }
+                id = ownerId;
+            }
+            return null;
+        }
+
+        Set<Long> findLinkingCollectionIds(Long collectionId) {
+            return collectionLinks.getOrDefault(collectionId, Set.of());
+        }
+
+        Set<Long> findDatasetLinkingCollectionIds(Long datasetId) {
+            return datasetLinks.getOrDefault(datasetId, Set.of());
+        }
+
+        /**
+         * @return a copy of the hierarchy with the changes applied, at the
+         *         given generation; it is as old as this one, so that it is
+         *         still reloaded after {@link #MAX_AGE_MILLIS}
+         */
+        Hierarchy apply(List<Change> changes, String newGeneration) {
+            Map<Long, Long> owners = new HashMap<>(collectionOwners);
+            Map<Long, Set<Long>> newCollectionLinks = new HashMap<>(collectionLinks);
+            Map<Long, Set<Long>> newDatasetLinks = new HashMap<>(datasetLinks);
+            for (Change change : changes) {
+                switch (change.type()) {
+                    case COLLECTION_SAVED -> owners.put(change.id(), change.otherId());
+                    case COLLECTION_DELETED -> {
+                        owners.remove(change.id());
+                        newCollectionLinks.remove(change.id());
+                        removeLinksFrom(newCollectionLinks, change.id());
+                        removeLinksFrom(newDatasetLinks, change.id());
+                    }
+                    case COLLECTION_LINKED -> addLink(newCollectionLinks, change.id(), change.otherId());
+                    case COLLECTION_UNLINKED -> removeLink(newCollectionLinks, change.id(), change.otherId());
+                    case DATASET_LINKED -> addLink(newDatasetLinks, change.id(), change.otherId());
+                    case DATASET_UNLINKED -> removeLink(newDatasetLinks, change.id(), change.otherId());
+                    case DATASET_DELETED -> newDatasetLinks.remove(change.id());
+                }
+            }
+            return new Hierarchy(newGeneration, builtAt, owners, newCollectionLinks, newDatasetLinks);
+        }
+
+        // the sets of the links are shared with the previous snapshots, so
+        // they are copied rather than modified
+
+        private static void addLink(Map<Long, Set<Long>> links, Long id, Long linkingId) {
+            Set<Long> linkingIds = new HashSet<>(links.getOrDefault(id, Set.of()));
+            linkingIds.add(linkingId);
+            links.put(id, linkingIds);
+        }
+
+        private static void removeLink(Map<Long, Set<Long>> links, Long id, Long linkingId) {
+            Set<Long> linkingIds = links.get(id);
+            if (linkingIds != null && linkingIds.contains(linkingId)) {
+                linkingIds = new HashSet<>(linkingIds);
+                linkingIds.remove(linkingId);
+                if (linkingIds.isEmpty()) {
+                    links.remove(id);
+                } else {
+                    links.put(id, linkingIds);
+                }
+            }
+        }
+
+        private static void removeLinksFrom(Map<Long, Set<Long>> links, Long linkingId) {
+            for (Iterator<Map.Entry<Long, Set<Long>>> it = links.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Long, Set<Long>> entry = it.next();
+                if (entry.getValue().contains(linkingId)) {
+                    Set<Long> linkingIds = new HashSet<>(entry.getValue());
+                    linkingIds.remove(linkingId);
+                    if (linkingIds.isEmpty()) {
+                        it.remove();
+                    } else {
+                        entry.setValue(linkingIds);
+                    }
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            generationCache = manager.getCache(HIERARCHY_CACHE);
+            if (generationCache == null) {
+                generationCache = manager.createCache(HIERARCHY_CACHE,
+                        new MutableConfiguration<String, String>().setTypes(String.class, String.class));
+            }
+            changesCache = manager.getCache(HIERARCHY_CHANGES_CACHE);
+            if (changesCache == null) {
+                changesCache = manager.createCache(HIERARCHY_CHANGES_CACHE,
+                        new MutableConfiguration<String, String>().setTypes(String.class, String.class)
+                                .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(new Duration(TimeUnit.MILLISECONDS, MAX_AGE_MILLIS))));
+            }
+        } catch (RuntimeException e) {
+            // Without the shared cache, the changes made on other nodes are
+            // only picked up when the index gets too old
+            logger.log(Level.WARNING, "Could not set up the collection hierarchy cache: " + e.getMessage(), e);
+            generationCache = null;
+            changesCache = null;
+        }
+    }
+
+    /**
+     * @param collectionId the id of a collection
+     * @return the ids of the collections on the path from the top (the root
+     *         collection is not included) down to the collection itself, or
+     *         null if the collection is not in the index
+     */
+    public List<Long> findPathIds(Long collectionId) {
+        Hierarchy current = getHierarchy();
+        return current == null || collectionId == null ? null : current.findPathIds(collectionId);
+    }
+
+    /**
+     * @return the ids of the collections linking the collection, or null if
+     *         the index is not available
+     */
+    public Set<Long> findLinkingCollectionIds(Long collectionId) {
+        Hierarchy current = getHierarchy();
+        return current == null ? null : current.findLinkingCollectionIds(collectionId);
+    }
+
+    /**
+     * @return the ids of the collections linking the dataset, or null if the
+     *         index is not available
+     */
+    public Set<Long> findDatasetLinkingCollectionIds(Long datasetId) {
+        Hierarchy current = getHierarchy();
+        return current == null ? null : current.findDatasetLinkingCollectionIds(datasetId);
+    }
+
+    /**
+     * Records a collection created, or moved to another owner.
+     */
+    public void collectionSaved(Long collectionId, Long ownerId) {
+        recordChange(new Change(ChangeType.COLLECTION_SAVED, collectionId, ownerId));
+    }
+
+    /**
+     * Records a deleted collection, along with its links.
+     */
+    public void collectionDeleted(Long collectionId) {
+        recordChange(new Change(ChangeType.COLLECTION_DELETED, collectionId, null));
+    }
+
+    public void collectionLinked(Long collectionId, Long linkingCollectionId) {
+        recordChange(new Change(ChangeType.COLLECTION_LINKED, collectionId, linkingCollectionId));
+    }
+
+    public void collectionUnlinked(Long collectionId, Long linkingCollectionId) {
+        recordChange(new Change(ChangeType.COLLECTION_UNLINKED, collectionId, linkingCollectionId));
+    }
+
+    public void datasetLinked(Long datasetId, Long linkingCollectionId) {
+        recordChange(new Change(ChangeType.DATASET_LINKED, datasetId, linkingCollectionId));
+    }
+
+    public void datasetUnlinked(Long datasetId, Long linkingCollectionId) {
+        recordChange(new Change(ChangeType.DATASET_UNLINKED, datasetId, linkingCollectionId));
+    }
+
+    /**
+     * Records a destroyed dataset, along with its links.
+     */
+    public void datasetDeleted(Long datasetId) {
+        recordChange(new Change(ChangeType.DATASET_DELETED, datasetId, null));
+    }
+
+    /**
+     * Marks the index as out of date, on all the nodes, for the changes that
+     * are not recorded one by one. If called within a transaction, the index
+     * is not used for the rest of the transaction, and is invalidated again
+     * once the transaction has completed, since the other transactions don't
+     * see the changes until then.
+     */
+    public void invalidate() {
+        bumpGeneration();
+        TransactionChanges transactionChanges = getTransactionChanges();
+        if (transactionChanges != null) {
+            transactionChanges.invalidated = true;
+        }
+    }
+
+    /**
+     * Within a transaction, the index is not used for the rest of it, and the
+     * change is published once it has committed; otherwise, at once.
+     */
+    private void recordChange(Change change) {
+        if (change.id() == null || (change.otherId() == null
+                && change.type() != ChangeType.COLLECTION_SAVED
+                && change.type() != ChangeType.COLLECTION_DELETED
+                && change.type() != ChangeType.DATASET_DELETED)) {
+            // e.g. an object not flushed yet
+            invalidate();
+            return;
+        }
+        TransactionChanges transactionChanges = getTransactionChanges();
+        if (transactionChanges != null) {
+            transactionChanges.changes.add(change);
+        } else {
+            publish(List.of(change));
+        }
+    }
+
+    /**
+     * @return the changes of the current transaction, registered to be
+     *         published once it has completed, or null if there is no
+     *         transaction
+     */
+    private TransactionChanges getTransactionChanges() {
+        try {
+            if (transactionRegistry == null || transactionRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+                return null;
+            }
+            TransactionChanges transactionChanges = (TransactionChanges) transactionRegistry.getResource(CHANGES_KEY);
+            if (transactionChanges == null) {
+                TransactionChanges registered = new TransactionChanges();
+                transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (registered.invalidated) {
+                            bumpGeneration();
+                        } else if (status == Status.STATUS_COMMITTED && !registered.changes.isEmpty()) {
+                            publish(registered.changes);
+                        }
+                    }
+                });
+                transactionRegistry.putResource(CHANGES_KEY, registered);
+                transactionRegistry.putResource(INVALIDATED_KEY, Boolean.TRUE);
+                transactionChanges = registered;
+            }
+            return transactionChanges;
+        } catch (IllegalStateException e) {
+            logger.fine("Could not register the hierarchy change with the transaction: " + e.getMessage());
+            // the change is then left to a reload
+            bumpGeneration();
+            return null;
+        }
+    }
+
+    /**
+     * Publishes the changes under a new generation, recorded along with the
+     * one it follows, so that the nodes with the index of that generation can
+     * catch up by applying them. Without the shared cache, they are applied
+     * to the index of this node.
+     */
+    private void publish(List<Change> changes) {
+        if (generationCache == null || changesCache == null) {
+            synchronized (buildLock) {
+                Hierarchy current = hierarchy;
+                if (current != null) {
+                    hierarchy = current.apply(changes, current.generation);
+                }
+            }
+            return;
+        }
+        try {
+            String encoded = encodeChanges(changes);
+            for (int attempt = 0; attempt < MAX_PUBLISH_ATTEMPTS; attempt++) {
+                String previous = currentGeneration();
+                String generation = UUID.randomUUID().toString();
+                // recorded before the generation is, so that it is there for
+                // the nodes that see the generation
+                changesCache.put(generation, previous + "\n" + encoded);
+                if (generationCache.replace(GENERATION_KEY, previous, generation)) {
+                    return;
+                }
+                changesCache.remove(generation);
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not publish the collection hierarchy changes: " + e.getMessage(), e);
+        }
+        bumpGeneration();
+    }
+
+    private void bumpGeneration() {
+        hierarchy = null;
+        if (generationCache != null) {
+            generationCache.put(GENERATION_KEY, UUID.randomUUID().toString());
+        }
+    }
+
+    private String currentGeneration() {
+        if (generationCache == null) {
+            return "";
+        }
+        String generation = generationCache.get(GENERATION_KEY);
+        if (generation == null) {
+            generation = UUID.randomUUID().toString();
+            if (!generationCache.putIfAbsent(GENERATION_KEY, generation)) {
+                generation = generationCache.get(GENERATION_KEY);
+            }
+        }
+        return generation;
+    }
+
+    private boolean isInvalidatedInCurrentTransaction() {
+        try {
+            return transactionRegistry != null && transactionRegistry.getTransactionKey() != null
+                    && transactionRegistry.getResource(INVALIDATED_KEY) != null;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private Hierarchy getHierarchy() {
+        if (isInvalidatedInCurrentTransaction()) {
+            return null;
+        }
+        try {
+            String generation = currentGeneration();
+            Hierarchy current = hierarchy;
+            if (isUpToDate(current, generation)) {
+                return current;
+            }
+            synchronized (buildLock) {
+                current = hierarchy;
+                if (!isUpToDate(current, generation)) {
+                    Hierarchy updated = applyPublishedChanges(current, generation);
+                    current = updated != null ? updated : build(generation);
+                    hierarchy = current;
+                }
+                return current;
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not load the collection hierarchy: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static boolean isUpToDate(Hierarchy current, String generation) {
+        return current != null && current.generation.equals(generation) && !isTooOld(current);
+    }
+
+    private static boolean isTooOld(Hierarchy current) {
+        return System.currentTimeMillis() - current.builtAt >= MAX_AGE_MILLIS;
+    }
+
+    /**
+     * @return the index brought up to the generation with the changes
+     *         published since its own generation, or null if it has to be
+     *         reloaded
+     */
+    private Hierarchy applyPublishedChanges(Hierarchy current, String generation) {
+        if (current == null || isTooOld(current) || changesCache == null) {
+            return null;
+        }
+        List<List<Change>> published = new ArrayList<>();
+        String next = generation;
+        while (!next.equals(current.generation)) {
+            String entry = published.size() < MAX_GENERATIONS_APPLIED ? changesCache.get(next) : null;
+            if (entry == null) {
+                // not published one by one, or expired
+                return null;
+            }
+            int separator = entry.indexOf('\n');
+            published.add(decodeChanges(entry.substring(separator + 1)));
+            next = entry.substring(0, separator);
+        }
+        List<Change> changes = new ArrayList<>();
+        for (int i = published.size() - 1; i >= 0; i--) {
+            changes.addAll(published.get(i));
+        }
+        logger.fine("Applied " + changes.size() + " changes to the collection hierarchy");
+        return current.apply(changes, generation);
+    }
+
+    /**
+     * @return the changes as "type:id:otherId" entries separated by ';'
+     */
+    static String encodeChanges(List<Change> changes) {
+        StringBuilder encoded = new StringBuilder();
+        for (Change change : changes) {
+            if (encoded.length() > 0) {
+                encoded.append(';');
+            }
+            encoded.append(change.type().name()).append(':').append(change.id()).append(':')
+                    .append(change.otherId() == null ? "" : change.otherId());
+        }
+        return encoded.toString();
+    }
+
+    static List<Change> decodeChanges(String encoded) {
+        List<Change> changes = new ArrayList<>();
+        for (String entry : encoded.split(";")) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            String[] parts = entry.split(":", -1);
+            changes.add(new Change(ChangeType.valueOf(parts[0]), Long.valueOf(parts[1]),
+                    parts[2].isEmpty() ? null : Long.valueOf(parts[2])));
+        }
+        return changes;
+    }
+
+    private Hierarchy build(String generation) {
+        long start = System.currentTimeMillis();
+
+        Map<Long, Long> owners = new HashMap<>();
+        List<Object[]> rows = em.createNativeQuery("SELECT id, owner_id FROM dvobject WHERE dtype='Dataverse'").getResultList();
+        for (Object[] row : rows) {
+            owners.put(toLong(row[0]), toLong(row[1]));
+        }
+
+        Map<Long, Set<Long>> collectionLinks = loadLinks("SELECT dataverse_id, linkingdataverse_id FROM dataverselinkingdataverse");
+        Map<Long, Set<Long>> datasetLinks = loadLinks("SELECT dataset_id, linkingdataverse_id FROM datasetlinkingdataverse");
+
+        logger.fine("Loaded the hierarchy of " + owners.size() + " collections in " + (System.currentTimeMillis() - start) + " ms");
+        return new Hierarchy(generation, owners, collectionLinks, datasetLinks);
+    }
+
+    private Map<Long, Set<Long>> loadLinks(String queryString) {
+        Map<Long, Set<Long>> links = new HashMap<>();
+        List<Object[]> rows = em.createNativeQuery(queryString).getResultList();
+        for (Object[] row : rows) {
+            links.computeIfAbsent(toLong(row[0]), k -> new HashSet<>()).add(toLong(row[1]));
+        }
+        return links;
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+}
@@ -186,6 +186,9 @@ public class EjbDataverseEngine {
     @EJB
     StorageUseServiceBean storageUseService; 
     
+    @EJB
+    DvObjectHierarchyServiceBean dvObjectHierarchy;
+    
     @EJB
     EjbDataverseEngineInner innerEngine;
 
@@ -527,6 +530,11 @@ public class EjbDataverseEngine {
                     return storageUseService;
                 }
                 
+                @Override
+                public DvObjectHierarchyServiceBean dvObjectHierarchy() {
+                    return dvObjectHierarchy;
+                }
+                
                 @Override
                 public DataverseEngine engine() {
                     return new DataverseEngine() {
@@ -0,0 +1,166 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import jakarta.json.JsonObject;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * The HTTP client used to retrieve the terms of external vocabularies (see
+ * the :CVocConf setting) from the services managing them. Its connections are
+ * pooled, and kept alive between retrievals, so that registering the terms of
+ * a dataset doesn't take a new connection (and TLS handshake) per term. The
+ * pool also limits the number of concurrent requests, overall and per
+ * service.
+ */
+public class ExternalVocabularyClient implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(ExternalVocabularyClient.class.getCanonicalName());
+
+    /**
+     * A request for a term: the retrieval URI, with the term in it, and the
+     * extra headers configured for the vocabulary, if any.
+     */
+    public record Retrieval(String uri, JsonObject headers) {
+    }
+
+    private final int maxConnections;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * @param maxConnections        the number of concurrent requests, overall
+     * @param maxConnectionsPerHost the number of concurrent requests to one
+     *                              service
+     * @param timeoutSeconds        the connection and read timeout
+     */
+    public ExternalVocabularyClient(int maxConnections, int maxConnectionsPerHost, int timeoutSeconds) {
+        this.maxConnections = Math.max(1, maxConnections);
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(this.maxConnections);
+        connectionManager.setDefaultMaxPerRoute(Math.max(1, Math.min(maxConnectionsPerHost, this.maxConnections)));
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeoutSeconds * 1000)
+                .setSocketTimeout(timeoutSeconds * 1000)
+                .setConnectionRequestTimeout(timeoutSeconds * 1000)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .addInterceptorLast((HttpResponse response, HttpContext context) -> {
+                    if (response.getStatusLine().getStatusCode() == 504) {
+                        // Throwing an exception triggers the retry handler
+                        throw new IOException("Retry due to 504 response");
+                    }
+                })
+                // The retry handler will also do retries for network errors/other things that cause an IOException
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(3, false))
+                .build();
+    }
+
+    /**
+     * @return the response of the service, if the term was found
+     * @throws IOException if the service could not be reached, or did not
+     *                     return the term
+     */
+    public String retrieve(Retrieval retrieval) throws IOException {
+        HttpGet httpGet = new HttpGet(retrieval.uri());
+        // application/json+ld is for backward compatibility
+        httpGet.addHeader("Accept", "application/ld+json, application/json+ld, application/json");
+        // Adding others custom HTTP request headers if exists
+        JsonObject headers = retrieval.headers();
+        if (headers != null) {
+            for (String key : headers.keySet()) {
+                httpGet.addHeader(key, headers.getString(key));
+            }
+        }
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            String data = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != 200) {
+                throw new IOException("Received response code : " + statusCode + " : " + data);
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Retrieves terms in parallel, on the threads of the executor, up to the
+     * maximum number of connections at a time.
+     *
+     * @return the responses of the retrievals that succeeded, by key (the
+     *         failures are logged)
+     */
+    public <K> Map<K, String> retrieveAll(Map<K, Retrieval> retrievals, Executor executor) {
+        Semaphore permits = new Semaphore(maxConnections);
+        Map<K, CompletableFuture<String>> futures = new HashMap<>();
+        for (Map.Entry<K, Retrieval> entry : retrievals.entrySet()) {
+            Retrieval retrieval = entry.getValue();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                futures.put(entry.getKey(), CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return retrieve(retrieval);
+                    } catch (IOException e) {
+                        logger.severe("Error when retrieving url: " + retrieval.uri() + " : " + e.getMessage());
+                        return null;
+                    } finally {
+                        permits.release();
+                    }
+                }, executor));
+            } catch (RuntimeException e) {
+                // e.g. the executor rejected the task
+                permits.release();
+                logger.warning("Could not retrieve " + retrieval.uri() + " : " + e.getMessage());
+            }
+        }
+        Map<K, String> responses = new HashMap<>();
+        for (Map.Entry<K, CompletableFuture<String>> entry : futures.entrySet()) {
+            try {
+                String response = entry.getValue().get();
+                if (response != null) {
+                    responses.put(entry.getKey(), response);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                logger.warning("Error retrieving " + entry.getKey() + " : " + e.getMessage());
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.fine("Failed to close the external vocabulary client: " + e.getMessage());
+        }
+        connectionManager.close();
+    }
+}
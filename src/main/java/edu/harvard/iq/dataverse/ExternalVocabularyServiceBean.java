@@ -0,0 +1,171 @@
+package edu.harvard.iq.dataverse;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.harvard.iq.dataverse.ExternalVocabularyClient.Retrieval;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import static jakarta.ejb.LockType.READ;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionAttribute;
+import static jakarta.ejb.TransactionAttributeType.SUPPORTS;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.json.JsonObject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Holds what the lookups of external vocabulary terms (see the :CVocConf
+ * setting) share across requests: the pooled {@link ExternalVocabularyClient}
+ * used to retrieve the terms from the vocabulary services (in parallel, on
+ * the threads of the ManagedExecutorService), and a cache of the values
+ * stored in the externalvocabularyvalue table, so that indexing and exporting
+ * datasets don't query the table once per term.
+ *
+ * The cache holds the absence of a value too (most values of the fields
+ * managed by an external vocabulary can also be free text). The values are
+ * updated in the cache when the transaction registering them on this node
+ * has committed; those
+ * registered on other nodes of a cluster are seen once the entries expire.
+ *
+ * The number of connections to the vocabulary services, overall and per
+ * service, the timeout of the retrievals, and the size of the cache are
+ * configured with the dataverse.cvoc.* JVM options.
+ */
+@Lock(READ)
+@Singleton
+@TransactionAttribute(SUPPORTS)
+public class ExternalVocabularyServiceBean {
+
+    private static final Logger logger = Logger.getLogger(ExternalVocabularyServiceBean.class.getCanonicalName());
+
+    static final int DEFAULT_MAX_CONNECTIONS = 20;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+    static final int DEFAULT_TIMEOUT = 30;
+    static final long DEFAULT_CACHE_SIZE = 10000;
+    private static final Duration EXPIRATION = Duration.ofMinutes(10);
+    private static final String PENDING_VALUES_KEY = ExternalVocabularyServiceBean.class.getName() + ".pendingValues";
+
+    @Resource
+    ManagedExecutorService executor;
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+
+    private ExternalVocabularyClient client;
+    private Cache<String, Optional<JsonObject>> values = null;
+
+    @PostConstruct
+    public void init() {
+        int maxConnections = JvmSettings.CVOC_MAX_CONNECTIONS.lookupOptional(Integer.class).orElse(DEFAULT_MAX_CONNECTIONS);
+        int maxConnectionsPerHost = JvmSettings.CVOC_MAX_CONNECTIONS_PER_HOST.lookupOptional(Integer.class)
+                .orElse(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        int timeout = JvmSettings.CVOC_TIMEOUT.lookupOptional(Integer.class).orElse(DEFAULT_TIMEOUT);
+        client = new ExternalVocabularyClient(maxConnections, maxConnectionsPerHost, timeout);
+
+        long size = JvmSettings.CVOC_CACHE_SIZE.lookupOptional(Long.class).orElse(DEFAULT_CACHE_SIZE);
+        if (size > 0) {
+            values = Caffeine.newBuilder()
+                    .maximumSize(size)
+                    .expireAfterWrite(EXPIRATION)
+                    .build();
+        } else {
+            logger.info("External vocabulary value cache disabled");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        client.close();
+    }
+
+    /**
+     * Retrieves terms from their vocabulary services, in parallel (up to the
+     * maximum number of connections at a time).
+     *
+     * @return the responses of the services, by key, for the terms that could
+     *         be retrieved
+     */
+    public <K> Map<K, String> retrieveAll(Map<K, Retrieval> retrievals) {
+        if (retrievals.isEmpty()) {
+            return Map.of();
+        }
+        return client.retrieveAll(retrievals, executor);
+    }
+
+    /**
+     * @return the cached value for the term uri: an empty Optional if the term
+     *         is known not to have a value, null if it is not cached
+     */
+    public Optional<JsonObject> getCachedValue(String termUri) {
+        return values == null ? null : values.getIfPresent(termUri);
+    }
+
+    /**
+     * Caches the value stored for the term uri; null if there is none.
+     */
+    public void cacheValue(String termUri, JsonObject value) {
+        if (values != null) {
+            values.put(termUri, Optional.ofNullable(value));
+        }
+    }
+
+    /**
+     * Caches the value written for the term uri in the current transaction,
+     * once the transaction has committed. Until then, the term is not cached,
+     * so that the other transactions look it up in the table; if the
+     * transaction is rolled back, it is left uncached. Without a transaction,
+     * the value is cached at once.
+     */
+    public void cacheValueAfterCommit(String termUri, JsonObject value) {
+        if (values == null) {
+            return;
+        }
+        values.invalidate(termUri);
+        try {
+            if (transactionRegistry != null && transactionRegistry.getTransactionStatus() == Status.STATUS_ACTIVE) {
+                @SuppressWarnings("unchecked")
+                Map<String, JsonObject> pendingValues = (Map<String, JsonObject>) transactionRegistry.getResource(PENDING_VALUES_KEY);
+                if (pendingValues == null) {
+                    Map<String, JsonObject> written = new HashMap<>();
+                    transactionRegistry.putResource(PENDING_VALUES_KEY, written);
+                    transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                        @Override
+                        public void beforeCompletion() {
+                        }
+
+                        @Override
+                        public void afterCompletion(int status) {
+                            if (status == Status.STATUS_COMMITTED) {
+                                written.forEach(ExternalVocabularyServiceBean.this::cacheValue);
+                            } else {
+                                written.keySet().forEach(ExternalVocabularyServiceBean.this::invalidateValue);
+                            }
+                        }
+                    });
+                    pendingValues = written;
+                }
+                pendingValues.put(termUri, value);
+                return;
+            }
+        } catch (IllegalStateException e) {
+            logger.fine("Could not register the cached value with the transaction: " + e.getMessage());
+            return;
+        }
+        cacheValue(termUri, value);
+    }
+
+    public void invalidateValue(String termUri) {
+        if (values != null) {
+            values.invalidate(termUri);
+        }
+    }
+}
@@ -11,8 +11,10 @@ import edu.harvard.iq.dataverse.externaltools.ExternalTool;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -42,6 +44,8 @@ import org.apache.commons.text.StringEscapeUtils;
 public class GuestbookResponseServiceBean {
     private static final Logger logger = Logger.getLogger(GuestbookResponseServiceBean.class.getCanonicalName());
     
+    static final String DOWNLOAD_COUNT_MONTH_FORMAT = "yyyy-MM";
+    
     @EJB
     DataverseServiceBean dataverseService;
     
@@ -99,7 +103,7 @@ public class GuestbookResponseServiceBean {
     private static SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("MM/d/yyyy");
     
     @PersistenceContext(unitName = "VDCNet-ejbPU")
-    private EntityManager em;
+    EntityManager em;
 
     public List<GuestbookResponse> findAll() {
         return em.createQuery("select object(o) from GuestbookResponse as o order by o.responseTime desc", GuestbookResponse.class).getResultList();
@@ -902,6 +906,7 @@ public class GuestbookResponseServiceBean {
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void save(GuestbookResponse guestbookResponse) {
         em.persist(guestbookResponse);
+        incrementDownloadCounts(guestbookResponse);
     }
     
     
@@ -910,11 +915,112 @@ public class GuestbookResponseServiceBean {
      * is not of eventtype=='AccessRequest' is considered a download. This includes
      * actual 'Download's, downloads of 'Subset's, and use by 'Explore' tools and
      * previewers (where eventtype is the previewer name)
+     *
+     * Rather than counting the (ever growing number of) rows in guestbookresponse,
+     * the counts are read from the filedownloadcount and datasetdownloadcount
+     * tables, that hold the number of downloads per file and per dataset, for
+     * every month. The counters are incremented in the same transaction as the
+     * response is saved, and can be recalculated from the responses with
+     * rebuildDownloadCounts().
+     */
+    
+    /**
+     * The month a response is counted in, in the format used in the counter
+     * tables. Historic guestbook records without a date are counted in the ''
+     * month.
+     */
+    static String toDownloadCountMonth(Date responseTime) {
+        return responseTime == null ? "" : new SimpleDateFormat(DOWNLOAD_COUNT_MONTH_FORMAT).format(responseTime);
+    }
+    
+    static boolean isCountedAsDownload(GuestbookResponse guestbookResponse) {
+        return guestbookResponse.getEventType() != null
+                && !GuestbookResponse.ACCESS_REQUEST.equals(guestbookResponse.getEventType());
+    }
+    
+    private void incrementDownloadCounts(GuestbookResponse guestbookResponse) {
+        if (!isCountedAsDownload(guestbookResponse) || guestbookResponse.getDataFile() == null
+                || guestbookResponse.getDataset() == null) {
+            return;
+        }
+        String month = toDownloadCountMonth(guestbookResponse.getResponseTime());
+        // Always file first, then dataset, so that concurrent saves lock the
+        // counter rows in the same order
+        em.createNativeQuery("INSERT INTO filedownloadcount (datafile_id, dataset_id, month, downloadcount) VALUES (?, ?, ?, 1) "
+                + "ON CONFLICT (datafile_id, month) DO UPDATE SET downloadcount = filedownloadcount.downloadcount + 1")
+                .setParameter(1, guestbookResponse.getDataFile().getId())
+                .setParameter(2, guestbookResponse.getDataset().getId())
+                .setParameter(3, month)
+                .executeUpdate();
+        em.createNativeQuery("INSERT INTO datasetdownloadcount (dataset_id, month, downloadcount) VALUES (?, ?, 1) "
+                + "ON CONFLICT (dataset_id, month) DO UPDATE SET downloadcount = datasetdownloadcount.downloadcount + 1")
+                .setParameter(1, guestbookResponse.getDataset().getId())
+                .setParameter(2, month)
+                .executeUpdate();
+    }
+    
+    /**
+     * Recalculates the download counters from the guestbook responses, e.g.
+     * after responses have been deleted or edited directly in the database. The
+     * counter tables are locked for the duration of the rebuild, so the
+     * downloads saved in the meantime are neither lost nor counted twice.
+     * 
+     * @return the number of downloads counted
      */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public long rebuildDownloadCounts() {
+        em.createNativeQuery("LOCK TABLE filedownloadcount, datasetdownloadcount IN EXCLUSIVE MODE").executeUpdate();
+        em.createNativeQuery("DELETE FROM filedownloadcount").executeUpdate();
+        em.createNativeQuery("DELETE FROM datasetdownloadcount").executeUpdate();
+        em.createNativeQuery("INSERT INTO filedownloadcount (datafile_id, dataset_id, month, downloadcount) "
+                + "SELECT datafile_id, MIN(dataset_id), COALESCE(to_char(responsetime, 'YYYY-MM'), ''), COUNT(id) "
+                + "FROM guestbookresponse WHERE eventtype != '" + GuestbookResponse.ACCESS_REQUEST + "' "
+                + "GROUP BY datafile_id, COALESCE(to_char(responsetime, 'YYYY-MM'), '')").executeUpdate();
+        em.createNativeQuery("INSERT INTO datasetdownloadcount (dataset_id, month, downloadcount) "
+                + "SELECT dataset_id, COALESCE(to_char(responsetime, 'YYYY-MM'), ''), COUNT(id) "
+                + "FROM guestbookresponse WHERE eventtype != '" + GuestbookResponse.ACCESS_REQUEST + "' "
+                + "GROUP BY dataset_id, COALESCE(to_char(responsetime, 'YYYY-MM'), '')").executeUpdate();
+        Long total = (Long) em.createNativeQuery("SELECT COALESCE(SUM(downloadcount), 0)::bigint FROM datasetdownloadcount").getSingleResult();
+        logger.info("Rebuilt the download counters: " + total + " downloads");
+        return total;
+    }
+    
+    /**
+     * Removes the download counters of a file that is being deleted (its
+     * guestbook responses are deleted with it), and takes its downloads off the
+     * counters of its dataset.
+     */
+    public void deleteDownloadCounts(DataFile dataFile) {
+        if (dataFile.getId() == null) {
+            return;
+        }
+        // The file counters go first, as when they are incremented
+        em.createNativeQuery("WITH removed AS (DELETE FROM filedownloadcount WHERE datafile_id = ? RETURNING dataset_id, month, downloadcount) "
+                + "UPDATE datasetdownloadcount d SET downloadcount = d.downloadcount - removed.downloadcount "
+                + "FROM removed WHERE d.dataset_id = removed.dataset_id AND d.month = removed.month")
+                .setParameter(1, dataFile.getId())
+                .executeUpdate();
+    }
+    
+    /**
+     * Removes the download counters of a dataset that is being destroyed, and
+     * of the files left in it.
+     */
+    public void deleteDownloadCounts(Dataset dataset) {
+        if (dataset.getId() == null) {
+            return;
+        }
+        em.createNativeQuery("DELETE FROM filedownloadcount WHERE dataset_id = ?").setParameter(1, dataset.getId()).executeUpdate();
+        em.createNativeQuery("DELETE FROM datasetdownloadcount WHERE dataset_id = ?").setParameter(1, dataset.getId()).executeUpdate();
+    }
         
     public Long getDownloadCountByDataFileId(Long dataFileId) {
         // datafile id is null, will return 0
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.datafile_id  = " + dataFileId + " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
+        if (dataFileId == null) {
+            return 0L;
+        }
+        Query query = em.createNativeQuery("select COALESCE(SUM(downloadcount), 0)::bigint from filedownloadcount where datafile_id = ?");
+        query.setParameter(1, dataFileId);
         return (Long) query.getSingleResult();
     }
     
@@ -924,11 +1030,26 @@ public class GuestbookResponseServiceBean {
     
     public Long getDownloadCountByDatasetId(Long datasetId, LocalDate date) {
         // dataset id is null, will return 0        
+        if (datasetId == null) {
+            return 0L;
+        }
         Query query;
         if(date != null) {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId + " and responsetime < '" + date.toString() + "' and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
+            // The counters for the months before the date, plus the downloads
+            // in the month of the date, up to the date, counted from the
+            // responses
+            String month = date.format(DateTimeFormatter.ofPattern(DOWNLOAD_COUNT_MONTH_FORMAT));
+            query = em.createNativeQuery("select (select COALESCE(SUM(downloadcount), 0) from datasetdownloadcount where dataset_id = ? and month <> '' and month < ?)"
+                    + " + (select count(o.id) from GuestbookResponse o where o.dataset_id = ? and responsetime >= ? and responsetime < ? and eventtype != '" + GuestbookResponse.ACCESS_REQUEST + "')");
+            query.setParameter(1, datasetId);
+            query.setParameter(2, month);
+            query.setParameter(3, datasetId);
+            query.setParameter(4, Timestamp.valueOf(date.withDayOfMonth(1).atStartOfDay()));
+            query.setParameter(5, Timestamp.valueOf(date.atStartOfDay()));
+            return ((Number) query.getSingleResult()).longValue();
         }else {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId+ " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
+            query = em.createNativeQuery("select COALESCE(SUM(downloadcount), 0)::bigint from datasetdownloadcount where dataset_id = ?");
+            query.setParameter(1, datasetId);
         }
         return (Long) query.getSingleResult();
     }    
@@ -0,0 +1,146 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * An email waiting in the outbox to be delivered by
+ * {@link MailOutboxSenderServiceBean}. The message is stored as it would be
+ * sent (in RFC 822 format, headers included), so that it is delivered exactly
+ * as it was composed, whenever that happens.
+ *
+ * Messages are removed from the outbox once delivered, or once they are given
+ * up on.
+ */
+@Entity
+@Table(indexes = {@Index(columnList="nextattempttime")})
+public class MailOutboxMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Temporal(value = TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date createTime;
+
+    /**
+     * The recipients, for the logs only: the message is sent to the
+     * recipients in its headers.
+     */
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String recipients;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String content;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Temporal(value = TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date nextAttemptTime;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    public MailOutboxMessage() {}
+
+    public MailOutboxMessage(String recipients, String content) {
+        this.createTime = new Date();
+        this.recipients = recipients;
+        this.content = content;
+        this.attempts = 0;
+        this.nextAttemptTime = createTime;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+
+    public String getRecipients() {
+        return recipients;
+    }
+
+    public void setRecipients(String recipients) {
+        this.recipients = recipients;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttemptTime() {
+        return nextAttemptTime;
+    }
+
+    public void setNextAttemptTime(Date nextAttemptTime) {
+        this.nextAttemptTime = nextAttemptTime;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        hash += (id != null ? id.hashCode() : 0);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof MailOutboxMessage)) {
+            return false;
+        }
+        MailOutboxMessage other = (MailOutboxMessage) object;
+        if ((this.id == null && other.id != null) || (this.id != null && !this.id.equals(other.id))) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "edu.harvard.iq.dataverse.MailOutboxMessage[ id=" + id + " ]";
+    }
+}
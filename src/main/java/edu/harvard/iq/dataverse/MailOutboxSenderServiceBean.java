@@ -0,0 +1,161 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.MailOutboxServiceBean.Delivery;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.inject.spi.CDI;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+/**
+ * Periodically delivers the messages waiting in the outbox (see
+ * {@link MailOutboxServiceBean}). The connection to the mail server is kept
+ * open while there are messages to send, and reused for all of them, rather
+ * than opened for every message; it is closed once the outbox is empty.
+ *
+ * The numbers of messages sent, retried and dropped are available as the
+ * mail_outbox_sent, mail_outbox_retried and mail_outbox_dropped metrics.
+ */
+@Singleton
+@Startup
+public class MailOutboxSenderServiceBean {
+    private static final Logger logger = Logger.getLogger(MailOutboxSenderServiceBean.class.getCanonicalName());
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @EJB
+    MailOutboxServiceBean mailOutboxService;
+
+    @Inject
+    @Named("mail/systemSession")
+    Session session;
+
+    private Transport transport;
+
+    private Counter sentCounter;
+    private Counter retriedCounter;
+    private Counter droppedCounter;
+
+    public MailOutboxSenderServiceBean() {
+    }
+
+    /**
+     * Creates a new instance with explicit injection, as used during testing.
+     */
+    MailOutboxSenderServiceBean(Session session) {
+        this.session = session;
+    }
+
+    @PostConstruct
+    public void init() {
+        initMetrics();
+        long interval = MailOutboxServiceBean.getInterval();
+        // The messages left over from before a restart are sent right away,
+        // including when the outbox has since been disabled:
+        scheduler.schedule(this::deliver, 0, TimeUnit.SECONDS);
+        if (MailOutboxServiceBean.isEnabled() && interval > 0) {
+            logger.fine("Delivering the messages in the outbox every " + interval + " seconds");
+            scheduler.scheduleWithFixedDelay(this::deliver, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closeTransport();
+    }
+
+    /**
+     * Sends the messages that are due, a batch at a time, until there are none
+     * left (or the mail server fails).
+     */
+    public void deliver() {
+        int batchSize = MailOutboxServiceBean.getBatchSize();
+        try {
+            Delivery delivery;
+            do {
+                delivery = mailOutboxService.deliverDue(batchSize, this::send);
+                count(sentCounter, delivery.sent());
+                count(retriedCounter, delivery.retried());
+                count(droppedCounter, delivery.dropped());
+                if (delivery.total() > 0) {
+                    logger.fine("Sent " + delivery.sent() + " messages from the outbox, " + delivery.retried()
+                            + " to retry, " + delivery.dropped() + " dropped");
+                }
+            } while (delivery.total() == batchSize && delivery.retried() == 0);
+            if (delivery.total() == 0) {
+                closeTransport();
+            }
+        } catch (RuntimeException e) {
+            // the messages stay in the outbox, and will be sent next time
+            logger.log(Level.WARNING, "Failed to deliver the messages in the outbox: " + e.getMessage(), e);
+            closeTransport();
+        }
+    }
+
+    synchronized void send(MimeMessage message) throws MessagingException {
+        try {
+            if (transport == null) {
+                transport = session.getTransport();
+            }
+            if (!transport.isConnected()) {
+                // uses the host, port and credentials of the session
+                transport.connect();
+            }
+            transport.sendMessage(message, message.getAllRecipients());
+        } catch (SendFailedException e) {
+            // the connection is fine, the recipients are not
+            throw e;
+        } catch (MessagingException e) {
+            closeTransport();
+            throw e;
+        }
+    }
+
+    synchronized boolean isConnected() {
+        return transport != null && transport.isConnected();
+    }
+
+    synchronized void closeTransport() {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                logger.fine("Failed to close the connection to the mail server: " + e.getMessage());
+            }
+            transport = null;
+        }
+    }
+
+    private void initMetrics() {
+        try {
+            MetricRegistry registry = CDI.current().select(MetricRegistry.class).get();
+            sentCounter = registry.counter("mail_outbox_sent");
+            retriedCounter = registry.counter("mail_outbox_retried");
+            droppedCounter = registry.counter("mail_outbox_dropped");
+        } catch (RuntimeException e) {
+            logger.fine("Metrics registry not available: " + e.getMessage());
+        }
+    }
+
+    private static void count(Counter counter, int n) {
+        if (counter != null && n > 0) {
+            counter.inc(n);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+
+/**
+ * The outbox of the emails sent by the application: {@link MailServiceBean}
+ * stores the messages here, in the transaction of the caller, instead of
+ * talking to the mail server on the request thread, and
+ * {@link MailOutboxSenderServiceBean} delivers them in the background, a batch
+ * at a time, over one reused connection. A message that could not be
+ * delivered is attempted again later, with an exponential backoff, up to
+ * dataverse.mail.outbox.max-attempts times.
+ */
+@Stateless
+public class MailOutboxServiceBean {
+    private static final Logger logger = Logger.getLogger(MailOutboxServiceBean.class.getCanonicalName());
+
+    static final long DEFAULT_INTERVAL = 5;
+    static final int DEFAULT_BATCH_SIZE = 100;
+    static final int DEFAULT_MAX_ATTEMPTS = 8;
+    // The delay before the first retry, doubled after each failed attempt
+    static final long FIRST_RETRY_DELAY = 30;
+    static final long MAX_RETRY_DELAY = 3600;
+
+    /**
+     * Sends a message, e.g. over an open transport.
+     */
+    @FunctionalInterface
+    public interface MessageSender {
+        void send(MimeMessage message) throws MessagingException;
+    }
+
+    /**
+     * The outcome of a delivery run: the number of messages sent, scheduled to
+     * be attempted again, and given up on.
+     */
+    public record Delivery(int sent, int retried, int dropped) {
+        public int total() {
+            return sent + retried + dropped;
+        }
+    }
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+
+    @Inject
+    @Named("mail/systemSession")
+    Session session;
+
+    public static boolean isEnabled() {
+        return JvmSettings.MAIL_OUTBOX_ENABLED.lookupOptional(Boolean.class).orElse(true);
+    }
+
+    /**
+     * @return how often (in seconds) the outbox is checked for messages to send
+     */
+    public static long getInterval() {
+        return JvmSettings.MAIL_OUTBOX_INTERVAL.lookupOptional(Long.class).orElse(DEFAULT_INTERVAL);
+    }
+
+    public static int getBatchSize() {
+        return JvmSettings.MAIL_OUTBOX_BATCH_SIZE.lookupOptional(Integer.class).orElse(DEFAULT_BATCH_SIZE);
+    }
+
+    public static int getMaxAttempts() {
+        return JvmSettings.MAIL_OUTBOX_MAX_ATTEMPTS.lookupOptional(Integer.class).orElse(DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * @return the delay (in seconds) before the next attempt to send a message
+     *         that failed to be sent the given number of times
+     */
+    static long getRetryDelay(int attempts) {
+        if (attempts <= 1) {
+            return FIRST_RETRY_DELAY;
+        }
+        // no overflow: the delay is capped long before
+        return Math.min(MAX_RETRY_DELAY, FIRST_RETRY_DELAY << Math.min(attempts - 1, 20));
+    }
+
+    /**
+     * Stores a message in the outbox, in the current transaction: the message
+     * is sent once (and only if) the transaction is committed.
+     */
+    public void enqueue(MimeMessage message) throws MessagingException {
+        Address[] recipients = message.getAllRecipients();
+        String to = recipients == null ? "" : InternetAddress.toString(recipients);
+        em.persist(new MailOutboxMessage(to, toContent(message)));
+    }
+
+    /**
+     * @return the message as it is stored in the outbox: as it would be sent,
+     *         headers included
+     */
+    static String toContent(MimeMessage message) throws MessagingException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            message.writeTo(content);
+        } catch (IOException e) {
+            throw new MessagingException("Failed to write the message: " + e.getMessage(), e);
+        }
+        return content.toString(StandardCharsets.UTF_8);
+    }
+
+    static MimeMessage fromContent(Session session, String content) throws MessagingException {
+        return new MimeMessage(session, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Sends the messages that are due, up to the given number, and removes them
+     * from the outbox. The messages are locked while they are sent, and the
+     * messages locked by another node are skipped, so that the outbox can be
+     * processed by all the nodes of a cluster at the same time.
+     *
+     * A message rejected by the mail server for good (with a 5xx reply) is
+     * given up on right away; one rejected for the time being (with a 4xx
+     * reply, e.g. a full mailbox, or greylisting) is attempted again later.
+     * Any other failure (such as the mail server being unreachable) ends the
+     * run, and the message is attempted again later.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Delivery deliverDue(int batchSize, MessageSender sender) {
+        List<?> ids = em.createNativeQuery("SELECT id FROM mailoutboxmessage WHERE nextattempttime <= ? "
+                + "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED")
+                .setParameter(1, new Date())
+                .setParameter(2, batchSize)
+                .getResultList();
+        int sent = 0;
+        int retried = 0;
+        int dropped = 0;
+        for (Object id : ids) {
+            MailOutboxMessage outboxMessage = em.find(MailOutboxMessage.class, ((Number) id).longValue());
+            if (outboxMessage == null) {
+                continue;
+            }
+            MimeMessage message;
+            try {
+                message = fromContent(session, outboxMessage.getContent());
+            } catch (MessagingException e) {
+                logger.warning("Dropping unreadable message " + outboxMessage.getId() + " to "
+                        + outboxMessage.getRecipients() + ": " + e.getMessage());
+                em.remove(outboxMessage);
+                dropped++;
+                continue;
+            }
+            try {
+                sender.send(message);
+                em.remove(outboxMessage);
+                sent++;
+            } catch (SendFailedException e) {
+                if (!isTransient(e)) {
+                    logger.warning("Dropping message " + outboxMessage.getId() + ", rejected by the mail server for "
+                            + outboxMessage.getRecipients() + ": " + e.getMessage());
+                    em.remove(outboxMessage);
+                    dropped++;
+                } else if (failed(outboxMessage, e)) {
+                    retried++;
+                } else {
+                    dropped++;
+                }
+            } catch (MessagingException e) {
+                if (failed(outboxMessage, e)) {
+                    retried++;
+                } else {
+                    dropped++;
+                }
+                break;
+            }
+        }
+        return new Delivery(sent, retried, dropped);
+    }
+
+    /**
+     * @return whether the mail server rejected the message with a transient
+     *         (4xx) reply, for the message or for all of the recipients it
+     *         rejected; not if the reply is permanent (5xx) or unknown
+     */
+    static boolean isTransient(SendFailedException e) {
+        boolean found = false;
+        // the failures of the individual recipients are chained
+        for (Exception next = e; next != null; next = next instanceof MessagingException me ? me.getNextException() : null) {
+            int code;
+            if (next instanceof SMTPSendFailedException sfe) {
+                code = sfe.getReturnCode();
+            } else if (next instanceof SMTPAddressFailedException afe) {
+                code = afe.getReturnCode();
+            } else {
+                continue;
+            }
+            if (code < 400 || code >= 500) {
+                return false;
+            }
+            found = true;
+        }
+        return found;
+    }
+
+    /**
+     * Records a failed attempt to send a message.
+     * @return true if the message will be attempted again, false if it was
+     *         given up on
+     */
+    private boolean failed(MailOutboxMessage outboxMessage, MessagingException e) {
+        int attempts = outboxMessage.getAttempts() + 1;
+        if (attempts >= getMaxAttempts()) {
+            logger.warning("Dropping message " + outboxMessage.getId() + " to " + outboxMessage.getRecipients()
+                    + " after " + attempts + " failed attempts: " + e.getMessage());
+            em.remove(outboxMessage);
+            return false;
+        }
+        long delay = getRetryDelay(attempts);
+        logger.info("Failed to send message " + outboxMessage.getId() + " to " + outboxMessage.getRecipients()
+                + " (attempt " + attempts + "), trying again in " + delay + " seconds: " + e.getMessage());
+        outboxMessage.setAttempts(attempts);
+        outboxMessage.setLastError(e.getMessage());
+        outboxMessage.setNextAttemptTime(new Date(System.currentTimeMillis() + delay * 1000));
+        return true;
+    }
+
+    /**
+     * @return the number of messages waiting in the outbox
+     */
+    public long countPending() {
+        return em.createQuery("SELECT COUNT(m) FROM MailOutboxMessage m", Long.class).getSingleResult();
+    }
+}
@@ -73,6 +73,8 @@ public class MailServiceBean implements java.io.Serializable {
     GroupServiceBean groupService;
     @EJB
     ConfirmEmailServiceBean confirmEmailService;
+    @EJB
+    MailOutboxServiceBean mailOutboxService;
 
     private static final Logger logger = Logger.getLogger(MailServiceBean.class.getCanonicalName());
 
@@ -108,7 +110,7 @@ public class MailServiceBean implements java.io.Serializable {
      * @param subject The message's subject
      * @param messageText The message's text
      * @param isHtmlContent Determine if the message text is formatted using HTML or plain text.
-     * @return Status: true if sent successfully, false otherwise
+     * @return Status: true if sent (or queued in the outbox, see {@link #send(MimeMessage)}) successfully, false otherwise
      */
     public boolean sendSystemEmail(String to, String subject, String messageText, boolean isHtmlContent) {
         Optional<InternetAddress> optionalAddress = getSystemAddress();
@@ -139,7 +141,7 @@ public class MailServiceBean implements java.io.Serializable {
                 msg.setText(body, charset);
             }
             
-            Transport.send(msg, recipients);
+            send(msg);
             return true;
         } catch (MessagingException ae) {
             logger.log(Level.WARNING, "Failed to send mail to %s: %s".formatted(to, ae.getMessage()), ae);
@@ -148,6 +150,20 @@ public class MailServiceBean implements java.io.Serializable {
         return false;
     }
     
+    /**
+     * Sends a message, or rather stores it in the outbox, to be sent in the
+     * background once the current transaction is committed (see
+     * {@link MailOutboxServiceBean}). When the outbox is disabled (or not
+     * available, as in tests), the message is sent right away.
+     */
+    private void send(MimeMessage msg) throws MessagingException {
+        if (mailOutboxService != null && MailOutboxServiceBean.isEnabled()) {
+            mailOutboxService.enqueue(msg);
+        } else {
+            Transport.send(msg);
+        }
+    }
+    
     /**
      * Lookup the system mail address ({@code InternetAddress} may contain personal and actual address).
      * @return The system mail address or an empty {@code Optional} if not configured.
@@ -233,7 +249,7 @@ public class MailServiceBean implements java.io.Serializable {
             msg.setSubject(subject, charset);
             msg.setText(messageText, charset);
 
-            Transport.send(msg);
+            send(msg);
         } catch (AddressException ae) {
             ae.printStackTrace(System.out);
         } catch (MessagingException me) {
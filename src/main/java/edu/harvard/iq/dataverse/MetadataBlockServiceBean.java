@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse;
 
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
 import jakarta.persistence.EntityManager;
@@ -20,7 +21,13 @@ public class MetadataBlockServiceBean {
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
+    @EJB
+    MetadataFieldRegistryServiceBean fieldRegistry;
+
     public MetadataBlock save(MetadataBlock mdb) {
+        if (fieldRegistry != null) {
+            fieldRegistry.invalidate();
+        }
         return em.merge(mdb);
     }
 
@@ -40,6 +47,11 @@ public class MetadataBlockServiceBean {
     }
 
     public MetadataBlock findByName(String name) {
+        MetadataFieldRegistryServiceBean.Registry registry = fieldRegistry == null ? null : fieldRegistry.getRegistry();
+        if (registry != null) {
+            Long id = registry.findMetadataBlockId(name);
+            return id == null ? null : em.find(MetadataBlock.class, id);
+        }
         try {
             return em.createNamedQuery("MetadataBlock.findByName", MetadataBlock.class)
                     .setParameter("name", name)
@@ -0,0 +1,326 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import static jakarta.ejb.LockType.READ;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import static jakarta.ejb.TransactionAttributeType.SUPPORTS;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.MutableConfiguration;
+
+/**
+ * An in-memory registry of the metadata blocks, dataset field types,
+ * controlled vocabulary values (and their alternate spellings) and foreign
+ * metadata field mappings, by name. It lets the metadata parsers (JSON, DDI,
+ * the generic XML import...) look up the field type and the vocabulary value
+ * of every value they parse without a query per value: the lookups of
+ * {@link DatasetFieldServiceBean} and {@link MetadataBlockServiceBean} find the
+ * id in the registry, and the entity in the persistence context, so a value
+ * that is not in the registry (a misspelled field or vocabulary value) costs
+ * no query at all, and an entity looked up many times in a transaction is
+ * only loaded once.
+ *
+ * The registry only holds ids, and is loaded with five queries. Like
+ * {@link DvObjectHierarchyServiceBean} after an invalidation, it is rebuilt
+ * on the next lookup after the metadata blocks have changed: saving a metadata block, a field type or
+ * a vocabulary value (as loading a metadata block does) calls
+ * {@link #invalidate()}, which changes the "generation" of the registry
+ * recorded in a cluster-wide cache, so the other nodes of a cluster rebuild
+ * their copy as well. As a safeguard against changes made directly in the
+ * database, the registry is also rebuilt when it is older than
+ * {@link #MAX_AGE_MILLIS}. So that loading a metadata block (which saves
+ * every field and value in turn) doesn't rebuild the registry after every
+ * row, it is rebuilt at most every {@link #MIN_REBUILD_INTERVAL_MILLIS}.
+ *
+ * {@link #getRegistry()} returns null when the registry is out of date and
+ * can't be rebuilt yet, and within a transaction that has changed the
+ * metadata blocks; the callers are expected to query the database in that
+ * case.
+ */
+@Lock(READ)
+@Singleton
+@Startup
+@TransactionAttribute(SUPPORTS)
+public class MetadataFieldRegistryServiceBean {
+
+    private static final Logger logger = Logger.getLogger(MetadataFieldRegistryServiceBean.class.getCanonicalName());
+
+    public static final String REGISTRY_CACHE = "metadataFieldRegistryCache";
+    private static final String GENERATION_KEY = "generation";
+    private static final String INVALIDATED_KEY = MetadataFieldRegistryServiceBean.class.getName() + ".invalidated";
+    static final long MAX_AGE_MILLIS = 10 * 60 * 1000;
+    static final long MIN_REBUILD_INTERVAL_MILLIS = 10 * 1000;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+
+    @Inject
+    CacheManager manager;
+
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+
+    // Retrieved from Hazelcast, shared by all the nodes of a cluster
+    private Cache<String, String> generationCache;
+
+    private volatile Registry registry = null;
+    volatile long lastBuildTime = 0;
+    private final Object buildLock = new Object();
+
+    /**
+     * An immutable snapshot of the registry. The lookups return the id of the
+     * entity, or null if there is none.
+     */
+    public static class Registry {
+
+        /**
+         * A string value of a field type (or of a vocabulary value, for the
+         * alternates of the value).
+         */
+        record Value(Long ownerId, String value) {
+        }
+
+        record FieldPath(String formatName, String xPath) {
+        }
+
+        final String generation;
+        final long builtAt;
+        final Map<String, Long> metadataBlocks;
+        final Map<String, Long> fieldTypes;
+        // (field type id, strValue) -> vocabulary value id
+        final Map<Value, Long> vocabularyValues;
+        // (field type id, identifier) -> vocabulary value id
+        final Map<Value, Long> vocabularyIdentifiers;
+        // (field type id, alternate strValue) -> vocabulary value id
+        final Map<Value, Long> alternateValues;
+        // (vocabulary value id, alternate strValue) -> alternate id
+        final Map<Value, Long> alternates;
+        final Map<FieldPath, Long> fieldMappings;
+
+        Registry(String generation, Map<String, Long> metadataBlocks, Map<String, Long> fieldTypes,
+                Map<Value, Long> vocabularyValues, Map<Value, Long> vocabularyIdentifiers,
+                Map<Value, Long> alternateValues, Map<Value, Long> alternates, Map<FieldPath, Long> fieldMappings) {
+            this.generation = generation;
+            this.builtAt = System.currentTimeMillis();
+            this.metadataBlocks = Map.copyOf(metadataBlocks);
+            this.fieldTypes = Map.copyOf(fieldTypes);
+            this.vocabularyValues = Map.copyOf(vocabularyValues);
+            this.vocabularyIdentifiers = Map.copyOf(vocabularyIdentifiers);
+            this.alternateValues = Map.copyOf(alternateValues);
+            this.alternates = Map.copyOf(alternates);
+            this.fieldMappings = Map.copyOf(fieldMappings);
+        }
+
+        public Long findMetadataBlockId(String name) {
+            return name == null ? null : metadataBlocks.get(name);
+        }
+
+        public Long findFieldTypeId(String name) {
+            return name == null ? null : fieldTypes.get(name);
+        }
+
+        /**
+         * @return the id of the vocabulary value of the field type (null for
+         *         the N/A value) with the string value, or, if there is none,
+         *         of the vocabulary value the string is an alternate of
+         */
+        public Long findVocabularyValueId(Long fieldTypeId, String strValue) {
+            if (strValue == null) {
+                return null;
+            }
+            Value key = new Value(fieldTypeId, strValue);
+            Long id = vocabularyValues.get(key);
+            return id != null ? id : alternateValues.get(key);
+        }
+
+        public Long findVocabularyValueIdByIdentifier(Long fieldTypeId, String identifier) {
+            return identifier == null ? null : vocabularyIdentifiers.get(new Value(fieldTypeId, identifier));
+        }
+
+        public Long findAlternateId(Long vocabularyValueId, String strValue) {
+            return strValue == null ? null : alternates.get(new Value(vocabularyValueId, strValue));
+        }
+
+        public Long findFieldMappingId(String formatName, String xPath) {
+            return formatName == null || xPath == null ? null : fieldMappings.get(new FieldPath(formatName, xPath));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            generationCache = manager.getCache(REGISTRY_CACHE);
+            if (generationCache == null) {
+                generationCache = manager.createCache(REGISTRY_CACHE,
+                        new MutableConfiguration<String, String>().setTypes(String.class, String.class));
+            }
+        } catch (RuntimeException e) {
+            // Without the shared cache, the changes made on other nodes are
+            // only picked up when the registry gets too old
+            logger.log(Level.WARNING, "Could not set up the metadata field registry cache: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the current registry, or null if it is not available (see
+     *         above)
+     */
+    public Registry getRegistry() {
+        if (isInvalidatedInCurrentTransaction()) {
+            return null;
+        }
+        try {
+            String generation = currentGeneration();
+            Registry current = registry;
+            if (isUpToDate(current, generation)) {
+                return current;
+            }
+            if (System.currentTimeMillis() - lastBuildTime < MIN_REBUILD_INTERVAL_MILLIS) {
+                return null;
+            }
+            synchronized (buildLock) {
+                current = registry;
+                if (!isUpToDate(current, generation)) {
+                    lastBuildTime = System.currentTimeMillis();
+                    current = build(generation);
+                    registry = current;
+                }
+                return current;
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not load the metadata field registry: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Marks the registry as out of date, on all the nodes. If called within a
+     * transaction, the registry is not used for the rest of the transaction,
+     * and is invalidated again once the transaction has completed, since the
+     * other transactions don't see the changes until then.
+     */
+    public void invalidate() {
+        bumpGeneration();
+        try {
+            if (transactionRegistry != null && transactionRegistry.getTransactionStatus() == Status.STATUS_ACTIVE
+                    && transactionRegistry.getResource(INVALIDATED_KEY) == null) {
+                transactionRegistry.putResource(INVALIDATED_KEY, Boolean.TRUE);
+                transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        bumpGeneration();
+                    }
+                });
+            }
+        } catch (IllegalStateException e) {
+            logger.fine("Could not register the registry invalidation with the transaction: " + e.getMessage());
+        }
+    }
+
+    private void bumpGeneration() {
+        registry = null;
+        if (generationCache != null) {
+            generationCache.put(GENERATION_KEY, UUID.randomUUID().toString());
+        }
+    }
+
+    private String currentGeneration() {
+        if (generationCache == null) {
+            return "";
+        }
+        String generation = generationCache.get(GENERATION_KEY);
+        if (generation == null) {
+            generation = UUID.randomUUID().toString();
+            if (!generationCache.putIfAbsent(GENERATION_KEY, generation)) {
+                generation = generationCache.get(GENERATION_KEY);
+            }
+        }
+        return generation;
+    }
+
+    private boolean isInvalidatedInCurrentTransaction() {
+        try {
+            return transactionRegistry != null && transactionRegistry.getTransactionKey() != null
+                    && transactionRegistry.getResource(INVALIDATED_KEY) != null;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private static boolean isUpToDate(Registry current, String generation) {
+        return current != null && current.generation.equals(generation)
+                && System.currentTimeMillis() - current.builtAt < MAX_AGE_MILLIS;
+    }
+
+    private Registry build(String generation) {
+        long start = System.currentTimeMillis();
+
+        Map<String, Long> metadataBlocks = new HashMap<>();
+        for (Object[] row : query("SELECT id, name FROM metadatablock ORDER BY id")) {
+            metadataBlocks.putIfAbsent((String) row[1], toLong(row[0]));
+        }
+        Map<String, Long> fieldTypes = new HashMap<>();
+        for (Object[] row : query("SELECT id, name FROM datasetfieldtype ORDER BY id")) {
+            fieldTypes.putIfAbsent((String) row[1], toLong(row[0]));
+        }
+        Map<Registry.Value, Long> vocabularyValues = new HashMap<>();
+        Map<Registry.Value, Long> vocabularyIdentifiers = new HashMap<>();
+        for (Object[] row : query("SELECT id, datasetfieldtype_id, strvalue, identifier FROM controlledvocabularyvalue ORDER BY id")) {
+            Long typeId = toLong(row[1]);
+            if (row[2] != null) {
+                vocabularyValues.putIfAbsent(new Registry.Value(typeId, (String) row[2]), toLong(row[0]));
+            }
+            if (row[3] != null) {
+                vocabularyIdentifiers.putIfAbsent(new Registry.Value(typeId, (String) row[3]), toLong(row[0]));
+            }
+        }
+        Map<Registry.Value, Long> alternateValues = new HashMap<>();
+        Map<Registry.Value, Long> alternates = new HashMap<>();
+        for (Object[] row : query("SELECT id, datasetfieldtype_id, controlledvocabularyvalue_id, strvalue FROM controlledvocabalternate ORDER BY id")) {
+            alternateValues.putIfAbsent(new Registry.Value(toLong(row[1]), (String) row[3]), toLong(row[2]));
+            alternates.putIfAbsent(new Registry.Value(toLong(row[2]), (String) row[3]), toLong(row[0]));
+        }
+        Map<Registry.FieldPath, Long> fieldMappings = new HashMap<>();
+        for (Object[] row : query("SELECT m.id, f.name, m.foreignfieldxpath FROM foreignmetadatafieldmapping m "
+                + "JOIN foreignmetadataformatmapping f ON m.foreignmetadataformatmapping_id = f.id ORDER BY m.id")) {
+            if (row[1] != null && row[2] != null) {
+                fieldMappings.putIfAbsent(new Registry.FieldPath((String) row[1], (String) row[2]), toLong(row[0]));
+            }
+        }
+
+        logger.fine("Loaded the registry of " + fieldTypes.size() + " field types and " + vocabularyValues.size()
+                + " vocabulary values in " + (System.currentTimeMillis() - start) + " ms");
+        return new Registry(generation, metadataBlocks, fieldTypes, vocabularyValues, vocabularyIdentifiers,
+                alternateValues, alternates, fieldMappings);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> query(String queryString) {
+        return em.createNativeQuery(queryString).getResultList();
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+}
@@ -1,12 +1,15 @@
 package edu.harvard.iq.dataverse;
 import edu.harvard.iq.dataverse.UserNotification.Type;
+import edu.harvard.iq.dataverse.authorization.LastApiUseTimeServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.userdata.UserUtil;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.sql.Timestamp;
 import java.util.Date;
@@ -41,6 +44,8 @@ public class UserServiceBean {
 
     @EJB IndexServiceBean indexService;
 
+    @EJB LastApiUseTimeServiceBean lastApiUseTimeService;
+
     public AuthenticatedUser find(Object pk) {
         return (AuthenticatedUser) em.find(AuthenticatedUser.class, pk);
     }
@@ -531,10 +536,61 @@ public class UserServiceBean {
         return save(user);
     }
 
+    /**
+     * Sets the last API use time of the user. Unless configured otherwise, the
+     * time is not written to the database right away but collected by the
+     * {@link LastApiUseTimeServiceBean} and written with the times of the other
+     * users a bit later.
+     */
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public AuthenticatedUser updateLastApiUseTime(AuthenticatedUser user) {
         //assumes that AuthenticatedUser user already exists
-        user.setLastApiUseTime(new Timestamp(new Date().getTime()));
+        Timestamp now = new Timestamp(new Date().getTime());
+        user.setLastApiUseTime(now);
+        if (lastApiUseTimeService.isBuffering()) {
+            lastApiUseTimeService.record(user.getId(), now);
+            return user;
+        }
         return save(user);
     }
+
+    /**
+     * The maximum number of users whose last API use times are written with a
+     * single UPDATE statement, to keep the number of bind parameters well
+     * below the limit of the database.
+     */
+    static final int LAST_API_USE_TIMES_PER_UPDATE = 1000;
+
+    /**
+     * Writes the collected last API use times, in one transaction, with one
+     * UPDATE statement per {@value #LAST_API_USE_TIMES_PER_UPDATE} users. A
+     * time is only written if it is later than the one already stored.
+     * 
+     * @param lastApiUseTimes the times by user id
+     */
+    public void updateLastApiUseTimes(Map<Long, Timestamp> lastApiUseTimes) {
+        List<Map.Entry<Long, Timestamp>> entries = new ArrayList<>(lastApiUseTimes.entrySet());
+        for (int from = 0; from < entries.size(); from += LAST_API_USE_TIMES_PER_UPDATE) {
+            List<Map.Entry<Long, Timestamp>> chunk = entries.subList(from, Math.min(from + LAST_API_USE_TIMES_PER_UPDATE, entries.size()));
+            Query query = em.createNativeQuery(getLastApiUseTimesUpdate(chunk.size()));
+            int position = 1;
+            for (Map.Entry<Long, Timestamp> entry : chunk) {
+                query.setParameter(position++, entry.getKey());
+                query.setParameter(position++, entry.getValue());
+            }
+            query.executeUpdate();
+        }
+    }
+
+    /**
+     * @param count the number of users
+     * @return the statement updating the last API use times of the users,
+     *         with the (id, time) of each user as bind parameters
+     */
+    static String getLastApiUseTimesUpdate(int count) {
+        return "UPDATE authenticateduser SET lastapiusetime = v.t FROM (VALUES "
+                + String.join(", ", Collections.nCopies(count, "(CAST(? AS BIGINT), CAST(? AS TIMESTAMP))"))
+                + ") AS v (id, t) WHERE authenticateduser.id = v.id"
+                + " AND (authenticateduser.lastapiusetime IS NULL OR authenticateduser.lastapiusetime < v.t)";
+    }
 }
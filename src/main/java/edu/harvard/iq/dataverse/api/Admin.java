@@ -2125,6 +2125,13 @@ public class Admin extends AbstractApiBean {
         return ok("metric cache " + name + " cleared.");
     }
 
+    @POST
+    @Path("/downloadCounts/rebuild")
+    public Response rebuildDownloadCounts() {
+        long total = gbRespSvc.rebuildDownloadCounts();
+        return ok("download counts rebuilt: " + total + " downloads counted.");
+    }
+
     @GET
 	@AuthRequired
     @Path("/dataverse/{alias}/addRoleAssignmentsToChildren")
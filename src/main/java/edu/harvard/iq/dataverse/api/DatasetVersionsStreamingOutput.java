@@ -0,0 +1,114 @@
+package edu.harvard.iq.dataverse.api;
+
+import edu.harvard.iq.dataverse.DatasetVersionFilesServiceBean;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.util.json.JsonPrinter;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the usual {"status":"OK","data":...} response for one dataset
+ * version, or a list of versions, with the files of the versions read a page
+ * at a time and written out as they are read. The version-level metadata is
+ * rendered up front, while the request is being processed, so that permission
+ * and lookup errors still result in a regular error response; an error while
+ * streaming the files can only cut the response short, and is logged.
+ */
+class DatasetVersionsStreamingOutput implements StreamingOutput {
+
+    private static final Logger logger = Logger.getLogger(DatasetVersionsStreamingOutput.class.getCanonicalName());
+
+    static final int PAGE_SIZE = 1000;
+
+    /**
+     * A version to write: its JSON, without the files, and the id of the
+     * version to read the files from, or null to leave them out.
+     */
+    record Entry(JsonObject versionJson, Long filesVersionId) {
+    }
+
+    private final List<Entry> entries;
+    private final boolean asArray;
+    private final DatasetVersionFilesServiceBean filesService;
+
+    private DatasetVersionsStreamingOutput(List<Entry> entries, boolean asArray, DatasetVersionFilesServiceBean filesService) {
+        this.entries = entries;
+        this.asArray = asArray;
+        this.filesService = filesService;
+    }
+
+    static DatasetVersionsStreamingOutput forVersion(Entry entry, DatasetVersionFilesServiceBean filesService) {
+        return new DatasetVersionsStreamingOutput(List.of(entry), false, filesService);
+    }
+
+    static DatasetVersionsStreamingOutput forVersions(List<Entry> entries, DatasetVersionFilesServiceBean filesService) {
+        return new DatasetVersionsStreamingOutput(entries, true, filesService);
+    }
+
+    @Override
+    public void write(OutputStream os) throws IOException {
+        try (JsonGenerator generator = Json.createGenerator(os)) {
+            generator.writeStartObject();
+            generator.write("status", ApiConstants.STATUS_OK);
+            if (asArray) {
+                generator.writeStartArray("data");
+            } else {
+                generator.writeKey("data");
+            }
+            for (Entry entry : entries) {
+                JsonPrinter.writeJson(generator, entry.versionJson(),
+                        entry.filesVersionId() == null ? null : pages(entry.filesVersionId()));
+            }
+            if (asArray) {
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to stream the dataset version(s): " + e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the files of the version, read from the database one page at a
+     *         time, as they are iterated over
+     */
+    private Iterable<FileMetadata> pages(Long versionId) {
+        return () -> new Iterator<>() {
+            private List<FileMetadata> page = filesService.getFileMetadatasPage(versionId, null, PAGE_SIZE);
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (index < page.size()) {
+                    return true;
+                }
+                if (page.size() < PAGE_SIZE) {
+                    return false;
+                }
+                page = filesService.getFileMetadatasPage(versionId, page.get(page.size() - 1), PAGE_SIZE);
+                index = 0;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public FileMetadata next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(index++);
+            }
+        };
+    }
+}
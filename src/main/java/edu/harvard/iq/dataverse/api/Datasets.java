@@ -427,10 +427,18 @@ public class Datasets extends AbstractApiBean {
             Dataset dataset = findDatasetOrDie(id);
             Boolean deepLookup = excludeFiles == null ? true : !excludeFiles;
 
-            return ok( execCommand( new ListVersionsCommand(req, dataset, offset, limit, deepLookup) )
-                                .stream()
-                                .map( d -> json(d, deepLookup) )
+            List<DatasetVersion> versions = execCommand(new ListVersionsCommand(req, dataset, offset, limit, false));
+            if (!deepLookup) {
+                return ok(versions.stream()
+                                .map( d -> json(d, false) )
                                 .collect(toJsonArray()));
+            }
+            // The files are streamed, a page at a time
+            List<DatasetVersionsStreamingOutput.Entry> entries = versions.stream()
+                    .map(d -> new DatasetVersionsStreamingOutput.Entry(json(d, false).build(), d.getId()))
+                    .collect(Collectors.toList());
+            return Response.ok(DatasetVersionsStreamingOutput.forVersions(entries, datasetVersionFilesServiceBean))
+                    .type(MediaType.APPLICATION_JSON).build();
         }, getRequestUser(crc));
     }
     
@@ -463,14 +471,16 @@ public class Datasets extends AbstractApiBean {
                 return notFound("Dataset version not found");
             }
 
-            if (excludeFiles == null ? true : !excludeFiles) {
-                requestedDatasetVersion = datasetversionService.findDeep(requestedDatasetVersion.getId());
-            }
-
             JsonObjectBuilder jsonBuilder = json(requestedDatasetVersion,
                                                  null, 
-                                                 excludeFiles == null ? true : !excludeFiles, 
+                                                 false, 
                                                  returnOwners);
+            if (excludeFiles == null ? true : !excludeFiles) {
+                // The files are streamed, a page at a time
+                DatasetVersionsStreamingOutput.Entry entry = new DatasetVersionsStreamingOutput.Entry(jsonBuilder.build(), requestedDatasetVersion.getId());
+                return Response.ok(DatasetVersionsStreamingOutput.forVersion(entry, datasetVersionFilesServiceBean))
+                        .type(MediaType.APPLICATION_JSON).build();
+            }
             return ok(jsonBuilder);
 
         }, getRequestUser(crc));
@@ -7,6 +7,7 @@ package edu.harvard.iq.dataverse.api;
 
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.export.ExportAllProgress;
 
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
@@ -62,6 +63,19 @@ public class Metadata extends AbstractApiBean {
         return this.accepted();
     }
 
+    // The progress of the current (or last) export all job on this server,
+    // with an estimate of the time remaining.
+    @GET
+    @Path("/exportAll/status")
+    @Produces("application/json")
+    public Response exportAllStatus() {
+        ExportAllProgress progress = datasetService.getExportAllProgress();
+        if (progress == null) {
+            return error(Response.Status.NOT_FOUND, "No export all job has run on this server since it was started");
+        }
+        return ok(progress.toJson());
+    }
+
     @GET
     @Path("{id}/reExportDataset")
     public Response indexDatasetByPersistentId(@PathParam("id") String id) {
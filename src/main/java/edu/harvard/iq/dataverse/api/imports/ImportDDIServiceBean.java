@@ -13,10 +13,12 @@ import static edu.harvard.iq.dataverse.export.ddi.DdiExportUtil.NOTE_TYPE_CONTEN
 import static edu.harvard.iq.dataverse.export.ddi.DdiExportUtil.NOTE_TYPE_TERMS_OF_ACCESS;
 
 import edu.harvard.iq.dataverse.util.StringUtil;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.util.*;
 import java.util.Map;
@@ -117,6 +119,26 @@ public class ImportDDIServiceBean {
         return datasetDTO;
     }
     
+    /**
+     * Same as above, but the DDI is parsed as it is read from the file, 
+     * instead of from a string with all of it.
+     */
+    public DatasetDTO doImport(ImportType importType, File ddiFile) throws XMLStreamException, ImportException, IOException {
+        DatasetDTO datasetDTO = this.initializeDataset();
+        XMLInputFactory xmlFactory = javax.xml.stream.XMLInputFactory.newInstance();
+        xmlFactory.setProperty("javax.xml.stream.isCoalescing", true); // allows the parsing of a CDATA segment into a single event
+        
+        try (InputStream in = new BufferedInputStream(new FileInputStream(ddiFile))) {
+            XMLStreamReader xmlr = xmlFactory.createXMLStreamReader(in);
+            try {
+                processDDI(importType, xmlr, datasetDTO, new HashMap<>());
+            } finally {
+                xmlr.close();
+            }
+        }
+        return datasetDTO;
+    }
+    
     public void importFileMetadata(DatasetVersion dv, String xmlToParse) {
         
     } 
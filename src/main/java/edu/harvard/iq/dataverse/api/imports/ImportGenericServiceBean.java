@@ -23,10 +23,12 @@ import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.StringUtil;
 import edu.harvard.iq.dataverse.util.json.JsonParseException;
 import edu.harvard.iq.dataverse.util.json.JsonParser;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.util.*;
 import java.util.Map;
@@ -156,6 +158,38 @@ public class ImportGenericServiceBean {
     // Note that arbitrary formatting tags are supported for the outer xml
     // wrapper. -- L.A. 4.5
     public DatasetDTO processOAIDCxml(String DcXmlToParse) throws XMLStreamException {
+        XMLStreamReader xmlr = null;
+        try {
+            XMLInputFactory xmlFactory = javax.xml.stream.XMLInputFactory.newInstance();
+            xmlr = xmlFactory.createXMLStreamReader(new StringReader(DcXmlToParse));
+        } catch (XMLStreamException ex) {
+            throw new EJBException("ERROR occurred while parsing XML fragment  (" + DcXmlToParse.substring(0, 64) + "...); ", ex);
+        }
+        return processOAIDCxml(xmlr, "XML fragment  (" + DcXmlToParse.substring(0, 64) + "...)");
+    }
+    
+    /**
+     * Same as above, but the Dublin Core is parsed as it is read from the 
+     * file, instead of from a string with all of it.
+     */
+    public DatasetDTO processOAIDCxml(File dcXmlFile) throws XMLStreamException, IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(dcXmlFile))) {
+            XMLStreamReader xmlr = null;
+            try {
+                XMLInputFactory xmlFactory = javax.xml.stream.XMLInputFactory.newInstance();
+                xmlr = xmlFactory.createXMLStreamReader(in);
+            } catch (XMLStreamException ex) {
+                throw new EJBException("ERROR occurred while parsing XML file " + dcXmlFile.getName() + "; ", ex);
+            }
+            try {
+                return processOAIDCxml(xmlr, "XML file " + dcXmlFile.getName());
+            } finally {
+                xmlr.close();
+            }
+        }
+    }
+    
+    private DatasetDTO processOAIDCxml(XMLStreamReader xmlr, String source) throws XMLStreamException {
         // look up DC metadata mapping: 
         
         ForeignMetadataFormatMapping dublinCoreMapping = findFormatMappingByName(DCTERMS);
@@ -164,14 +198,8 @@ public class ImportGenericServiceBean {
         }
 
         DatasetDTO datasetDTO = this.initializeDataset();
-        StringReader reader = null;
-        XMLStreamReader xmlr = null;
 
         try {
-            reader = new StringReader(DcXmlToParse);
-            XMLInputFactory xmlFactory = javax.xml.stream.XMLInputFactory.newInstance();
-            xmlr = xmlFactory.createXMLStreamReader(reader);
-
             //while (xmlr.next() == XMLStreamConstants.COMMENT); // skip pre root comments
             xmlr.nextTag();
 
@@ -179,7 +207,7 @@ public class ImportGenericServiceBean {
 
             processXMLElement(xmlr, ":", OAI_DC_OPENING_TAG, dublinCoreMapping, datasetDTO);
         } catch (XMLStreamException ex) {
-            throw new EJBException("ERROR occurred while parsing XML fragment  (" + DcXmlToParse.substring(0, 64) + "...); ", ex);
+            throw new EJBException("ERROR occurred while parsing " + source + "; ", ex);
         }
 
         
@@ -229,21 +229,19 @@ public class ImportServiceBean {
         if ("ddi".equalsIgnoreCase(metadataFormat) || "oai_ddi".equals(metadataFormat) 
                 || metadataFormat.toLowerCase().matches("^oai_ddi.*")) {
             try {
-                String xmlToParse = new String(Files.readAllBytes(metadataFile.toPath()));
                 // TODO: 
                 // import type should be configurable - it should be possible to 
                 // select whether you want to harvest with or without files, 
                 // ImportType.HARVEST vs. ImportType.HARVEST_WITH_FILES
                 logger.fine("importing DDI "+metadataFile.getAbsolutePath());
-                dsDTO = importDDIService.doImport(ImportType.HARVEST, xmlToParse);
+                dsDTO = importDDIService.doImport(ImportType.HARVEST, metadataFile);
             } catch (IOException | XMLStreamException | ImportException e) {
                 throw new ImportException("Failed to process DDI XML record: "+ e.getClass() + " (" + e.getMessage() + ")");
             }
         } else if ("dc".equalsIgnoreCase(metadataFormat) || "oai_dc".equals(metadataFormat)) {
             logger.fine("importing DC "+metadataFile.getAbsolutePath());
             try {
-                String xmlToParse = new String(Files.readAllBytes(metadataFile.toPath()));
-                dsDTO = importGenericService.processOAIDCxml(xmlToParse);
+                dsDTO = importGenericService.processOAIDCxml(metadataFile);
             } catch (IOException | XMLStreamException e) {
                 throw new ImportException("Failed to process Dublin Core XML record: "+ e.getClass() + " (" + e.getMessage() + ")");
             }
@@ -377,7 +375,8 @@ public class ImportServiceBean {
                 engineSvc.submit(new DestroyDatasetCommand(merged, dataverseRequest));
             }
             
-            importedDataset = engineSvc.submit(new CreateHarvestedDatasetCommand(ds, dataverseRequest));
+            // Not indexed here: the harvester indexes the new datasets in batches.
+            importedDataset = engineSvc.submit(new CreateHarvestedDatasetCommand(ds, dataverseRequest, true));
 
         } catch (JsonParseException | ImportException | CommandException ex) {
             logger.fine("Failed to import harvested dataset: " + ex.getClass() + ": " + ex.getMessage());
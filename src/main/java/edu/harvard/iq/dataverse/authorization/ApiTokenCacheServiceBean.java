@@ -0,0 +1,104 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.harvard.iq.dataverse.authorization.users.ApiToken;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.Lock;
+import static jakarta.ejb.LockType.READ;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+/**
+ * A short-lived, node-local cache of the API tokens that have been
+ * successfully used for authentication, mapping the token strings to the ids
+ * of their users. It saves {@link AuthenticationServiceBean#lookupUser(String)}
+ * the token lookup query on every API call made with the same token.
+ * 
+ * Entries are removed when the token is removed, expires or its user is
+ * deactivated on this node. Since there is no cross-node invalidation, the
+ * time-to-live of the entries (the dataverse.api.token-cache-ttl JVM option,
+ * in seconds) limits how long a token revoked on another node of a cluster can
+ * still be used on this one. Setting it to 0 disables the cache.
+ */
+@Lock(READ)
+@Singleton
+@Startup
+public class ApiTokenCacheServiceBean {
+
+    private static final Logger logger = Logger.getLogger(ApiTokenCacheServiceBean.class.getCanonicalName());
+    
+    private static final long DEFAULT_TTL_SECONDS = 30;
+    private static final long MAX_ENTRIES = 10000;
+
+    /**
+     * What is cached for each token: the id of its user and the expiration
+     * time of the token itself.
+     */
+    public record CachedApiToken(Long userId, Timestamp expireTime) {
+
+        public boolean isExpired() {
+            return expireTime != null && expireTime.getTime() < System.currentTimeMillis();
+        }
+    }
+
+    private Cache<String, CachedApiToken> tokenCache = null;
+
+    @PostConstruct
+    public void init() {
+        long ttl = JvmSettings.API_TOKEN_CACHE_TTL.lookupOptional(Long.class).orElse(DEFAULT_TTL_SECONDS);
+        if (ttl > 0) {
+            tokenCache = Caffeine.newBuilder()
+                    .maximumSize(MAX_ENTRIES)
+                    .expireAfterWrite(Duration.ofSeconds(ttl))
+                    .build();
+            logger.fine("API token cache enabled, ttl: " + ttl + " seconds");
+        } else {
+            logger.info("API token cache disabled");
+        }
+    }
+
+    public boolean isEnabled() {
+        return tokenCache != null;
+    }
+
+    public CachedApiToken get(String tokenString) {
+        if (tokenCache == null || tokenString == null) {
+            return null;
+        }
+        return tokenCache.getIfPresent(tokenString);
+    }
+
+    public void put(ApiToken token) {
+        if (tokenCache == null || token == null || token.getAuthenticatedUser() == null) {
+            return;
+        }
+        tokenCache.put(token.getTokenString(), new CachedApiToken(token.getAuthenticatedUser().getId(), token.getExpireTime()));
+    }
+
+    public void invalidate(String tokenString) {
+        if (tokenCache != null && tokenString != null) {
+            tokenCache.invalidate(tokenString);
+        }
+    }
+
+    /**
+     * Removes all the cached tokens of a user, e.g. when the user is
+     * deactivated, deleted or merged into another account.
+     */
+    public void invalidateUser(Long userId) {
+        if (tokenCache != null && userId != null) {
+            tokenCache.asMap().values().removeIf(cached -> userId.equals(cached.userId()));
+        }
+    }
+
+    public void invalidateAll() {
+        if (tokenCache != null) {
+            tokenCache.invalidateAll();
+        }
+    }
+}
@@ -124,6 +124,9 @@ public class AuthenticationServiceBean {
 
     @EJB
     PrivateUrlServiceBean privateUrlService;
+
+    @EJB
+    ApiTokenCacheServiceBean apiTokenCache;
  
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
@@ -174,6 +177,7 @@ public class AuthenticationServiceBean {
         if (user!=null) {
             ApiToken apiToken = findApiTokenByUser(user);
             if (apiToken != null) {
+                apiTokenCache.invalidate(apiToken.getTokenString());
                 em.remove(apiToken);
             }
         }
@@ -203,6 +207,7 @@ public class AuthenticationServiceBean {
         AuthenticatedUser user = em.find(AuthenticatedUser.class, pk);
 
         if (user != null) {
+            apiTokenCache.invalidateUser(user.getId());
             ApiToken apiToken = findApiTokenByUser(user);
             if (apiToken != null) {
                 em.remove(apiToken);
@@ -386,8 +391,10 @@ public class AuthenticationServiceBean {
                 } else {
                     Timestamp time = token.getExpireTime();
                     if (time.before(newestToken.getExpireTime())) {
+                        apiTokenCache.invalidate(token.getTokenString());
                         em.remove(token);
                     } else {
+                        apiTokenCache.invalidate(newestToken.getTokenString());
                         em.remove(newestToken);
                         newestToken = token;
                     }
@@ -424,6 +431,18 @@ public class AuthenticationServiceBean {
     }
 
     public AuthenticatedUser lookupUser( String apiToken ) {
+        ApiTokenCacheServiceBean.CachedApiToken cached = apiTokenCache.get(apiToken);
+        if (cached != null) {
+            // The token was valid a few moments ago: only the user has to be
+            // loaded (typically from the entity cache), and the token checked
+            // for expiration. Anything unexpected is handed to the full lookup.
+            AuthenticatedUser user = cached.isExpired() ? null : em.find(AuthenticatedUser.class, cached.userId());
+            if (user != null && !user.isDeactivated()) {
+                return user;
+            }
+            apiTokenCache.invalidate(apiToken);
+        }
+        
         ApiToken tkn = findApiToken(apiToken);
         if ( tkn == null ) return null;
         
@@ -438,6 +457,7 @@ public class AuthenticationServiceBean {
         
         AuthenticatedUser user = tkn.getAuthenticatedUser();
         if (!user.isDeactivated()) {
+            apiTokenCache.put(tkn);
             return user;
         } else {
             logger.info("attempted access with token from deactivated user: " + apiToken);
@@ -515,6 +535,8 @@ public class AuthenticationServiceBean {
         deletePendingAccessRequests(au);
         
         deleteBannerMessages(au);
+        
+        apiTokenCache.invalidateUser(au.getId());
                
         if (!explicitGroupService.findGroups(au).isEmpty()) {
             for(ExplicitGroup explicitGroup: explicitGroupService.findGroups(au)){
@@ -0,0 +1,94 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.UserServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import static jakarta.ejb.LockType.READ;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+
+/**
+ * Collects the "last API use" times of the authenticated users and writes them
+ * to the database periodically, in one transaction, instead of updating the
+ * user row (in a transaction of its own) on every single API call. Only the
+ * latest time of each user is kept between the writes.
+ * 
+ * The interval is configured with the dataverse.api.last-use-flush-interval
+ * JVM option, in seconds. With an interval of 0 the times are written
+ * immediately, as before.
+ */
+@Lock(READ)
+@Singleton
+@Startup
+public class LastApiUseTimeServiceBean {
+
+    private static final Logger logger = Logger.getLogger(LastApiUseTimeServiceBean.class.getCanonicalName());
+
+    private static final long DEFAULT_FLUSH_INTERVAL_SECONDS = 60;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @EJB
+    UserServiceBean userService;
+
+    private final ConcurrentHashMap<Long, Timestamp> pending = new ConcurrentHashMap<>();
+    private long flushInterval;
+
+    @PostConstruct
+    public void init() {
+        flushInterval = JvmSettings.API_LAST_USE_FLUSH_INTERVAL.lookupOptional(Long.class).orElse(DEFAULT_FLUSH_INTERVAL_SECONDS);
+        if (flushInterval > 0) {
+            scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public boolean isBuffering() {
+        return flushInterval > 0;
+    }
+
+    /**
+     * Records an API call of the user, to be written with the next flush.
+     */
+    public void record(Long userId, Timestamp time) {
+        if (userId != null && time != null) {
+            pending.merge(userId, time, (previous, current) -> current.after(previous) ? current : previous);
+        }
+    }
+
+    /**
+     * Writes all the times collected so far. Only the entries that were written
+     * are removed, so calls recorded in the meantime are kept for the next flush.
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Long, Timestamp> batch = new HashMap<>(pending);
+        try {
+            userService.updateLastApiUseTimes(batch);
+            batch.forEach((userId, time) -> pending.remove(userId, time));
+            logger.fine("Wrote the last API use times of " + batch.size() + " users");
+        } catch (RuntimeException e) {
+            // keep the entries for the next attempt
+            logger.log(Level.WARNING, "Failed to write the last API use times: " + e.getMessage(), e);
+        }
+    }
+}
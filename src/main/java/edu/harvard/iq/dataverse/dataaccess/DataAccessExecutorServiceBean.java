@@ -0,0 +1,68 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.util.logging.Logger;
+
+/**
+ * Provides the threads on which the (static) data access classes do their
+ * background work: the format conversions of {@link DataConverter}, and the
+ * generation of thumbnails by {@link ImageThumbConverter}.
+ * The threads are those of the ManagedExecutorService of the application
+ * server, so they are stopped with the application; each kind of work is
+ * limited to the number of threads configured for it, with a bounded queue.
+ */
+@Singleton
+@Startup
+public class DataAccessExecutorServiceBean {
+    private static final Logger logger = Logger.getLogger(DataAccessExecutorServiceBean.class.getCanonicalName());
+
+    static final int DEFAULT_CONVERSION_THREADS = 2;
+    static final int MAX_QUEUED_CONVERSIONS = 100;
+    static final int DEFAULT_THUMBNAIL_THREADS = 2;
+    static final int MAX_QUEUED_THUMBNAILS = 1000;
+
+    @Resource
+    ManagedExecutorService executor;
+
+    @EJB
+    DataFileServiceBean dataFileService;
+
+    private BoundedExecutor conversionExecutor;
+    private BoundedExecutor thumbnailExecutor;
+
+    @PostConstruct
+    public void init() {
+        int conversionThreads = JvmSettings.FORMAT_CONVERSION_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_CONVERSION_THREADS);
+        conversionExecutor = new BoundedExecutor(executor, conversionThreads, MAX_QUEUED_CONVERSIONS);
+        DataConverter.setExecutor(conversionExecutor);
+        logger.fine("Running up to " + conversionThreads + " format conversions at a time");
+
+        int thumbnailThreads = JvmSettings.THUMBNAIL_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_THUMBNAIL_THREADS);
+        thumbnailExecutor = new BoundedExecutor(executor, thumbnailThreads, MAX_QUEUED_THUMBNAILS);
+        ImageThumbConverter.setExecutor(thumbnailExecutor, dataFileService);
+        logger.fine("Generating up to " + thumbnailThreads + " thumbnails at a time");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        DataConverter.setExecutor(null);
+        int dropped = conversionExecutor.shutdown().size();
+        if (dropped > 0) {
+            logger.info("Dropped " + dropped + " queued format conversions");
+        }
+        ImageThumbConverter.setExecutor(null, null);
+        dropped = thumbnailExecutor.shutdown().size();
+        if (dropped > 0) {
+            logger.info("Dropped " + dropped + " queued thumbnail generations");
+        }
+    }
+}
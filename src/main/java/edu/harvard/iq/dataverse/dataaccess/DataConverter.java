@@ -39,11 +39,13 @@ import java.util.LinkedHashMap;
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.rserve.*;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.channels.Channel;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
@@ -52,6 +54,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
 
@@ -73,8 +82,28 @@ public class DataConverter {
     
     public static String FILE_TYPE_TAB = "tab";
     public static String FILE_TYPE_RDATA = "RData";
+    public static String FILE_TYPE_PREP = "prep";
     
     public static String SERVICE_REQUEST_CONVERT = "convert";
+
+    static final long CONVERSION_TIMEOUT_MINUTES = 60;
+
+    // The conversions currently running, by file id and format
+    private static final ConcurrentHashMap<String, CompletableFuture<File>> runningConversions = new ConcurrentHashMap<>();
+
+    /**
+     * The bounded executor running the format conversions, so that the number
+     * of conversions running at once (each one sending a whole file to Rserve)
+     * does not grow with the number of concurrent download requests. Set by
+     * {@link DataAccessExecutorServiceBean} when the application starts; until
+     * then (and outside of the application server), the conversions run on
+     * the thread requesting them.
+     */
+    private static volatile Executor conversionExecutor = null;
+    
+    static void setExecutor(Executor executor) {
+        conversionExecutor = executor;
+    }
     
     
     public static StorageIO<DataFile> performFormatConversion(DataFile file, StorageIO<DataFile> storageIO, String formatRequested, String formatType) {
@@ -102,39 +131,21 @@ public class DataConverter {
             convertedFileStream = null;
         }
 
-        // If not cached, run the conversion:
+        // If not cached, run the conversion (or wait for the same conversion,
+        // already started by another request):
         if (convertedFileStream == null) {
 
-            File tabFile = downloadFromStorageIO(storageIO);
-
-            if (tabFile == null) {
-                return null;
-            }
-
-            if (tabFile.length() > 0) {
-                File formatConvertedFile = runFormatConversion(file, tabFile, formatRequested);
-
-                // cache the result for future use:
-                if (formatConvertedFile != null && formatConvertedFile.exists()) {
-
-                    try {
-                        storageIO.savePathAsAux(Paths.get(formatConvertedFile.getAbsolutePath()), formatRequested);
+            File formatConvertedFile = convertAndCache(file, storageIO, formatRequested);
 
-                    } catch (IOException ex) {
-                        logger.warning("failed to save cached format " + formatRequested + " for " + file.getStorageIdentifier());
-                        // We'll assume that this is a non-fatal condition.
-                    }
-
-                    // re-open the generated file:
-                    try {
-                        convertedFileStream = new FileInputStream(formatConvertedFile);
-                        convertedFileSize = formatConvertedFile.length();
-                    } catch (FileNotFoundException ioex) {
-                        logger.warning("Failed to open generated format " + formatRequested + " for " + file.getStorageIdentifier());
-                        return null;
-                    }
+            if (formatConvertedFile != null) {
+                // re-open the generated file:
+                try {
+                    convertedFileStream = new FileInputStream(formatConvertedFile);
+                    convertedFileSize = formatConvertedFile.length();
+                } catch (FileNotFoundException ioex) {
+                    logger.warning("Failed to open generated format " + formatRequested + " for " + file.getStorageIdentifier());
+                    return null;
                 }
-
             }
         }
 
@@ -163,6 +174,131 @@ public class DataConverter {
         return null;
     }
 
+    /**
+     * Converts the file to the requested format, and saves the result as an aux
+     * object, so that later requests are served from the cached copy. The
+     * conversions run on a dedicated, bounded pool, and only one conversion of
+     * a given file to a given format runs at a time: the requests arriving
+     * while it is running wait for it, and share its result, instead of
+     * starting identical conversions of their own.
+     *
+     * @return the converted file, or null if the conversion failed
+     */
+    static File convertAndCache(DataFile file, StorageIO<DataFile> storageIO, String formatRequested) {
+        CompletableFuture<File> running = startConversion(file, storageIO, formatRequested);
+        if (running == null) {
+            return null;
+        }
+        try {
+            return running.get(CONVERSION_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            logger.log(Level.WARNING, "Conversion of " + file.getStorageIdentifier() + " to " + formatRequested + " failed", ex);
+        }
+        return null;
+    }
+
+    /**
+     * @return the conversion of the file to the format, either the one already
+     *         running, or a new one, or null if it could not be scheduled
+     */
+    private static CompletableFuture<File> startConversion(DataFile file, StorageIO<DataFile> storageIO, String formatRequested) {
+        String key = file.getId() + ":" + formatRequested;
+        CompletableFuture<File> conversion = new CompletableFuture<>();
+        CompletableFuture<File> running = runningConversions.putIfAbsent(key, conversion);
+        if (running != null) {
+            logger.fine("Joining the running conversion of " + file.getStorageIdentifier() + " to " + formatRequested);
+            return running;
+        }
+        Runnable task = () -> {
+            try {
+                conversion.complete(convertAndSaveAsAux(file, storageIO, formatRequested));
+            } catch (Throwable t) {
+                conversion.completeExceptionally(t);
+            } finally {
+                runningConversions.remove(key, conversion);
+            }
+        };
+        Executor executor = conversionExecutor;
+        if (executor == null) {
+            task.run();
+            return conversion;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            runningConversions.remove(key, conversion);
+            logger.warning("Could not schedule the conversion of " + file.getStorageIdentifier() + " to " + formatRequested + ": " + ex.getMessage());
+            return null;
+        }
+        return conversion;
+    }
+
+    /**
+     * Converts the file to each of the given formats that is not cached yet,
+     * in the background; meant to be called once a file has been ingested, so
+     * that the downloads of the popular formats are served from the cache
+     * right away. If no formats are given, those listed in the
+     * dataverse.files.format-conversion-pregenerate setting are used.
+     */
+    public static void pregenerateFormats(DataFile file, String... formats) {
+        if (file == null || !file.isTabularData()) {
+            return;
+        }
+        if (conversionExecutor == null) {
+            // (not to convert on the calling thread)
+            logger.fine("Not pregenerating the formats of " + file.getStorageIdentifier() + ": no executor");
+            return;
+        }
+        if (formats == null || formats.length == 0) {
+            formats = JvmSettings.FORMAT_CONVERSION_PREGENERATE.lookupOptional(String[].class).orElse(new String[0]);
+        }
+        for (String format : formats) {
+            String formatRequested = format.trim();
+            if (formatRequested.isEmpty() || formatRequested.equals(FILE_TYPE_TAB)) {
+                continue;
+            }
+            try {
+                StorageIO<DataFile> storageIO = file.getStorageIO();
+                storageIO.open();
+                if (!storageIO.isAuxObjectCached(formatRequested)) {
+                    startConversion(file, storageIO, formatRequested);
+                }
+            } catch (IOException ex) {
+                logger.warning("Could not schedule the conversion of " + file.getStorageIdentifier() + " to " + formatRequested + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private static File convertAndSaveAsAux(DataFile file, StorageIO<DataFile> storageIO, String formatRequested) {
+        File tabFile = downloadFromStorageIO(storageIO);
+
+        if (tabFile == null || tabFile.length() == 0) {
+            return null;
+        }
+
+        File formatConvertedFile = runFormatConversion(file, tabFile, formatRequested);
+
+        if (!storageIO.isLocalFile() && !tabFile.equals(formatConvertedFile)) {
+            // the temporary copy of the tab file is no longer needed
+            tabFile.delete();
+        }
+
+        if (formatConvertedFile == null || !formatConvertedFile.exists()) {
+            return null;
+        }
+
+        // cache the result for future use:
+        try {
+            storageIO.savePathAsAux(Paths.get(formatConvertedFile.getAbsolutePath()), formatRequested);
+        } catch (IOException ex) {
+            logger.warning("failed to save cached format " + formatRequested + " for " + file.getStorageIdentifier());
+            // We'll assume that this is a non-fatal condition.
+        }
+        return formatConvertedFile;
+    }
+
     public static File downloadFromStorageIO(StorageIO<DataFile> storageIO) {
         if (storageIO.isLocalFile()){
             try {
@@ -224,6 +360,68 @@ public class DataConverter {
             return tabFile;
         }
 
+        if (!FILE_TYPE_RDATA.equals(formatRequested) && !FILE_TYPE_PREP.equals(formatRequested)) {
+            logger.warning("Unsupported file format requested: "+formatRequested);
+            return null;
+        }
+
+        File formatConvertedFile = null;
+        if (!JvmSettings.FORMAT_CONVERSION_NATIVE.lookupOptional(Boolean.class).orElse(false)) {
+            try {
+                formatConvertedFile = runRserveConversion(file, tabFile, formatRequested);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Rserve conversion failed", ex);
+            }
+            if (formatConvertedFile == null) {
+                logger.warning("Could not convert " + file.getStorageIdentifier() + " to " + formatRequested + " via Rserve; converting it in-process instead.");
+            }
+        }
+        if (formatConvertedFile == null) {
+            formatConvertedFile = runNativeConversion(file, tabFile, formatRequested);
+        }
+
+        if (formatConvertedFile == null || !formatConvertedFile.exists()) {
+            logger.warning("Format-converted file was not properly created.");
+            return null;
+        }
+        return formatConvertedFile;
+    }
+
+    /**
+     * Converts the tab file in the JVM, using the variable metadata in the
+     * database, instead of sending it to Rserve.
+     *
+     * @see RDataFileWriter
+     * @see DataPreprocessor
+     */
+    private static File runNativeConversion(DataFile file, File tabFile, String formatRequested) {
+        List<DataVariable> dataVariables = file.getDataTable().getDataVariables();
+        File formatConvertedFile = null;
+        try (TabularColumnFiles columns = new TabularColumnFiles(tabFile, dataVariables.size(), file.getDataTable().isStoredWithVariableHeader())) {
+            if (FILE_TYPE_RDATA.equals(formatRequested)) {
+                formatConvertedFile = File.createTempFile("dataverseDataFrame_", ".RData");
+                RJobRequest request = new RJobRequest(dataVariables, getValueTableForRequestedVariables(dataVariables));
+                try (OutputStream out = new FileOutputStream(formatConvertedFile)) {
+                    new RDataFileWriter(request).write(columns, out);
+                }
+            } else {
+                formatConvertedFile = File.createTempFile("dataversePreprocess_", ".json");
+                try (OutputStream out = new FileOutputStream(formatConvertedFile)) {
+                    new DataPreprocessor(dataVariables).write(columns, out);
+                }
+            }
+            return formatConvertedFile;
+        } catch (IOException | RuntimeException ex) {
+            logger.log(Level.WARNING, "Failed to convert " + file.getStorageIdentifier() + " to " + formatRequested, ex);
+            if (formatConvertedFile != null) {
+                formatConvertedFile.delete();
+            }
+            return null;
+        }
+    }
+
+    // The conversion via Rserve:
+    private static File runRserveConversion(DataFile file, File tabFile, String formatRequested) {
         File formatConvertedFile;
         // create the service instance
         RemoteDataFrameService dfs = new RemoteDataFrameService();
@@ -281,7 +479,7 @@ public class DataConverter {
             logger.fine("data frame file name: "+dataFrameFileName);
 
             formatConvertedFile = new File(dataFrameFileName);
-        } else if ("prep".equals(formatRequested)) {
+        } else if (FILE_TYPE_PREP.equals(formatRequested)) {
             formatConvertedFile = dfs.runDataPreprocessing(file);
         } else {
             logger.warning("Unsupported file format requested: "+formatRequested);
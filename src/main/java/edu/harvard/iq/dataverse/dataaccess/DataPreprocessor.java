@@ -0,0 +1,506 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonWriter;
+
+/**
+ * Produces the "preprocessed" summary of a tabular data file (the "prep"
+ * format: the types guessed for the variables, their summary statistics and
+ * the data for plotting them, as JSON), in the JVM, without sending the file
+ * to Rserve. It follows the preprocess() function in
+ * rserve/scripts/preprocess.R, and produces the same JSON structure.
+ *
+ * The columns are read from the {@link TabularColumnFiles} one at a time, so
+ * only the values of one variable are held in memory at once.
+ *
+ * Differences with the R implementation: the density estimates of the
+ * continuous variables are calculated exactly, rather than with the binned
+ * approximation used by R, so they differ slightly; the statistics are
+ * numbers or strings depending on the type of each variable, rather than on
+ * the types of all the variables in the file; and the statistics that cannot
+ * be calculated (e.g. for a variable without any valid values) are "NA".
+ */
+class DataPreprocessor {
+
+    private static final int HISTOGRAM_LIMIT = 13;
+    private static final int DENSITY_POINTS = 50;
+    private static final String NA = "NA";
+
+    private final List<DataVariable> variables;
+
+    DataPreprocessor(List<DataVariable> variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * The values of one variable, as read.delim() would read them: numbers
+     * (NaN for the missing values), if all the values are numbers, strings
+     * (null for the missing values) otherwise.
+     */
+    static class Column {
+
+        final String name;
+        final double[] numbers;
+        final String[] strings;
+
+        Column(String name, double[] numbers, String[] strings) {
+            this.name = name;
+            this.numbers = numbers;
+            this.strings = strings;
+        }
+
+        boolean isNumeric() {
+            return numbers != null;
+        }
+
+        /**
+         * @return the values as strings, as as.character() would format them
+         */
+        String[] asCharacter() {
+            if (!isNumeric()) {
+                return strings;
+            }
+            String[] values = new String[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                values[i] = Double.isNaN(numbers[i]) ? null : formatNumber(numbers[i], 15);
+            }
+            return values;
+        }
+    }
+
+    void write(TabularColumnFiles columns, OutputStream out) throws IOException {
+        String[] names = makeNames(variables);
+        JsonObjectBuilder variablesJson = Json.createObjectBuilder();
+        for (int i = 0; i < columns.getColumnCount(); i++) {
+            Column column = readColumn(columns, i, names[i]);
+            variablesJson.add(names[i], summarize(column));
+        }
+        JsonObjectBuilder json = Json.createObjectBuilder()
+                .add("dataset", Json.createObjectBuilder().add("private", false))
+                .add("variables", variablesJson);
+        try (JsonWriter writer = Json.createWriter(out)) {
+            writer.writeObject(json.build());
+        }
+    }
+
+    static Column readColumn(TabularColumnFiles columns, int index, String name) throws IOException {
+        long caseCount = columns.getCaseCount();
+        if (caseCount > Integer.MAX_VALUE) {
+            throw new IOException("Too many cases to preprocess: " + caseCount);
+        }
+        int n = (int) caseCount;
+        String[] raw = new String[n];
+        try (BufferedReader reader = columns.open(index)) {
+            for (int i = 0; i < n; i++) {
+                raw[i] = reader.readLine();
+            }
+        }
+        // read.delim() reads the column as numbers if all its values (other
+        // than the missing ones) are numbers
+        double[] numbers = new double[n];
+        boolean numeric = false;
+        for (int i = 0; i < n; i++) {
+            String value = TabularColumnFiles.unescapeString(raw[i]);
+            if (value == null || value.isEmpty() || NA.equals(value) || "NaN".equals(value)) {
+                numbers[i] = Double.NaN;
+                continue;
+            }
+            double number = RDataFileWriter.parseReal(value);
+            if (Double.isNaN(number)) {
+                numeric = false;
+                numbers = null;
+                break;
+            }
+            numbers[i] = number;
+            numeric = true;
+        }
+        if (numeric) {
+            return new Column(name, numbers, null);
+        }
+        String[] strings = new String[n];
+        for (int i = 0; i < n; i++) {
+            strings[i] = raw[i] == null || NA.equals(raw[i]) ? null
+                    : raw[i].isEmpty() ? "" : TabularColumnFiles.unescapeString(raw[i]);
+            if (strings[i] != null && NA.equals(strings[i])) {
+                strings[i] = null;
+            }
+        }
+        return new Column(name, null, strings);
+    }
+
+    static JsonObjectBuilder summarize(Column column) {
+        Map<String, Object> types = guessTypes(column);
+        JsonObjectBuilder json = Json.createObjectBuilder();
+
+        if (!"nominal".equals(types.get("nature")) && column.isNumeric()) {
+            double[] valid = Arrays.stream(column.numbers).filter(d -> !Double.isNaN(d)).toArray();
+            if (Arrays.stream(valid).distinct().count() < HISTOGRAM_LIMIT) {
+                json.add("plottype", "bar").add("plotvalues", table(column));
+            } else {
+                double[][] density = density(valid);
+                json.add("plottype", "continuous")
+                        .add("plotx", toJsonArray(density[0]))
+                        .add("ploty", toJsonArray(density[1]));
+            }
+        } else {
+            json.add("plottype", "bar").add("plotvalues", table(column));
+        }
+
+        summaryStatistics(column, types).forEach((key, value) -> add(json, key, value));
+        types.forEach((key, value) -> add(json, key, value));
+        return json;
+    }
+
+    /**
+     * typeGuess(): whether the variable is numeric or character, continuous
+     * or discrete, binary, and its "nature".
+     */
+    static Map<String, Object> guessTypes(Column column) {
+        List<String> values = new ArrayList<>();
+        for (String value : column.asCharacter()) {
+            if (value != null && !value.isEmpty() && !"NULL".equals(value) && !NA.equals(value)) {
+                values.add(value);
+            }
+        }
+        Set<Object> uniques = new HashSet<>();
+        boolean character = !column.isNumeric() && values.isEmpty();
+        double[] numbers = new double[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            numbers[i] = RDataFileWriter.parseReal(values.get(i));
+            if (Double.isNaN(numbers[i])) {
+                character = true;
+                uniques.add(NA);
+            } else {
+                uniques.add(numbers[i]);
+            }
+        }
+        String binary = uniques.size() == 2 ? "yes" : "no";
+
+        String numchar;
+        String interval;
+        String nature;
+        if (character) {
+            numchar = "character";
+            interval = "discrete";
+            nature = "nominal";
+        } else {
+            numchar = "numeric";
+            boolean decimal = Arrays.stream(numbers).anyMatch(d -> d != Math.floor(d));
+            if (decimal) {
+                interval = "continuous";
+                double min = Arrays.stream(numbers).min().orElse(0);
+                double max = Arrays.stream(numbers).max().orElse(0);
+                if (min >= 0 && max <= 1) {
+                    nature = "percent";
+                } else if (min >= 0 && max <= 100 && min < 15 && max > 85) {
+                    nature = "percent";
+                } else {
+                    nature = "ratio";
+                }
+            } else {
+                interval = "discrete";
+                nature = "ordinal";
+            }
+        }
+
+        Map<String, Object> types = new LinkedHashMap<>();
+        types.put("numchar", numchar);
+        types.put("nature", nature);
+        types.put("binary", binary);
+        types.put("interval", interval);
+        types.put("varnamesTypes", column.name);
+        types.put("defaultInterval", interval);
+        types.put("defaultNumchar", numchar);
+        types.put("defaultNature", nature);
+        types.put("defaultBinary", binary);
+        return types;
+    }
+
+    /**
+     * calcSumStats(): the summary statistics of the variable.
+     */
+    static Map<String, Object> summaryStatistics(Column column, Map<String, Object> types) {
+        String[] all = column.asCharacter();
+        int invalid = 0;
+        List<String> values = new ArrayList<>();
+        for (String value : all) {
+            if (value == null) {
+                invalid++;
+            } else if (!value.isEmpty() && !"NULL".equals(value) && !NA.equals(value) && !".".equals(value)) {
+                values.add(value);
+            }
+        }
+
+        // the counts of the values, in the order they first appear
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String value : values) {
+            counts.merge(value, 1, Integer::sum);
+        }
+        String mode = null;
+        String fewest = null;
+        String mid = null;
+        int freqMode = 0;
+        int freqFewest = 0;
+        double freqMid = Double.NaN;
+        if (!counts.isEmpty()) {
+            freqMode = counts.values().stream().max(Integer::compare).get();
+            freqFewest = counts.values().stream().min(Integer::compare).get();
+            freqMid = median(counts.values().stream().mapToDouble(Integer::doubleValue).toArray());
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                if (mode == null && count.getValue() == freqMode) {
+                    mode = count.getKey();
+                }
+                if (fewest == null && count.getValue() == freqFewest) {
+                    fewest = count.getKey();
+                }
+                if (mid == null && count.getValue() == freqMid) {
+                    mid = count.getKey();
+                }
+            }
+        }
+        double herfindahl = herfindahl(counts.values(), values.size());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("varnamesSumStat", column.name);
+        if ("character".equals(types.get("numchar"))) {
+            stats.put("median", NA);
+            stats.put("mean", NA);
+            stats.put("mode", mode);
+            stats.put("max", NA);
+            stats.put("min", NA);
+            stats.put("invalid", invalid);
+            stats.put("valid", all.length - invalid);
+            stats.put("sd", NA);
+            stats.put("uniques", counts.size());
+            stats.put("herfindahl", herfindahl);
+            stats.put("freqmode", freqMode);
+            stats.put("fewest", fewest);
+            stats.put("mid", mid);
+            stats.put("freqfewest", freqFewest);
+            stats.put("freqmid", freqMid);
+            return stats;
+        }
+
+        double[] numbers = values.stream().mapToDouble(RDataFileWriter::parseReal).toArray();
+        stats.put("median", median(numbers));
+        stats.put("mean", Arrays.stream(numbers).average().orElse(Double.NaN));
+        stats.put("mode", mode == null ? null : formatNumber(Double.parseDouble(mode), 4));
+        stats.put("max", Arrays.stream(numbers).max().orElse(Double.NaN));
+        stats.put("min", Arrays.stream(numbers).min().orElse(Double.NaN));
+        stats.put("invalid", invalid);
+        stats.put("valid", all.length - invalid);
+        stats.put("sd", standardDeviation(numbers));
+        stats.put("uniques", counts.size());
+        stats.put("herfindahl", herfindahl);
+        stats.put("freqmode", freqMode);
+        stats.put("fewest", fewest == null ? null : formatNumber(Double.parseDouble(fewest), 6));
+        stats.put("mid", mid == null ? null : formatNumber(Double.parseDouble(mid), 6));
+        stats.put("freqfewest", formatNumber(freqFewest, 6));
+        stats.put("freqmid", Double.isNaN(freqMid) ? null : formatNumber(freqMid, 6));
+        return stats;
+    }
+
+    /**
+     * table(): the number of times each (valid) value appears, sorted by value.
+     */
+    static JsonObjectBuilder table(Column column) {
+        JsonObjectBuilder json = Json.createObjectBuilder();
+        if (column.isNumeric()) {
+            TreeMap<Double, Integer> counts = new TreeMap<>();
+            for (double number : column.numbers) {
+                if (!Double.isNaN(number)) {
+                    counts.merge(number, 1, Integer::sum);
+                }
+            }
+            counts.forEach((number, count) -> json.add(formatNumber(number, 15), count.intValue()));
+        } else {
+            TreeMap<String, Integer> counts = new TreeMap<>();
+            for (String value : column.strings) {
+                if (value != null) {
+                    counts.merge(value, 1, Integer::sum);
+                }
+            }
+            counts.forEach((value, count) -> json.add(value, count.intValue()));
+        }
+        return json;
+    }
+
+    /**
+     * density(x, n=50): a Gaussian kernel density estimate, with the bandwidth
+     * chosen by bw.nrd0(), at 50 points spanning the range of the values, plus
+     * 3 bandwidths on each side.
+     *
+     * @return the points, and the estimates at these points
+     */
+    static double[][] density(double[] values) {
+        int n = values.length;
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double sd = standardDeviation(values);
+        double iqr = quantile(sorted, 0.75) - quantile(sorted, 0.25);
+        double lo = Math.min(sd, iqr / 1.34);
+        if (!(lo > 0)) {
+            lo = sd > 0 ? sd : (values[0] != 0 ? Math.abs(values[0]) : 1);
+        }
+        double bandwidth = 0.9 * lo * Math.pow(n, -0.2);
+
+        double from = sorted[0] - 3 * bandwidth;
+        double to = sorted[n - 1] + 3 * bandwidth;
+        double[] x = new double[DENSITY_POINTS];
+        double[] y = new double[DENSITY_POINTS];
+        double norm = 1.0 / (n * bandwidth * Math.sqrt(2 * Math.PI));
+        for (int j = 0; j < DENSITY_POINTS; j++) {
+            x[j] = from + (to - from) * j / (DENSITY_POINTS - 1);
+            double sum = 0;
+            for (double value : values) {
+                double u = (x[j] - value) / bandwidth;
+                sum += Math.exp(-0.5 * u * u);
+            }
+            y[j] = sum * norm;
+        }
+        return new double[][]{x, y};
+    }
+
+    static double median(double[] values) {
+        if (values.length == 0) {
+            return Double.NaN;
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    /**
+     * The quantile of sorted values, as calculated by R's default (type 7)
+     * method.
+     */
+    static double quantile(double[] sorted, double probability) {
+        double h = (sorted.length - 1) * probability;
+        int low = (int) Math.floor(h);
+        int high = Math.min(low + 1, sorted.length - 1);
+        return sorted[low] + (h - low) * (sorted[high] - sorted[low]);
+    }
+
+    static double standardDeviation(double[] values) {
+        if (values.length < 2) {
+            return Double.NaN;
+        }
+        double mean = Arrays.stream(values).average().getAsDouble();
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    private static double herfindahl(Iterable<Integer> counts, int total) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int count : counts) {
+            double share = (double) count / total;
+            sum += share * share;
+        }
+        return sum;
+    }
+
+    /**
+     * Formats the number the way as.character(signif(x, digits)) does in R:
+     * rounded to the significant digits, without trailing zeros, in fixed or
+     * scientific notation, whichever is shorter.
+     */
+    static String formatNumber(double number, int digits) {
+        if (Double.isNaN(number)) {
+            return NA;
+        } else if (Double.isInfinite(number)) {
+            return number > 0 ? "Inf" : "-Inf";
+        } else if (number == 0) {
+            return "0";
+        }
+        BigDecimal rounded = new BigDecimal(number).round(new MathContext(digits)).stripTrailingZeros();
+        String fixed = rounded.toPlainString();
+        String mantissa = rounded.movePointLeft(rounded.precision() - rounded.scale() - 1).toPlainString();
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        String scientific = mantissa + "e" + (exponent < 0 ? "-" : "+") + (Math.abs(exponent) < 10 ? "0" : "") + Math.abs(exponent);
+        return fixed.length() <= scientific.length() ? fixed : scientific;
+    }
+
+    /**
+     * make.names(unique = TRUE): the variable names, made into valid and
+     * unique R names, as read.delim() does with the header.
+     */
+    static String[] makeNames(List<DataVariable> variables) {
+        String[] names = new String[variables.size()];
+        Map<String, Integer> seen = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            String name = variables.get(i).getName();
+            StringBuilder sb = new StringBuilder();
+            for (int c = 0; c < name.length(); c++) {
+                char ch = name.charAt(c);
+                sb.append(Character.isLetterOrDigit(ch) || ch == '.' || ch == '_' ? ch : '.');
+            }
+            if (sb.length() == 0 || !(Character.isLetter(sb.charAt(0))
+                    || (sb.charAt(0) == '.' && !(sb.length() > 1 && Character.isDigit(sb.charAt(1)))))) {
+                sb.insert(0, 'X');
+            }
+            String unique = sb.toString();
+            Integer count = seen.get(unique);
+            if (count != null) {
+                String candidate;
+                do {
+                    candidate = unique + "." + count++;
+                } while (seen.containsKey(candidate));
+                seen.put(unique, count);
+                unique = candidate;
+            }
+            seen.put(unique, 1);
+            names[i] = unique;
+        }
+        return names;
+    }
+
+    private static JsonArrayBuilder toJsonArray(double[] values) {
+        JsonArrayBuilder array = Json.createArrayBuilder();
+        for (double value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+
+    private static void add(JsonObjectBuilder json, String key, Object value) {
+        if (value == null) {
+            json.add(key, NA);
+        } else if (value instanceof Double d) {
+            if (d.isNaN() || d.isInfinite()) {
+                json.add(key, formatNumber(d, 15));
+            } else {
+                json.add(key, d);
+            }
+        } else if (value instanceof Integer i) {
+            json.add(key, i);
+        } else {
+            json.add(key, value.toString());
+        }
+    }
+}
@@ -7,6 +7,7 @@ import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.globus.AccessToken;
 import edu.harvard.iq.dataverse.globus.GlobusServiceBean;
+import edu.harvard.iq.dataverse.globus.GlobusUtil;
 import edu.harvard.iq.dataverse.util.UrlSignerUtil;
 import edu.harvard.iq.dataverse.util.json.JsonUtil;
 
@@ -201,7 +202,7 @@ public class GlobusOverlayAccessIO<T extends DvObject> extends AbstractRemoteOve
         URI absoluteURI = null;
         try {
 
-            absoluteURI = new URI("https://transfer.api.globusonline.org/v0.10/operation/endpoint/" + endpoint
+            absoluteURI = new URI(GlobusUtil.getTransferApiUrl() + "/operation/endpoint/" + endpoint
                     + "/ls?path=" + endpointPath + relativeDirectoryPath + "&filter=name:" + filename);
             HttpGet get = new HttpGet(absoluteURI);
 
@@ -261,7 +262,7 @@ public class GlobusOverlayAccessIO<T extends DvObject> extends AbstractRemoteOve
         URI absoluteURI = null;
         try {
 
-            absoluteURI = new URI("https://transfer.api.globusonline.org/v0.10/submission_id");
+            absoluteURI = new URI(GlobusUtil.getTransferApiUrl() + "/submission_id");
             HttpGet get = new HttpGet(absoluteURI);
 
             get.addHeader("Authorization", "Bearer " + globusAccessToken);
@@ -273,7 +274,7 @@ public class GlobusOverlayAccessIO<T extends DvObject> extends AbstractRemoteOve
                 JsonObject responseJson = JsonUtil.getJsonObject(responseString);
                 String submissionId = responseJson.getString("value");
                 logger.fine("submission_id for delete is: " + submissionId);
-                absoluteURI = new URI("https://transfer.api.globusonline.org/v0.10/delete");
+                absoluteURI = new URI(GlobusUtil.getTransferApiUrl() + "/delete");
                 HttpPost post = new HttpPost(absoluteURI);
                 JsonObjectBuilder taskJsonBuilder = Json.createObjectBuilder();
                 taskJsonBuilder.add("submission_id", submissionId).add("DATA_TYPE", "delete").add("endpoint", endpoint)
@@ -24,14 +24,26 @@ import java.io.InputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 
 import edu.harvard.iq.dataverse.DataFile;
@@ -47,6 +59,7 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jakarta.enterprise.inject.spi.CDI;
@@ -70,6 +83,28 @@ public class ImageThumbConverter {
 
     private static final Logger logger = Logger.getLogger(ImageThumbConverter.class.getCanonicalName());
 
+    static final long GENERATION_TIMEOUT_MINUTES = 10;
+
+    // The thumbnails being generated, by file (id) and size
+    private static final ConcurrentHashMap<String, CompletableFuture<Boolean>> runningGenerations = new ConcurrentHashMap<>();
+
+    /**
+     * The bounded executor generating the thumbnails, so that the number of
+     * images (or PDFs) being decoded at once does not grow with the number of
+     * concurrent page views and uploads, and the service recording the
+     * outcome on the files. Set by {@link DataAccessExecutorServiceBean} when
+     * the application starts; until then (and outside of the application
+     * server), the thumbnails are only generated when they are waited for,
+     * on the thread asking for them.
+     */
+    private static volatile Executor thumbnailExecutor = null;
+    private static volatile DataFileServiceBean statusService = null;
+
+    static void setExecutor(Executor executor, DataFileServiceBean dataFileService) {
+        thumbnailExecutor = executor;
+        statusService = dataFileService;
+    }
+
     public ImageThumbConverter() {
     }
 
@@ -77,6 +112,19 @@ public class ImageThumbConverter {
         return isThumbnailAvailable(file, DEFAULT_THUMBNAIL_SIZE);
     }
 
+    /**
+     * Unlike isThumbnailAvailable(), this method only checks whether the
+     * thumbnail has already been generated: it never generates it.
+     */
+    public static boolean isThumbnailCached(DataFile file, int size) {
+        try {
+            StorageIO<DataFile> storageIO = file.getStorageIO();
+            return storageIO != null && isThumbnailCached(storageIO, size);
+        } catch (IOException ioEx) {
+            return false;
+        }
+    }
+
     public static boolean isThumbnailAvailable(DataFile file, int size) {
 
         try {
@@ -124,15 +172,20 @@ public class ImageThumbConverter {
 
     }
 
-    private static boolean generateThumbnail(DataFile file, StorageIO<DataFile> storageIO, int size) {
+    static boolean generateThumbnail(DataFile file, StorageIO<DataFile> storageIO, int size) {
         logger.fine((file.isPreviewImageFail() ? "Not trying" : "Trying") + " to generate thumbnail, file id: " + file.getId());
         boolean thumbnailGenerated = false;
         // Don't try to generate if there have been failures:
         if (!file.isPreviewImageFail()) {
-            if (file.getContentType().substring(0, 6).equalsIgnoreCase("image/")) {
-                thumbnailGenerated = generateImageThumbnail(storageIO, size);
-            } else if (file.getContentType().equalsIgnoreCase("application/pdf")) {
-                thumbnailGenerated = generatePDFThumbnail(storageIO, size);
+            CompletableFuture<Boolean> generation = startGeneration(file, storageIO, size);
+            if (generation != null) {
+                try {
+                    thumbnailGenerated = generation.get(GENERATION_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException | TimeoutException ex) {
+                    logger.log(Level.WARNING, "Generation of the thumbnail of " + file.getStorageIdentifier() + " failed", ex);
+                }
             }
             if (!thumbnailGenerated) {
                 file.setPreviewImageFail(true);
@@ -144,6 +197,115 @@ public class ImageThumbConverter {
         return thumbnailGenerated;
     }
 
+    /**
+     * Starts generating the thumbnail on the dedicated pool. Only one
+     * thumbnail of a given file and size is generated at a time: the requests
+     * arriving while it is being generated wait for it, and share its result,
+     * instead of decoding the original again.
+     *
+     * @return the generation of the thumbnail, either the one already running,
+     *         or a new one, or null if it could not be scheduled
+     */
+    private static CompletableFuture<Boolean> startGeneration(DataFile file, StorageIO<DataFile> storageIO, int size) {
+        String key = (file.getId() != null ? file.getId() : file.getStorageIdentifier()) + ":" + size;
+        CompletableFuture<Boolean> generation = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = runningGenerations.putIfAbsent(key, generation);
+        if (running != null) {
+            logger.fine("Joining the running generation of the thumbnail of " + file.getStorageIdentifier() + ", size " + size);
+            return running;
+        }
+        Runnable task = () -> {
+            try {
+                if (isThumbnailCached(storageIO, size)) {
+                    // e.g. generated by another server in the meantime
+                    generation.complete(true);
+                } else if (file.getContentType().substring(0, 6).equalsIgnoreCase("image/")) {
+                    generation.complete(generateImageThumbnail(storageIO, size));
+                } else if (file.getContentType().equalsIgnoreCase("application/pdf")) {
+                    generation.complete(generatePDFThumbnail(storageIO, size));
+                } else {
+                    generation.complete(false);
+                }
+            } catch (Throwable t) {
+                generation.completeExceptionally(t);
+            } finally {
+                runningGenerations.remove(key, generation);
+            }
+        };
+        Executor executor = thumbnailExecutor;
+        if (executor == null) {
+            task.run();
+            return generation;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            runningGenerations.remove(key, generation);
+            logger.warning("Could not schedule the generation of the thumbnail of " + file.getStorageIdentifier() + ": " + ex.getMessage());
+            return null;
+        }
+        return generation;
+    }
+
+    /**
+     * Generates the thumbnails of the file that are not cached yet, in the
+     * background; meant to be called once a file has been uploaded, so that
+     * its thumbnails are ready by the time they are shown, and by the pages
+     * that show a placeholder instead of waiting for a thumbnail. If no sizes
+     * are given, the thumbnails shown in the file tables and in the search
+     * results are generated. The outcome is recorded on the file (see
+     * DvObject.isPreviewImageAvailable() and isPreviewImageFail()), so that
+     * a thumbnail that cannot be generated is not attempted again; unless the
+     * file hasn't been saved yet, in which case it is recorded the first time
+     * the thumbnail is asked for.
+     */
+    public static void generateThumbnailsInBackground(DataFile file, int... sizes) {
+        if (file == null || file.isHarvested() || file.isPreviewImageFail()
+                || !FileUtil.isThumbnailSupported(file)) {
+            return;
+        }
+        if (thumbnailExecutor == null) {
+            // (not to generate them on the calling thread)
+            logger.fine("Not generating the thumbnails of " + file.getStorageIdentifier() + " in the background: no executor");
+            return;
+        }
+        if (sizes == null || sizes.length == 0) {
+            sizes = new int[] { DEFAULT_THUMBNAIL_SIZE, DEFAULT_CARDIMAGE_SIZE };
+        }
+        StorageIO<DataFile> storageIO;
+        try {
+            storageIO = file.getStorageIO();
+        } catch (IOException ex) {
+            logger.warning("Could not schedule the generation of the thumbnails of " + file.getStorageIdentifier() + ": " + ex.getMessage());
+            return;
+        }
+        List<CompletableFuture<Boolean>> generations = new ArrayList<>();
+        for (int size : sizes) {
+            CompletableFuture<Boolean> generation = startGeneration(file, storageIO, size);
+            if (generation != null) {
+                generations.add(generation);
+            }
+        }
+        Long fileId = file.getId();
+        if (fileId != null && !generations.isEmpty()) {
+            CompletableFuture.allOf(generations.toArray(new CompletableFuture[0])).whenComplete((done, t) ->
+                    recordStatus(fileId, t == null && generations.stream().allMatch(g -> Boolean.TRUE.equals(g.join()))));
+        }
+    }
+
+    private static void recordStatus(Long fileId, boolean available) {
+        DataFileServiceBean dataFileService = statusService;
+        if (dataFileService == null) {
+            logger.warning("Could not record the thumbnail status of file " + fileId + ": no service to record it with");
+            return;
+        }
+        try {
+            dataFileService.setPreviewImageStatus(fileId, available);
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Could not record the thumbnail status of file " + fileId, ex);
+        }
+    }
+
     // Note that this method works on ALL file types for which thumbnail 
     // generation is supported - image/*, pdf; 
     // not just on images! The type differentiation is handled inside 
@@ -332,15 +494,15 @@ public class ImageThumbConverter {
         boolean thumbnailGenerated = false;
 
         try {
-            logger.fine("attempting to read the image file with ImageIO.read(InputStream), " + storageIO.getDataFile().getStorageIdentifier());
-            fullSizeImage = ImageIO.read(inputStream);
+            logger.fine("attempting to read the image file with ImageIO, " + storageIO.getDataFile().getStorageIdentifier());
+            fullSizeImage = readImageForThumbnail(inputStream, size);
         } catch (Exception ioex) {
-            logger.warning("Caught exception attempting to read the image file with ImageIO.read(InputStream)");
+            logger.warning("Caught exception attempting to read the image file with ImageIO");
             return false;
         }
 
         if (fullSizeImage == null) {
-            logger.warning("could not read image with ImageIO.read()");
+            logger.warning("could not read image with ImageIO");
             return false;
         }
 
@@ -414,6 +576,53 @@ public class ImageThumbConverter {
 
     }
 
+    /**
+     * Reads an image (a File or an InputStream) to make a thumbnail of the
+     * given size. Unlike ImageIO.read(), the image is decoded with source
+     * subsampling, keeping only every n-th pixel of every n-th row, so that
+     * the memory used is proportional to the size of the thumbnail rather
+     * than to the size of the original (about 1.6 GB for a 20,000x20,000
+     * image). The image read is still at least as large as the thumbnail.
+     *
+     * @return the (subsampled) image, or null if no ImageIO reader can decode
+     *         it
+     */
+    static BufferedImage readImageForThumbnail(Object input, int size) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(input)) {
+            if (imageInputStream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = getSubsampling(width, height, size);
+                logger.fine("image dimensions: " + width + "x" + height + ", reading every " + subsampling + " pixel(s)");
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return the largest subsampling factor that still leaves the longer
+     *         side of the image at least as large as the thumbnail
+     */
+    static int getSubsampling(int width, int height, int size) {
+        return Math.max(1, Math.max(width, height) / Math.max(1, size));
+    }
+
     private static boolean isThumbnailCached(StorageIO<DataFile> storageIO, int size) {
         boolean cached;
         try {
@@ -618,11 +827,11 @@ public class ImageThumbConverter {
         }
 
         try {
-            logger.fine("attempting to read the image file " + fileLocation + " with ImageIO.read()");
-            BufferedImage fullSizeImage = ImageIO.read(new File(fileLocation));
+            logger.fine("attempting to read the image file " + fileLocation + " with ImageIO");
+            BufferedImage fullSizeImage = readImageForThumbnail(new File(fileLocation), size);
 
             if (fullSizeImage == null) {
-                logger.warning("could not read image with ImageIO.read()");
+                logger.warning("could not read image with ImageIO");
                 return null;
             }
 
@@ -0,0 +1,428 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.rserve.RJobRequest;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves a tabular data file as an R data frame, in an .RData file (R
+ * serialization format version 2, XDR, gzip-compressed), in the JVM, without
+ * sending the file to Rserve. The data frame is the same as the one built by
+ * read.dataverseTabData() and createDataverseDataFrame() in
+ * rserve/scripts/dataverse_r_functions.R: the frame is saved as "x", the
+ * categorical variables with value labels are factors (ordered, for the
+ * numeric ones with more than 2 levels), the full dates are Date vectors, and
+ * the variable labels are stored as comments on the columns, and in the
+ * "var.labels" attribute of the frame.
+ *
+ * The data are read from the {@link TabularColumnFiles} one column at a time
+ * (twice: once to work out the type of the column, once to write it), and
+ * written out as they are read, so only the value labels are held in memory.
+ */
+class RDataFileWriter {
+
+    static final String DATA_FRAME_NAME = "x";
+
+    // SEXP types, and the flags of the serialization format
+    private static final int SYMSXP = 1;
+    private static final int LISTSXP = 2;
+    private static final int CHARSXP = 9;
+    private static final int LGLSXP = 10;
+    private static final int INTSXP = 13;
+    private static final int REALSXP = 14;
+    private static final int STRSXP = 16;
+    private static final int VECSXP = 19;
+    private static final int REFSXP = 255;
+    private static final int NILVALUE_SXP = 254;
+    private static final int IS_OBJECT = 1 << 8;
+    private static final int HAS_ATTR = 1 << 9;
+    private static final int HAS_TAG = 1 << 10;
+    private static final int UTF8_MASK = 1 << 3;
+    private static final int ASCII_MASK = 1 << 6;
+
+    // R 3.6.0 wrote the file; R 2.3.0 or later can read it
+    private static final int WRITER_VERSION = (3 << 16) | (6 << 8);
+    private static final int MIN_READER_VERSION = (2 << 16) | (3 << 8);
+
+    static final int NA_INTEGER = Integer.MIN_VALUE;
+    static final double NA_REAL = Double.longBitsToDouble(0x7FF00000000007A2L);
+
+    private static final Pattern INTEGER_PATTERN = Pattern.compile("[-+]?[0-9]+");
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[.SSS][.SS][.S]");
+
+    // The variable types, as passed to read.dataverseTabData()
+    private static final int TYPE_CHARACTER = 0;
+    private static final int TYPE_DISCRETE = 1;
+    private static final int TYPE_BOOLEAN = 3;
+
+    private enum Kind {
+        STRING, INTEGER, REAL, LOGICAL, DATE, DATE_TIME
+    }
+
+    private final RJobRequest request;
+    private final Map<String, Integer> symbols = new HashMap<>();
+    private DataOutputStream out;
+
+    RDataFileWriter(RJobRequest request) {
+        this.request = request;
+    }
+
+    void write(TabularColumnFiles columns, OutputStream stream) throws IOException {
+        String[] names = request.hasUnsafeVariableNames ? request.safeVarNames : request.getVariableNames();
+        String[] labels = request.getVariableLabels();
+        String[] variableIds = request.getVariableIds();
+        int[] types = request.getVariableTypes();
+        Map<String, String> formats = request.getVariableFormats();
+        Map<String, Map<String, String>> valueTable = request.getValueTable();
+        long caseCount = columns.getCaseCount();
+        if (caseCount > Integer.MAX_VALUE) {
+            throw new IOException("Too many cases for an R data frame: " + caseCount);
+        }
+        int n = (int) caseCount;
+        if (types.length != columns.getColumnCount() || names.length != columns.getColumnCount()) {
+            throw new IOException("The variables don't match the columns of the file");
+        }
+
+        GZIPOutputStream gzip = new GZIPOutputStream(stream);
+        out = new DataOutputStream(new BufferedOutputStream(gzip, 64 * 1024));
+        out.write("RDX2\nX\n".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(2);
+        out.writeInt(WRITER_VERSION);
+        out.writeInt(MIN_READER_VERSION);
+
+        // The saved objects are a pairlist, of one: x
+        out.writeInt(LISTSXP | HAS_TAG);
+        writeSymbol(DATA_FRAME_NAME);
+
+        out.writeInt(VECSXP | IS_OBJECT | HAS_ATTR);
+        out.writeInt(columns.getColumnCount());
+        int[] frameTypes = new int[types.length];
+        for (int i = 0; i < columns.getColumnCount(); i++) {
+            String format = formats.get(names[i]);
+            Kind kind = columnKind(columns, i, types[i], format);
+            frameTypes[i] = (kind == Kind.DATE || kind == Kind.DATE_TIME) ? TYPE_DISCRETE : types[i];
+            Map<String, String> valueLabels = valueTable == null ? null : valueTable.get(variableIds[i]);
+            boolean factor = valueLabels != null && !valueLabels.isEmpty() && types[i] < 2
+                    && (kind == Kind.STRING || kind == Kind.INTEGER || kind == Kind.REAL);
+            if (factor) {
+                writeFactor(columns, i, n, kind, types[i], valueLabels, labels[i]);
+            } else {
+                writeColumn(columns, i, n, kind, labels[i]);
+            }
+        }
+
+        // the attributes of the frame:
+        writeAttributeTag("names");
+        writeStrings(names);
+        writeAttributeTag("row.names");
+        // the compact form of the row names 1:n
+        out.writeInt(INTSXP);
+        out.writeInt(2);
+        out.writeInt(NA_INTEGER);
+        out.writeInt(-n);
+        writeAttributeTag("class");
+        writeStrings(new String[]{"data.frame"});
+        writeAttributeTag("var.type");
+        out.writeInt(INTSXP);
+        out.writeInt(frameTypes.length);
+        for (int type : frameTypes) {
+            out.writeInt(type);
+        }
+        writeAttributeTag("var.labels");
+        writeStrings(labels);
+        writeAttributeTag("orig.names");
+        writeStrings(labels);
+        writeAttributeTag("Rsafe2raw");
+        writeSafeToRawNames();
+        out.writeInt(NILVALUE_SXP);
+
+        // end of the pairlist of saved objects
+        out.writeInt(NILVALUE_SXP);
+        out.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Works out how the column is stored in the data frame, the way
+     * read.dataverseTabData() (and type.convert()) would: a numeric column is
+     * an integer vector if all its values are integers, and a character
+     * vector if some of its values are not numbers at all.
+     */
+    private Kind columnKind(TabularColumnFiles columns, int column, int type, String format) throws IOException {
+        if (type == TYPE_CHARACTER) {
+            if ("D".equals(format)) {
+                return Kind.DATE;
+            } else if ("DT".equals(format)) {
+                return Kind.DATE_TIME;
+            }
+            return Kind.STRING;
+        } else if (type == TYPE_BOOLEAN) {
+            return Kind.LOGICAL;
+        }
+        boolean integers = true;
+        try (BufferedReader reader = columns.open(column)) {
+            String value;
+            while ((value = reader.readLine()) != null) {
+                if (value.isEmpty() || "NA".equals(value)) {
+                    continue;
+                }
+                if (integers && INTEGER_PATTERN.matcher(value).matches()) {
+                    try {
+                        integers = Integer.parseInt(value.startsWith("+") ? value.substring(1) : value) != NA_INTEGER;
+                    } catch (NumberFormatException ex) {
+                        integers = false;
+                    }
+                    continue;
+                }
+                integers = false;
+                if (Double.isNaN(parseReal(value)) && !value.equals("NaN")) {
+                    return Kind.STRING;
+                }
+            }
+        }
+        return integers ? Kind.INTEGER : Kind.REAL;
+    }
+
+    private void writeColumn(TabularColumnFiles columns, int column, int n, Kind kind, String label) throws IOException {
+        int flags = switch (kind) {
+            case STRING -> STRSXP;
+            case INTEGER -> INTSXP;
+            case LOGICAL -> LGLSXP;
+            default -> REALSXP;
+        };
+        boolean isObject = kind == Kind.DATE || kind == Kind.DATE_TIME;
+        boolean hasAttributes = isObject || label != null;
+        out.writeInt(flags | (isObject ? IS_OBJECT : 0) | (hasAttributes ? HAS_ATTR : 0));
+        out.writeInt(n);
+        try (BufferedReader reader = columns.open(column)) {
+            for (int i = 0; i < n; i++) {
+                String value = reader.readLine();
+                switch (kind) {
+                    case STRING -> writeCharsxp(TabularColumnFiles.unescapeString(value));
+                    case INTEGER -> out.writeInt(parseInteger(value));
+                    case LOGICAL -> {
+                        double number = parseReal(value);
+                        out.writeInt(Double.isNaN(number) ? NA_INTEGER : (number != 0 ? 1 : 0));
+                    }
+                    case DATE -> writeReal(parseDate(TabularColumnFiles.unescapeString(value)));
+                    case DATE_TIME -> writeReal(parseDateTime(TabularColumnFiles.unescapeString(value)));
+                    default -> writeReal(parseReal(value));
+                }
+            }
+        }
+        if (kind == Kind.DATE) {
+            writeAttributeTag("class");
+            writeStrings(new String[]{"Date"});
+        } else if (kind == Kind.DATE_TIME) {
+            writeAttributeTag("class");
+            writeStrings(new String[]{"POSIXct", "POSIXt"});
+        }
+        if (label != null) {
+            writeAttributeTag("comment");
+            writeStrings(new String[]{label});
+        }
+        if (hasAttributes) {
+            out.writeInt(NILVALUE_SXP);
+        }
+    }
+
+    /**
+     * Writes the column as a factor, with the values that have labels as its
+     * levels (sorted), and the labels as the names of the levels; the values
+     * without a label are NA. As in R, the values with the same label are
+     * mapped to the same level.
+     */
+    private void writeFactor(TabularColumnFiles columns, int column, int n, Kind kind, int type,
+            Map<String, String> valueLabels, String label) throws IOException {
+        boolean numeric = kind != Kind.STRING;
+        // the values with a label, sorted, and their labels:
+        TreeMap<Object, String> levels = new TreeMap<>();
+        for (Map.Entry<String, String> entry : valueLabels.entrySet()) {
+            if (numeric) {
+                double value = parseReal(entry.getKey());
+                if (!Double.isNaN(value)) {
+                    levels.put(value, entry.getValue());
+                }
+            } else {
+                levels.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Map<String, Integer> levelCodes = new LinkedHashMap<>();
+        Map<Object, Integer> codes = new HashMap<>();
+        for (Map.Entry<Object, String> level : levels.entrySet()) {
+            Integer code = levelCodes.computeIfAbsent(level.getValue(), l -> levelCodes.size() + 1);
+            codes.put(level.getKey(), code);
+        }
+        boolean ordered = type > 0 && levels.size() > 2;
+
+        out.writeInt(INTSXP | IS_OBJECT | HAS_ATTR);
+        out.writeInt(n);
+        try (BufferedReader reader = columns.open(column)) {
+            for (int i = 0; i < n; i++) {
+                String value = reader.readLine();
+                Object key = numeric ? (Object) parseReal(value) : TabularColumnFiles.unescapeString(value);
+                Integer code = key == null ? null : codes.get(key);
+                out.writeInt(code == null ? NA_INTEGER : code);
+            }
+        }
+        writeAttributeTag("levels");
+        writeStrings(levelCodes.keySet().toArray(new String[0]));
+        writeAttributeTag("class");
+        writeStrings(ordered ? new String[]{"ordered", "factor"} : new String[]{"factor"});
+        if (label != null) {
+            writeAttributeTag("comment");
+            writeStrings(new String[]{label});
+        }
+        out.writeInt(NILVALUE_SXP);
+    }
+
+    private void writeSafeToRawNames() throws IOException {
+        String[] safeNames = request.hasUnsafeVariableNames ? request.renamedResultArray : null;
+        String[] rawNames = request.hasUnsafeVariableNames ? request.renamedVariableArray : null;
+        if (safeNames == null || rawNames == null || safeNames.length == 0) {
+            out.writeInt(VECSXP);
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(VECSXP | HAS_ATTR);
+        out.writeInt(rawNames.length);
+        for (String rawName : rawNames) {
+            writeStrings(new String[]{rawName});
+        }
+        writeAttributeTag("names");
+        writeStrings(safeNames);
+        out.writeInt(NILVALUE_SXP);
+    }
+
+    /**
+     * Writes a double with its raw bits: DataOutputStream.writeDouble() would
+     * turn the NA of R (a NaN with a payload) into a plain NaN.
+     */
+    private void writeReal(double value) throws IOException {
+        out.writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    private void writeAttributeTag(String name) throws IOException {
+        out.writeInt(LISTSXP | HAS_TAG);
+        writeSymbol(name);
+    }
+
+    private void writeSymbol(String name) throws IOException {
+        Integer reference = symbols.get(name);
+        if (reference != null) {
+            out.writeInt((reference << 8) | REFSXP);
+            return;
+        }
+        out.writeInt(SYMSXP);
+        writeCharsxp(name);
+        symbols.put(name, symbols.size() + 1);
+    }
+
+    private void writeStrings(String[] values) throws IOException {
+        out.writeInt(STRSXP);
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeCharsxp(value);
+        }
+    }
+
+    private void writeCharsxp(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(CHARSXP);
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        boolean ascii = bytes.length == value.length();
+        out.writeInt(CHARSXP | ((ascii ? ASCII_MASK : UTF8_MASK) << 12));
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static int parseInteger(String value) {
+        if (value == null || value.isEmpty() || "NA".equals(value)) {
+            return NA_INTEGER;
+        }
+        try {
+            return Integer.parseInt(value.startsWith("+") ? value.substring(1) : value);
+        } catch (NumberFormatException ex) {
+            return NA_INTEGER;
+        }
+    }
+
+    /**
+     * @return the number, NaN for "NaN", or NA for a missing value, or a value
+     *         that is not a number
+     */
+    static double parseReal(String value) {
+        if (value == null || value.isEmpty() || "NA".equals(value)) {
+            return NA_REAL;
+        }
+        switch (value) {
+            case "NaN":
+                return Double.NaN;
+            case "Inf":
+            case "+Inf":
+                return Double.POSITIVE_INFINITY;
+            case "-Inf":
+                return Double.NEGATIVE_INFINITY;
+            default:
+        }
+        char last = value.charAt(value.length() - 1);
+        if (!Character.isDigit(last) && last != '.') {
+            // Java would accept e.g. "1d", or "Infinity"
+            return NA_REAL;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return NA_REAL;
+        }
+    }
+
+    /**
+     * @return the number of days since 1970-01-01, as stored in an R Date
+     */
+    static double parseDate(String value) {
+        if (value == null) {
+            return NA_REAL;
+        }
+        try {
+            return LocalDate.parse(value.trim()).toEpochDay();
+        } catch (DateTimeParseException ex) {
+            return NA_REAL;
+        }
+    }
+
+    /**
+     * @return the number of seconds since 1970-01-01 00:00 UTC, as stored in
+     *         an R POSIXct; the time is taken as a local time
+     */
+    static double parseDateTime(String value) {
+        if (value == null) {
+            return NA_REAL;
+        }
+        try {
+            LocalDateTime dateTime = LocalDateTime.parse(value.trim(), DATE_TIME_FORMAT);
+            return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() / 1000.0;
+        } catch (DateTimeParseException ex) {
+            return NA_REAL;
+        }
+    }
+}
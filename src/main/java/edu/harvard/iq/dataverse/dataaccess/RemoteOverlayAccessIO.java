@@ -21,6 +21,7 @@ import java.nio.file.Path;
 import java.util.List;
 
 import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
@@ -156,62 +157,128 @@ public class RemoteOverlayAccessIO<T extends DvObject> extends AbstractRemoteOve
 
     @Override
     public long retrieveSizeFromMedia() {
+        StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+        try {
+            if (cache != null) {
+                return cache.getObjectInfo(baseUrl + "/" + path, this::retrieveObjectInfo).size();
+            }
+            return retrieveObjectInfo().size();
+        } catch (IOException e) {
+            logger.warning(e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Sends a HEAD request for the file, for its size and, for the block
+     * cache, its ETag (or last modified date).
+     */
+    private StorageBlockCache.ObjectInfo retrieveObjectInfo() throws IOException {
         long size = -1;
+        String validator = null;
         HttpHead head = new HttpHead(baseUrl + "/" + path);
-        try {
-            CloseableHttpResponse response = getSharedHttpClient().execute(head, localContext);
+        CloseableHttpResponse response = getSharedHttpClient().execute(head, localContext);
 
-            try {
-                int code = response.getStatusLine().getStatusCode();
-                logger.fine("Response for HEAD: " + code);
-                switch (code) {
-                case 200:
-                    Header[] headers = response.getHeaders(HTTP.CONTENT_LEN);
-                    logger.fine("Num headers: " + headers.length);
-                    String sizeString = response.getHeaders(HTTP.CONTENT_LEN)[0].getValue();
-                    logger.fine("Content-Length: " + sizeString);
-                    size = Long.parseLong(response.getHeaders(HTTP.CONTENT_LEN)[0].getValue());
-                    logger.fine("Found file size: " + size);
-                    break;
-                default:
-                    logger.warning("Response from " + head.getURI().toString() + " was " + code);
+        try {
+            int code = response.getStatusLine().getStatusCode();
+            logger.fine("Response for HEAD: " + code);
+            switch (code) {
+            case 200:
+                Header[] headers = response.getHeaders(HTTP.CONTENT_LEN);
+                logger.fine("Num headers: " + headers.length);
+                String sizeString = response.getHeaders(HTTP.CONTENT_LEN)[0].getValue();
+                logger.fine("Content-Length: " + sizeString);
+                size = Long.parseLong(response.getHeaders(HTTP.CONTENT_LEN)[0].getValue());
+                logger.fine("Found file size: " + size);
+                Header validatorHeader = response.getFirstHeader(HttpHeaders.ETAG);
+                if (validatorHeader == null) {
+                    validatorHeader = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
                 }
-            } finally {
-                EntityUtils.consume(response.getEntity());
+                validator = validatorHeader == null ? null : validatorHeader.getValue();
+                break;
+            default:
+                logger.warning("Response from " + head.getURI().toString() + " was " + code);
             }
-        } catch (IOException e) {
-            logger.warning(e.getMessage());
+        } finally {
+            EntityUtils.consume(response.getEntity());
         }
-        return size;
+        return new StorageBlockCache.ObjectInfo(size, validator);
     }
 
     @Override
     public InputStream getInputStream() throws IOException {
         if (super.getInputStream() == null) {
-            try {
-                HttpGet get = new HttpGet(generateTemporaryDownloadUrl(null, null, null));
-                CloseableHttpResponse response = getSharedHttpClient().execute(get, localContext);
+            StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+            StorageBlockCache.ObjectInfo info = null;
+            if (cache != null) {
+                info = cache.getObjectInfo(baseUrl + "/" + path, this::retrieveObjectInfo);
+            }
+            if (StorageBlockCache.isCacheable(info)) {
+                String validator = info.validator();
+                setInputStream(cache.getInputStream(baseUrl + "/" + path, info, (start, end) -> getRange(start, end, validator)));
+            } else {
+                try {
+                    HttpGet get = new HttpGet(generateTemporaryDownloadUrl(null, null, null));
+                    CloseableHttpResponse response = getSharedHttpClient().execute(get, localContext);
+
+                    int code = response.getStatusLine().getStatusCode();
+                    switch (code) {
+                    case 200:
+                        setInputStream(response.getEntity().getContent());
+                        break;
+                    default:
+                        logger.warning("Response from " + get.getURI().toString() + " was " + code);
+                        throw new IOException("Cannot retrieve: " + baseUrl + "/" + path + " code: " + code);
+                    }
+                } catch (Exception e) {
+                    logger.warning(e.getMessage());
+                    e.printStackTrace();
+                    throw new IOException("Error retrieving: " + baseUrl + "/" + path + " " + e.getMessage());
 
-                int code = response.getStatusLine().getStatusCode();
-                switch (code) {
-                case 200:
-                    setInputStream(response.getEntity().getContent());
-                    break;
-                default:
-                    logger.warning("Response from " + get.getURI().toString() + " was " + code);
-                    throw new IOException("Cannot retrieve: " + baseUrl + "/" + path + " code: " + code);
                 }
-            } catch (Exception e) {
-                logger.warning(e.getMessage());
-                e.printStackTrace();
-                throw new IOException("Error retrieving: " + baseUrl + "/" + path + " " + e.getMessage());
-
             }
             setChannel(Channels.newChannel(super.getInputStream()));
         }
         return super.getInputStream();
     }
 
+    /**
+     * Retrieves a range of the file, for the block cache, provided the file
+     * still matches the validator (ETag or Last-Modified date) of the cached
+     * metadata. A server that ignores the Range header sends the whole file,
+     * which is then skipped to the start of the range.
+     */
+    private InputStream getRange(long start, long end, String validator) throws IOException {
+        HttpGet get = new HttpGet(generateTemporaryDownloadUrl(null, null, null));
+        get.addHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + end);
+        boolean isETag = validator.startsWith("\"") || validator.startsWith("W/");
+        if (validator.startsWith("\"")) {
+            get.addHeader(HttpHeaders.IF_MATCH, validator);
+        } else if (!isETag) {
+            get.addHeader(HttpHeaders.IF_UNMODIFIED_SINCE, validator);
+        }
+        CloseableHttpResponse response = getSharedHttpClient().execute(get, localContext);
+        int code = response.getStatusLine().getStatusCode();
+        // (also checked on the response, for the servers ignoring the
+        // preconditions, and for the weak ETags, that If-Match can't be used with)
+        Header validatorHeader = response.getFirstHeader(isETag ? HttpHeaders.ETAG : HttpHeaders.LAST_MODIFIED);
+        if (code == 412 || ((code == 200 || code == 206) && validatorHeader != null && !validator.equals(validatorHeader.getValue()))) {
+            EntityUtils.consume(response.getEntity());
+            throw new StorageBlockCache.StaleObjectException(baseUrl + "/" + path + " no longer matches " + validator);
+        }
+        switch (code) {
+        case 206:
+            return response.getEntity().getContent();
+        case 200:
+            InputStream in = response.getEntity().getContent();
+            in.skipNBytes(start);
+            return in;
+        default:
+            EntityUtils.consume(response.getEntity());
+            throw new IOException("Cannot retrieve bytes " + start + "-" + end + " of " + baseUrl + "/" + path + " code: " + code);
+        }
+    }
+
     @Override
     public Channel getChannel() throws IOException {
         if (super.getChannel() == null) {
@@ -234,6 +301,10 @@ public class RemoteOverlayAccessIO<T extends DvObject> extends AbstractRemoteOve
         if (!isDirectAccess()) {
             throw new IOException("Direct Access IO must be used to permanently delete stored file objects");
         }
+        StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+        if (cache != null) {
+            cache.invalidate(baseUrl + "/" + path);
+        }
         try {
             HttpDelete del = new HttpDelete(baseUrl + "/" + path);
             CloseableHttpResponse response = getSharedHttpClient().execute(del, localContext);
@@ -18,6 +18,7 @@ import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
@@ -294,10 +295,15 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     @Override
     public InputStream getInputStream() throws IOException {
         if(super.getInputStream()==null) {
-            try {
-                setInputStream(s3.getObject(new GetObjectRequest(bucketName, key)).getObjectContent());
-            } catch (SdkClientException sce) {
-                throw new IOException("Cannot get S3 object " + key + " ("+sce.getMessage()+")");
+            InputStream cached = getCachedInputStream(key);
+            if (cached != null) {
+                setInputStream(cached);
+            } else {
+                try {
+                    setInputStream(s3.getObject(new GetObjectRequest(bucketName, key)).getObjectContent());
+                } catch (SdkClientException sce) {
+                    throw new IOException("Cannot get S3 object " + key + " ("+sce.getMessage()+")");
+                }
             }
         }
 
@@ -355,6 +361,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
 
         // if it has uploaded successfully, we can reset the size
         // of the object:
+        invalidateCachedMetadata(key);
         setSize(newFileSize);
     }
 
@@ -398,6 +405,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
 
                 throw new IOException(failureMsg);
             }
+            invalidateCachedMetadata(key);
             setSize(filesize);  
         }
     }
@@ -424,6 +432,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
             throw new IOException(failureMsg);
         }
         tempFile.delete();
+        invalidateCachedMetadata(key);
         ObjectMetadata objectMetadata = s3.getObjectMetadata(bucketName, key);
         if (objectMetadata != null) {
             setSize(objectMetadata.getContentLength());
@@ -443,6 +452,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         try {
             DeleteObjectRequest deleteObjRequest = new DeleteObjectRequest(bucketName, key);
             s3.deleteObject(deleteObjRequest);
+            invalidateCachedMetadata(key);
         } catch (AmazonClientException ase) {
             logger.warning("Caught an AmazonClientException in S3AccessIO.delete(): " + ase.getMessage());
             throw new IOException("Failed to delete storage location " + getStorageLocation());
@@ -474,6 +484,10 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         open();
         logger.fine("Inside isAuxObjectCached");
         String destinationKey = getDestinationKey(auxItemTag);
+        StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+        if (cache != null) {
+            return cache.getObjectInfo(bucketName + "/" + destinationKey, () -> retrieveObjectInfo(destinationKey)).exists();
+        }
         try {
             return s3.doesObjectExist(bucketName, destinationKey);
         } catch (AmazonClientException ase) {
@@ -486,6 +500,15 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     public long getAuxObjectSize(String auxItemTag) throws IOException {
         open();
         String destinationKey = getDestinationKey(auxItemTag);
+        StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+        if (cache != null) {
+            try {
+                return cache.getObjectInfo(bucketName + "/" + destinationKey, () -> retrieveObjectInfo(destinationKey)).size();
+            } catch (IOException e) {
+                logger.warning("Caught an exception in S3AccessIO.getAuxObjectSize:    " + e.getMessage());
+                return -1;
+            }
+        }
         try {
             return s3.getObjectMetadata(bucketName, destinationKey).getContentLength();
         } catch (AmazonClientException ase) {
@@ -504,6 +527,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         String destinationKey = getDestinationKey(auxItemTag);
         try {
             s3.copyObject(new CopyObjectRequest(bucketName, key, bucketName, destinationKey));
+            invalidateCachedMetadata(destinationKey);
         } catch (AmazonClientException ase) {
             logger.warning("Caught an AmazonClientException in S3AccessIO.backupAsAux:    " + ase.getMessage());
             throw new IOException("S3AccessIO: Unable to backup original auxiliary object");
@@ -516,6 +540,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         String destinationKey = getDestinationKey(auxItemTag);
         try {
             s3.copyObject(new CopyObjectRequest(bucketName, destinationKey,  bucketName, key));
+            invalidateCachedMetadata(key);
             deleteAuxObject(auxItemTag);
         } catch (AmazonClientException ase) {
             logger.warning("Caught an AmazonServiceException in S3AccessIO.backupAsAux:    " + ase.getMessage());
@@ -533,6 +558,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         try {
             File inputFile = fileSystemPath.toFile();
             s3.putObject(new PutObjectRequest(bucketName, destinationKey, inputFile));            
+            invalidateCachedMetadata(destinationKey);
         } catch (AmazonClientException ase) {
             logger.warning("Caught an AmazonClientException in S3AccessIO.savePathAsAux():    " + ase.getMessage());
             throw new IOException("S3AccessIO: Failed to save path as an auxiliary object.");
@@ -552,6 +578,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
             metadata.setContentLength(filesize);
             try {
                 s3.putObject(bucketName, destinationKey, inputStream, metadata);
+                invalidateCachedMetadata(destinationKey);
             } catch (SdkClientException ioex) {
                 String failureMsg = ioex.getMessage();
 
@@ -599,6 +626,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         
         try {
             s3.putObject(bucketName, destinationKey, tempFile);
+            invalidateCachedMetadata(destinationKey);
         } catch (SdkClientException ioex) {
             String failureMsg = ioex.getMessage();
 
@@ -680,6 +708,7 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         try {
             DeleteObjectRequest dor = new DeleteObjectRequest(bucketName, destinationKey);
             s3.deleteObject(dor);
+            invalidateCachedMetadata(destinationKey);
         } catch (AmazonClientException ase) {
             logger.warning("S3AccessIO: Unable to delete object    " + ase.getMessage());
         }
@@ -731,6 +760,8 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
             s3.deleteObjects(multiObjectDeleteRequest);
         } catch (SdkClientException e) {
             throw new IOException("S3AccessIO: Failed to delete one or more auxiliary objects.");
+        } finally {
+            keys.forEach(k -> invalidateCachedMetadata(k.getKey()));
         }
     }
 
@@ -762,6 +793,16 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         } else {
             logger.warning("Trying to check if a path exists is only supported for a data file.");
         }
+        StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+        if (cache != null && destinationKey != null) {
+            String objectKey = destinationKey;
+            try {
+                return cache.getObjectInfo(bucketName + "/" + objectKey, () -> retrieveObjectInfo(objectKey)).exists();
+            } catch (IOException e) {
+                logger.warning("Caught an exception in S3AccessIO.exists():    " + e.getMessage());
+                return false;
+            }
+        }
         try {
             return s3.doesObjectExist(bucketName, destinationKey);
         } catch (AmazonClientException ase) {
@@ -783,6 +824,15 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     @Override
     public InputStream getAuxFileAsInputStream(String auxItemTag) throws IOException {
         String destinationKey = getDestinationKey(auxItemTag);
+        try {
+            InputStream cached = getCachedInputStream(destinationKey);
+            if (cached != null) {
+                return cached;
+            }
+        } catch (IOException e) {
+            logger.fine("Caught an exception in S3AccessIO.getAuxFileAsInputStream() (object not cached?):    " + e.getMessage());
+            return null;
+        }
         try {
             S3Object s3object = s3.getObject(new GetObjectRequest(bucketName, destinationKey));
             if (s3object != null) {
@@ -1431,6 +1481,15 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
     @Override
     public long retrieveSizeFromMedia() throws IOException {
         key = getMainFileKey();
+        StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+        if (cache != null) {
+            String objectKey = key;
+            StorageBlockCache.ObjectInfo info = cache.getObjectInfo(bucketName + "/" + objectKey, () -> retrieveObjectInfo(objectKey));
+            if (!info.exists()) {
+                throw new IOException("Cannot get S3 object " + key + " (not found)");
+            }
+            return info.size();
+        }
         ObjectMetadata objectMetadata = null;
         try {
             objectMetadata = s3.getObjectMetadata(bucketName, key);
@@ -1440,6 +1499,70 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         return objectMetadata.getContentLength();
     }
     
+    /**
+     * Retrieves the size and ETag of an object, for the block cache of the
+     * store.
+     */
+    private StorageBlockCache.ObjectInfo retrieveObjectInfo(String objectKey) throws IOException {
+        try {
+            ObjectMetadata objectMetadata = s3.getObjectMetadata(bucketName, objectKey);
+            return new StorageBlockCache.ObjectInfo(objectMetadata.getContentLength(), objectMetadata.getETag());
+        } catch (AmazonS3Exception ase) {
+            if (ase.getStatusCode() == 404) {
+                return StorageBlockCache.ObjectInfo.MISSING;
+            }
+            throw new IOException("Cannot get S3 object " + objectKey + " (" + ase.getMessage() + ")");
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get S3 object " + objectKey + " (" + sce.getMessage() + ")");
+        }
+    }
+
+    /**
+     * @return a stream of the object read through the block cache of the
+     *         store, or null if the store has no cache, or the object can't be
+     *         cached
+     * @throws IOException if the object does not exist
+     */
+    private InputStream getCachedInputStream(String objectKey) throws IOException {
+        StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+        if (cache == null) {
+            return null;
+        }
+        StorageBlockCache.ObjectInfo info = cache.getObjectInfo(bucketName + "/" + objectKey, () -> retrieveObjectInfo(objectKey));
+        if (!info.exists()) {
+            throw new IOException("Cannot get S3 object " + objectKey + " (not found)");
+        }
+        if (!StorageBlockCache.isCacheable(info)) {
+            return null;
+        }
+        return cache.getInputStream(bucketName + "/" + objectKey, info, (start, end) -> {
+            try {
+                // Only the version the cached metadata is about; the SDK
+                // returns null when the ETag no longer matches
+                S3Object object = s3.getObject(new GetObjectRequest(bucketName, objectKey).withRange(start, end)
+                        .withMatchingETagConstraint(info.validator()));
+                if (object == null) {
+                    throw new StorageBlockCache.StaleObjectException("S3 object " + objectKey + " no longer has ETag " + info.validator());
+                }
+                return object.getObjectContent();
+            } catch (AmazonS3Exception ase) {
+                if (ase.getStatusCode() == 412) {
+                    throw new StorageBlockCache.StaleObjectException("S3 object " + objectKey + " no longer has ETag " + info.validator());
+                }
+                throw new IOException("Cannot get S3 object " + objectKey + " (" + ase.getMessage() + ")");
+            } catch (SdkClientException sce) {
+                throw new IOException("Cannot get S3 object " + objectKey + " (" + sce.getMessage() + ")");
+            }
+        });
+    }
+
+    private void invalidateCachedMetadata(String objectKey) {
+        StorageBlockCache cache = StorageBlockCache.forDriver(driverId);
+        if (cache != null) {
+            cache.invalidate(bucketName + "/" + objectKey);
+        }
+    }
+
     public static String getNewIdentifier(String driverId) {
         return driverId + DataAccess.SEPARATOR + getConfigParamForDriver(driverId, BUCKET_NAME) + ":" + FileUtil.generateStorageIdentifier();
     }
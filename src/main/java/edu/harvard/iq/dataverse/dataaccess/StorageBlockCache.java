@@ -0,0 +1,364 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+/**
+ * An optional, node-local, read-through cache of the objects of a remote
+ * store (S3, remote overlay), so that the hot objects of the store (the files
+ * and auxiliary files behind thumbnails, previews, external tools, ranged
+ * downloads...) are not retrieved from the remote end on every access.
+ *
+ * It has two parts:
+ * <ul>
+ * <li>a short-lived, in-memory cache of the metadata of the objects (their
+ * size, and an ETag or last modified date used to validate the cached
+ * blocks), used for size and existence checks;</li>
+ * <li>a size-bounded cache of fixed-size blocks of the objects, on local
+ * disk, with least recently used eviction. Blocks are keyed by the object and
+ * its validator, so a modified object is read again, and the blocks of the
+ * previous version age out.</li>
+ * </ul>
+ *
+ * The cache is configured per store, and is disabled unless
+ * dataverse.files.&lt;id&gt;.block-cache-size is set. It is cleared when the
+ * application is started.
+ */
+public class StorageBlockCache {
+
+    private static final Logger logger = Logger.getLogger(StorageBlockCache.class.getCanonicalName());
+
+    // Store driver options
+    static final String BLOCK_CACHE_SIZE = "block-cache-size";
+    static final String BLOCK_SIZE = "block-cache-block-size";
+    static final String BLOCK_CACHE_DIRECTORY = "block-cache-directory";
+    static final String METADATA_CACHE_TTL = "metadata-cache-ttl";
+
+    static final long MB = 1024 * 1024;
+    private static final int DEFAULT_BLOCK_SIZE_MB = 4;
+    private static final int DEFAULT_METADATA_CACHE_TTL = 30;
+
+    private static final Map<String, Optional<StorageBlockCache>> caches = new ConcurrentHashMap<>();
+
+    /**
+     * The metadata of an object, as retrieved from the store.
+     *
+     * @param size      the size of the object, or -1 if it does not exist
+     * @param validator an ETag or last modified date, identifying the current
+     *                  content of the object, or null if the store did not
+     *                  provide one (in which case the object is not cached)
+     */
+    public record ObjectInfo(long size, String validator) {
+        public static final ObjectInfo MISSING = new ObjectInfo(-1, null);
+
+        public boolean exists() {
+            return size >= 0;
+        }
+    }
+
+    @FunctionalInterface
+    public interface MetadataFetcher {
+        ObjectInfo fetch() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface RangeFetcher {
+        /**
+         * @return a stream starting at byte start of the object, with at least
+         *         the bytes up to end (inclusive)
+         * @throws StaleObjectException if the object no longer matches the
+         *                              validator the range was asked for
+         */
+        InputStream fetch(long start, long end) throws IOException;
+    }
+
+    /**
+     * Thrown by a {@link RangeFetcher} when the object has been modified since
+     * its metadata was cached, so that the bytes of the new version are not
+     * cached under the validator of the old one.
+     */
+    public static class StaleObjectException extends IOException {
+        public StaleObjectException(String message) {
+            super(message);
+        }
+    }
+
+    private final Path directory;
+    private final long maxSize;
+    private final int blockSize;
+    private final Cache<String, ObjectInfo> metadata;
+
+    // The cached blocks, in least recently used order, with their size
+    private final LinkedHashMap<String, Long> blocks = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalSize = 0;
+
+    StorageBlockCache(Path directory, long maxSize, int blockSize, int metadataTtlSeconds) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.blockSize = blockSize;
+        this.metadata = Caffeine.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(Duration.ofSeconds(metadataTtlSeconds))
+                .build();
+        Files.createDirectories(directory);
+        // the index of the blocks is not persisted: start empty
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * @return the cache of the store, or null if the store does not have one
+     */
+    public static StorageBlockCache forDriver(String driverId) {
+        return caches.computeIfAbsent(driverId, StorageBlockCache::create).orElse(null);
+    }
+
+    private static Optional<StorageBlockCache> create(String driverId) {
+        long maxSizeMb = Long.parseLong(StorageIO.getConfigParamForDriver(driverId, BLOCK_CACHE_SIZE, "0"));
+        if (maxSizeMb <= 0) {
+            return Optional.empty();
+        }
+        int blockSizeMb = Integer.parseInt(StorageIO.getConfigParamForDriver(driverId, BLOCK_SIZE, String.valueOf(DEFAULT_BLOCK_SIZE_MB)));
+        int ttl = Integer.parseInt(StorageIO.getConfigParamForDriver(driverId, METADATA_CACHE_TTL, String.valueOf(DEFAULT_METADATA_CACHE_TTL)));
+        String defaultDirectory = Path.of(JvmSettings.FILES_DIRECTORY.lookupOptional().orElse("/tmp/files"), "blockcache", driverId).toString();
+        Path directory = Path.of(StorageIO.getConfigParamForDriver(driverId, BLOCK_CACHE_DIRECTORY, defaultDirectory));
+        try {
+            StorageBlockCache cache = new StorageBlockCache(directory, maxSizeMb * MB, (int) (blockSizeMb * MB), ttl);
+            logger.info("Caching blocks of " + blockSizeMb + " MB of the objects of store " + driverId + " in " + directory
+                    + ", up to " + maxSizeMb + " MB");
+            return Optional.of(cache);
+        } catch (IOException e) {
+            logger.warning("Block cache of store " + driverId + " disabled: cannot use " + directory + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Looks up the metadata of an object, retrieving it with the fetcher if it
+     * is not cached, or no longer.
+     */
+    public ObjectInfo getObjectInfo(String objectKey, MetadataFetcher fetcher) throws IOException {
+        ObjectInfo info = metadata.getIfPresent(objectKey);
+        if (info == null) {
+            info = fetcher.fetch();
+            metadata.put(objectKey, info);
+        }
+        return info;
+    }
+
+    /**
+     * Forgets the metadata of an object that was written or deleted through
+     * this node. (Changes made elsewhere are only seen once the metadata
+     * expires.)
+     */
+    public void invalidate(String objectKey) {
+        metadata.invalidate(objectKey);
+    }
+
+    /**
+     * @return whether the content of the object can be cached
+     */
+    public static boolean isCacheable(ObjectInfo info) {
+        return info != null && info.exists() && info.validator() != null;
+    }
+
+    /**
+     * @return a stream of the content of the object, read from the cached
+     *         blocks, and from the store (with the fetcher) for the blocks that
+     *         are not cached yet. If the object turns out to have been
+     *         modified, the block is dropped, the metadata of the object is
+     *         forgotten, and the read fails with a StaleObjectException.
+     */
+    public InputStream getInputStream(String objectKey, ObjectInfo info, RangeFetcher fetcher) {
+        return new BlockInputStream(objectKey, DigestUtils.sha256Hex((objectKey + "\n" + info.validator()).getBytes(StandardCharsets.UTF_8)),
+                info.size(), fetcher);
+    }
+
+    private InputStream openBlock(String blockName, long start, int length, RangeFetcher fetcher) throws IOException {
+        Path file = directory.resolve(blockName);
+        if (isCached(blockName)) {
+            try {
+                return Files.newInputStream(file);
+            } catch (NoSuchFileException | FileNotFoundException e) {
+                // evicted in the meantime
+                forget(blockName);
+            }
+        }
+        Path tempFile = Files.createTempFile(directory, blockName, ".tmp");
+        try {
+            try (InputStream in = fetcher.fetch(start, start + length - 1);
+                    OutputStream out = Files.newOutputStream(tempFile)) {
+                copy(in, out, length);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        add(blockName, length);
+        return Files.newInputStream(file);
+    }
+
+    private static void copy(InputStream in, OutputStream out, int length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int remaining = length;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new IOException("Unexpected end of the object: " + remaining + " bytes missing");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+
+    private synchronized boolean isCached(String blockName) {
+        return blocks.get(blockName) != null;
+    }
+
+    private synchronized void forget(String blockName) {
+        Long size = blocks.remove(blockName);
+        if (size != null) {
+            totalSize -= size;
+        }
+    }
+
+    private synchronized void add(String blockName, long size) {
+        Long previous = blocks.put(blockName, size);
+        totalSize += size - (previous == null ? 0 : previous);
+        Iterator<Map.Entry<String, Long>> eldest = blocks.entrySet().iterator();
+        while (totalSize > maxSize && eldest.hasNext()) {
+            Map.Entry<String, Long> block = eldest.next();
+            if (block.getKey().equals(blockName)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(directory.resolve(block.getKey()));
+            } catch (IOException e) {
+                logger.warning("Failed to evict cached block " + block.getKey() + ": " + e.getMessage());
+            }
+            totalSize -= block.getValue();
+            eldest.remove();
+        }
+    }
+
+    synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Reads an object a block at a time. Skipping moves to the block of the
+     * new position without reading the blocks in between.
+     */
+    private class BlockInputStream extends InputStream {
+
+        private final String objectKey;
+        private final String blockPrefix;
+        private final long size;
+        private final RangeFetcher fetcher;
+        private long position = 0;
+        private InputStream block = null;
+
+        BlockInputStream(String objectKey, String blockPrefix, long size, RangeFetcher fetcher) {
+            this.objectKey = objectKey;
+            this.blockPrefix = blockPrefix;
+            this.size = size;
+            this.fetcher = fetcher;
+        }
+
+        private boolean nextBlock() throws IOException {
+            if (block != null) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            long index = position / blockSize;
+            long start = index * blockSize;
+            int length = (int) Math.min(blockSize, size - start);
+            try {
+                block = openBlock(blockPrefix + "." + index, start, length, fetcher);
+            } catch (StaleObjectException e) {
+                logger.fine("Object " + objectKey + " modified since its metadata was cached: " + e.getMessage());
+                invalidate(objectKey);
+                throw e;
+            }
+            block.skipNBytes(position - start);
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (nextBlock()) {
+                int n = block.read(b, off, len);
+                if (n > 0) {
+                    position += n;
+                    return n;
+                }
+                block.close();
+                block = null;
+            }
+            return -1;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, size - position));
+            if (skipped > 0) {
+                if (block != null) {
+                    block.close();
+                    block = null;
+                }
+                position += skipped;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return block == null ? 0 : block.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (block != null) {
+                block.close();
+                block = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+/**
+ * Splits a tab-delimited data file into one temporary file per column, with
+ * the values of the column one per line, so that the data can be read one
+ * column at a time, e.g. by the writers of the formats that store the data
+ * column by column. The tab file is read once for every
+ * {@link #MAX_OPEN_FILES} columns, which bounds the number of files open at
+ * the same time; apart from their buffers, nothing is held in memory.
+ *
+ * The values are split as they are; a missing value is an empty line. The
+ * temporary files are deleted on {@link #close()}.
+ */
+class TabularColumnFiles implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(TabularColumnFiles.class.getCanonicalName());
+
+    static final int MAX_OPEN_FILES = 128;
+
+    private final Path directory;
+    private final int columnCount;
+    private long caseCount = 0;
+
+    /**
+     * @param tabFile     the tab-delimited data file
+     * @param columnCount the number of columns (variables) in the file
+     * @param skipHeader  true if the first line of the file is the variable
+     *                    name header
+     */
+    TabularColumnFiles(File tabFile, int columnCount, boolean skipHeader) throws IOException {
+        this.columnCount = columnCount;
+        this.directory = Files.createTempDirectory("tabColumns");
+        try {
+            for (int first = 0; first < columnCount; first += MAX_OPEN_FILES) {
+                caseCount = split(tabFile, first, Math.min(columnCount, first + MAX_OPEN_FILES), skipHeader);
+            }
+        } catch (IOException | RuntimeException ex) {
+            close();
+            throw ex;
+        }
+        logger.fine("Split " + columnCount + " columns of " + caseCount + " cases into " + directory);
+    }
+
+    private long split(File tabFile, int first, int last, boolean skipHeader) throws IOException {
+        Writer[] writers = new Writer[last - first];
+        long lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tabFile), StandardCharsets.UTF_8))) {
+            for (int column = first; column < last; column++) {
+                writers[column - first] = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(columnFile(column).toFile()), StandardCharsets.UTF_8));
+            }
+            if (skipHeader) {
+                reader.readLine();
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int start = 0;
+                for (int column = 0; column < last; column++) {
+                    int end = line.indexOf('\t', start);
+                    if (end < 0) {
+                        end = line.length();
+                    }
+                    if (column >= first) {
+                        Writer writer = writers[column - first];
+                        writer.write(line, start, end - start);
+                        writer.write('\n');
+                    }
+                    start = Math.min(end + 1, line.length());
+                }
+                lines++;
+            }
+        } finally {
+            for (Writer writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+        return lines;
+    }
+
+    private Path columnFile(int column) {
+        return directory.resolve("column" + column);
+    }
+
+    int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return the number of cases (rows) in the file
+     */
+    long getCaseCount() {
+        return caseCount;
+    }
+
+    /**
+     * @param column the index of the column, starting from 0
+     * @return a reader returning the values of the column, one per line
+     */
+    BufferedReader open(int column) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(columnFile(column).toFile()), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+
+    /**
+     * Turns a value of a character variable, as stored in the tab file (in
+     * double quotes, with the special characters escaped), back into the
+     * original string.
+     *
+     * @return the string, or null for a missing value
+     */
+    static String unescapeString(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        int start = value.startsWith("\"") ? 1 : 0;
+        int end = value.length() > start && value.endsWith("\"") ? value.length() - 1 : value.length();
+        if (value.indexOf('\\') < 0) {
+            return value.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't' -> sb.append('\t');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    default -> sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -11,6 +11,7 @@ import edu.harvard.iq.dataverse.DataverseLinkingServiceBean;
 import edu.harvard.iq.dataverse.DataverseRoleServiceBean;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUserServiceBean;
+import edu.harvard.iq.dataverse.DvObjectHierarchyServiceBean;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
 import edu.harvard.iq.dataverse.FeaturedDataverseServiceBean;
 import edu.harvard.iq.dataverse.FileDownloadServiceBean;
@@ -121,6 +122,8 @@ public interface CommandContext {
     
     public StorageUseServiceBean storageUse();
 
+    public DvObjectHierarchyServiceBean dvObjectHierarchy();
+
     public SystemConfig systemConfig();
 
     public PrivateUrlServiceBean privateUrl();
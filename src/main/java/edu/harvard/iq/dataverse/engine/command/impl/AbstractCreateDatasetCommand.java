@@ -69,6 +69,16 @@ public abstract class AbstractCreateDatasetCommand extends AbstractDatasetComman
         // base class - default to nothing.
     }
     
+    /**
+     * Indexes the new dataset. By default, asynchronously, right after it
+     * has been created.
+     * @param theDataset The em-managed dataset.
+     * @param ctxt 
+     */
+    protected void indexDataset( Dataset theDataset, CommandContext ctxt ) {
+        ctxt.index().asyncIndexDataset(theDataset, true);
+    }
+    
     protected abstract void handlePid( Dataset theDataset, CommandContext ctxt ) throws CommandException ;
     
     @Override
@@ -149,7 +159,7 @@ public abstract class AbstractCreateDatasetCommand extends AbstractDatasetComman
         //Use for code that requires database ids
         postDBFlush(theDataset, ctxt);
         
-        ctxt.index().asyncIndexDataset(theDataset, true);
+        indexDataset(theDataset, ctxt);
                  
         return theDataset;
     }
@@ -23,14 +23,18 @@ import edu.harvard.iq.dataverse.pidproviders.doi.fake.FakeDOIProvider;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static java.util.stream.Collectors.joining;
 
 import jakarta.ejb.EJB;
+import jakarta.json.JsonObject;
 import jakarta.validation.ConstraintViolation;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 
@@ -307,11 +311,17 @@ public abstract class AbstractDatasetCommand<T> extends AbstractCommand<T> {
     }
 
     protected void registerExternalVocabValuesIfAny(CommandContext ctxt, DatasetVersion newVersion) {
+        Map<Long, JsonObject> cvocMap = ctxt.dsField().getCVocConf(true);
+        List<DatasetField> cvocFields = new ArrayList<>();
         for (DatasetField df : newVersion.getFlatDatasetFields()) {
             logger.fine("Found id: " + df.getDatasetFieldType().getId());
-            if (ctxt.dsField().getCVocConf(true).containsKey(df.getDatasetFieldType().getId())) {
-                ctxt.dsField().registerExternalVocabValues(df);
+            if (cvocMap.containsKey(df.getDatasetFieldType().getId())) {
+                cvocFields.add(df);
             }
         }
+        // All the terms are registered at once, so that the missing ones are retrieved in parallel
+        if (!cvocFields.isEmpty()) {
+            ctxt.dsField().registerExternalVocabValues(cvocFields);
+        }
     }
 }
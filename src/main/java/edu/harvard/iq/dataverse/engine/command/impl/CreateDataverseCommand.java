@@ -187,6 +187,7 @@ public class CreateDataverseCommand extends AbstractCommand<Dataverse> {
 
         // TODO: save is called here and above; we likely don't need both
         managedDv = ctxt.dataverses().save(managedDv);
+        ctxt.dvObjectHierarchy().collectionSaved(managedDv.getId(), managedDv.getOwner() == null ? null : managedDv.getOwner().getId());
         return managedDv;
     }
 
@@ -216,6 +216,8 @@ public class DeleteDataFileCommand extends AbstractVoidCommand {
                 logger.log(Level.WARNING, "Identifier deletion was not successfull:", e.getMessage());
             }
         }
+        // (the guestbook responses of the file are deleted with it)
+        ctxt.responses().deleteDownloadCounts(doomed);
         DataFile doomedAndMerged = ctxt.em().merge(doomed);
         ctxt.em().remove(doomedAndMerged);
         /**
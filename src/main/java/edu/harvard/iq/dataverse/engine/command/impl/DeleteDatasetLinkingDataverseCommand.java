@@ -41,6 +41,7 @@ public class DeleteDatasetLinkingDataverseCommand extends AbstractCommand<Datase
         Dataset merged = ctxt.em().merge(editedDs);
         DatasetLinkingDataverse doomedAndMerged = ctxt.em().merge(doomed);
         ctxt.em().remove(doomedAndMerged);
+        ctxt.dvObjectHierarchy().datasetUnlinked(doomed.getDataset().getId(), doomed.getLinkingDataverse().getId());
 
         try {
             ctxt.index().indexDataverse(doomed.getLinkingDataverse());
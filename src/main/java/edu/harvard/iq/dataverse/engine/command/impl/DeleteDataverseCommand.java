@@ -81,6 +81,7 @@ public class DeleteDataverseCommand extends AbstractVoidCommand {
         // DATAVERSE
         Dataverse doomedAndMerged = ctxt.em().merge(doomed);
         ctxt.em().remove(doomedAndMerged);
+        ctxt.dvObjectHierarchy().collectionDeleted(doomed.getId());
     }
 
     @Override 
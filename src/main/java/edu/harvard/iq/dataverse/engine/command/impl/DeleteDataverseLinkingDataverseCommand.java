@@ -49,6 +49,7 @@ public class DeleteDataverseLinkingDataverseCommand extends AbstractCommand<Data
         Dataverse merged = ctxt.em().merge(editedDv);
         DataverseLinkingDataverse doomedAndMerged = ctxt.em().merge(doomed);
         ctxt.em().remove(doomedAndMerged);
+        ctxt.dvObjectHierarchy().collectionUnlinked(doomed.getDataverse().getId(), doomed.getLinkingDataverse().getId());
         
         if (index) {
             //can only index merged in the onSuccess method so must index doomed linking dataverse here
@@ -129,7 +129,9 @@ public class DestroyDatasetCommand extends AbstractVoidCommand {
         datasetAndFileSolrIdsToDelete.add(solrIdOfDeaccessionedDatasetVersion);
         
         // dataset
+        ctxt.responses().deleteDownloadCounts(managedDoomed);
         ctxt.em().remove(managedDoomed);
+        ctxt.dvObjectHierarchy().datasetDeleted(managedDoomed.getId());
 
 
     }
@@ -59,6 +59,7 @@ public class LinkDatasetCommand extends AbstractCommand<DatasetLinkingDataverse>
         datasetLinkingDataverse.setLinkingDataverse(linkingDataverse);
         datasetLinkingDataverse.setLinkCreateTime(new Timestamp(new Date().getTime()));
         ctxt.dsLinking().save(datasetLinkingDataverse);
+        ctxt.dvObjectHierarchy().datasetLinked(linkedDataset.getId(), linkingDataverse.getId());
         ctxt.em().flush();
 
         return datasetLinkingDataverse;
@@ -64,6 +64,7 @@ public class LinkDataverseCommand extends AbstractCommand<DataverseLinkingDatave
         dataverseLinkingDataverse.setLinkingDataverse(linkingDataverse);
         dataverseLinkingDataverse.setLinkCreateTime(new Timestamp(new Date().getTime()));
         ctxt.dvLinking().save(dataverseLinkingDataverse);
+        ctxt.dvObjectHierarchy().collectionLinked(linkedDataverse.getId(), linkingDataverse.getId());
         return dataverseLinkingDataverse;
     }  
     
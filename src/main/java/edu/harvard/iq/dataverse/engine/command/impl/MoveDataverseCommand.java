@@ -1,16 +1,13 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
-import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetLinkingDataverse;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseFeaturedDataverse;
-import edu.harvard.iq.dataverse.DataverseLinkingDataverse;
 import edu.harvard.iq.dataverse.Guestbook;
 import edu.harvard.iq.dataverse.MetadataBlock;
 import edu.harvard.iq.dataverse.Template;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
-import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
 import edu.harvard.iq.dataverse.engine.command.AbstractVoidCommand;
 import edu.harvard.iq.dataverse.engine.command.CommandContext;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
@@ -20,14 +17,12 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.IllegalCommandException;
 import edu.harvard.iq.dataverse.engine.command.exception.PermissionException;
 import edu.harvard.iq.dataverse.util.BundleUtil;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Logger;
-import org.apache.solr.client.solrj.SolrServerException;
 
 /**
  * A command to move a {@link Dataverse} between two {@link Dataverse}s.
@@ -64,6 +59,7 @@ public class MoveDataverseCommand extends AbstractVoidCommand {
         long moveDvStart = System.currentTimeMillis();
         logger.info("Starting dataverse move...");
         boolean removeGuestbook = false, removeTemplate = false, removeFeatDv = false, removeMetadataBlock = false, removeLinkDv = false, removeLinkDs = false;
+        boolean linksDeleted = false;
         
         // first check if user is a superuser
         if ((!(getUser() instanceof AuthenticatedUser) || !getUser().isSuperuser())) {
@@ -86,17 +82,17 @@ public class MoveDataverseCommand extends AbstractVoidCommand {
             throw new IllegalCommandException(BundleUtil.getStringFromBundle("dataverses.api.move.dataverse.failure.not.published", Arrays.asList(destination.getDisplayName())), this);
         }
         
-        logger.info("Getting dataset children of dataverse...");
-        List<Dataset> datasetChildren = new ArrayList<>();
-        List<Long> datasetChildrenIds = ctxt.dataverses().findAllDataverseDatasetChildren(moved.getId());
-        datasetChildrenIds.forEach( (dsId) -> datasetChildren.add(ctxt.datasets().find(dsId)) );
-
+        // The datasets of the moved dataverse are not loaded: the checks and
+        // the clean up that concern them are done with set-based queries on
+        // the dataverses of the subtree
         logger.info("Getting dataverse children of dataverse...");
         List<Dataverse> dataverseChildren = new ArrayList<>();
         List<Long> dataverseChildrenIds = ctxt.dataverses().findAllDataverseDataverseChildren(moved.getId());
         dataverseChildrenIds.forEach( (dvId) -> dataverseChildren.add(ctxt.dataverses().find(dvId)) );
 
         dataverseChildren.add(moved); // include the root of the children
+        List<Long> subtreeIds = new ArrayList<>(dataverseChildrenIds);
+        subtreeIds.add(moved.getId());
 
         
         // generate list of all possible parent dataverses to check against
@@ -106,6 +102,7 @@ public class MoveDataverseCommand extends AbstractVoidCommand {
         if (destination.getOwners() != null) {
             ownersToCheck.addAll(destination.getOwners());
         }
+        List<Long> ownerIdsToCheck = ownersToCheck.stream().map(Dataverse::getId).toList();
         
         // generate list of destination guestbooks to check against
         List<Guestbook> destinationGbs = null;
@@ -158,9 +155,7 @@ public class MoveDataverseCommand extends AbstractVoidCommand {
         if (moved.getMetadataBlocks() != null) {
             inheritMbValue = !destination.isMetadataBlockRoot();
         }
-                
-        List<DataverseLinkingDataverse> linkingDataverses = new ArrayList();
-    
+
         logger.info("Checking templates and metadata blocks");
         for (Dataverse dv : dataverseChildren) {
             // if the dataverses default TEMPLATE is not contained in the 
@@ -204,64 +199,60 @@ public class MoveDataverseCommand extends AbstractVoidCommand {
                     dv.setMetadataBlocks(metadataBlocksToKeep);
                 }
             }
-            
-            // get list of dataverses each child links to
-            if (dv.getDataverseLinkingDataverses() != null) {
-                linkingDataverses.addAll(dv.getDataverseLinkingDataverses());
-            }
         }
         
-        List<DatasetLinkingDataverse> linkingDatasets = new ArrayList();
+        // if the GUESTBOOKS of the datasets are not all contained in the new
+        // dataverse, then remove them
         logger.info("Checking guestbooks...");
-        for (Dataset ds : datasetChildren) {
-            // if all the dataverse's datasets GUESTBOOKS are not 
-            //contained in the new dataverse, then remove them
-            Guestbook dsgb = ds.getGuestbook();
-            if (dsgb != null && (destinationGbs == null || !destinationGbs.contains(dsgb))) {
-                if (force == null || !force) {
-                    removeGuestbook = true;
-                    break;
-                }
-                ds.setGuestbook(null);
-            }
-            
-            // get list of dataverses each child dataset links to
-            if (ds.getDatasetLinkingDataverses() != null) {
-                linkingDatasets.addAll(ds.getDatasetLinkingDataverses());
+        List<Long> destinationGbIds = destinationGbs == null ? Collections.emptyList()
+                : destinationGbs.stream().map(Guestbook::getId).toList();
+        if (ctxt.datasets().countByOwnersWithGuestbookNotIn(subtreeIds, destinationGbIds) > 0) {
+            if (force == null || !force) {
+                removeGuestbook = true;
+            } else {
+                ctxt.datasets().removeGuestbooksNotIn(subtreeIds, destinationGbIds);
             }
         }
         
         // if a dataverse links to its destination dataverse or any of 
         // its destinations owners, remove the link
         logger.info("Checking linked dataverses....");
-        for (DataverseLinkingDataverse dvld : linkingDataverses) {
-            for (Dataverse owner : ownersToCheck){
-                if ((dvld.getLinkingDataverse()).equals(owner)){
-                    if (force == null || !force) {
-                        removeLinkDv = true;
-                        break;
+        if (ctxt.dvLinking().countLinks(subtreeIds, ownerIdsToCheck) > 0) {
+            if (force == null || !force) {
+                removeLinkDv = true;
+            } else {
+                ctxt.dvLinking().deleteLinks(subtreeIds, ownerIdsToCheck);
+                // the links were deleted in bulk, so they are still in the
+                // collections of the dataverses, from where they would be merged back
+                for (Dataverse dv : dataverseChildren) {
+                    if (dv.getDataverseLinkingDataverses() != null) {
+                        dv.getDataverseLinkingDataverses().removeIf(link -> ownerIdsToCheck.contains(link.getLinkingDataverse().getId()));
+                    }
+                }
+                for (Dataverse dv : ownersToCheck) {
+                    if (dv.getDataverseLinkedDataverses() != null) {
+                        dv.getDataverseLinkedDataverses().removeIf(link -> subtreeIds.contains(link.getDataverse().getId()));
                     }
-                    boolean index = false;
-                    ctxt.engine().submit(new DeleteDataverseLinkingDataverseCommand(getRequest(), dvld.getDataverse(), dvld, index));
-                    (dvld.getDataverse()).getDataverseLinkingDataverses().remove(dvld);
                 }
+                linksDeleted = true;
             }
         }
         
         // if a dataset links to its destination dataverse or any of 
         // its destinations owners, remove the link
         logger.info("Checking linked datasets...");
-        for (DatasetLinkingDataverse dsld : linkingDatasets) {
-            for (Dataverse owner : ownersToCheck) {
-                if ((dsld.getLinkingDataverse()).equals(owner)) {
-                    if (force == null || !force) {
-                        removeLinkDs = true;
-                        break;
+        if (ctxt.dsLinking().countLinks(subtreeIds, ownerIdsToCheck) > 0) {
+            if (force == null || !force) {
+                removeLinkDs = true;
+            } else {
+                List<Long> unlinkedDatasetIds = ctxt.dsLinking().deleteLinks(subtreeIds, ownerIdsToCheck);
+                // as above; the datasets themselves are not loaded
+                for (Dataverse dv : ownersToCheck) {
+                    if (dv.getDatasetLinkingDataverses() != null) {
+                        dv.getDatasetLinkingDataverses().removeIf(link -> unlinkedDatasetIds.contains(link.getDataset().getId()));
                     }
-                    boolean index = false;
-                    ctxt.engine().submit(new DeleteDatasetLinkingDataverseCommand(getRequest(), dsld.getDataset(), dsld, index));
-                    (dsld.getDataset()).getDatasetLinkingDataverses().remove(dsld);
                 }
+                linksDeleted = true;
             }
         }
 
@@ -291,20 +282,28 @@ public class MoveDataverseCommand extends AbstractVoidCommand {
         // OK, move
         moved.setOwner(destination);
         ctxt.dataverses().save(moved);
+        if (linksDeleted) {
+            // the links deleted in bulk are not known one by one
+            ctxt.dvObjectHierarchy().invalidate();
+        } else {
+            ctxt.dvObjectHierarchy().collectionSaved(moved.getId(), destination.getId());
+        }
         
         long moveDvEnd = System.currentTimeMillis();
         logger.info("Dataverse move took " + (moveDvEnd - moveDvStart) + " milliseconds");
-        
-	//TODO: indexing should be moved to an on Success method
-        ctxt.indexBatch().indexDataverseRecursively(moved);
-        
-        //REindex datasets linked to moved dv
-        if (moved.getDatasetLinkingDataverses() != null && !moved.getDatasetLinkingDataverses().isEmpty()) {
-            for (DatasetLinkingDataverse dld : moved.getDatasetLinkingDataverses()) {
-                Dataset linkedDS = ctxt.datasets().find(dld.getDataset().getId());
-                ctxt.index().asyncIndexDataset(linkedDS, true);
+    }
 
+    @Override
+    public boolean onSuccess(CommandContext ctxt, Object r) {
+        // Reindex the moved subtree, and the datasets linked to the moved
+        // dataverse, in the background, once the move is committed
+        List<Long> linkedDatasetIds = new ArrayList<>();
+        if (moved.getDatasetLinkingDataverses() != null) {
+            for (DatasetLinkingDataverse dld : moved.getDatasetLinkingDataverses()) {
+                linkedDatasetIds.add(dld.getDataset().getId());
             }
         }
+        ctxt.indexBatch().indexDataverseRecursively(moved, linkedDatasetIds);
+        return true;
     }
 }
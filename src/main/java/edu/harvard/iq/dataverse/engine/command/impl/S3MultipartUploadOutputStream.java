@@ -0,0 +1,161 @@
+package edu.harvard.iq.dataverse.engine.command.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+/**
+ * Writes an object of unknown length to S3 as a multipart upload, a part at a
+ * time, so that an archival bag can be streamed to the bucket as it is
+ * generated, without a local copy. Only the part being filled is held in
+ * memory.
+ *
+ * The upload is completed when the stream is closed, unless it was aborted
+ * first.
+ */
+class S3MultipartUploadOutputStream extends OutputStream {
+
+    private static final Logger logger = Logger.getLogger(S3MultipartUploadOutputStream.class.getName());
+
+    // S3 limit
+    static final int MAX_PARTS = 10000;
+
+    static final int DEFAULT_PART_SIZE = 16 * 1024 * 1024;
+    // The part is held in memory: far below the 5 GB S3 allows, which still
+    // leaves room for bags of over 2 TB
+    static final int MAX_PART_SIZE = 256 * 1024 * 1024;
+
+    private final AmazonS3 s3;
+    private final String bucketName;
+    private final String key;
+    private final byte[] buffer;
+    private int position = 0;
+
+    private String uploadId = null;
+    private final List<PartETag> partETags = new ArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * @param expectedSize an estimate of the size of the object, used to pick a
+     *                     part size that keeps it within the S3 limit on the
+     *                     number of parts
+     */
+    S3MultipartUploadOutputStream(AmazonS3 s3, String bucketName, String key, long expectedSize) {
+        this.s3 = s3;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.buffer = new byte[getPartSize(expectedSize)];
+    }
+
+    /**
+     * @return a part size of at least 16 MB, large enough for the object to
+     * fit in 90% of the maximum number of parts, up to 256 MB
+     */
+    static int getPartSize(long expectedSize) {
+        long partSize = Math.max(DEFAULT_PART_SIZE, expectedSize / (MAX_PARTS * 9 / 10) + 1);
+        return (int) Math.min(partSize, MAX_PART_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[position++] = (byte) b;
+        if (position == buffer.length) {
+            uploadPart();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, n);
+            position += n;
+            off += n;
+            len -= n;
+            if (position == buffer.length) {
+                uploadPart();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Upload of " + key + " already closed");
+        }
+    }
+
+    private void uploadPart() throws IOException {
+        if (partETags.size() == MAX_PARTS) {
+            throw new IOException("Upload of " + key + " exceeds " + MAX_PARTS + " parts of " + buffer.length + " bytes");
+        }
+        try {
+            if (uploadId == null) {
+                uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+            }
+            UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucketName)
+                    .withKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partETags.size() + 1)
+                    .withInputStream(new ByteArrayInputStream(buffer, 0, position))
+                    .withPartSize(position);
+            partETags.add(s3.uploadPart(request).getPartETag());
+            logger.fine("Uploaded part " + partETags.size() + " of " + key);
+        } catch (SdkClientException e) {
+            throw new IOException("Failed to upload part " + (partETags.size() + 1) + " of " + key + ": " + e.getMessage(), e);
+        }
+        position = 0;
+    }
+
+    /**
+     * Abandons the upload; the parts already uploaded are deleted.
+     */
+    void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (uploadId != null) {
+            try {
+                s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+            } catch (SdkClientException e) {
+                logger.warning("Failed to abort the upload of " + key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Uploads the last part, and completes the upload.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            // the last part is the only one that may be smaller than the minimum,
+            // and the only one there is, for an empty object
+            if (position > 0 || partETags.isEmpty()) {
+                uploadPart();
+            }
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+            closed = true;
+        } catch (IOException | SdkClientException e) {
+            abort();
+            throw e instanceof IOException ? (IOException) e : new IOException("Failed to complete the upload of " + key + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
+import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.DatasetLock.Reason;
+import edu.harvard.iq.dataverse.FileMetadata;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.ApiToken;
 import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
@@ -14,8 +16,6 @@ import edu.harvard.iq.dataverse.workflow.step.Failure;
 import edu.harvard.iq.dataverse.workflow.step.WorkflowStepResult;
 
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -106,28 +106,30 @@ public class S3SubmitToArchiveCommand extends AbstractSubmitToArchiveCommand {
                         // Google uses MD5 as one way to verify the
                         // transfer
 
-                        // Generate bag
+                        // Generate bag, streaming it to the bucket as a multipart upload
                         BagGenerator bagger = new BagGenerator(new OREMap(dv, false), dataciteXml);
                         bagger.setAuthenticationKey(token.getTokenString());
-                        if (bagger.generateBag(fileName, false)) {
-                            File bagFile = bagger.getBagFile(fileName);
-
-                            try (FileInputStream in = new FileInputStream(bagFile)) {
-                                om = new ObjectMetadata();
-                                om.setContentLength(bagFile.length());
-
-                                tm.upload(new PutObjectRequest(bucketName, bagKey, in, om)).waitForCompletion();
-                                om = s3.getObjectMetadata(bucketName, bagKey);
-
-                                if (om == null) {
-                                    logger.severe("Error sending file to S3: " + fileName);
-                                    return new Failure("Error in transferring Bag file to S3",
-                                            "S3 Submission Failure: incomplete transfer");
-                                }
-                            } catch (RuntimeException rte) {
-                                logger.severe("Error creating Bag during S3 archiving: " + rte.getMessage());
-                                return new Failure("Error in generating Bag",
-                                        "S3 Submission Failure: archive file not created");
+                        // The bag isn't kept locally to be validated once written, so
+                        // the upload is aborted if a file doesn't match its hash
+                        bagger.setFailOnInvalidHashes(true);
+                        S3MultipartUploadOutputStream bagOut = new S3MultipartUploadOutputStream(s3, bucketName, bagKey, getExpectedBagSize(dv));
+                        boolean bagCreated = false;
+                        try {
+                            bagCreated = bagger.generateBag(bagOut);
+                        } catch (RuntimeException rte) {
+                            logger.severe("Error creating Bag during S3 archiving: " + rte.getMessage());
+                        } finally {
+                            if (!bagCreated) {
+                                bagOut.abort();
+                            }
+                        }
+                        if (bagCreated) {
+                            om = s3.getObjectMetadata(bucketName, bagKey);
+
+                            if (om == null) {
+                                logger.severe("Error sending file to S3: " + fileName);
+                                return new Failure("Error in transferring Bag file to S3",
+                                        "S3 Submission Failure: incomplete transfer");
                             }
 
                             logger.fine("S3 Submission step: Content Transferred");
@@ -140,8 +142,9 @@ public class S3SubmitToArchiveCommand extends AbstractSubmitToArchiveCommand {
                             statusObject.add(DatasetVersion.ARCHIVAL_STATUS, DatasetVersion.ARCHIVAL_STATUS_SUCCESS);
                             statusObject.add(DatasetVersion.ARCHIVAL_STATUS_MESSAGE, s3.getUrl(bucketName, bagKey).toString());
                         } else {
-                            logger.warning("Could not write local Bag file " + fileName);
-                            return new Failure("S3 Archiver fail writing temp local bag");
+                            logger.warning("Could not write Bag file " + fileName);
+                            return new Failure("Error in generating Bag",
+                                    "S3 Submission Failure: archive file not created");
                         }
 
                     }
@@ -166,6 +169,20 @@ public class S3SubmitToArchiveCommand extends AbstractSubmitToArchiveCommand {
         }
     }
 
+    /**
+     * @return the size of the files of the version, an estimate of the size
+     * of its bag
+     */
+    private static long getExpectedBagSize(DatasetVersion dv) {
+        long size = 0;
+        for (FileMetadata fmd : dv.getFileMetadatas()) {
+            DataFile df = fmd.getDataFile();
+            Long originalSize = df.getOriginalFileSize();
+            size += Math.max(df.getFilesize(), originalSize == null ? 0 : originalSize);
+        }
+        return size;
+    }
+
     protected String getDataCiteFileName(String spaceName, DatasetVersion dv) {
         return spaceName + "_datacite.v" + dv.getFriendlyVersionNumber();
     }
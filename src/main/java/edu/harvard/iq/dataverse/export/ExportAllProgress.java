@@ -0,0 +1,95 @@
+package edu.harvard.iq.dataverse.export;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * The progress of an "export all" job (the scheduled export, or one started
+ * with the /api/admin/metadata/exportAll and reExportAll APIs), reported by
+ * the /api/admin/metadata/exportAll/status API.
+ */
+public class ExportAllProgress {
+
+    private final boolean forceReExport;
+    private final int total;
+    private final int threads;
+    private final Instant started = Instant.now();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile Instant finished = null;
+
+    public ExportAllProgress(boolean forceReExport, int total, int threads) {
+        this.forceReExport = forceReExport;
+        this.total = total;
+        this.threads = threads;
+    }
+
+    public void succeeded() {
+        succeeded.incrementAndGet();
+    }
+
+    public void failed() {
+        failed.incrementAndGet();
+    }
+
+    public void finish() {
+        finished = Instant.now();
+    }
+
+    public boolean isFinished() {
+        return finished != null;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getProcessed() {
+        return succeeded.get() + failed.get();
+    }
+
+    /**
+     * @return the estimated time until the job is finished, based on the
+     *         average time spent per dataset so far, or null if no dataset was
+     *         processed yet (or the job is finished)
+     */
+    public Duration getEstimatedTimeRemaining() {
+        int processed = getProcessed();
+        if (isFinished() || processed == 0) {
+            return null;
+        }
+        Duration elapsed = Duration.between(started, Instant.now());
+        return elapsed.multipliedBy(total - processed).dividedBy(processed);
+    }
+
+    public JsonObjectBuilder toJson() {
+        JsonObjectBuilder job = Json.createObjectBuilder()
+                .add("forceReExport", forceReExport)
+                .add("threads", threads)
+                .add("started", started.toString())
+                .add("total", total)
+                .add("processed", getProcessed())
+                .add("succeeded", getSucceeded())
+                .add("failed", getFailed());
+        if (finished != null) {
+            job.add("finished", finished.toString());
+        }
+        Duration remaining = getEstimatedTimeRemaining();
+        if (remaining != null) {
+            job.add("estimatedSecondsRemaining", remaining.toSeconds());
+        }
+        return job;
+    }
+}
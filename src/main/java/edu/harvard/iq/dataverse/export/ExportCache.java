@@ -0,0 +1,263 @@
+package edu.harvard.iq.dataverse.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import edu.harvard.iq.dataverse.Dataset;
+
+/**
+ * A node-local cache of the cached metadata exports (the export_*.cached
+ * auxiliary files of the datasets), so that the exports served by OAI-PMH and
+ * the export API are not read from the storage of the dataset on every
+ * request.
+ *
+ * Exports are kept in memory, within a total size, up to a maximum size per
+ * export. If a directory is configured, the larger exports are kept there, on
+ * local disk, also within a total size. Either way, the least recently used
+ * exports are removed first.
+ *
+ * The entries are keyed by the dataset, the format and the last export time of
+ * the dataset, so a dataset exported again (on this node or any other) results
+ * in new keys. The exports of a dataset are also invalidated when they are
+ * written or deleted through this node: the keys cached for each dataset and
+ * format are indexed, so they are removed without going through the others.
+ *
+ * The cache also remembers, for each dataset and last export time, the date
+ * the next embargo on the files of the dataset ends, so that checking whether
+ * the DDI export of a dataset must be refreshed doesn't require going through
+ * all its files.
+ */
+class ExportCache {
+
+    private static final Logger logger = Logger.getLogger(ExportCache.class.getCanonicalName());
+
+    static final long MB = 1024 * 1024;
+
+    /**
+     * The key of a cached export.
+     */
+    record Key(long datasetId, String format, long exportTime) {
+    }
+
+    private record EmbargoKey(long datasetId, long exportTime) {
+    }
+
+    private record Export(long datasetId, String format) {
+
+        Export(Key key) {
+            this(key.datasetId(), key.format());
+        }
+    }
+
+    private final long maxEntrySize;
+    private final Cache<Key, byte[]> memory;
+    private final Path directory;
+    private final Cache<Key, Path> disk;
+    // the keys in either cache, by dataset and format; a key is in one of the
+    // caches at most
+    private final ConcurrentMap<Export, Set<Key>> keys = new ConcurrentHashMap<>();
+    private final Cache<EmbargoKey, Optional<LocalDate>> nextEmbargoEnds = Caffeine.newBuilder()
+            .maximumSize(10000)
+            // embargoes on published files are rarely changed, but can be
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+
+    /**
+     * @param memorySize   the total size of the exports kept in memory, in bytes
+     * @param maxEntrySize the size of the largest export kept in memory
+     * @param directory    the directory of the exports kept on disk, or null
+     * @param diskSize     the total size of the exports kept on disk, in bytes
+     */
+    ExportCache(long memorySize, long maxEntrySize, Path directory, long diskSize) throws IOException {
+        this.maxEntrySize = Math.min(maxEntrySize, memorySize);
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(memorySize)
+                .weigher((Key key, byte[] content) -> content.length)
+                .evictionListener((Key key, byte[] content, RemovalCause cause) -> unindex(key))
+                .build();
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+            // the exports on disk are not indexed: start empty
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            this.disk = Caffeine.newBuilder()
+                    .maximumWeight(diskSize / 1024)
+                    // in KB, to fit the int weights
+                    .weigher((Key key, Path file) -> (int) Math.min(Integer.MAX_VALUE, size(file) / 1024 + 1))
+                    .evictionListener((Key key, Path file, RemovalCause cause) -> unindex(key))
+                    .removalListener((Key key, Path file, RemovalCause cause) -> delete(file))
+                    .build();
+        } else {
+            this.disk = null;
+        }
+    }
+
+    /**
+     * @return the key of the export, or null if it can't be cached (the
+     *         dataset has not been saved, or has no export time)
+     */
+    static Key keyFor(Dataset dataset, String format) {
+        Date exportTime = dataset.getLastExportTime();
+        if (dataset.getId() == null || exportTime == null) {
+            return null;
+        }
+        return new Key(dataset.getId(), format, exportTime.getTime());
+    }
+
+    /**
+     * @return a stream of the cached export, or null if it is not cached
+     */
+    InputStream get(Key key) {
+        byte[] content = memory.getIfPresent(key);
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        if (disk != null) {
+            Path file = disk.getIfPresent(key);
+            if (file != null) {
+                try {
+                    return Files.newInputStream(file);
+                } catch (NoSuchFileException e) {
+                    // removed in the meantime
+                    disk.invalidate(key);
+                } catch (IOException e) {
+                    logger.warning("Failed to read cached export " + file + ": " + e.getMessage());
+                    disk.invalidate(key);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches an export read from storage, as it is read.
+     *
+     * @param export the export, as read from storage
+     * @return a stream of the export, to be used instead of the original one
+     */
+    InputStream put(Key key, InputStream export) throws IOException {
+        // read up to one byte more than what can be kept in memory
+        byte[] head = export.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxEntrySize + 1));
+        if (head.length <= maxEntrySize) {
+            export.close();
+            // indexed first, in case it is evicted right away
+            index(key);
+            memory.put(key, head);
+            if (disk != null) {
+                disk.invalidate(key);
+            }
+            return new ByteArrayInputStream(head);
+        }
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(head), export);
+        if (disk == null) {
+            // too large to be cached
+            return rest;
+        }
+        Path file = Files.createTempFile(directory, "export", ".cached");
+        try (InputStream in = rest; OutputStream out = Files.newOutputStream(file)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            delete(file);
+            throw e;
+        }
+        // opened first, in case it is evicted right away
+        InputStream cached = Files.newInputStream(file);
+        index(key);
+        disk.put(key, file);
+        memory.invalidate(key);
+        return cached;
+    }
+
+    /**
+     * Forgets the cached exports of a dataset in a format.
+     */
+    void invalidate(long datasetId, String format) {
+        Set<Key> exportKeys = keys.remove(new Export(datasetId, format));
+        if (exportKeys != null) {
+            memory.invalidateAll(exportKeys);
+            if (disk != null) {
+                disk.invalidateAll(exportKeys);
+            }
+        }
+    }
+
+    private void index(Key key) {
+        keys.compute(new Export(key), (export, exportKeys) -> {
+            Set<Key> indexed = exportKeys != null ? exportKeys : ConcurrentHashMap.newKeySet();
+            indexed.add(key);
+            return indexed;
+        });
+    }
+
+    private void unindex(Key key) {
+        keys.computeIfPresent(new Export(key), (export, exportKeys) -> {
+            exportKeys.remove(key);
+            return exportKeys.isEmpty() ? null : exportKeys;
+        });
+    }
+
+    /**
+     * @return the date the next embargo on the files of the dataset ends after
+     *         the given export time, computed with the supplier if it is not
+     *         known yet
+     */
+    Optional<LocalDate> getNextEmbargoEnd(long datasetId, long exportTime, Supplier<Optional<LocalDate>> nextEmbargoEnd) {
+        return nextEmbargoEnds.get(new EmbargoKey(datasetId, exportTime), key -> nextEmbargoEnd.get());
+    }
+
+    long getMemorySize() {
+        memory.cleanUp();
+        return memory.asMap().values().stream().mapToLong(content -> content.length).sum();
+    }
+
+    /**
+     * @return the number of keys indexed by dataset and format
+     */
+    long getIndexedKeyCount() {
+        memory.cleanUp();
+        if (disk != null) {
+            disk.cleanUp();
+        }
+        return keys.values().stream().mapToLong(Set::size).sum();
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warning("Failed to delete cached export " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -59,6 +59,7 @@ public class ExportService {
     private static ExportService service;
     private ServiceLoader<Exporter> loader;
     private Map<String, Exporter> exporterMap = new HashMap<>();
+    private ExportCache exportCache = null;
 
     private static final Logger logger = Logger.getLogger(ExportService.class.getCanonicalName());
 
@@ -106,6 +107,22 @@ public class ExportService {
             logger.log(Level.FINE, "SL: " + exp.getFormatName() + " from " + exp.getClass().getCanonicalName()
                     + " and classloader: " + exp.getClass().getClassLoader().getClass().getCanonicalName());
         });
+
+        /*
+         * Step 4 - set up the node-local cache of the exports, unless disabled
+         */
+        long cacheSize = JvmSettings.EXPORT_CACHE_SIZE.lookupOptional(Long.class).orElse(64L);
+        if (cacheSize > 0) {
+            Path cacheDirectory = JvmSettings.EXPORT_CACHE_DIRECTORY.lookupOptional().map(Paths::get).orElse(null);
+            try {
+                exportCache = new ExportCache(cacheSize * ExportCache.MB,
+                        JvmSettings.EXPORT_CACHE_MAX_ENTRY_SIZE.lookupOptional(Long.class).orElse(1L) * ExportCache.MB,
+                        cacheDirectory,
+                        JvmSettings.EXPORT_CACHE_DISK_SIZE.lookupOptional(Long.class).orElse(1024L) * ExportCache.MB);
+            } catch (IOException e) {
+                logger.warning("Export cache disabled: cannot use " + cacheDirectory + ": " + e.getLocalizedMessage());
+            }
+        }
     }
 
     public static synchronized ExportService getInstance() {
@@ -146,32 +163,21 @@ public class ExportService {
             if (lastExportDate != null) {
                 exportLocalDate = lastExportDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
                 logger.fine("Last export date: " + exportLocalDate.toString());
-                // Track which embargoes we've already checked
-                Set<Long> embargoIds = new HashSet<Long>();
-                // Check for all files in the latest released version
-                for (FileMetadata fm : dataset.getLatestVersionForCopy().getFileMetadatas()) {
-                    // ToDo? This loop is necessary because we have not stored the date when the
-                    // next embargo in this datasetversion will end. If we knew that (another
-                    // dataset/datasetversion column), we could make
-                    // one check that nextembargoEnd exists and is after the last export and before
-                    // now versus scanning through files until we potentially find such an embargo.
-                    Embargo e = fm.getDataFile().getEmbargo();
-                    if (e != null) {
-                        logger.fine("Datafile:  " + fm.getDataFile().getId());
-                        logger.fine("Embargo end date: " + e.getFormattedDateAvailable());
-                    }
-                    if (e != null && !embargoIds.contains(e.getId()) && e.getDateAvailable().isAfter(exportLocalDate)
-                            && e.getDateAvailable().isBefore(LocalDate.now())) {
-                        logger.fine("Request that the ddi export be cleared.");
-                        // The file has been embargoed and the embargo ended after the last export and
-                        // before the current date, so we need to remove the cached DDI export and make
-                        // it refresh
-                        clearCachedExport = true;
-                        break;
-                    } else if (e != null) {
-                        logger.fine("adding embargo to checked list: " + e.getId());
-                        embargoIds.add(e.getId());
-                    }
+                // The export must be refreshed if an embargo on a file of the latest version
+                // ended after the last export, i.e. if the first embargo to end after the last
+                // export has ended by now. That date is remembered for the dataset and export
+                // time, so the files are only scanned once.
+                LocalDate since = exportLocalDate;
+                Optional<LocalDate> nextEmbargoEnd = exportCache != null && dataset.getId() != null
+                        ? exportCache.getNextEmbargoEnd(dataset.getId(), lastExportDate.getTime(),
+                                () -> findNextEmbargoEnd(dataset, since))
+                        : findNextEmbargoEnd(dataset, since);
+                if (nextEmbargoEnd.isPresent() && nextEmbargoEnd.get().isBefore(LocalDate.now())) {
+                    logger.fine("Request that the ddi export be cleared.");
+                    // A file has been embargoed and the embargo ended after the last export and
+                    // before the current date, so we need to remove the cached DDI export and make
+                    // it refresh
+                    clearCachedExport = true;
                 }
             }
             if (clearCachedExport) {
@@ -207,6 +213,28 @@ public class ExportService {
 
     }
 
+    /**
+     * @return the earliest end date of the embargoes on the files of the latest
+     *         version of the dataset that end after the given date, if any
+     */
+    private Optional<LocalDate> findNextEmbargoEnd(Dataset dataset, LocalDate after) {
+        // Track which embargoes we've already checked
+        Set<Long> embargoIds = new HashSet<Long>();
+        LocalDate nextEmbargoEnd = null;
+        for (FileMetadata fm : dataset.getLatestVersionForCopy().getFileMetadatas()) {
+            Embargo e = fm.getDataFile().getEmbargo();
+            if (e != null && embargoIds.add(e.getId())) {
+                logger.fine("Datafile:  " + fm.getDataFile().getId());
+                logger.fine("Embargo end date: " + e.getFormattedDateAvailable());
+                if (e.getDateAvailable().isAfter(after)
+                        && (nextEmbargoEnd == null || e.getDateAvailable().isBefore(nextEmbargoEnd))) {
+                    nextEmbargoEnd = e.getDateAvailable();
+                }
+            }
+        }
+        return Optional.ofNullable(nextEmbargoEnd);
+    }
+
     public String getExportAsString(Dataset dataset, String formatName) {
         InputStream inputStream = null;
         InputStreamReader inp = null;
@@ -356,6 +384,9 @@ public class ExportService {
     private void cacheExport(Dataset dataset, InternalExportDataProvider dataProvider, String format, Exporter exporter)
             throws ExportException {
         
+        if (exportCache != null && dataset.getId() != null) {
+            exportCache.invalidate(dataset.getId(), format);
+        }
         OutputStream outputStream = null;
         try {
             boolean tempFileUsed = false;
@@ -418,6 +449,9 @@ public class ExportService {
     }
 
     private void clearCachedExport(Dataset dataset, String format) throws IOException {
+        if (exportCache != null && dataset.getId() != null) {
+            exportCache.invalidate(dataset.getId(), format);
+        }
         try {
             StorageIO<Dataset> storageIO = getStorageIO(dataset);
             storageIO.deleteAuxObject("export_" + format + ".cached");
@@ -431,8 +465,18 @@ public class ExportService {
     // This method checks if the metadata has already been exported in this
     // format and cached on disk. If it has, it'll open the file and retun
     // the file input stream. If not, it'll return null.
+    // Exports read from storage are kept in the node-local export cache, if
+    // enabled, and served from there next time.
     private InputStream getCachedExportFormat(Dataset dataset, String formatName) throws ExportException, IOException {
 
+        ExportCache.Key key = exportCache != null ? ExportCache.keyFor(dataset, formatName) : null;
+        if (key != null) {
+            InputStream cachedExportInputStream = exportCache.get(key);
+            if (cachedExportInputStream != null) {
+                return cachedExportInputStream;
+            }
+        }
+
         StorageIO<Dataset> dataAccess = null;
 
         try {
@@ -445,6 +489,9 @@ public class ExportService {
 
         try {
             cachedExportInputStream = dataAccess.getAuxFileAsInputStream("export_" + formatName + ".cached");
+            if (cachedExportInputStream != null && key != null) {
+                return exportCache.put(key, cachedExportInputStream);
+            }
             return cachedExportInputStream;
         } catch (IOException ioex) {
             throw new IOException("IO Exception thrown exporting as " + "export_" + formatName + ".cached", ioex);
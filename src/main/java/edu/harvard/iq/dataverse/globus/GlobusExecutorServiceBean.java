@@ -0,0 +1,67 @@
+package edu.harvard.iq.dataverse.globus;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import static jakarta.ejb.LockType.READ;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Provides the threads on which {@link GlobusServiceBean} calculates the
+ * checksums and mime types of the transferred files. They are those of the
+ * ManagedExecutorService of the application server, so they are stopped with
+ * the application; the calculations of all the concurrently completing
+ * transfers share the number of threads configured with
+ * dataverse.files.globus-metadata-threads, with a bounded queue.
+ */
+@Lock(READ)
+@Singleton
+public class GlobusExecutorServiceBean {
+    private static final Logger logger = Logger.getLogger(GlobusExecutorServiceBean.class.getCanonicalName());
+
+    static final int DEFAULT_METADATA_THREADS = 10;
+    static final int MAX_QUEUED_METADATA_TASKS = 1000;
+
+    @Resource
+    ManagedExecutorService executor;
+
+    private BoundedExecutor metadataExecutor;
+
+    @PostConstruct
+    public void init() {
+        int metadataThreads = JvmSettings.GLOBUS_METADATA_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_METADATA_THREADS);
+        metadataExecutor = new BoundedExecutor(executor, metadataThreads, MAX_QUEUED_METADATA_TASKS);
+        logger.fine("Calculating the metadata of up to " + metadataThreads + " transferred files at a time");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int dropped = metadataExecutor.shutdown().size();
+        if (dropped > 0) {
+            logger.info("Dropped " + dropped + " queued metadata calculations");
+        }
+    }
+
+    /**
+     * @return the executor of the metadata calculations. When its queue is
+     *         full, the calculations are run by the calling thread instead, so
+     *         that a large transfer slows down rather than fails.
+     */
+    public Executor getMetadataExecutor() {
+        return task -> {
+            try {
+                metadataExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                logger.fine("Calculating the metadata in the calling thread: " + e.getMessage());
+                task.run();
+            }
+        };
+    }
+}
@@ -39,13 +39,10 @@ import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.apache.commons.codec.binary.StringUtils;
 import org.primefaces.PrimeFaces;
@@ -111,6 +108,8 @@ public class GlobusServiceBean implements java.io.Serializable {
     IngestServiceBean ingestSvc;
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    GlobusExecutorServiceBean globusExecutorService;
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
@@ -122,7 +121,7 @@ public class GlobusServiceBean implements java.io.Serializable {
 
         String principalType = "identity";
 
-        URL url = new URL("https://transfer.api.globusonline.org/v0.10/endpoint/" + endpoint.getId() + "/access_list");
+        URL url = new URL(GlobusUtil.getTransferApiUrl() + "/endpoint/" + endpoint.getId() + "/access_list");
         MakeRequestResponse result = makeRequest(url, "Bearer", endpoint.getClientToken(), "GET", null);
         if (result.status == 200) {
             AccessList al = parseJson(result.jsonResponse, AccessList.class, false);
@@ -162,7 +161,7 @@ public class GlobusServiceBean implements java.io.Serializable {
                     String accessToken = endpoint.getClientToken();
                     globusLogger.info("Start deleting permissions.");
                     try {
-                        URL url = new URL("https://transfer.api.globusonline.org/v0.10/endpoint/" + endpoint.getId()
+                        URL url = new URL(GlobusUtil.getTransferApiUrl() + "/endpoint/" + endpoint.getId()
                                 + "/access/" + ruleId);
                         MakeRequestResponse result = makeRequest(url, "Bearer", accessToken, "DELETE", null);
                         if (result.status != 200) {
@@ -262,7 +261,7 @@ public class GlobusServiceBean implements java.io.Serializable {
         try {
             logger.fine(body);
             URL url = new URL(
-                    "https://transfer.api.globusonline.org/v0.10/operation/endpoint/" + endpoint.getId() + "/mkdir");
+                    GlobusUtil.getTransferApiUrl() + "/operation/endpoint/" + endpoint.getId() + "/mkdir");
             result = makeRequest(url, "Bearer", endpoint.getClientToken(), "POST", body);
 
             switch (result.status) {
@@ -290,7 +289,7 @@ public class GlobusServiceBean implements java.io.Serializable {
         logger.fine("Start creating the rule");
 
         try {
-            URL url = new URL("https://transfer.api.globusonline.org/v0.10/endpoint/" + endpoint.getId() + "/access");
+            URL url = new URL(GlobusUtil.getTransferApiUrl() + "/endpoint/" + endpoint.getId() + "/access");
             result = makeRequest(url, "Bearer", endpoint.getClientToken(), "POST", gson.toJson(permissions));
 
             switch (result.status) {
@@ -405,10 +404,10 @@ public class GlobusServiceBean implements java.io.Serializable {
 
         URL url;
         try {
-            url = new URL("https://transfer.api.globusonline.org/v0.10/endpoint_manager/task/" + taskId);
+            url = new URL(GlobusUtil.getTransferApiUrl() + "/endpoint_manager/task/" + taskId);
         } catch (MalformedURLException mue) {
             myLogger.warning("Malformed URL exception when trying to contact Globus. Globus API url: "
-                    + "https://transfer.api.globusonline.org/v0.10/endpoint_manager/task/"
+                    + GlobusUtil.getTransferApiUrl() + "/endpoint_manager/task/"
                     + taskId);
             return null;
         }
@@ -446,7 +445,7 @@ public class GlobusServiceBean implements java.io.Serializable {
 
         try {
             url = new URL(
-                    "https://auth.globus.org/v2/oauth2/token?scope=openid+email+profile+urn:globus:auth:scope:transfer.api.globus.org:all&grant_type=client_credentials");
+                    GlobusUtil.getAuthApiUrl() + "/oauth2/token?scope=openid+email+profile+urn:globus:auth:scope:transfer.api.globus.org:all&grant_type=client_credentials");
 
             MakeRequestResponse result = makeRequest(url, "Basic", globusBasicToken, "POST", null);
             if (result.status == 200) {
@@ -720,13 +719,12 @@ public class GlobusServiceBean implements java.io.Serializable {
             }
         }
         
-        // Wait before first check
-        Thread.sleep(5000);
-        
         if (FeatureFlags.GLOBUS_USE_EXPERIMENTAL_ASYNC_FRAMEWORK.enabled()) {
             
             // Save the task information in the database so that the Globus monitoring
-            // service can continue checking on its progress.
+            // service can continue checking on its progress. No need to wait 
+            // here - the first check will happen on the next scheduled run of 
+            // the monitoring service. 
             
             GlobusTaskInProgress taskInProgress = new GlobusTaskInProgress(taskIdentifier, GlobusTaskInProgress.TaskType.UPLOAD, dataset, endpoint.getClientToken(), authUser, ruleId, new Timestamp(startDate.getTime()));
             em.persist(taskInProgress);
@@ -753,6 +751,9 @@ public class GlobusServiceBean implements java.io.Serializable {
         // the old implementation that relies on looping continuosly, 
         // sleeping-then-checking the task status repeatedly:
         
+        // Wait before first check
+        Thread.sleep(5000);
+        
         // globus task status check
         // (the following method performs continuous looped checks of the remote
         // Globus API, monitoring it for as long as it takes for the task to 
@@ -943,7 +944,16 @@ public class GlobusServiceBean implements java.io.Serializable {
         JsonObject newfilesJsonObject = calculateMissingMetadataFields(inputList, myLogger);
         JsonArray newfilesJsonArray = newfilesJsonObject.getJsonArray("files");
         logger.fine("Size: " + newfilesJsonArray.size());
-        logger.fine("Val: " + JsonUtil.prettyPrint(newfilesJsonArray.getJsonObject(0)));
+        
+        // Index the calculated entries by file id, so that they can be matched 
+        // with the submitted file entries below without rescanning the entire 
+        // array for every file:
+        Map<String, JsonObject> newfileJsonObjects = new HashMap<>();
+        for (JsonObject entry : newfilesJsonArray.getValuesAs(JsonObject.class)) {
+            for (String entryFileId : entry.keySet()) {
+                newfileJsonObjects.putIfAbsent(entryFileId, entry.getJsonObject(entryFileId));
+            }
+        }
         JsonArrayBuilder addFilesJsonData = Json.createArrayBuilder();
 
         for (JsonObject fileJsonObject : filesJsonArray.getValuesAs(JsonObject.class)) {
@@ -958,17 +968,14 @@ public class GlobusServiceBean implements java.io.Serializable {
             }
             String fileId = bits[bits.length - 1];
 
-            List<JsonObject> newfileJsonObject = IntStream.range(0, newfilesJsonArray.size())
-                    .mapToObj(index -> ((JsonObject) newfilesJsonArray.get(index)).getJsonObject(fileId))
-                    .filter(Objects::nonNull).collect(Collectors.toList());
+            JsonObject newfileJsonObject = newfileJsonObjects.get(fileId);
             if (newfileJsonObject != null) {
-                logger.fine("List Size: " + newfileJsonObject.size());
-                // if (!newfileJsonObject.get(0).getString("hash").equalsIgnoreCase("null")) {
+                // if (!newfileJsonObject.getString("hash").equalsIgnoreCase("null")) {
                 JsonPatch path = Json.createPatchBuilder()
-                        .add("/md5Hash", newfileJsonObject.get(0).getString("hash")).build();
+                        .add("/md5Hash", newfileJsonObject.getString("hash")).build();
                 fileJsonObject = path.apply(fileJsonObject);
                 path = Json.createPatchBuilder()
-                        .add("/mimeType", newfileJsonObject.get(0).getString("mime")).build();
+                        .add("/mimeType", newfileJsonObject.getString("mime")).build();
                 fileJsonObject = path.apply(fileJsonObject);
                 addFilesJsonData.add(fileJsonObject);
                 countSuccess++;
@@ -1025,10 +1032,9 @@ public class GlobusServiceBean implements java.io.Serializable {
                 this.commandEngine,
                 this.systemConfig
         );
-                
-        // The old code had 2 sec. of sleep, so ...
-        Thread.sleep(2000);
 
+        // All the files are registered in one batch, with a single 
+        // UpdateDatasetVersionCommand at the end of the addFiles() call:
         Response addFilesResponse = addFileHelper.addFiles(newjsonData, dataset, authUser);
 
         if (addFilesResponse == null) {
@@ -1152,19 +1158,65 @@ public class GlobusServiceBean implements java.io.Serializable {
             // out?)
             logger.warning("ruleId not found for taskId: " + taskIdentifier);
         }
+        
+        if (FeatureFlags.GLOBUS_USE_EXPERIMENTAL_ASYNC_FRAMEWORK.enabled()) {
+            // Same as with uploads: save the task in the database and let the 
+            // monitoring service take it from here, instead of tying up this 
+            // thread for the duration of the transfer.
+            AuthenticatedUser taskUser = authUser instanceof AuthenticatedUser ? (AuthenticatedUser) authUser : null;
+            GlobusTaskInProgress taskInProgress = new GlobusTaskInProgress(taskIdentifier, 
+                    GlobusTaskInProgress.TaskType.DOWNLOAD, 
+                    dataset, 
+                    endpoint.getClientToken(), 
+                    taskUser, 
+                    ruleId == null ? "" : ruleId, 
+                    new Timestamp(new Date().getTime()));
+            em.persist(taskInProgress);
+            
+            fileHandler.close();
+            
+            // return and forget
+            return;
+        }
+        
         task = globusStatusCheck(endpoint, taskIdentifier, globusLogger);
-        // @todo null check?
+        
+        processCompletedDownloadTask(task, dataset, authUser, ruleId, globusLogger);
+        
+        fileHandler.close();
+    }
+    
+    /**
+     * Finalizes a completed download task: deletes the temporary access rule
+     * and notifies the user. Called by both the legacy, continuously looping 
+     * implementation and the task monitoring service.
+     * @param task      the state of the completed task as reported by the Globus API
+     * @param dataset   the dataset
+     * @param authUser  the user who requested the download; may be null or a 
+     *                  non-authenticated user, in which case no notification is sent
+     * @param ruleId    Globus rule/permission id associated with the task, may be null
+     * @param globusLogger the Logger; if null, the main logger of the service bean will be used
+     */
+    private void processCompletedDownloadTask(GlobusTaskState task, 
+            Dataset dataset, 
+            User authUser, 
+            String ruleId, 
+            Logger globusLogger) {
+        
+        globusLogger = globusLogger == null ? logger : globusLogger;
+        
         String taskStatus = GlobusUtil.getTaskStatus(task);
 
         // Transfer is done (success or failure) so delete the rule
-        if (ruleId != null) {
+        if (ruleId != null && !ruleId.isBlank()) {
             logger.fine("Deleting: rule: " + ruleId);
             deletePermission(ruleId, dataset, globusLogger);
         }
 
         if (taskStatus.startsWith("FAILED") || taskStatus.startsWith("INACTIVE")) {
-            String comment = "Reason : " + taskStatus.split("#")[1] + "<br> Short Description : "
-                    + taskStatus.split("#")[2];
+            String[] statusParts = taskStatus.split("#");
+            String comment = statusParts.length > 2 ? "Reason : " + statusParts[1] + "<br> Short Description : "
+                    + statusParts[2] : "No further information available";
             if (authUser != null && authUser instanceof AuthenticatedUser) {
                 userNotificationService.sendNotification((AuthenticatedUser) authUser, new Timestamp(new Date().getTime()),
                         UserNotification.Type.GLOBUSDOWNLOADCOMPLETEDWITHERRORS, dataset.getId(), comment, true);
@@ -1186,8 +1238,6 @@ public class GlobusServiceBean implements java.io.Serializable {
         }
     }
 
-    Executor executor = Executors.newFixedThreadPool(10);
-
     private GlobusTaskState globusStatusCheck(GlobusEndpoint endpoint, String taskId, Logger globusLogger)
             throws MalformedURLException {
         boolean taskCompleted = false;
@@ -1226,7 +1276,7 @@ public class GlobusServiceBean implements java.io.Serializable {
         });
 
         CompletableFuture<?> completableFuture = allCompletableFuture.thenApply(files -> {
-            return files.stream().map(d -> json(d)).collect(toJsonArray());
+            return files.stream().filter(Objects::nonNull).map(d -> json(d)).collect(toJsonArray());
         });
 
         JsonArrayBuilder filesObject = (JsonArrayBuilder) completableFuture.get();
@@ -1240,18 +1290,13 @@ public class GlobusServiceBean implements java.io.Serializable {
     private CompletableFuture<FileDetailsHolder> calculateDetailsAsync(String id, Logger globusLogger) {
 
         return CompletableFuture.supplyAsync(() -> {
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
             try {
                 return (calculateDetails(id, globusLogger));
             } catch (InterruptedException | IOException e) {
                 e.printStackTrace();
             }
             return null;
-        }, executor).exceptionally(ex -> {
+        }, globusExecutorService.getMetadataExecutor()).exceptionally(ex -> {
             return null;
         });
     }
@@ -1283,7 +1328,7 @@ public class GlobusServiceBean implements java.io.Serializable {
             do {
                 try {
                     StorageIO<DvObject> dataFileStorageIO = DataAccess.getDirectStorageIO(fullPath);
-                        in = dataFileStorageIO.getInputStream();
+                    in = dataFileStorageIO.getInputStream();
                     checksumVal = FileUtil.calculateChecksum(in, DataFile.ChecksumType.MD5);
                     count = 3;
                 } catch (IOException ioex) {
@@ -1295,7 +1340,17 @@ public class GlobusServiceBean implements java.io.Serializable {
                     count = count + 1;
                     ex.printStackTrace();
                     logger.info(ex.getMessage());
-                    Thread.sleep(5000);
+                    // back off a little longer with every failed attempt:
+                    Thread.sleep(1000L * count);
+                } finally {
+                    if (in != null) {
+                        try {
+                            in.close();
+                        } catch (IOException ioex) {
+                            logger.fine("Failed to close the input stream for " + fullPath);
+                        }
+                        in = null;
+                    }
                 }
             } while (count < 3);
         }
@@ -1431,6 +1486,20 @@ public class GlobusServiceBean implements java.io.Serializable {
         return em.createQuery("select object(o) from GlobusTaskInProgress as o order by o.startTime", GlobusTaskInProgress.class).getResultList();
     }
     
+    /**
+     * Keyset-paged lookup of the ongoing tasks, used by the monitoring service
+     * to check on the tasks in batches. 
+     * @param afterId   only tasks with database ids greater than this one are returned
+     * @param batchSize max. number of tasks to return
+     * @return the next batch of the ongoing tasks, ordered by id
+     */
+    public List<GlobusTaskInProgress> findOngoingTasks(long afterId, int batchSize) {
+        return em.createQuery("select object(o) from GlobusTaskInProgress as o where o.id > :afterId order by o.id", GlobusTaskInProgress.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(batchSize)
+                .getResultList();
+    }
+    
     public void deleteTask(GlobusTaskInProgress task) {
         GlobusTaskInProgress mergedTask = em.merge(task);
         em.remove(mergedTask);
@@ -1440,14 +1509,26 @@ public class GlobusServiceBean implements java.io.Serializable {
         return em.createNamedQuery("ExternalFileUploadInProgress.findByTaskId").setParameter("taskId", taskId).getResultList();    
     }
     
-    public void processCompletedTask(GlobusTaskInProgress globusTask, boolean taskSuccess, String taskStatus, Logger taskLogger) {
-        String ruleId = globusTask.getRuleId();
+    public void processCompletedTask(GlobusTaskInProgress globusTask, GlobusTaskState taskState, Logger taskLogger) {
+        // (download tasks without a rule are saved with an empty rule id, the
+        // column being non-nullable)
+        String ruleId = globusTask.getRuleId() == null || globusTask.getRuleId().isBlank() ? null : globusTask.getRuleId();
         Dataset dataset = globusTask.getDataset();
         AuthenticatedUser authUser = globusTask.getLocalUser();
+        
+        if (GlobusTaskInProgress.TaskType.DOWNLOAD.equals(globusTask.getTaskType())) {
+            // (downloads may be initiated by guest users, so the user may be null)
+            processCompletedDownloadTask(taskState, dataset, authUser, ruleId, taskLogger);
+            return; 
+        }
+        
         if (authUser == null) {
             // @todo log error message; do nothing 
             return;
         }
+        
+        boolean taskSuccess = GlobusUtil.isTaskSucceeded(taskState);
+        String taskStatus = GlobusUtil.getTaskStatus(taskState);
 
         if (GlobusTaskInProgress.TaskType.UPLOAD.equals(globusTask.getTaskType())) {
             List<ExternalFileUploadInProgress> fileUploadsInProgress = findExternalUploadsByTaskId(globusTask.getTaskId());
@@ -1469,8 +1550,6 @@ public class GlobusServiceBean implements java.io.Serializable {
             JsonArray filesJsonArray = filesJsonArrayBuilder.build();
 
             processCompletedUploadTask(dataset, filesJsonArray, authUser, ruleId, taskLogger, taskSuccess, taskStatus);
-        } else {
-            // @todo eventually, extend this async. framework to handle Glonus downloads as well
         }
 
     }
@@ -6,12 +6,37 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.GlobusAccessibleStore;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import jakarta.json.Json;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 
 public class GlobusUtil {
 
+    public static final String DEFAULT_TRANSFER_API_URL = "https://transfer.api.globusonline.org/v0.10";
+    public static final String DEFAULT_AUTH_API_URL = "https://auth.globus.org/v2";
+
+    /**
+     * Base url of the Globus Transfer API, without the trailing slash. Can be
+     * overridden with the dataverse.files.globus-transfer-api-url JVM option,
+     * for example to point the installation to a local mock of the API for testing.
+     */
+    public static String getTransferApiUrl() {
+        return stripTrailingSlash(JvmSettings.GLOBUS_TRANSFER_API_URL.lookupOptional().orElse(DEFAULT_TRANSFER_API_URL));
+    }
+
+    /**
+     * Base url of the Globus Auth API, without the trailing slash
+     * (dataverse.files.globus-auth-api-url).
+     */
+    public static String getAuthApiUrl() {
+        return stripTrailingSlash(JvmSettings.GLOBUS_AUTH_API_URL.lookupOptional().orElse(DEFAULT_AUTH_API_URL));
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
     public static JsonObject getFilesMap(List<DataFile> dataFiles, Dataset d) {
         JsonObjectBuilder filesBuilder = Json.createObjectBuilder();
         for (DataFile df : dataFiles) {
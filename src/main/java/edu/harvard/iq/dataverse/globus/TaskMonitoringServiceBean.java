@@ -16,6 +16,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.FileHandler;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -27,6 +28,9 @@ import java.util.logging.Logger;
  * to the dataset on completion of a remote Globus upload). When a task fails or 
  * terminates abnormally, a message is logged and the task record is deleted 
  * from the database. 
+ * Both uploads and downloads are monitored by the same scheduled job, which 
+ * goes through the ongoing tasks in batches (the batch size is configurable 
+ * via the dataverse.files.globus-monitoring-batch-size JVM option).
  * 
  * @author landreev
  */
@@ -46,6 +50,7 @@ public class TaskMonitoringServiceBean {
     GlobusServiceBean globusService;
     
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
+    private static final int DEFAULT_BATCH_SIZE = 100;
     
     @PostConstruct
     public void init() {
@@ -67,29 +72,57 @@ public class TaskMonitoringServiceBean {
      */
     public void checkOngoingTasks() {
         logger.fine("Performing a scheduled external Globus task check");
-        List<GlobusTaskInProgress> tasks = globusService.findAllOngoingTasks();
-
-        tasks.forEach(t -> {
-            FileHandler taskLogHandler = getTaskLogHandler(t);
-            Logger taskLogger = getTaskLogger(t, taskLogHandler);
+        int batchSize = JvmSettings.GLOBUS_TASK_MONITORING_BATCH_SIZE.lookupOptional(Integer.class).orElse(DEFAULT_BATCH_SIZE);
+        if (batchSize < 1) {
+            batchSize = DEFAULT_BATCH_SIZE;
+        }
+        
+        long lastId = 0L;
+        int checked = 0; 
+        List<GlobusTaskInProgress> tasks = globusService.findOngoingTasks(lastId, batchSize);
+        
+        while (!tasks.isEmpty()) {
+            for (GlobusTaskInProgress t : tasks) {
+                checkTask(t);
+                lastId = t.getId();
+                checked++;
+            }
             
+            if (tasks.size() < batchSize) {
+                break;
+            }
+            tasks = globusService.findOngoingTasks(lastId, batchSize);
+        }
+        logger.fine("Checked " + checked + " ongoing Globus tasks");
+    }
+    
+    private void checkTask(GlobusTaskInProgress t) {
+        FileHandler taskLogHandler = getTaskLogHandler(t);
+        Logger taskLogger = getTaskLogger(t, taskLogHandler);
+
+        try {
             GlobusTaskState retrieved = globusService.getTask(t.getGlobusToken(), t.getTaskId(), taskLogger);
             if (GlobusUtil.isTaskCompleted(retrieved)) {
-                // Do our thing, finalize adding the files to the dataset
-                globusService.processCompletedTask(t, GlobusUtil.isTaskSucceeded(retrieved), GlobusUtil.getTaskStatus(retrieved), taskLogger);
+                // Do our thing, finalize adding the files to the dataset 
+                // (or, for a download, delete the access rule and notify the user)
+                globusService.processCompletedTask(t, retrieved, taskLogger);
                 // Whether it finished successfully, or failed in the process, 
                 // there's no need to keep monitoring this task, so we can 
                 // delete it.
                 //globusService.deleteExternalUploadRecords(t.getTaskId());
                 globusService.deleteTask(t);
             }
-            
+        } catch (Exception ex) {
+            // An unexpected failure on one task should not prevent the 
+            // remaining tasks in the batch from being checked.
+            logger.log(Level.WARNING, "Failed to check on the Globus task " + t.getTaskId(), ex);
+        } finally {
             if (taskLogHandler != null) {
                 // @todo it should be prudent to cache these loggers and handlers 
                 // between monitoring runs (should be fairly easy to do)
                 taskLogHandler.close();
             }
-        });
+        }
     }
     
     private FileHandler getTaskLogHandler(GlobusTaskInProgress task) {
@@ -100,7 +133,8 @@ public class TaskMonitoringServiceBean {
         Date startDate = new Date(task.getStartTime().getTime());
         String logTimeStamp = logFormatter.format(startDate);
         
-        String logFileName = System.getProperty("com.sun.aas.instanceRoot") + File.separator + "logs" + File.separator + "globusUpload_" + task.getDataset().getId() + "_" + logTimeStamp
+        String logFilePrefix = GlobusTaskInProgress.TaskType.DOWNLOAD.equals(task.getTaskType()) ? "globusDownload_id_" : "globusUpload_";
+        String logFileName = System.getProperty("com.sun.aas.instanceRoot") + File.separator + "logs" + File.separator + logFilePrefix + task.getDataset().getId() + "_" + logTimeStamp
                 + ".log";
         FileHandler fileHandler;
         try {
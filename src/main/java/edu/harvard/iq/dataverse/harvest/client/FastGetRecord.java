@@ -23,6 +23,7 @@ import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
 import java.io.IOException;
 
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.StringReader;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
@@ -86,6 +87,8 @@ public class FastGetRecord {
     private static final String XML_COMMENT_START = "<!--";
     private static final String XML_COMMENT_END = "-->";
     
+    static final long RETRY_DELAY_MILLIS = 1000;
+    
     /**
      * Client-side GetRecord verb constructor
      *
@@ -107,6 +110,7 @@ public class FastGetRecord {
     private File savedMetadataFile = null; 
     private XMLInputFactory xmlInputFactory = null; 
     private boolean recordDeleted = false;
+    private int responseCode = 0;
 
     // TODO: logging
 
@@ -121,6 +125,14 @@ public class FastGetRecord {
     public boolean isDeleted () {
         return this.recordDeleted;
     }
+    
+    /**
+     * @return true if the GetRecord request failed with an HTTP error that 
+     * is worth retrying
+     */
+    public boolean isTransientFailure() {
+        return errorMessage != null && isTransientFailure(responseCode);
+    }
 
 
     public void harvestRecord(String baseURL, String identifier, String metadataPrefix, Map<String,String> customHeaders, HttpClient httpClient) throws IOException,
@@ -140,47 +152,12 @@ public class FastGetRecord {
             throw new IOException("Null Http Client, cannot make a GetRecord call to obtain the metadata.");
         }
         
-        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(requestURL))
-                .GET()
-                .header("User-Agent", "XOAI Service Provider v5 (Dataverse)")
-                .header("Accept-Encoding", "compress, gzip");
+        HttpResponse<InputStream> response = sendRequest(requestURL, customHeaders, httpClient);
         
-        if (customHeaders != null) {
-            for (String headerName : customHeaders.keySet()) {
-                requestBuilder.header(headerName, customHeaders.get(headerName));
-            }
-        }
-        
-        HttpRequest request = requestBuilder.build();
-        HttpResponse<InputStream> response;
-
-        try {            
-             response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-            throw new IOException("Failed to connect to the remote dataverse server to obtain GetRecord metadata");
-        }
-        
-        int responseCode = response.statusCode();
+        responseCode = response.statusCode();
         
         if (responseCode == HTTP_OK) {
-            InputStream inputStream = response.body();
-            Optional<String> contentEncoding = response.headers().firstValue("Content-Encoding");
-            
-            // support for the standard gzip encoding:
-            in = inputStream; 
-            if (contentEncoding.isPresent()) {
-                if (contentEncoding.get().equals("compress")) {
-                    ZipInputStream zis = new ZipInputStream(inputStream);
-                    zis.getNextEntry();
-                    in = zis;
-                } else if (contentEncoding.get().equals("gzip")) {
-                    in = new GZIPInputStream(inputStream);
-                } else if (contentEncoding.get().equals("deflate")) {
-                    in = new InflaterInputStream(inputStream);
-                }
-            }
+            in = decodeResponseBody(response);
 
             // We are going to read the OAI header and SAX-parse it for the
             // error messages and other protocol information;
@@ -414,6 +391,7 @@ public class FastGetRecord {
 
         } else {
             this.errorMessage = "GetRecord request failed. HTTP error code "+responseCode;
+            response.body().close();
         }
    }
 
@@ -435,6 +413,74 @@ public class FastGetRecord {
         return requestURL.toString();
     }
 
+    /**
+     * Makes an OAI request, with the custom headers configured for the 
+     * harvesting client.
+     */
+    static HttpResponse<InputStream> sendRequest(String requestURL, Map<String,String> customHeaders, HttpClient httpClient) throws IOException {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(requestURL))
+                .GET()
+                .header("User-Agent", "XOAI Service Provider v5 (Dataverse)")
+                .header("Accept-Encoding", "compress, gzip");
+        
+        if (customHeaders != null) {
+            for (String headerName : customHeaders.keySet()) {
+                requestBuilder.header(headerName, customHeaders.get(headerName));
+            }
+        }
+        
+        try {            
+            return httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Failed to connect to the remote OAI server: " + requestURL);
+        }
+    }
+    
+    /**
+     * @return the body of the response, with the content encoding (the
+     * standard gzip, etc.) removed
+     */
+    static InputStream decodeResponseBody(HttpResponse<InputStream> response) throws IOException {
+        InputStream inputStream = response.body();
+        Optional<String> contentEncoding = response.headers().firstValue("Content-Encoding");
+        
+        if (contentEncoding.isPresent()) {
+            if (contentEncoding.get().equals("compress")) {
+                ZipInputStream zis = new ZipInputStream(inputStream);
+                zis.getNextEntry();
+                return zis;
+            } else if (contentEncoding.get().equals("gzip")) {
+                return new GZIPInputStream(inputStream);
+            } else if (contentEncoding.get().equals("deflate")) {
+                return new InflaterInputStream(inputStream);
+            }
+        }
+        return inputStream;
+    }
+    
+    /**
+     * @return true if the request failed in a way that may well not happen
+     * again, if it is retried (the server was overloaded, or unavailable)
+     */
+    static boolean isTransientFailure(int responseCode) {
+        return responseCode == 429 || responseCode >= 500;
+    }
+    
+    /**
+     * Waits a little longer after every failed attempt, before the request
+     * is retried.
+     */
+    static void pauseBeforeRetry(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS * (attempt + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry an OAI request");
+        }
+    }
+
     private void processOAIheader (XMLStreamReader xmlr) throws XMLStreamException, IOException {
 
         // is this really a GetRecord response?
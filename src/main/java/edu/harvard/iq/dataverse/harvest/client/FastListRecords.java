@@ -0,0 +1,328 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import static java.net.HttpURLConnection.HTTP_OK;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Harvests records with the OAI ListRecords verb, a page (a resumption token)
+ * at a time, instead of a ListIdentifiers call followed by a GetRecord call
+ * for every single record.
+ *
+ * Like FastGetRecord, it does not build the records in memory: the responses
+ * are parsed as event streams, and the metadata section of every record is
+ * copied, as it is, into a temp file, to be parsed when the record is
+ * imported. (Any namespaces the metadata relies on, but that are declared
+ * higher up in the response, are declared again in the copy.)
+ */
+public class FastListRecords {
+
+    private static final Logger logger = Logger.getLogger(FastListRecords.class.getCanonicalName());
+
+    private static final DateTimeFormatter FROM_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+
+    private final String baseURL;
+    private final String metadataPrefix;
+    private final String setName;
+    private final Date fromDate;
+    private final Map<String, String> customHeaders;
+    private final HttpClient httpClient;
+    private final int retries;
+
+    private final XMLInputFactory xmlInputFactory;
+    private final XMLOutputFactory xmlOutputFactory;
+    private final XMLEventFactory xmlEventFactory = XMLEventFactory.newInstance();
+
+    private String resumptionToken = null;
+    private boolean finished = false;
+
+    /**
+     * @param oaiHandler the configured OaiHandler running this harvest
+     * @param httpClient jdk HttpClient used to make http requests
+     * @param retries    how many times a page request that failed on a
+     *                   connection problem, or a server error, is retried
+     */
+    public FastListRecords(OaiHandler oaiHandler, HttpClient httpClient, int retries) throws IOException {
+        if (httpClient == null) {
+            throw new IOException("Null Http Client, cannot make a ListRecords call to obtain the metadata.");
+        }
+        this.baseURL = oaiHandler.getBaseOaiUrl();
+        this.metadataPrefix = oaiHandler.getMetadataPrefix();
+        this.setName = oaiHandler.getSetName();
+        this.fromDate = oaiHandler.getFromDate();
+        this.customHeaders = oaiHandler.getCustomHeaders();
+        this.httpClient = httpClient;
+        this.retries = retries;
+
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlOutputFactory = XMLOutputFactory.newInstance();
+        xmlOutputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+    }
+
+    /**
+     * Retrieves the next page of records. The caller is responsible for the
+     * temp files of the records returned.
+     *
+     * @return the records, or null if all the pages have been retrieved
+     * @throws IOException if the page could not be retrieved, or the server
+     * responded with an OAI error
+     */
+    public List<HarvestedRecord> nextPage() throws IOException {
+        if (finished) {
+            return null;
+        }
+        String requestURL = getRequestURL();
+        for (int attempt = 0;; attempt++) {
+            try {
+                return retrievePage(requestURL);
+            } catch (InterruptedIOException | OaiErrorException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                if (attempt >= retries || Thread.currentThread().isInterrupted()) {
+                    throw ex;
+                }
+                logger.info("Retrying " + requestURL + " after: " + ex.getMessage());
+                FastGetRecord.pauseBeforeRetry(attempt);
+            }
+        }
+    }
+
+    private List<HarvestedRecord> retrievePage(String requestURL) throws IOException {
+        HttpResponse<InputStream> response = FastGetRecord.sendRequest(requestURL, customHeaders, httpClient);
+        int responseCode = response.statusCode();
+        if (responseCode != HTTP_OK) {
+            response.body().close();
+            String message = "ListRecords request failed. HTTP error code " + responseCode;
+            throw FastGetRecord.isTransientFailure(responseCode) ? new IOException(message) : new OaiErrorException(message);
+        }
+        try (InputStream in = FastGetRecord.decodeResponseBody(response)) {
+            return parsePage(in);
+        }
+    }
+
+    List<HarvestedRecord> parsePage(InputStream in) throws IOException {
+        List<HarvestedRecord> records = new ArrayList<>();
+        String token = null;
+        XMLEventReader reader = null;
+        try {
+            reader = xmlInputFactory.createXMLEventReader(in);
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (!event.isStartElement()) {
+                    continue;
+                }
+                StartElement element = event.asStartElement();
+                switch (element.getName().getLocalPart()) {
+                    case "error" -> {
+                        String code = getAttribute(element, "code");
+                        String message = reader.getElementText();
+                        if ("noRecordsMatch".equals(code)) {
+                            // not an error: there is nothing new to harvest
+                            finished = true;
+                            return records;
+                        }
+                        throw new OaiErrorException("ListRecords error code: " + code + "; ListRecords error message: " + message);
+                    }
+                    case "record" -> records.add(parseRecord(reader));
+                    case "resumptionToken" -> token = reader.getElementText().trim();
+                    default -> {
+                    }
+                }
+            }
+        } catch (XMLStreamException ex) {
+            records.forEach(HarvestedRecord::discard);
+            throw new IOException("Malformed ListRecords response; baseURL=" + baseURL + ", metadataPrefix=" + metadataPrefix + ": " + ex.getMessage(), ex);
+        } catch (IOException | RuntimeException ex) {
+            records.forEach(HarvestedRecord::discard);
+            throw ex;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                }
+            }
+        }
+        resumptionToken = StringUtils.isEmpty(token) ? null : token;
+        finished = resumptionToken == null;
+        return records;
+    }
+
+    private HarvestedRecord parseRecord(XMLEventReader reader) throws XMLStreamException, IOException {
+        String identifier = null;
+        Date dateStamp = null;
+        boolean deleted = false;
+        File metadataFile = null;
+        try {
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    StartElement element = event.asStartElement();
+                    switch (element.getName().getLocalPart()) {
+                        case "header" -> deleted = "deleted".equals(getAttribute(element, "status"));
+                        case "identifier" -> identifier = reader.getElementText().trim();
+                        case "datestamp" -> dateStamp = parseDateStamp(reader.getElementText().trim());
+                        case "metadata" -> metadataFile = saveMetadata(reader);
+                        // the provenance, etc. - which may have identifiers of its own
+                        case "about" -> skipElement(reader);
+                        default -> {
+                        }
+                    }
+                } else if (event.isEndElement() && "record".equals(event.asEndElement().getName().getLocalPart())) {
+                    break;
+                }
+            }
+        } catch (XMLStreamException | IOException ex) {
+            if (metadataFile != null) {
+                metadataFile.delete();
+            }
+            throw ex;
+        }
+
+        if (identifier == null) {
+            if (metadataFile != null) {
+                metadataFile.delete();
+            }
+            throw new XMLStreamException("A record without an identifier in the ListRecords response");
+        }
+        if (deleted) {
+            if (metadataFile != null) {
+                metadataFile.delete();
+            }
+            return HarvestedRecord.deleted(identifier, dateStamp);
+        }
+        if (metadataFile == null) {
+            return HarvestedRecord.failed(identifier, dateStamp, "No metadata in the ListRecords response for " + identifier);
+        }
+        return new HarvestedRecord(identifier, dateStamp, false, metadataFile, null);
+    }
+
+    /**
+     * Copies the contents of the metadata element that the reader is on into
+     * a temp file, leaving the reader after the end of the element.
+     */
+    private File saveMetadata(XMLEventReader reader) throws XMLStreamException, IOException {
+        File metadataFile = File.createTempFile("meta", ".tmp");
+        try (OutputStream out = new FileOutputStream(metadataFile)) {
+            XMLEventWriter writer = xmlOutputFactory.createXMLEventWriter(out, "UTF-8");
+            writer.add(xmlEventFactory.createStartDocument("UTF-8", "1.0"));
+            int depth = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isEndElement() && depth == 0) {
+                    // </metadata>
+                    break;
+                }
+                if (event.isStartElement()) {
+                    depth++;
+                }
+                if (depth > 0) {
+                    writer.add(event);
+                }
+                if (event.isEndElement()) {
+                    depth--;
+                }
+            }
+            writer.add(xmlEventFactory.createEndDocument());
+            writer.close();
+        } catch (XMLStreamException | IOException ex) {
+            metadataFile.delete();
+            throw ex;
+        }
+        return metadataFile;
+    }
+
+    private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+        int depth = 0;
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                if (depth == 0) {
+                    return;
+                }
+                depth--;
+            }
+        }
+    }
+
+    private static String getAttribute(StartElement element, String name) {
+        Attribute attribute = element.getAttributeByName(new QName(name));
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    /**
+     * @return the datestamp, of either day or seconds granularity, or null
+     * if it can't be parsed
+     */
+    static Date parseDateStamp(String value) {
+        try {
+            if (value.length() == 10) {
+                return Date.from(LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant());
+            }
+            return Date.from(Instant.parse(value));
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    String getRequestURL() {
+        StringBuilder requestURL = new StringBuilder(baseURL);
+        requestURL.append("?verb=ListRecords");
+        if (resumptionToken != null) {
+            requestURL.append("&resumptionToken=").append(URLEncoder.encode(resumptionToken, StandardCharsets.UTF_8));
+            return requestURL.toString();
+        }
+        requestURL.append("&metadataPrefix=").append(URLEncoder.encode(metadataPrefix, StandardCharsets.UTF_8));
+        if (!StringUtils.isEmpty(setName)) {
+            requestURL.append("&set=").append(URLEncoder.encode(setName, StandardCharsets.UTF_8));
+        }
+        if (fromDate != null) {
+            requestURL.append("&from=").append(FROM_DATE_FORMAT.format(fromDate.toInstant()));
+        }
+        return requestURL.toString();
+    }
+
+    /**
+     * An error response of the server, which is not going to go away if the
+     * request is retried.
+     */
+    static class OaiErrorException extends IOException {
+        OaiErrorException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import static edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder.jsonObjectBuilder;
+import edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the current, or last, harvest of a harvesting client on this
+ * server: how many records have been retrieved and imported, and how long
+ * that took. Kept in memory only, and reported with the harvesting client
+ * configuration in the API.
+ */
+public class HarvestThroughput {
+
+    private static final Map<String, HarvestThroughput> lastHarvests = new ConcurrentHashMap<>();
+
+    private final Instant startTime = Instant.now();
+    private volatile Instant endTime = null;
+
+    private final AtomicLong recordsRetrieved = new AtomicLong();
+    private final AtomicLong recordsFailed = new AtomicLong();
+    private final AtomicLong retrievalRetries = new AtomicLong();
+    private final AtomicLong datasetsImported = new AtomicLong();
+    private final AtomicLong datasetsDeleted = new AtomicLong();
+    private final AtomicLong retrievalNanos = new AtomicLong();
+    private final AtomicLong importNanos = new AtomicLong();
+
+    /**
+     * Starts the counters of a new harvest of the client, replacing those of
+     * its last harvest.
+     */
+    static HarvestThroughput start(String clientName) {
+        HarvestThroughput throughput = new HarvestThroughput();
+        lastHarvests.put(clientName, throughput);
+        return throughput;
+    }
+
+    /**
+     * @return the counters of the current, or last, harvest of the client, or
+     * null if it has not been run since this server was started
+     */
+    public static HarvestThroughput get(String clientName) {
+        return lastHarvests.get(clientName);
+    }
+
+    void finish() {
+        endTime = Instant.now();
+    }
+
+    void recordRetrieved(long nanos) {
+        recordsRetrieved.incrementAndGet();
+        retrievalNanos.addAndGet(nanos);
+    }
+
+    void recordFailed() {
+        recordsFailed.incrementAndGet();
+    }
+
+    void retrievalRetried() {
+        retrievalRetries.incrementAndGet();
+    }
+
+    void datasetImported(long nanos) {
+        datasetsImported.incrementAndGet();
+        importNanos.addAndGet(nanos);
+    }
+
+    void datasetDeleted() {
+        datasetsDeleted.incrementAndGet();
+    }
+
+    public long getRecordsRetrieved() {
+        return recordsRetrieved.get();
+    }
+
+    public long getDatasetsImported() {
+        return datasetsImported.get();
+    }
+
+    /**
+     * @return the records processed (imported, deleted or failed) per minute,
+     * since the harvest was started
+     */
+    public double getRecordsPerMinute() {
+        Instant end = endTime == null ? Instant.now() : endTime;
+        long millis = Math.max(1, end.toEpochMilli() - startTime.toEpochMilli());
+        long processed = datasetsImported.get() + datasetsDeleted.get() + recordsFailed.get();
+        return processed * 60000.0 / millis;
+    }
+
+    private static long averageMillis(AtomicLong nanos, AtomicLong count) {
+        long n = count.get();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos.get() / n);
+    }
+
+    public NullSafeJsonBuilder toJson() {
+        return jsonObjectBuilder()
+                .add("startTime", startTime.toString())
+                .add("endTime", endTime == null ? null : endTime.toString())
+                .add("recordsRetrieved", recordsRetrieved.get())
+                .add("retrievalRetries", retrievalRetries.get())
+                .add("recordsFailed", recordsFailed.get())
+                .add("datasetsImported", datasetsImported.get())
+                .add("datasetsDeleted", datasetsDeleted.get())
+                .add("recordsPerMinute", Math.round(getRecordsPerMinute() * 10) / 10.0)
+                .add("averageRetrievalMillis", averageMillis(retrievalNanos, recordsRetrieved))
+                .add("averageImportMillis", averageMillis(importNanos, datasetsImported));
+    }
+
+    @Override
+    public String toString() {
+        return "retrieved: " + recordsRetrieved.get()
+                + " (retries: " + retrievalRetries.get() + ")"
+                + ", failed: " + recordsFailed.get()
+                + ", imported: " + datasetsImported.get()
+                + ", deleted: " + datasetsDeleted.get()
+                + ", records per minute: " + Math.round(getRecordsPerMinute())
+                + ", average retrieval time: " + averageMillis(retrievalNanos, recordsRetrieved) + "ms"
+                + ", average import time: " + averageMillis(importNanos, datasetsImported) + "ms";
+    }
+}
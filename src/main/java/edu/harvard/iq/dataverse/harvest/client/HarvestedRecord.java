@@ -0,0 +1,35 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * A record retrieved from a remote OAI server, by GetRecord or ListRecords,
+ * and waiting to be imported (or deleted).
+ *
+ * @param identifier   the OAI identifier of the record
+ * @param dateStamp    the datestamp of the record
+ * @param deleted      true if the record is marked as deleted on the server
+ * @param metadataFile the temp file with the metadata of the record; null if
+ *                     the record is deleted, or could not be retrieved
+ * @param errorMessage why the record could not be retrieved; null if it was
+ */
+public record HarvestedRecord(String identifier, Date dateStamp, boolean deleted, File metadataFile, String errorMessage) {
+
+    static HarvestedRecord deleted(String identifier, Date dateStamp) {
+        return new HarvestedRecord(identifier, dateStamp, true, null, null);
+    }
+
+    static HarvestedRecord failed(String identifier, Date dateStamp, String errorMessage) {
+        return new HarvestedRecord(identifier, dateStamp, false, null, errorMessage);
+    }
+
+    /**
+     * Deletes the temp file of the record, if any.
+     */
+    void discard() {
+        if (metadataFile != null) {
+            metadataFile.delete();
+        }
+    }
+}
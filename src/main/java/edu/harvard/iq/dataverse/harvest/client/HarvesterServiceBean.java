@@ -14,10 +14,17 @@ import edu.harvard.iq.dataverse.timer.DataverseTimerServiceBean;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,10 +34,10 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.EJBException;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.Timer;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.inject.Named;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
-import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.xml.sax.SAXException;
 
 import io.gdcc.xoai.model.oaipmh.results.record.Header;
@@ -40,9 +47,12 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
 import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandlerException;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.net.URI;
 import java.net.http.HttpClient;
@@ -80,6 +90,8 @@ public class HarvesterServiceBean {
     EjbDataverseEngine engineService;
     @EJB
     IndexServiceBean indexService;
+    @Resource
+    ManagedExecutorService executor;
     
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.client.HarvesterServiceBean");
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
@@ -194,6 +206,7 @@ public class HarvesterServiceBean {
             harvestingClientService.setHarvestFailure(harvestingClientId, new Date(), harvestedDatasetIds.size(), failedIdentifiers.size(), deletedIdentifiers.size());
 
         } finally {
+            indexHarvestedDatasets(harvestedDatasetIds, true, hdLogger);
             harvestingClientService.resetHarvestInProgress(harvestingClientId);
             fileHandler.close();
             hdLogger.removeHandler(fileHandler);
@@ -231,6 +244,52 @@ public class HarvesterServiceBean {
         // OAI (or remote Dataverse API) to obtain the metadata records 
         httpClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
         
+        HarvestThroughput throughput = HarvestThroughput.start(harvestingClient.getName());
+        try {
+            if (isListRecordsHarvest(harvestingClient)) {
+                harvestWithListRecords(dataverseRequest, harvestingClient, hdLogger, importCleanupLog, oaiHandler, httpClient, throughput, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+            } else {
+                harvestWithGetRecord(dataverseRequest, harvestingClient, hdLogger, importCleanupLog, oaiHandler, httpClient, throughput, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+            }
+        } finally {
+            throughput.finish();
+            hdLogger.log(Level.INFO, "Harvest throughput: " + throughput);
+        }
+
+        logCompletedOaiHarvest(hdLogger, harvestingClient);
+
+    }
+    
+    /**
+     * The clients configured to use ListRecords instead of ListIdentifiers 
+     * and GetRecord calls. The native Dataverse json cannot be harvested this
+     * way, since it's retrieved from the API of the remote server.
+     */
+    private boolean isListRecordsHarvest(HarvestingClient harvestingClient) {
+        if (DATAVERSE_PROPRIETARY_METADATA_FORMAT.equals(harvestingClient.getMetadataPrefix())) {
+            return false;
+        }
+        String[] clients = JvmSettings.HARVEST_CLIENT_LIST_RECORDS.lookupOptional(String[].class).orElse(new String[0]);
+        return Arrays.asList(clients).contains(harvestingClient.getName());
+    }
+    
+    /**
+     * Runs ListIdentifiers, and retrieves the records with GetRecord calls 
+     * (or the calls to the native API of a remote Dataverse) on a few threads
+     * of the managed executor, ahead of their import. The records are still
+     * imported one by one, in the order they are listed, by the calling thread;
+     * the number of records retrieved, and waiting to be imported, is bounded.
+     */
+    void harvestWithGetRecord(DataverseRequest dataverseRequest, HarvestingClient harvestingClient, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, HttpClient httpClient, HarvestThroughput throughput, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds)
+            throws IOException, StopHarvestException {
+        int fetchThreads = Math.max(1, JvmSettings.HARVEST_CLIENT_FETCH_THREADS.lookupOptional(Integer.class).orElse(4));
+        int retries = Math.max(0, JvmSettings.HARVEST_CLIENT_FETCH_RETRIES.lookupOptional(Integer.class).orElse(3));
+        int maxPending = fetchThreads * 2;
+        
+        // at most maxPending + 1 records are being retrieved, or waiting to be
+        BoundedExecutor fetchExecutor = new BoundedExecutor(executor, fetchThreads, maxPending + 1);
+        Deque<CompletableFuture<HarvestedRecord>> pending = new ArrayDeque<>();
+        
         try {
             for (Iterator<Header> idIter = oaiHandler.runListIdentifiers(); idIter.hasNext();) {
                 // Before each iteration, check if this harvesting job needs to be aborted:
@@ -245,107 +304,263 @@ public class HarvesterServiceBean {
                 hdLogger.info("processing identifier: " + identifier + ", date: " + dateStamp);
                 
                 if (h.isDeleted()) {
-                    hdLogger.info("Deleting harvesting dataset for " + identifier + ", per ListIdentifiers.");
-
-                    deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger);
-                    continue;
+                    pending.add(CompletableFuture.completedFuture(HarvestedRecord.deleted(identifier, dateStamp)));
+                } else {
+                    pending.add(CompletableFuture.supplyAsync(() -> fetchRecord(hdLogger, oaiHandler, identifier, dateStamp, httpClient, retries, throughput), fetchExecutor));
                 }
-
-                MutableBoolean getRecordErrorOccurred = new MutableBoolean(false);
-
-                // Retrieve and process this record with a separate GetRecord call:
-                
-                Long datasetId = processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, identifier, getRecordErrorOccurred, deletedIdentifiers, dateStamp, httpClient);
                 
-                if (datasetId != null) {
-                    harvestedDatasetIds.add(datasetId);
+                while (pending.size() > maxPending) {
+                    processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, awaitRecord(pending.poll()), throughput, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
                 }
-                
-                if (getRecordErrorOccurred.booleanValue() == true) {
-                    failedIdentifiers.add(identifier);
-                    //can be uncommented out for testing failure handling:
-                    //throw new IOException("Exception occured, stopping harvest");
+            }
+            
+            while (!pending.isEmpty()) {
+                if (checkIfStoppingJob(harvestingClient)) {
+                    throw new StopHarvestException("Harvesting stopped by external request");
                 }
+                processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, awaitRecord(pending.poll()), throughput, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
             }
         } catch (OaiHandlerException e) {
             throw new IOException("Failed to run ListIdentifiers: " + e.getMessage());
+        } finally {
+            // the records not retrieved yet are dropped; the ones being
+            // retrieved, and the ones retrieved but not imported, if the
+            // harvest was stopped, are discarded
+            fetchExecutor.shutdown();
+            for (CompletableFuture<HarvestedRecord> record : pending) {
+                record.thenAccept(HarvestedRecord::discard);
+            }
         }
-
-        logCompletedOaiHarvest(hdLogger, harvestingClient);
-
-    }    
+    }
+    
+    /**
+     * Runs ListRecords, and imports the records of a page while the next page 
+     * is being retrieved.
+     */
+    private void harvestWithListRecords(DataverseRequest dataverseRequest, HarvestingClient harvestingClient, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, HttpClient httpClient, HarvestThroughput throughput, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds)
+            throws IOException, StopHarvestException {
+        int retries = Math.max(0, JvmSettings.HARVEST_CLIENT_FETCH_RETRIES.lookupOptional(Integer.class).orElse(3));
+        
+        FastListRecords listRecords;
+        try {
+            listRecords = oaiHandler.runListRecords(httpClient, retries);
+        } catch (OaiHandlerException e) {
+            throw new IOException("Failed to run ListRecords: " + e.getMessage());
+        }
+        
+        List<HarvestedRecord> page = null;
+        CompletableFuture<List<HarvestedRecord>> nextPage = null;
+        int index = 0;
+        try {
+            page = retrievePage(listRecords, throughput);
+            while (page != null) {
+                nextPage = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return retrievePage(listRecords, throughput);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+                for (index = 0; index < page.size(); index++) {
+                    if (checkIfStoppingJob(harvestingClient)) {
+                        throw new StopHarvestException("Harvesting stopped by external request");
+                    }
+                    HarvestedRecord record = page.get(index);
+                    hdLogger.info("processing identifier: " + record.identifier() + ", date: " + record.dateStamp());
+                    processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, record, throughput, failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+                }
+                page = awaitPage(nextPage);
+                nextPage = null;
+            }
+        } finally {
+            // the records retrieved, or being retrieved, but not imported, if
+            // the harvest was stopped:
+            if (page != null) {
+                for (int i = index; i < page.size(); i++) {
+                    page.get(i).discard();
+                }
+            }
+            if (nextPage != null) {
+                nextPage.thenAccept(records -> {
+                    if (records != null) {
+                        records.forEach(HarvestedRecord::discard);
+                    }
+                });
+            }
+        }
+    }
     
-    private Long processRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, String identifier, MutableBoolean recordErrorOccurred, List<String> deletedIdentifiers, Date dateStamp, HttpClient httpClient) {
-        String errMessage = null;
-        Dataset harvestedDataset = null;
+    private static List<HarvestedRecord> retrievePage(FastListRecords listRecords, HarvestThroughput throughput) throws IOException {
+        long start = System.nanoTime();
+        List<HarvestedRecord> page = listRecords.nextPage();
+        if (page != null && !page.isEmpty()) {
+            long nanosPerRecord = (System.nanoTime() - start) / page.size();
+            for (HarvestedRecord record : page) {
+                throughput.recordRetrieved(nanosPerRecord);
+            }
+        }
+        return page;
+    }
+    
+    private static List<HarvestedRecord> awaitPage(Future<List<HarvestedRecord>> page) throws IOException {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while retrieving a ListRecords page");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to run ListRecords: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+    
+    /**
+     * Retrieves a record, with a GetRecord call, or a call to the native API 
+     * of a remote Dataverse, retrying it if it fails on a connection problem 
+     * or a server error. Runs on the fetch threads; so it must not use any of
+     * the EJBs (or the database).
+     */
+    HarvestedRecord fetchRecord(Logger hdLogger, OaiHandler oaiHandler, String identifier, Date dateStamp, HttpClient httpClient, int retries, HarvestThroughput throughput) {
         logGetRecord(hdLogger, oaiHandler, identifier);
-        File tempFile = null;
+        long start = System.nanoTime();
         
+        for (int attempt = 0;; attempt++) {
+            try {
+                HarvestedRecord record;
+                if (DATAVERSE_PROPRIETARY_METADATA_FORMAT.equals(oaiHandler.getMetadataPrefix())) {
+                    // Make direct call to obtain the proprietary Dataverse metadata
+                    // in JSON from the remote Dataverse server:
+                    String metadataApiUrl = oaiHandler.getProprietaryDataverseMetadataURL(identifier);
+                    logger.fine("calling "+metadataApiUrl);
+                    record = new HarvestedRecord(identifier, dateStamp, false, retrieveProprietaryDataverseMetadata(httpClient, metadataApiUrl), null);
+                } else {
+                    FastGetRecord getRecord = oaiHandler.runGetRecord(identifier, httpClient);
+                    if (getRecord.isTransientFailure() && attempt < retries) {
+                        hdLogger.info("Retrying GetRecord for " + identifier + " after: " + getRecord.getErrorMessage());
+                        throughput.retrievalRetried();
+                        FastGetRecord.pauseBeforeRetry(attempt);
+                        continue;
+                    }
+                    record = new HarvestedRecord(identifier, dateStamp, getRecord.isDeleted(), getRecord.getMetadataFile(), getRecord.getErrorMessage());
+                }
+                throughput.recordRetrieved(System.nanoTime() - start);
+                return record;
+            } catch (Throwable e) {
+                if ((e instanceof IOException || e instanceof OaiHandlerException) 
+                        && !(e instanceof InterruptedIOException) 
+                        && !Thread.currentThread().isInterrupted() 
+                        && attempt < retries) {
+                    hdLogger.info("Retrying GetRecord for " + identifier + " after: " + e.getMessage());
+                    throughput.retrievalRetried();
+                    try {
+                        FastGetRecord.pauseBeforeRetry(attempt);
+                        continue;
+                    } catch (InterruptedIOException ie) {
+                        e = ie;
+                    }
+                }
+                logGetRecordException(hdLogger, oaiHandler, identifier, e);
+                return HarvestedRecord.failed(identifier, dateStamp, "Caught exception while executing GetRecord on "+identifier);
+            }
+        }
+    }
+    
+    private static HarvestedRecord awaitRecord(Future<HarvestedRecord> record) {
         try {
-            boolean deleted = false;
-            
-            if (DATAVERSE_PROPRIETARY_METADATA_FORMAT.equals(oaiHandler.getMetadataPrefix())) {
-                // Make direct call to obtain the proprietary Dataverse metadata
-                // in JSON from the remote Dataverse server:
-                String metadataApiUrl = oaiHandler.getProprietaryDataverseMetadataURL(identifier);
-                logger.fine("calling "+metadataApiUrl);
-                tempFile = retrieveProprietaryDataverseMetadata(httpClient, metadataApiUrl);
-                
-            } else {
-                FastGetRecord record = oaiHandler.runGetRecord(identifier, httpClient);
-                errMessage = record.getErrorMessage();
-                deleted = record.isDeleted();
-                tempFile = record.getMetadataFile();
+            return record.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EJBException("Interrupted while retrieving the harvested records");
+        } catch (ExecutionException e) {
+            // fetchRecord() does not throw
+            throw new EJBException(e.getCause());
+        }
+    }
+    
+    /**
+     * Indexes the datasets created by the harvest, once there is a full batch
+     * of them that has not been indexed yet, or, at the end of the harvest,
+     * the rest of them; with a single Solr commit at the end.
+     */
+    private void indexHarvestedDatasets(List<Long> harvestedDatasetIds, boolean endOfHarvest, Logger hdLogger) {
+        int batchSize = Math.max(1, JvmSettings.HARVEST_CLIENT_INDEX_BATCH_SIZE.lookupOptional(Integer.class).orElse(100));
+        int notIndexed = harvestedDatasetIds.size() % batchSize;
+        if (!endOfHarvest && notIndexed != 0) {
+            return;
+        }
+        int fromIndex = harvestedDatasetIds.size() - (endOfHarvest ? notIndexed : batchSize);
+        try {
+            if (fromIndex < harvestedDatasetIds.size()) {
+                indexService.indexHarvestedDatasets(new ArrayList<>(harvestedDatasetIds.subList(fromIndex, harvestedDatasetIds.size())));
             }
-
+            if (endOfHarvest && !harvestedDatasetIds.isEmpty()) {
+                indexService.commitHarvestedDocuments();
+            }
+        } catch (Exception e) {
+            // the datasets are left for "index continue"
+            hdLogger.log(Level.WARNING, "Failed to index harvested datasets: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Imports a retrieved record, or deletes the dataset of a record deleted 
+     * on the remote server.
+     */
+    private void processRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, HarvestedRecord record, HarvestThroughput throughput, List<String> failedIdentifiers, List<String> deletedIdentifiers, List<Long> harvestedDatasetIds) {
+        String identifier = record.identifier();
+        String errMessage = record.errorMessage();
+        
+        try {
             if (errMessage != null) {
                 hdLogger.log(Level.SEVERE, "Error calling GetRecord - " + errMessage);
                 
-            } else if (deleted) {
-                hdLogger.info("Deleting harvesting dataset for "+identifier+", per GetRecord.");
+            } else if (record.deleted()) {
+                hdLogger.info("Deleting harvesting dataset for "+identifier+", per the OAI record header.");
                 
+                int deleted = deletedIdentifiers.size();
                 deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger); 
+                if (deletedIdentifiers.size() > deleted) {
+                    throughput.datasetDeleted();
+                }
             } else {
                 hdLogger.info("Successfully retrieved GetRecord response.");
 
-                PrintWriter cleanupLog;
-                harvestedDataset = importService.doImportHarvestedDataset(dataverseRequest, 
+                long start = System.nanoTime();
+                Dataset harvestedDataset = importService.doImportHarvestedDataset(dataverseRequest, 
                         oaiHandler.getHarvestingClient(),
                         identifier,
                         oaiHandler.getMetadataPrefix(), 
-                        tempFile,
-                        dateStamp,
+                        record.metadataFile(),
+                        record.dateStamp(),
                         importCleanupLog);
+                throughput.datasetImported(System.nanoTime() - start);
                 
                 hdLogger.fine("Harvest Successful for identifier " + identifier);
-                hdLogger.fine("Size of this record: " + tempFile.length());
+                hdLogger.fine("Size of this record: " + record.metadataFile().length());
+                
+                if (harvestedDataset != null) {
+                    harvestedDatasetIds.add(harvestedDataset.getId());
+                    indexHarvestedDatasets(harvestedDatasetIds, false, hdLogger);
+                }
             }
         } catch (Throwable e) {
             logGetRecordException(hdLogger, oaiHandler, identifier, e);
             errMessage = "Caught exception while executing GetRecord on "+identifier;
                 
         } finally {
-            if (tempFile != null) {
-                // temporary - let's not delete the temp metadata file if anything went wrong, for now:
-                if (errMessage == null) {
-                    try{tempFile.delete();}catch(Throwable t){};
-                }
+            // temporary - let's not delete the temp metadata file if anything went wrong, for now:
+            if (errMessage == null) {
+                record.discard();
             }
         }
 
-        // If we got an Error from the OAI server or an exception happened during import, then
-        // set recordErrorOccurred to true (if recordErrorOccurred is being used)
-        // otherwise throw an exception (if recordErrorOccurred is not used, i.e null)
-        
+        // If we got an Error from the OAI server or an exception happened during import, 
+        // record the identifier as failed:
         if (errMessage != null) {
-            if (recordErrorOccurred != null) {
-                recordErrorOccurred.setValue(true);
-            } else {
-                throw new EJBException(errMessage);
-            }
+            throughput.recordFailed();
+            failedIdentifiers.add(identifier);
+            //can be uncommented out for testing failure handling:
+            //throw new IOException("Exception occured, stopping harvest");
         }
-
-        return harvestedDataset != null ? harvestedDataset.getId() : null;
     }
     
     File retrieveProprietaryDataverseMetadata (HttpClient client, String remoteApiUrl) throws IOException {
@@ -12,6 +12,7 @@ import io.gdcc.xoai.serviceprovider.exceptions.IdDoesNotExistException;
 import io.gdcc.xoai.serviceprovider.model.Context;
 import io.gdcc.xoai.serviceprovider.parameters.ListIdentifiersParameters;
 import edu.harvard.iq.dataverse.harvest.client.FastGetRecord;
+import edu.harvard.iq.dataverse.harvest.client.FastListRecords;
 import static edu.harvard.iq.dataverse.harvest.client.HarvesterServiceBean.DATAVERSE_PROPRIETARY_METADATA_API;
 import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
 import io.gdcc.xoai.serviceprovider.client.JdkHttpOaiClient;
@@ -280,6 +281,21 @@ public class OaiHandler implements Serializable {
     }
     
     
+    public FastListRecords runListRecords(HttpClient httpClient, int retries) throws OaiHandlerException {
+        if (StringUtils.isEmpty(this.baseOaiUrl)) {
+            throw new OaiHandlerException("Attempted to execute ListRecords without server URL specified.");
+        }
+        if (StringUtils.isEmpty(this.metadataPrefix)) {
+            throw new OaiHandlerException("Attempted to execute ListRecords without metadataPrefix specified");
+        }
+        
+        try {
+            return new FastListRecords(this, httpClient, retries);
+        } catch (IOException ioe) {
+            throw new OaiHandlerException("IOException executing ListRecords: "+ioe.getMessage());
+        }
+    }
+    
     private ListIdentifiersParameters buildListIdentifiersParams() throws OaiHandlerException {
         ListIdentifiersParameters mip = ListIdentifiersParameters.request();
         
@@ -8,18 +8,26 @@ package edu.harvard.iq.dataverse.harvest.server;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.GlobalId;
 import edu.harvard.iq.dataverse.export.ExportService;
+import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import io.gdcc.spi.export.ExportException;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import java.time.Instant;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jakarta.ejb.AsyncResult;
+import jakarta.ejb.Asynchronous;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -51,6 +59,9 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     EntityManager em;   
     
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean");
+
+    // the number of records inserted per flush, and updated per query
+    private static final int BATCH_SIZE = 1000;
     
     /**
      * Updates the OAI records for the set specified
@@ -69,102 +80,156 @@ public class OAIRecordServiceBean implements java.io.Serializable {
      * @param setUpdateLogger dedicated Logger 
      */
     public void updateOaiRecords(String setName, List<Long> datasetIds, Date updateTime, boolean doExport, boolean confirmed, Logger setUpdateLogger) {
-        // create Map of OaiRecords
-        List<OAIRecord> oaiRecords = findOaiRecordsBySetName(setName);
-        Map<String, OAIRecord> recordMap = new HashMap<>();
-        if (oaiRecords != null) {
-            for (OAIRecord record : oaiRecords) {
-                // look for duplicates here? delete?
-                recordMap.put(record.getGlobalId(), record);
+        // The set is updated with set operations on ids and global ids, and
+        // bulk updates, without loading the datasets, or the OAI records
+        Set<Long> candidateIds = datasetIds == null ? Collections.emptySet() : new HashSet<>(datasetIds);
+
+        // if doExport was requested, we'll check which datasets have not been
+        // exported since the last time they were published, and try to export
+        // them.
+        if (doExport && !candidateIds.isEmpty()) {
+            for (Long datasetId : datasetService.findIdsToExport(false)) {
+                if (candidateIds.contains(datasetId)) {
+                    Dataset dataset = datasetService.find(datasetId);
+                    setUpdateLogger.fine("Attempting to run export on dataset " + dataset.getGlobalId().asString());
+                    exportAllFormats(dataset);
+                    // TODO: should probably bail if the export attempt has failed! -- L.A. 4.9.2
+                }
             }
-        } else {
-            setUpdateLogger.fine("Null returned - no records found.");
+            em.flush();
         }
 
+        // The candidates that can be in the set: published (and not
+        // deaccessioned), and exported
+        Map<String, Date> exportTimes = new HashMap<>();
+        List<Long> candidates = new ArrayList<>(candidateIds);
+        for (int i = 0; i < candidates.size(); i += BATCH_SIZE) {
+            for (Object[] dataset : findExportedDatasets("o.id IN :ids", candidates.subList(i, Math.min(i + BATCH_SIZE, candidates.size())))) {
+                GlobalId globalId = PidUtil.parseAsGlobalID((String) dataset[1], (String) dataset[2], (String) dataset[3]);
+                if (globalId != null) {
+                    exportTimes.put(globalId.asString(), (Date) dataset[4]);
+                }
+            }
+        }
+        Set<String> memberIds = new HashSet<>(exportTimes.keySet());
+        setUpdateLogger.fine("Found " + memberIds.size() + " published and exported datasets in the set");
+
+        // The records already in the set: id, global id, last update time and
+        // removed flag
+        Map<String, Object[]> recordMap = new HashMap<>();
+        for (Object[] record : em.createQuery("SELECT r.id, r.globalId, r.lastUpdateTime, r.removed FROM OAIRecord r WHERE r.setName = :setName", Object[].class)
+                .setParameter("setName", setName == null ? "" : setName)
+                .getResultList()) {
+            // look for duplicates here? delete?
+            recordMap.put((String) record[1], record);
+        }
         if (!recordMap.isEmpty()) {
             setUpdateLogger.fine("Found " + recordMap.size() + " existing records");
         } else {
             setUpdateLogger.fine("No records in the set yet.");
         }
 
-        if (datasetIds != null) {
-            for (Long datasetId : datasetIds) {
-                setUpdateLogger.fine("processing dataset id=" + datasetId);
-                Dataset dataset = datasetService.find(datasetId);
-                if (dataset == null) {
-                    setUpdateLogger.fine("failed to find dataset!");
-                } else if (dataset.isReleased() && !dataset.isDeaccessioned()) {
-                    // This means this is a published dataset
-                    setUpdateLogger.fine("found published dataset.");
-
-                    // if doExport was requested, we'll check if the 
-                    // dataset has been exported since the last time it was 
-                    // published, and try to export if not.
-                    if (doExport) {
-                        // OK, it looks like we can't rely on .getPublicationDate() - 
-                        // as it is essentially the *first publication* date; 
-                        // and we are interested in the *last*
+        List<Long> undeleted = new ArrayList<>();
+        List<Long> updated = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        int created = 0;
+        for (String globalId : memberIds) {
+            Object[] record = recordMap.remove(globalId);
+            if (record == null) {
+                setUpdateLogger.fine("creating a new OAI Record for " + globalId);
+                em.persist(new OAIRecord(setName, globalId, new Date()));
+                if (++created % BATCH_SIZE == 0) {
+                    em.flush();
+                }
+            } else if ((Boolean) record[3]) {
+                setUpdateLogger.fine("\"un-deleting\" an existing OAI Record for " + globalId);
+                undeleted.add((Long) record[0]);
+            } else if (exportTimes.get(globalId).after((Date) record[2])) {
+                setUpdateLogger.fine("updating the timestamp on an existing record for " + globalId);
+                updated.add((Long) record[0]);
+            }
+        }
 
-                        DatasetVersion releasedVersion = dataset.getReleasedVersion();
-                        Date publicationDate = releasedVersion == null ? null : releasedVersion.getReleaseTime();
+        // anything left in the map should be marked as removed! Unless the set
+        // was looked up in the search engine, and the dataset is still published
+        // and exported - it may just be missing from the index, e.g. during a
+        // full reindex.
+        Set<String> stillExported = confirmed ? Collections.emptySet() : findExportedGlobalIds(recordMap.values().stream()
+                .filter(record -> !(Boolean) record[3]).map(record -> (String) record[1]).toList());
+        for (Object[] record : recordMap.values()) {
+            String globalId = (String) record[1];
+            if ((Boolean) record[3]) {
+                setUpdateLogger.fine("OAI record " + globalId + " is already marked as removed.");
+            } else if (!stillExported.contains(globalId)) {
+                setUpdateLogger.fine("marking OAI record " + globalId + " as removed");
+                removed.add((Long) record[0]);
+            }
+        }
 
-                        if (publicationDate != null
-                                && (dataset.getLastExportTime() == null
-                                || dataset.getLastExportTime().before(publicationDate))) {
+        em.flush();
+        Date now = new Date();
+        updateOaiRecords(undeleted, "r.removed = false, r.lastUpdateTime = :time", now);
+        updateOaiRecords(updated, "r.lastUpdateTime = :time", now);
+        updateOaiRecords(removed, "r.removed = true, r.lastUpdateTime = :time", updateTime);
+        em.getEntityManagerFactory().getCache().evict(OAIRecord.class);
 
-                            setUpdateLogger.fine("Attempting to run export on dataset " + dataset.getGlobalId().asString());
-                            exportAllFormats(dataset);
-                        }
-                        
-                        // TODO: should probably bail if the export attempt has failed! -- L.A. 4.9.2
-                    }
+        setUpdateLogger.info("Set " + setName + ": " + created + " records created, " + undeleted.size() + " un-deleted, "
+                + updated.size() + " updated, " + removed.size() + " marked as removed");
+    }
 
-                    setUpdateLogger.fine("\"last exported\" timestamp: " + dataset.getLastExportTime());
-                    em.refresh(dataset);
-                    setUpdateLogger.fine("\"last exported\" timestamp, after db refresh: " + dataset.getLastExportTime());
+    /**
+     * @param condition a condition on the dataset o, with an :ids parameter
+     * @return the id, protocol, authority, identifier and last export time of
+     *         the local datasets matching the condition that have a released
+     *         version and have been exported
+     */
+    private List<Object[]> findExportedDatasets(String condition, List<?> ids) {
+        // we can't trust isReleased() alone! It's a dvobject method that
+        // simply returns (publicationDate != null). And the publication date
+        // stays in place even if all the released versions have been deaccessioned.
+        return em.createQuery("SELECT o.id, o.protocol, o.authority, o.identifier, o.lastExportTime FROM Dataset o"
+                + " WHERE " + condition + " AND o.harvestedFrom IS NULL AND o.publicationDate IS NOT NULL AND o.lastExportTime IS NOT NULL"
+                + " AND EXISTS (SELECT v.id FROM DatasetVersion v WHERE v.dataset = o AND v.versionState = :released)", Object[].class)
+                .setParameter("ids", ids)
+                .setParameter("released", DatasetVersion.VersionState.RELEASED)
+                .getResultList();
+    }
 
-                    updateOaiRecordForDataset(dataset, setName, recordMap, setUpdateLogger);
+    /**
+     * @return those of the global ids given that are the global ids of
+     *         published and exported datasets
+     */
+    private Set<String> findExportedGlobalIds(List<String> globalIds) {
+        // looked up by identifier (then matched on the whole global id), as
+        // the global id is not stored as such
+        Set<String> identifiers = new HashSet<>();
+        for (String globalId : globalIds) {
+            try {
+                identifiers.add(PidUtil.parseAsGlobalID(globalId).getIdentifier());
+            } catch (IllegalArgumentException iae) {
+                logger.fine("Cannot parse the global id " + globalId + " of an OAI record");
+            }
+        }
+        Set<String> exported = new HashSet<>();
+        List<String> batch = new ArrayList<>(identifiers);
+        for (int i = 0; i < batch.size(); i += BATCH_SIZE) {
+            for (Object[] dataset : findExportedDatasets("o.identifier IN :ids", batch.subList(i, Math.min(i + BATCH_SIZE, batch.size())))) {
+                GlobalId globalId = PidUtil.parseAsGlobalID((String) dataset[1], (String) dataset[2], (String) dataset[3]);
+                if (globalId != null) {
+                    exported.add(globalId.asString());
                 }
             }
         }
-
-        // anything left in the map should be marked as removed!
-        markOaiRecordsAsRemoved(recordMap.values(), updateTime, confirmed, setUpdateLogger);
-        
-                   
-        
+        exported.retainAll(globalIds);
+        return exported;
     }
-    
-    // This method updates -  creates/refreshes/un-marks-as-deleted - one OAI 
-    // record at a time. It does so inside its own transaction, to ensure that 
-    // the changes take place immediately. (except the method is called from 
-    // right here, in this EJB - so the attribute does not do anything! (TODO:!)
-    @TransactionAttribute(REQUIRES_NEW)
-    public void updateOaiRecordForDataset(Dataset dataset, String setName, Map<String, OAIRecord> recordMap, Logger setUpdateLogger) {
-        // TODO: review .isReleased() logic
-        // Answer: no, we can't trust isReleased()! It's a dvobject method that
-        // simply returns (publicationDate != null). And the publication date 
-        // stays in place even if all the released versions have been deaccessioned. 
-        boolean isReleased = dataset.getReleasedVersion() != null;
-        
-        if (isReleased && dataset.getLastExportTime() != null) {
-            OAIRecord record = recordMap.get(dataset.getGlobalId().asString());
-            if (record == null) {
-                setUpdateLogger.info("creating a new OAI Record for " + dataset.getGlobalId().asString());
-                record = new OAIRecord(setName, dataset.getGlobalId().asString(), new Date());
-                em.persist(record);
-            } else {
-                if (record.isRemoved()) {
-                    setUpdateLogger.info("\"un-deleting\" an existing OAI Record for " + dataset.getGlobalId().asString());
-                    record.setRemoved(false);
-                    record.setLastUpdateTime(new Date());
-                } else if (dataset.getLastExportTime().after(record.getLastUpdateTime())) {
-                    setUpdateLogger.info("updating the timestamp on an existing record.");
-                    record.setLastUpdateTime(new Date());
-                }
 
-                recordMap.remove(record.getGlobalId());
-            }
+    private void updateOaiRecords(List<Long> recordIds, String assignments, Date time) {
+        for (int i = 0; i < recordIds.size(); i += BATCH_SIZE) {
+            em.createQuery("UPDATE OAIRecord r SET " + assignments + " WHERE r.id IN :ids")
+                    .setParameter("time", time, TemporalType.TIMESTAMP)
+                    .setParameter("ids", recordIds.subList(i, Math.min(i + BATCH_SIZE, recordIds.size())))
+                    .executeUpdate();
         }
     }
     
@@ -209,36 +274,6 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     }
 */
     
-    public void markOaiRecordsAsRemoved(Collection<OAIRecord> records, Date updateTime, boolean confirmed, Logger setUpdateLogger) {
-        for (OAIRecord oaiRecord : records) {
-            if ( !oaiRecord.isRemoved() ) {
-                boolean confirmedRemoved = confirmed; 
-                if (!confirmedRemoved) {
-                    Dataset lookedUp = datasetService.findByGlobalId(oaiRecord.getGlobalId());
-                    if (lookedUp == null) {
-                        confirmedRemoved = true;
-                    } else if (lookedUp.getLastExportTime() == null) {
-                        confirmedRemoved = true; 
-                    } else {                   
-                        boolean isReleased = lookedUp.getReleasedVersion() != null;
-                        if (!isReleased) {
-                            confirmedRemoved = true;
-                        }
-                    }
-                }
-                
-                if (confirmedRemoved) {
-                    setUpdateLogger.fine("marking OAI record "+oaiRecord.getGlobalId()+" as removed");
-                    oaiRecord.setRemoved(true);
-                    oaiRecord.setLastUpdateTime(updateTime);
-                } 
-            } else {
-                setUpdateLogger.fine("OAI record "+oaiRecord.getGlobalId()+" is already marked as removed.");
-            }
-        }
-       
-    }
-    
     // TODO: 
     // Export functionality probably deserves its own EJB ServiceBean - 
     // so maybe create ExportServiceBean, and move these methods there? 
@@ -268,6 +303,33 @@ public class OAIRecordServiceBean implements java.io.Serializable {
             throw new ExportException(e.getMessage());
         }
     }
+
+    /**
+     * Exports a dataset in all formats, in its own transaction, on a thread of
+     * the container. Used by "export all" jobs to export several datasets at a
+     * time.
+     *
+     * @return the name and persistent id of the dataset, for logging
+     * @throws ExportException (wrapped in an ExecutionException by the Future)
+     *                         if the export failed
+     */
+    @Asynchronous
+    @TransactionAttribute(REQUIRES_NEW)
+    public Future<String> exportAllFormatsAsync(Long datasetId) throws ExportException {
+        Dataset dataset = datasetService.find(datasetId);
+        if (dataset == null) {
+            throw new ExportException("Dataset " + datasetId + " not found");
+        }
+        String label = dataset.getDisplayName() + " " + dataset.getGlobalId().asString();
+        try {
+            ExportService.getInstance().exportAllFormats(dataset);
+            datasetService.merge(dataset);
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Caught unknown exception while trying to export", e);
+            throw new ExportException(label + "; " + e.getMessage());
+        }
+        return new AsyncResult<>(label);
+    }
     
     
     public OAIRecord findOAIRecordBySetNameandGlobalId(String setName, String globalId) {
@@ -287,6 +287,8 @@ public class OAISetServiceBean implements java.io.Serializable {
 //        solrQuery.addFilterQuery(SearchFields.PUBLICATION_STATUS + ":" + IndexServiceBean.PUBLISHED_STRING);
 
         solrQuery.setRows(Integer.MAX_VALUE);
+        // only the ids are needed
+        solrQuery.setFields(SearchFields.ENTITY_ID);
 
         
         QueryResponse queryResponse = null;
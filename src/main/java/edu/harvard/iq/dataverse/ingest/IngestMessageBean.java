@@ -23,6 +23,7 @@ package edu.harvard.iq.dataverse.ingest;
 import edu.harvard.iq.dataverse.*;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.dataaccess.DataConverter;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 
 import java.sql.Timestamp;
@@ -107,6 +108,9 @@ public class IngestMessageBean implements MessageListener {
                     if (ingestService.ingestAsTabular(datafile_id)) {
                         //Thread.sleep(10000);
                         logger.fine("Finished ingest job;");
+                        // Start converting the newly ingested file to the 
+                        // configured formats (if any), in the background:
+                        DataConverter.pregenerateFormats(datafileService.find(datafile_id));
                         // We used to list the successfully ingested files in the "success"
                         // and "mixed success and failure" emails. Now we never list successfully
                         // ingested files so this line is commented out.
@@ -541,6 +541,10 @@ public class IngestServiceBean {
                     // sure that was wrong. - L.A. 11-30-2023
                     ret.add(dataFile);
                     // (unless that is that return value isn't used for anything - ?)
+
+                    // The thumbnails of the new images and PDFs are generated in
+                    // the background, rather than when they are first shown:
+                    ImageThumbConverter.generateThumbnailsInBackground(dataFile);
                 }
 
             }
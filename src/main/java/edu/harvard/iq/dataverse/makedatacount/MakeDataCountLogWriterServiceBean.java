@@ -0,0 +1,178 @@
+package edu.harvard.iq.dataverse.makedatacount;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+
+/**
+ * Writes the Make Data Count log entries (the views and downloads picked up by
+ * Counter Processor) to the daily counter_yyyy-MM-dd.log files.
+ * 
+ * The request threads only add the entries to an in-memory queue; a single
+ * scheduled writer drains the queue every
+ * dataverse.mdc.log-flush-interval milliseconds, appending all the queued
+ * lines to the current file in one write, through a channel that is kept open
+ * until the file name changes at midnight. Since there is only one writer, the
+ * lines of concurrent requests can't interleave.
+ * 
+ * The queue is bounded (dataverse.mdc.log-queue-size entries); if the writer
+ * can't keep up, new entries are dropped rather than held in memory, and the
+ * number of dropped entries is logged.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MakeDataCountLogWriterServiceBean {
+
+    private static final Logger logger = Logger.getLogger(MakeDataCountLogWriterServiceBean.class.getCanonicalName());
+
+    static final int DEFAULT_QUEUE_SIZE = 100000;
+    static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    /**
+     * A queued log line, along with the file it goes to.
+     */
+    record LogLine(String logDir, String fileName, String header, String line) {
+    }
+
+    private final ConcurrentLinkedQueue<LogLine> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    // Only used by the writer, in drain(), which is synchronized
+    private Path currentFile = null;
+    private FileChannel channel = null;
+    private long droppedReported = 0;
+
+    @PostConstruct
+    public void init() {
+        queueSize = JvmSettings.MDC_LOG_QUEUE_SIZE.lookupOptional(Integer.class).orElse(DEFAULT_QUEUE_SIZE);
+        long flushInterval = JvmSettings.MDC_LOG_FLUSH_INTERVAL.lookupOptional(Long.class).orElse(DEFAULT_FLUSH_INTERVAL);
+        if (flushInterval < 1) {
+            flushInterval = DEFAULT_FLUSH_INTERVAL;
+        }
+        scheduler.scheduleWithFixedDelay(this::drain, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drain();
+        closeChannel();
+    }
+
+    /**
+     * Queues a line to be appended to the log file. Never blocks, and does no
+     * I/O.
+     * 
+     * @return false if the line was dropped because the queue is full
+     */
+    public boolean append(String logDir, String fileName, String header, String line) {
+        if (queued.incrementAndGet() > queueSize) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        queue.offer(new LogLine(logDir, fileName, header, line));
+        return true;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes out all the queued lines. The consecutive lines going to the same
+     * file are written at once.
+     */
+    synchronized void drain() {
+        try {
+            StringBuilder batch = new StringBuilder();
+            LogLine batchTarget = null;
+            LogLine next;
+            while ((next = queue.poll()) != null) {
+                queued.decrementAndGet();
+                if (batchTarget != null && !isSameFile(batchTarget, next)) {
+                    write(batchTarget, batch);
+                    batch.setLength(0);
+                }
+                batchTarget = next;
+                batch.append(next.line());
+            }
+            if (batchTarget != null) {
+                write(batchTarget, batch);
+            }
+            long droppedNow = dropped.get();
+            if (droppedNow > droppedReported) {
+                logger.warning("Make Data Count log queue full; " + (droppedNow - droppedReported)
+                        + " entries dropped (" + droppedNow + " in total)");
+                droppedReported = droppedNow;
+            }
+        } catch (RuntimeException e) {
+            // Keep the scheduled writer going
+            logger.log(Level.SEVERE, "Error writing the Make Data Count log: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isSameFile(LogLine a, LogLine b) {
+        return Objects.equals(a.logDir(), b.logDir()) && Objects.equals(a.fileName(), b.fileName());
+    }
+
+    private void write(LogLine target, CharSequence content) {
+        Path file = Path.of(target.logDir(), target.fileName()).toAbsolutePath();
+        try {
+            if (!file.equals(currentFile) || channel == null || !channel.isOpen() || !Files.exists(file)) {
+                closeChannel();
+                Files.createDirectories(file.getParent());
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                currentFile = file;
+            }
+            String toWrite = content.toString();
+            if (channel.size() == 0 && target.header() != null) {
+                toWrite = target.header() + toWrite;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(toWrite.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error saving log report: " + file + " " + e.getMessage());
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.fine("Error closing the Make Data Count log: " + e.getMessage());
+            }
+            channel = null;
+            currentFile = null;
+        }
+    }
+}
@@ -9,7 +9,6 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.DataverseRequestServiceBean;
-import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
 import static edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.LOG_HEADER;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.sql.Timestamp;
@@ -36,10 +35,19 @@ public class MakeDataCountLoggingServiceBean {
     
     @EJB
     SystemConfig systemConfig;
+    
+    @EJB
+    MakeDataCountLogWriterServiceBean logWriter;
 
+    /**
+     * Queues the entry to be written to the log file (by the
+     * {@link MakeDataCountLogWriterServiceBean}); no file I/O is done on the
+     * calling thread.
+     */
     public void logEntry(MakeDataCountEntry entry) {
-        if(systemConfig.getMDCLogPath() != null) {
-            LoggingUtil.saveLogFileAppendWithHeader(entry.toString(), systemConfig.getMDCLogPath(), getLogFileName() , LOG_HEADER);
+        String logPath = systemConfig.getMDCLogPath();
+        if(logPath != null) {
+            logWriter.append(logPath, getLogFileName(), LOG_HEADER, entry.toString());
         }
     }
     
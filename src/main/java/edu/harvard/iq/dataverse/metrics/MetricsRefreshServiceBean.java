@@ -0,0 +1,207 @@
+package edu.harvard.iq.dataverse.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.Metric;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the metrics of the /api/info/metrics API from the results cached in
+ * the Metric table, and keeps these results up to date.
+ *
+ * <ul>
+ * <li>When several requests need the same metric (same name, month or number
+ * of days, data location and collection) while it is being calculated, the
+ * query is only run once, and all the requests get its result.</li>
+ * <li>When a cached result has expired, it is still returned, and the metric
+ * is recalculated in the background, so that the requests don't wait for the
+ * query.</li>
+ * <li>The metrics that have been requested recently are recalculated in the
+ * background once they expire, every dataverse.metrics.refresh-interval
+ * seconds, so that their results are usually up to date when they are
+ * requested again.</li>
+ * </ul>
+ *
+ * The results are considered expired following the same rules as before (see
+ * the doWeQueryAgain* methods of {@link MetricsServiceBean}).
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class MetricsRefreshServiceBean {
+
+    private static final Logger logger = Logger.getLogger(MetricsRefreshServiceBean.class.getCanonicalName());
+
+    static final long DEFAULT_REFRESH_INTERVAL = 300;
+    // The metrics that are not requested for a week are no longer refreshed
+    static final Duration TRACKING_PERIOD = Duration.ofDays(7);
+    static final int MAX_TRACKED_METRICS = 1000;
+    static final long WAIT_TIMEOUT_MINUTES = 10;
+
+    @EJB
+    MetricsServiceBean metricsSvc;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    /**
+     * How long the cached result of a metric stays valid.
+     */
+    public enum Expiry {
+        DAY_BASED, MONTHLY, ALL_TIME
+    }
+
+    record MetricKey(String name, String dateString, String dataLocation, Long dataverseId) {
+    }
+
+    record TrackedMetric(Expiry expiry, Dataverse dataverse, Supplier<String> query) {
+    }
+
+    private final Map<MetricKey, CompletableFuture<String>> running = new ConcurrentHashMap<>();
+
+    private final Cache<MetricKey, TrackedMetric> tracked = Caffeine.newBuilder()
+            .maximumSize(MAX_TRACKED_METRICS)
+            .expireAfterAccess(TRACKING_PERIOD)
+            .build();
+
+    @PostConstruct
+    public void init() {
+        long interval = JvmSettings.METRICS_REFRESH_INTERVAL.lookupOptional(Long.class).orElse(DEFAULT_REFRESH_INTERVAL);
+        if (interval > 0 && scheduler != null) {
+            logger.fine("Refreshing the expired metrics every " + interval + " seconds");
+            scheduler.scheduleWithFixedDelay(this::refreshExpired, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @param name         the name of the metric
+     * @param dateString   the month (YYYY-MM) or the number of days, or null
+     * @param dataLocation the data location (local, remote, all), or null
+     * @param d            the collection, or null for the whole installation
+     * @param expiry       how long the result stays valid
+     * @param query        calculates the metric, as a JSON string
+     * @return the result of the metric, as a JSON string
+     */
+    public String get(String name, String dateString, String dataLocation, Dataverse d, Expiry expiry, Supplier<String> query) {
+        MetricKey key = new MetricKey(name, dateString, dataLocation, d == null ? null : d.getId());
+        TrackedMetric metric = new TrackedMetric(expiry, d, query);
+        tracked.put(key, metric);
+
+        Metric cached = metricsSvc.getMetric(name, dataLocation, dateString, d);
+        if (cached == null) {
+            return calculate(key, metric);
+        }
+        if (isExpired(cached, expiry)) {
+            refreshInBackground(key, metric);
+        }
+        return cached.getValueJson();
+    }
+
+    boolean isExpired(Metric cached, Expiry expiry) {
+        switch (expiry) {
+            case DAY_BASED:
+                return metricsSvc.doWeQueryAgainDayBased(cached);
+            case MONTHLY:
+                return metricsSvc.doWeQueryAgainMonthly(cached);
+            default:
+                return metricsSvc.doWeQueryAgainAllTime(cached);
+        }
+    }
+
+    /**
+     * Runs the query of the metric and saves the result, unless the same
+     * metric is already being calculated, in which case that calculation is
+     * waited for instead.
+     */
+    String calculate(MetricKey key, TrackedMetric metric) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CompletableFuture<String> other = running.putIfAbsent(key, result);
+        if (other != null) {
+            return await(key, other);
+        }
+        try {
+            String value = metric.query().get();
+            metricsSvc.save(new Metric(key.name(), key.dateString(), key.dataLocation(), metric.dataverse(), value));
+            result.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(key, result);
+        }
+    }
+
+    private String await(MetricKey key, CompletableFuture<String> result) {
+        try {
+            return result.get(WAIT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to calculate the metric " + key.name(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the metric " + key.name(), e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for the metric " + key.name(), e);
+        }
+    }
+
+    private void refreshInBackground(MetricKey key, TrackedMetric metric) {
+        if (running.containsKey(key) || scheduler == null) {
+            return;
+        }
+        scheduler.execute(() -> refresh(key, metric));
+    }
+
+    private void refresh(MetricKey key, TrackedMetric metric) {
+        try {
+            calculate(key, metric);
+        } catch (RuntimeException e) {
+            // the expired result is used until the next attempt
+            logger.log(Level.WARNING, "Failed to refresh the metric " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recalculates, one after the other, the recently requested metrics whose
+     * result has expired.
+     */
+    public void refreshExpired() {
+        for (Map.Entry<MetricKey, TrackedMetric> entry : tracked.asMap().entrySet()) {
+            MetricKey key = entry.getKey();
+            TrackedMetric metric = entry.getValue();
+            try {
+                Metric cached = metricsSvc.getMetric(key.name(), key.dataLocation(), key.dateString(), metric.dataverse());
+                if (cached == null || isExpired(cached, metric.expiry())) {
+                    refresh(key, metric);
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to check the metric " + key + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -419,14 +419,13 @@ public class MetricsServiceBean implements Serializable {
         LocalDate earliestDate = earlyDateTimestamp.toLocalDateTime().toLocalDate().minusMonths(1);
         String earliest = earliestDate.format(DateTimeFormatter.ofPattern(YEAR_AND_MONTH_PATTERN));
 
-        // Counts historic guestbook records without date as occurring in the month
-        // prior to the first dated counts
+        // Counts historic guestbook records without date (the '' month in the
+        // download counters) as occurring in the month prior to the first dated counts
         Query query = em.createNativeQuery(""
-                + "select  distinct COALESCE(to_char(responsetime, 'YYYY-MM'),'" + earliest + "') as date, count(id)\n"
-                + "from guestbookresponse\n"
-                + ((d == null) ? "" : "where dataset_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")")
-                + ((d == null) ? "where ":" and ") + "eventtype!='" + GuestbookResponse.ACCESS_REQUEST +"'\n"
-                + " group by COALESCE(to_char(responsetime, 'YYYY-MM'),'" + earliest + "') order by  COALESCE(to_char(responsetime, 'YYYY-MM'),'" + earliest + "');");
+                + "select COALESCE(NULLIF(month, ''),'" + earliest + "') as date, SUM(downloadcount)::bigint\n"
+                + "from datasetdownloadcount\n"
+                + ((d == null) ? "" : "where dataset_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
+                + " group by COALESCE(NULLIF(month, ''),'" + earliest + "') order by COALESCE(NULLIF(month, ''),'" + earliest + "');");
 
         logger.log(Level.FINE, "Metric query: {0}", query);
         List<Object[]> results = query.getResultList();
@@ -454,11 +453,10 @@ public class MetricsServiceBean implements Serializable {
 
             if (!dateQueried.before(earliestDate)) {
                 Query query = em.createNativeQuery(""
-                        + "select count(id)\n"
-                        + "from guestbookresponse\n"
-                        + "where (date_trunc('month', responsetime) <=  to_date('" + yyyymm + "','YYYY-MM')"
-                        + "or responsetime is NULL)\n" // includes historic guestbook records without date
-                        + "and eventtype!='" + GuestbookResponse.ACCESS_REQUEST +"'\n"
+                        + "select COALESCE(SUM(downloadcount), 0)::bigint\n"
+                        + "from datasetdownloadcount\n"
+                        + "where (month <= '" + yyyymm + "'"
+                        + " or month = '')\n" // includes historic guestbook records without date
                     + ((d==null) ? ";": "AND dataset_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ");")
                 );
                 logger.log(Level.FINE, "Metric query: {0}", query);
@@ -489,7 +487,13 @@ public class MetricsServiceBean implements Serializable {
     }
 
     public JsonArray fileDownloadsTimeSeries(Dataverse d, boolean uniqueCounts) {
-        Query query = em.createNativeQuery("select distinct to_char(gb.responsetime, 'YYYY-MM') as date, ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, count(" + (uniqueCounts ? "distinct email" : "*") + ") "
+        // Unique counts can't be derived from the download counters
+        Query query = !uniqueCounts ? em.createNativeQuery("select NULLIF(fc.month, '') as date, ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, SUM(fc.downloadcount)::bigint "
+                + " FROM filedownloadcount fc, DvObject ob"
+                + " where ob.id = fc.datafile_id "
+                + ((d == null) ? "" : " and ob.owner_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
+                + "group by fc.datafile_id, ob.id, ob.protocol, ob.authority, ob.identifier, NULLIF(fc.month, '') order by NULLIF(fc.month, '');")
+                : em.createNativeQuery("select distinct to_char(gb.responsetime, 'YYYY-MM') as date, ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, count(distinct email) "
                 + " FROM guestbookresponse gb, DvObject ob"
                 + " where ob.id = gb.datafile_id "
                 + ((d == null) ? "" : " and ob.owner_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
@@ -503,7 +507,14 @@ public class MetricsServiceBean implements Serializable {
     }
 
     public JsonArray fileDownloads(String yyyymm, Dataverse d, boolean uniqueCounts) {
-        Query query = em.createNativeQuery("select ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, count(" + (uniqueCounts ? "distinct email" : "*") + ") "
+        // Unique counts can't be derived from the download counters
+        Query query = !uniqueCounts ? em.createNativeQuery("select ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, SUM(fc.downloadcount)::bigint as count "
+                + " FROM filedownloadcount fc, DvObject ob"
+                + " where ob.id = fc.datafile_id "
+                + ((d == null) ? "" : " and ob.owner_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
+                + " and fc.month <> '' and fc.month <= '" + yyyymm + "'\n"
+                + "group by fc.datafile_id, ob.id, ob.protocol, ob.authority, ob.identifier order by count desc;")
+                : em.createNativeQuery("select ob.id, ob.protocol || ':' || ob.authority || '/' || ob.identifier as pid, count(distinct email) "
                 + " FROM guestbookresponse gb, DvObject ob"
                 + " where ob.id = gb.datafile_id "
                 + ((d == null) ? "" : " and ob.owner_id in (" + getCommaSeparatedIdStringForSubtree(d, "Dataset") + ")\n")
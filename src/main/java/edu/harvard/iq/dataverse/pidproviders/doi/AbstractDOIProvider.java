@@ -95,6 +95,7 @@ public abstract class AbstractDOIProvider extends AbstractPidProvider {
         doiMetadata.setIdentifier(identifier.substring(identifier.indexOf(':') + 1));
         doiMetadata.setCreators(Arrays.asList(metadata.get("datacite.creator").split("; ")));
         doiMetadata.setAuthors(dataset.getLatestVersion().getDatasetAuthors());
+        doiMetadata.setAuthorsVersion(dataset.getLatestVersion());
         if (dvObject.isInstanceofDataset()) {
             doiMetadata.setDescription(dataset.getLatestVersion().getDescriptionPlainText());
         }
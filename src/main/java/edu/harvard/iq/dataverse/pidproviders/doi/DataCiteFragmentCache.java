@@ -0,0 +1,131 @@
+package edu.harvard.iq.dataverse.pidproviders.doi;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Timer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import jakarta.enterprise.inject.spi.CDI;
+
+/**
+ * A process-wide cache of the pre-rendered, dataset-level fragments of the
+ * DataCite XML (e.g. the &lt;creators&gt; and &lt;fundingReferences&gt;
+ * sections) that are identical in the documents generated for every file of a
+ * dataset. When the PIDs of the files of a dataset are registered or updated
+ * on publication, these fragments are rendered once for the dataset and reused
+ * for all its files, instead of walking the dataset metadata (and looking up
+ * the external vocabulary values for ROR affiliations and funders) for every
+ * single file.
+ *
+ * The entries are keyed by the id and the last update time of the dataset
+ * version they were rendered from, so any edit of the version results in new
+ * keys. The cache is kept small and the entries expire shortly after they are
+ * created, since they are only useful for the duration of a publication.
+ *
+ * The class also keeps track of the total time spent generating DataCite XML,
+ * as the "datacite_xml_generation_time" timer in the application metrics
+ * registry.
+ */
+public class DataCiteFragmentCache {
+
+    private static final Logger logger = Logger.getLogger(DataCiteFragmentCache.class.getCanonicalName());
+
+    public static final String CREATORS = "creators";
+    public static final String FUNDING_REFERENCES = "fundingReferences";
+
+    static final String GENERATION_TIMER_NAME = "datacite_xml_generation_time";
+
+    private static final Cache<Key, String> fragments = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build();
+
+    private static Timer generationTimer = null;
+    private static boolean metricsUnavailable = false;
+
+    private DataCiteFragmentCache() {
+    }
+
+    /**
+     * The key of a cached fragment: the name of the fragment and the dataset
+     * version it was rendered from.
+     */
+    public record Key(String fragment, Long datasetId, Long versionId, Date versionLastUpdate) {
+    }
+
+    /**
+     * @param fragment the name of the fragment
+     * @param dataset  the dataset the fragment is rendered for
+     * @param version  the version of the dataset the fragment is rendered from
+     * @return the key, or null if the fragment cannot be cached (e.g. because
+     *         the dataset or the version have not been saved yet)
+     */
+    public static Key keyFor(String fragment, Dataset dataset, DatasetVersion version) {
+        if (dataset == null || dataset.getId() == null || version == null || version.getId() == null) {
+            return null;
+        }
+        return new Key(fragment, dataset.getId(), version.getId(), version.getLastUpdateTime());
+    }
+
+    /**
+     * Looks up the fragment, rendering it with the supplied generator if it is
+     * not cached yet. Fragments that can't be cached (null key) are simply
+     * rendered.
+     */
+    public static String getFragment(Key key, Supplier<String> generator) {
+        if (key == null) {
+            return generator.get();
+        }
+        String fragment = fragments.getIfPresent(key);
+        if (fragment == null) {
+            fragment = generator.get();
+            if (fragment != null) {
+                fragments.put(key, fragment);
+            }
+        }
+        return fragment;
+    }
+
+    public static void invalidateAll() {
+        fragments.invalidateAll();
+    }
+
+    static long size() {
+        fragments.cleanUp();
+        return fragments.estimatedSize();
+    }
+
+    /**
+     * Records the time spent generating one DataCite XML document. Outside of
+     * the application server (e.g. in unit tests) there is no metrics registry,
+     * in which case the time is only logged.
+     */
+    public static void recordGenerationTime(long nanos) {
+        logger.fine("DataCite XML generated in " + nanos / 1000 + " microseconds");
+        Timer timer = getGenerationTimer();
+        if (timer != null) {
+            timer.update(Duration.ofNanos(nanos));
+        }
+    }
+
+    private static synchronized Timer getGenerationTimer() {
+        if (generationTimer == null && !metricsUnavailable) {
+            try {
+                MetricRegistry registry = CDI.current().select(MetricRegistry.class).get();
+                generationTimer = registry.timer(GENERATION_TIMER_NAME);
+            } catch (RuntimeException e) {
+                logger.fine("Metrics registry not available: " + e.getMessage());
+                metricsUnavailable = true;
+            }
+        }
+        return generationTimer;
+    }
+}
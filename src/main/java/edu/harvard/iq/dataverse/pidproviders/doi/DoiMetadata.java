@@ -8,6 +8,7 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
 import edu.harvard.iq.dataverse.DatasetAuthor;
+import edu.harvard.iq.dataverse.DatasetVersion;
 
 
 //Parses some specific parts of a DataCite XML metadata file
@@ -20,6 +21,8 @@ public class DoiMetadata {
     private String publisherYear;
     private List<String> datafileIdentifiers;
     private List<DatasetAuthor> authors;
+    // the version the authors were taken from, if known
+    private DatasetVersion authorsVersion;
     private String description;
     private List<String[]> contacts;
     private List<String[]> producers;
@@ -126,6 +129,20 @@ public class DoiMetadata {
         this.authors = authors;
     }
 
+    public DatasetVersion getAuthorsVersion() {
+        return authorsVersion;
+    }
+
+    /**
+     * @param authorsVersion the dataset version the authors were taken from;
+     *                       the rendered creators of the files of the dataset
+     *                       are cached for that version (see
+     *                       DataCiteFragmentCache)
+     */
+    public void setAuthorsVersion(DatasetVersion authorsVersion) {
+        this.authorsVersion = authorsVersion;
+    }
+
 
     public List<String> getDatafileIdentifiers() {
         return datafileIdentifiers;
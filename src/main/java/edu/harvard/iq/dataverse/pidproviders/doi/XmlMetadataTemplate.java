@@ -1,8 +1,6 @@
 package edu.harvard.iq.dataverse.pidproviders.doi;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -80,20 +78,24 @@ public class XmlMetadataTemplate {
     }
 
     public String generateXML(DvObject dvObject) {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            generateXML(dvObject, outputStream);
+        long start = System.nanoTime();
+        try {
+            StringWriter writer = new StringWriter();
+            generateXML(dvObject, writer);
 
-            String xml = outputStream.toString();
+            String xml = writer.toString();
             logger.fine(xml);
             return XmlPrinter.prettyPrintXml(xml);
-        } catch (XMLStreamException | IOException e) {
+        } catch (XMLStreamException | UncheckedXMLStreamException e) {
             logger.severe("Unable to generate DataCite XML for DOI: " + dvObject.getGlobalId().asString() + " : " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            DataCiteFragmentCache.recordGenerationTime(System.nanoTime() - start);
         }
         return null;
     }
 
-    private void generateXML(DvObject dvObject, OutputStream outputStream) throws XMLStreamException {
+    private void generateXML(DvObject dvObject, StringWriter writer) throws XMLStreamException {
         // Could/should use dataset metadata language for metadata from DvObject itself?
         String language = null; // machine locale? e.g. for Publisher which is global
         String metadataLanguage = null; // when set, otherwise = language?
@@ -105,7 +107,7 @@ public class XmlMetadataTemplate {
                 pid = df.getOwner().getGlobalId();
             }
         pidProvider = PidUtil.getPidProvider(pid.getProviderId());
-        XMLStreamWriter xmlw = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream);
+        XMLStreamWriter xmlw = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
         xmlw.writeStartElement("resource");
         boolean deaccessioned=false;
         if(dvObject instanceof Dataset d) {
@@ -117,8 +119,23 @@ public class XmlMetadataTemplate {
         xmlw.writeAttribute("xmlns:xsi", XML_XSI);
         xmlw.writeAttribute("xsi:schemaLocation", XML_SCHEMA_LOCATION);
 
+        // For files, the dataset-level sections of the document are the same
+        // for every file in the dataset, so these are rendered once and reused
+        // (see DataCiteFragmentCache):
+        Dataset parentDataset = null;
+        if (dvObject instanceof DataFile df && !deaccessioned) {
+            parentDataset = df.getOwner();
+        }
+
         writeIdentifier(xmlw, dvObject);
-        writeCreators(xmlw, doiMetadata.getAuthors(), deaccessioned);
+        if (parentDataset != null) {
+            // keyed on the version the authors were taken from, if known
+            writeFragment(xmlw, writer,
+                    DataCiteFragmentCache.keyFor(DataCiteFragmentCache.CREATORS, parentDataset, doiMetadata.getAuthorsVersion()),
+                    w -> writeCreators(w, doiMetadata.getAuthors(), false));
+        } else {
+            writeCreators(xmlw, doiMetadata.getAuthors(), deaccessioned);
+        }
         writeTitles(xmlw, dvObject, language, deaccessioned);
         writePublisher(xmlw, dvObject, deaccessioned);
         writePublicationYear(xmlw, dvObject, deaccessioned);
@@ -140,12 +157,66 @@ public class XmlMetadataTemplate {
         writeDescriptions(xmlw, dvObject, deaccessioned);
         if (!deaccessioned) {
             writeGeoLocations(xmlw, dvObject);
-            writeFundingReferences(xmlw, dvObject);
+            if (parentDataset != null) {
+                DatasetVersion fundingVersion = parentDataset.getLatestVersionForCopy();
+                writeFragment(xmlw, writer,
+                        DataCiteFragmentCache.keyFor(DataCiteFragmentCache.FUNDING_REFERENCES, parentDataset, fundingVersion),
+                        w -> writeFundingReferences(w, fundingVersion));
+            } else if (dvObject instanceof Dataset d) {
+                writeFundingReferences(xmlw, d.getLatestVersionForCopy());
+            }
         }
         xmlw.writeEndElement();
         xmlw.flush();
     }
 
+    /**
+     * Writes a section of the document that can be rendered independently of
+     * the rest of it. The section is rendered into a string (or looked up in
+     * the {@link DataCiteFragmentCache}, when it has already been rendered for
+     * the same dataset version) and then appended to the document as is.
+     * 
+     * @param xmlw
+     *            The stream writer of the document; must not have an open
+     *            start tag, i.e. the last element written must be complete
+     * @param writer
+     *            The writer underlying xmlw
+     * @param key
+     *            The cache key of the fragment; null if it should not be cached
+     * @param fragmentWriter
+     *            Writes the section into the stream writer supplied
+     * @throws XMLStreamException
+     */
+    private void writeFragment(XMLStreamWriter xmlw, StringWriter writer, DataCiteFragmentCache.Key key, FragmentWriter fragmentWriter) throws XMLStreamException {
+        String fragment = DataCiteFragmentCache.getFragment(key, () -> renderFragment(fragmentWriter));
+        xmlw.flush();
+        writer.write(fragment);
+    }
+
+    private String renderFragment(FragmentWriter fragmentWriter) {
+        try {
+            StringWriter fragmentOut = new StringWriter();
+            XMLStreamWriter fragmentXmlw = XMLOutputFactory.newInstance().createXMLStreamWriter(fragmentOut);
+            fragmentWriter.write(fragmentXmlw);
+            fragmentXmlw.flush();
+            fragmentXmlw.close();
+            return fragmentOut.toString();
+        } catch (XMLStreamException e) {
+            throw new UncheckedXMLStreamException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FragmentWriter {
+        void write(XMLStreamWriter xmlw) throws XMLStreamException;
+    }
+
+    private static class UncheckedXMLStreamException extends RuntimeException {
+        UncheckedXMLStreamException(XMLStreamException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
     /**
      * 3, Title(s) (with optional type sub-properties) (M)
      *
@@ -1471,15 +1542,14 @@ public class XmlMetadataTemplate {
 
     }
 
-    private void writeFundingReferences(XMLStreamWriter xmlw, DvObject dvObject) throws XMLStreamException {
+    /**
+     * @param dv
+     *            The version of the dataset the funders are taken from (the
+     *            latest released one, if any)
+     */
+    private void writeFundingReferences(XMLStreamWriter xmlw, DatasetVersion dv) throws XMLStreamException {
         // fundingReferences -> fundingReference -> funderName, awardNumber
         boolean fundingReferenceWritten = false;
-        DatasetVersion dv = null;
-        if (dvObject instanceof Dataset d) {
-            dv = d.getLatestVersionForCopy();
-        } else if (dvObject instanceof DataFile df) {
-            dv = df.getOwner().getLatestVersionForCopy();
-        }
         if (dv != null) {
             List<String> retList = new ArrayList<>();
             for (DatasetField dsf : dv.getDatasetFields()) {
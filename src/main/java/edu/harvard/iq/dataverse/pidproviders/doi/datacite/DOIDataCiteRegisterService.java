@@ -130,6 +130,7 @@ public class DOIDataCiteRegisterService {
         doiMetadata.setIdentifier(identifier.substring(identifier.indexOf(':') + 1));
         doiMetadata.setCreators(Arrays.asList(metadata.get("datacite.creator").split("; ")));
         doiMetadata.setAuthors(dataset.getLatestVersion().getDatasetAuthors());
+        doiMetadata.setAuthorsVersion(dataset.getLatestVersion());
         if (dvObject.isInstanceofDataset()) {
             //While getDescriptionPlainText strips < and > from HTML, it leaves '&' (at least so we need to xml escape as well
             String description = StringEscapeUtils.escapeXml10(dataset.getLatestVersion().getDescriptionPlainText());
@@ -0,0 +1,129 @@
+package edu.harvard.iq.dataverse.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.Lock;
+import static jakarta.ejb.LockType.READ;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+/**
+ * Caches the results of the file searches on the dataset page (the ids of the
+ * files matching the label search term and the selected facets, plus the file
+ * facets themselves), so that the popular dataset versions can be shown with
+ * their facets without querying Solr on every page load. The results do not
+ * depend on the user, so the cache is shared by all the sessions.
+ * 
+ * The entries are keyed by the version, the time the dataset was last indexed
+ * and the time the version was last updated, along with the search term and
+ * the facet filters; so once a dataset has been reindexed, its old entries are
+ * simply no longer used. They are also removed explicitly when the dataset is
+ * indexed on this node, and expire after a while anyway, to account for Solr
+ * making the new documents searchable only some time after they have been
+ * indexed.
+ * 
+ * The size of the cache is configured with the
+ * dataverse.solr.file-search-cache-size JVM option; 0 disables it.
+ */
+@Lock(READ)
+@Singleton
+@Startup
+public class FileSearchCacheServiceBean {
+
+    private static final Logger logger = Logger.getLogger(FileSearchCacheServiceBean.class.getCanonicalName());
+
+    private static final long DEFAULT_SIZE = 1000;
+    private static final Duration EXPIRATION = Duration.ofMinutes(30);
+
+    /**
+     * The key of a cached search.
+     */
+    public record Key(Long datasetId, Long versionId, Date indexTime, Date versionLastUpdateTime,
+            String searchTerm, String fileTypeFacet, String fileAccessFacet, String fileTagsFacet) {
+    }
+
+    /**
+     * A cached search: the ids of the matching files and the facet labels, by
+     * facet field name.
+     */
+    public record Result(Set<Long> fileIds, Map<String, List<FacetLabel>> facetLabels) {
+
+        public Result {
+            fileIds = Set.copyOf(fileIds);
+            facetLabels = Map.copyOf(facetLabels);
+        }
+    }
+
+    private Cache<Key, Result> results = null;
+
+    @PostConstruct
+    public void init() {
+        long size = JvmSettings.SOLR_FILE_SEARCH_CACHE_SIZE.lookupOptional(Long.class).orElse(DEFAULT_SIZE);
+        if (size > 0) {
+            results = Caffeine.newBuilder()
+                    .maximumSize(size)
+                    .expireAfterWrite(EXPIRATION)
+                    .build();
+        } else {
+            logger.info("Dataset page file search cache disabled");
+        }
+    }
+
+    /**
+     * @return the key for the search, or null if the version has not been saved
+     *         or indexed yet
+     */
+    public Key keyFor(DatasetVersion version, String searchTerm, String fileTypeFacet, String fileAccessFacet, String fileTagsFacet) {
+        if (version == null || version.getId() == null || version.getDataset() == null
+                || version.getDataset().getIndexTime() == null) {
+            return null;
+        }
+        // Timestamps are compared as plain dates, so that the keys built
+        // from a Timestamp and from a Date with the same time are equal
+        return new Key(version.getDataset().getId(), version.getId(),
+                new Date(version.getDataset().getIndexTime().getTime()),
+                version.getLastUpdateTime() == null ? null : new Date(version.getLastUpdateTime().getTime()),
+                searchTerm == null ? "" : searchTerm,
+                fileTypeFacet == null ? "" : fileTypeFacet,
+                fileAccessFacet == null ? "" : fileAccessFacet,
+                fileTagsFacet == null ? "" : fileTagsFacet);
+    }
+
+    public Result get(Key key) {
+        if (results == null || key == null) {
+            return null;
+        }
+        return results.getIfPresent(key);
+    }
+
+    public void put(Key key, Set<Long> fileIds, Map<String, List<FacetLabel>> facetLabels) {
+        if (results == null || key == null) {
+            return;
+        }
+        results.put(key, new Result(fileIds, facetLabels));
+    }
+
+    /**
+     * Removes the cached searches of all the versions of the dataset.
+     */
+    public void invalidateDataset(Long datasetId) {
+        if (results != null && datasetId != null) {
+            results.asMap().keySet().removeIf(key -> datasetId.equals(key.datasetId()));
+        }
+    }
+
+    public void invalidateAll() {
+        if (results != null) {
+            results.invalidateAll();
+        }
+    }
+}
@@ -7,7 +7,10 @@ import edu.harvard.iq.dataverse.DvObjectServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,6 +33,8 @@ public class IndexBatchServiceBean {
 
     private static final Logger logger = Logger.getLogger(IndexBatchServiceBean.class.getCanonicalName());
 
+    private static final int PROGRESS_INTERVAL = 100;
+
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
@@ -218,13 +223,25 @@ public class IndexBatchServiceBean {
         
     @Asynchronous
     public void indexDataverseRecursively(Dataverse dataverse) {
+        indexDataverseRecursively(dataverse, Collections.emptyList());
+    }
+
+    /**
+     * Reindexes a dataverse, all the dataverses and datasets below it and,
+     * along with them, the other datasets given (e.g. the datasets linked to a
+     * dataverse that was moved). The progress is logged every
+     * {@value #PROGRESS_INTERVAL} datasets.
+     */
+    @Asynchronous
+    public void indexDataverseRecursively(Dataverse dataverse, List<Long> otherDatasetIds) {
         long start = System.currentTimeMillis();
         int datasetIndexCount = 0, datasetFailureCount = 0, dataverseIndexCount = 0, dataverseFailureCount = 0;
         // get list of Dataverse children
         List<Long> dataverseChildren = dataverseService.findAllDataverseDataverseChildren(dataverse.getId());
         
         // get list of Dataset children
-        List<Long> datasetChildren = dataverseService.findAllDataverseDatasetChildren(dataverse.getId());
+        Set<Long> datasetChildren = new LinkedHashSet<>(dataverseService.findAllDataverseDatasetChildren(dataverse.getId()));
+        datasetChildren.addAll(otherDatasetIds);
 
         logger.info("Starting index on " + (dataverseChildren.size() + 1) + " dataverses and " + datasetChildren.size() + " datasets.");
 
@@ -244,21 +261,30 @@ public class IndexBatchServiceBean {
             try {
                 dataverseIndexCount++;
                 Dataverse dv = dataverseService.find(childId);
-                logger.info("indexing dataverse " + dataverseIndexCount + " of " + dataverseChildren.size() + " (id=" + childId + ", persistentId=" + dv.getAlias() + ")");
-                Future<String> result = indexService.indexDataverseInNewTransaction(dv);
+                logger.fine("indexing dataverse " + dataverseIndexCount + " of " + (dataverseChildren.size() + 1) + " (id=" + childId + ", persistentId=" + dv.getAlias() + ")");
+                indexService.indexDataverseInNewTransaction(dv);
                 dv = null;
             } catch (Exception e) {
                 //We want to keep running even after an exception so throw some more info into the log
                 dataverseFailureCount++;
-                logger.info("FAILURE indexing dataverse " + dataverseIndexCount + " of " + dataverseChildren.size() + " (id=" + childId + ") Exception info: " + e.getMessage());
+                logger.info("FAILURE indexing dataverse " + dataverseIndexCount + " of " + (dataverseChildren.size() + 1) + " (id=" + childId + ") Exception info: " + e.getMessage());
             }
         }
         
         // index the Dataset children
         for (Long childId : datasetChildren) {
             datasetIndexCount++;
-            logger.info("indexing dataset " + datasetIndexCount + " of " + datasetChildren.size() + " (id=" + childId + ")");
-            indexService.indexDatasetInNewTransaction(childId);
+            logger.fine("indexing dataset " + datasetIndexCount + " of " + datasetChildren.size() + " (id=" + childId + ")");
+            try {
+                indexService.indexDatasetInNewTransaction(childId);
+            } catch (Exception e) {
+                datasetFailureCount++;
+                logger.info("FAILURE indexing dataset " + datasetIndexCount + " of " + datasetChildren.size() + " (id=" + childId + ") Exception info: " + e.getMessage());
+            }
+            if (datasetIndexCount % PROGRESS_INTERVAL == 0) {
+                logger.info("indexed " + datasetIndexCount + " of " + datasetChildren.size() + " datasets of dataverse " + dataverse.getAlias()
+                        + " (" + datasetFailureCount + " failed) in " + (System.currentTimeMillis() - start) + " milliseconds");
+            }
         }
         long end = System.currentTimeMillis();
         if (datasetFailureCount + dataverseFailureCount > 0){
@@ -34,9 +34,11 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
@@ -98,6 +100,10 @@ public class IndexServiceBean {
     @EJB
     DvObjectServiceBean dvObjectService;
     @EJB
+    FileSearchCacheServiceBean fileSearchCache;
+    @EJB
+    DvObjectHierarchyServiceBean dvObjectHierarchy;
+    @EJB
     DataverseServiceBean dataverseService;
     @EJB
     DatasetServiceBean datasetService;
@@ -151,6 +157,8 @@ public class IndexServiceBean {
     private static final String IN_REVIEW_STRING = "In Review";
     private static final String DEACCESSIONED_STRING = "Deaccessioned";
     public static final String HARVESTED = "Harvested";
+    // how many harvested datasets and files are deleted from the index by one query
+    private static final int HARVESTED_DELETE_CHUNK_SIZE = 1000;
     private String rootDataverseName;
     private Dataverse rootDataverseCached;
     SolrClient solrServer;
@@ -291,7 +299,7 @@ public class IndexServiceBean {
         }
 
         //Add paths for my linking dataverses
-        List<Dataverse> linkingDataverses = findAllLinkingDataverses(dataverse);
+        List<Long> linkingDataverses = findAllLinkingDataverseIds(dataverse);
         List<String> linkingDataversePaths = findLinkingDataversePaths(linkingDataverses);
         for (String dvPath:linkingDataversePaths ){
             dataversePaths.add(dvPath);
@@ -473,6 +481,7 @@ public class IndexServiceBean {
     public void indexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) throws  SolrServerException, IOException {
         doIndexDataset(dataset, doNormalSolrDocCleanUp);
         updateLastIndexedTime(dataset.getId());
+        fileSearchCache.invalidateDataset(dataset.getId());
     }
     
     private void doIndexDataset(Dataset dataset, boolean doNormalSolrDocCleanUp) throws  SolrServerException, IOException {
@@ -1038,6 +1047,17 @@ public class IndexServiceBean {
                     cvocManagedFieldMap.put(cvocEntry.getKey(), managedFieldValues);
                 }
             }
+            // Look up the stored values of all the terms of the version at once,
+            // rather than once per term below
+            if (!cvocMap.isEmpty()) {
+                List<String> termUris = new ArrayList<>();
+                for (DatasetField dsf : datasetVersion.getFlatDatasetFields()) {
+                    if (cvocMap.containsKey(dsf.getDatasetFieldType().getId())) {
+                        termUris.addAll(dsf.getValues_nondisplay());
+                    }
+                }
+                datasetFieldService.cacheExternalVocabularyValues(termUris);
+            }
 
 
 
@@ -1746,6 +1766,11 @@ public class IndexServiceBean {
     }
 
     public List<String> findPathSegments(Dataverse dataverse, List<String> segments, Dataverse topOfPath) {
+        List<Long> pathIds = findPathIds(dataverse);
+        if (pathIds != null) {
+            pathIds.forEach(id -> segments.add(id.toString()));
+            return segments;
+        }
         Dataverse rootDataverse = findRootDataverseCached();
         if (topOfPath == null) {
             topOfPath = rootDataverse;
@@ -1763,63 +1788,129 @@ public class IndexServiceBean {
         }
     }
         
+    /**
+     * Looks up the path of the collection in the hierarchy index. 
+     * @return the ids on the path, from the top down to the collection itself,
+     * or null if the collection is not indexed or has moved since the index was
+     * built (in which case the path is to be found through the owners instead)
+     */
+    private List<Long> findPathIds(Dataverse dataverse) {
+        if (dataverse.getId() == null) {
+            return null;
+        }
+        List<Long> pathIds = dvObjectHierarchy.findPathIds(dataverse.getId());
+        if (pathIds == null) {
+            return null;
+        }
+        Long indexedOwnerId = pathIds.size() > 1 ? pathIds.get(pathIds.size() - 2) : null;
+        Long ownerId = dataverse.getOwner() == null || dataverse.getOwner().getOwner() == null ? null : dataverse.getOwner().getId();
+        if (pathIds.isEmpty() ? dataverse.getOwner() != null : !Objects.equals(indexedOwnerId, ownerId)) {
+            logger.fine("The collection hierarchy index is out of date for collection " + dataverse.getId());
+            dvObjectHierarchy.invalidate();
+            return null;
+        }
+        return pathIds;
+    }
+    
+    private List<Long> findLinkingDataverseIds(Long dataverseId) {
+        Set<Long> linkingIds = dvObjectHierarchy.findLinkingCollectionIds(dataverseId);
+        if (linkingIds != null) {
+            return new ArrayList<>(linkingIds);
+        }
+        return dvLinkingService.findLinkingDataverses(dataverseId).stream().map(Dataverse::getId).collect(Collectors.toList());
+    }
+    
+    private List<Long> findDatasetLinkingDataverseIds(Long datasetId) {
+        Set<Long> linkingIds = dvObjectHierarchy.findDatasetLinkingCollectionIds(datasetId);
+        if (linkingIds != null) {
+            return new ArrayList<>(linkingIds);
+        }
+        return dsLinkingService.findLinkingDataverses(datasetId).stream().map(Dataverse::getId).collect(Collectors.toList());
+    }
+    
+    /**
+     * @return the ids of the collection and of its owners, excluding the root
+     */
+    private List<Long> findAncestorIds(Dataverse dataverse) {
+        List<Long> pathIds = findPathIds(dataverse);
+        if (pathIds != null) {
+            return pathIds;
+        }
+        Dataverse rootDataverse = findRootDataverseCached();
+        List<Long> ancestorIds = new ArrayList<>();
+        for (Dataverse prior : dataverse.getOwners()) {
+            if (!prior.equals(rootDataverse)) {
+                ancestorIds.add(prior.getId());
+            }
+        }
+        if (!dataverse.equals(rootDataverse)) {
+            ancestorIds.add(dataverse.getId());
+        }
+        return ancestorIds;
+    }
+        
     private boolean hasAnyLinkingDataverses(Dataverse dataverse) {
         Dataverse rootDataverse = findRootDataverseCached();
-        List<Dataverse> ancestorList = dataverse.getOwners();
-        ancestorList.add(dataverse);
-        for (Dataverse prior : ancestorList) {
-            if (!dataverse.equals(rootDataverse)) {
-                List<Dataverse> linkingDVs = dvLinkingService.findLinkingDataverses(prior.getId());
-                if (!linkingDVs.isEmpty()){
-                    return true;
-                }
+        if (dataverse.equals(rootDataverse)) {
+            return false;
+        }
+        for (Long priorId : findAncestorIds(dataverse)) {
+            if (!findLinkingDataverseIds(priorId).isEmpty()) {
+                return true;
             }
         }       
         return false;
     }
     
-    private List<Dataverse> findAllLinkingDataverses(DvObject dvObject){
+    private List<Long> findAllLinkingDataverseIds(DvObject dvObject){
         /*
         here we find the linking dataverse of the input object
         then any linked dvs in its owners list
         */
-        Dataset dataset = null;
-        Dataverse dv = null;
-        Dataverse rootDataverse = findRootDataverseCached();        
-        List <Dataverse>linkingDataverses = new ArrayList();
-        List<Dataverse> ancestorList = new ArrayList();
+        List<Long> linkingDataverseIds = new ArrayList<>();
         
         try {
+            List<Long> ancestorIds = new ArrayList<>();
             if(dvObject.isInstanceofDataset()){
-                dataset = (Dataset) dvObject;
-                linkingDataverses = dsLinkingService.findLinkingDataverses(dataset.getId());
-                ancestorList = dataset.getOwner().getOwners();
-                ancestorList.add(dataset.getOwner()); //to show dataset in linking dv when parent dv is linked
+                Dataset dataset = (Dataset) dvObject;
+                linkingDataverseIds.addAll(findDatasetLinkingDataverseIds(dataset.getId()));
+                //to show dataset in linking dv when parent dv is linked
+                ancestorIds = findAncestorIds(dataset.getOwner());
             }
             if(dvObject.isInstanceofDataverse()){
-                dv = (Dataverse) dvObject;
-                linkingDataverses = dvLinkingService.findLinkingDataverses(dv.getId());
-                ancestorList = dv.getOwners();
+                Dataverse dv = (Dataverse) dvObject;
+                linkingDataverseIds.addAll(findLinkingDataverseIds(dv.getId()));
+                ancestorIds = findAncestorIds(dv);
+                if (!ancestorIds.isEmpty() && ancestorIds.get(ancestorIds.size() - 1).equals(dv.getId())) {
+                    ancestorIds.remove(ancestorIds.size() - 1);
+                }
+            }
+            for (Long ownerId : ancestorIds) {
+                linkingDataverseIds.addAll(findLinkingDataverseIds(ownerId));
             }
         } catch (Exception ex) {
             logger.info("failed to find Linking Dataverses for " + SearchFields.SUBTREE + ": " + ex);
         }
         
-        for (Dataverse owner : ancestorList) {
-            if (!owner.equals(rootDataverse)) {
-            linkingDataverses.addAll(dvLinkingService.findLinkingDataverses(owner.getId()));
-            }
-        }       
-        
-        return linkingDataverses;
+        return linkingDataverseIds;
     }
     
-    private List<String> findLinkingDataversePaths(List<Dataverse> linkingDVs) {
+    private List<String> findLinkingDataversePaths(List<Long> linkingDVIds) {
 
         List<String> pathListAccumulator = new ArrayList<>();
-        for (Dataverse toAdd : linkingDVs) {
+        for (Long toAddId : new LinkedHashSet<>(linkingDVIds)) {
             //get paths for each linking dataverse
-            List<String> linkingDataversePathSegmentsAccumulator = findPathSegments(toAdd, new ArrayList<>());
+            List<String> linkingDataversePathSegmentsAccumulator = new ArrayList<>();
+            List<Long> pathIds = dvObjectHierarchy.findPathIds(toAddId);
+            if (pathIds != null) {
+                pathIds.forEach(id -> linkingDataversePathSegmentsAccumulator.add(id.toString()));
+            } else {
+                Dataverse toAdd = dataverseService.find(toAddId);
+                if (toAdd == null) {
+                    continue;
+                }
+                findPathSegments(toAdd, linkingDataversePathSegmentsAccumulator);
+            }
             List<String> linkingDataversePaths = getDataversePathsFromSegments(linkingDataversePathSegmentsAccumulator);
             for (String dvPath : linkingDataversePaths) {
                 if (!pathListAccumulator.contains(dvPath)) {
@@ -1989,7 +2080,7 @@ public class IndexServiceBean {
         /*
         add linking paths
         */
-        dataversePaths.addAll(findLinkingDataversePaths(findAllLinkingDataverses(dvo)));
+        dataversePaths.addAll(findLinkingDataversePaths(findAllLinkingDataverseIds(dvo)));
         return dataversePaths;
     }
 
@@ -2360,40 +2451,98 @@ public class IndexServiceBean {
     }
 
     // This is a convenience method for deleting all the SOLR documents
-    // (Datasets and DataFiles) harvested by a specific HarvestingClient.
+    // (Datasets and DataFiles, and their permission documents) harvested by a
+    // specific HarvestingClient.
     // The delete logic is a bit simpler, than when deleting "real", local
     // datasets and files - for example, harvested datasets are never Drafts, etc.
     // We are also less concerned with the diagnostics; if any of it fails,
     // we don't need to treat it as a fatal condition.
+    // The harvested archive can be on the scale of Odum or ICPSR, with thousands
+    // of datasets and tens of thousands of files; so rather than loading all
+    // of them, to put together the Solr ids of their documents, we look up
+    // only their database ids, and delete the documents by query on those, a
+    // chunk of ids at a time.
     public void deleteHarvestedDocuments(HarvestingClient harvestingClient) {
-        List<String> solrIdsOfDatasetsToDelete = new ArrayList<>();
+        List<Long> harvestedIds = new ArrayList<>(datasetService.findIdsByHarvestingClient(harvestingClient.getId()));
+        harvestedIds.addAll(dataFileService.findHarvestedFileIdsByClient(harvestingClient));
 
-        // I am going to make multiple solrIndexService.deleteMultipleSolrIds() calls;
-        // one call for the list of datafiles in each dataset; then one more call to
-        // delete all the dataset documents.
-        // I'm *assuming* this is safer than to try and make one complete list of
-        // all the documents (datasets and datafiles), and then attempt to delete
-        // them all at once... (is there a limit??) The list can be huge - if the
-        // harvested archive is on the scale of Odum or ICPSR, with thousands of
-        // datasets and tens of thousands of files.
-        //
-        for (Dataset harvestedDataset : harvestingClient.getHarvestedDatasets()) {
-            solrIdsOfDatasetsToDelete.add(solrDocIdentifierDataset + harvestedDataset.getId());
+        SolrClient solrClient = solrClientService.getSolrClient();
+        for (int i = 0; i < harvestedIds.size(); i += HARVESTED_DELETE_CHUNK_SIZE) {
+            String ids = StringUtils.join(harvestedIds.subList(i, Math.min(i + HARVESTED_DELETE_CHUNK_SIZE, harvestedIds.size())), ",");
+            try {
+                // the dataset and datafile documents, in whatever state:
+                solrClient.deleteByQuery("{!terms f=" + SearchFields.ENTITY_ID + "}" + ids);
+                // and their permission documents:
+                solrClient.deleteByQuery("{!terms f=" + SearchFields.DEFINITION_POINT_DVOBJECT_ID + "}" + ids);
+            } catch (SolrServerException | IOException ex) {
+                logger.warning("Failed to delete harvested documents of the client " + harvestingClient.getName() + " from the index: " + ex.getMessage());
+            }
+        }
+        logger.fine("attempted to delete the documents of " + harvestedIds.size() + " harvested datasets and files associated with the client " + harvestingClient.getName());
+    }
 
-            List<String> solrIdsOfDatafilesToDelete = new ArrayList<>();
-            for (DataFile datafile : harvestedDataset.getFiles()) {
-                solrIdsOfDatafilesToDelete.add(solrDocIdentifierFile + datafile.getId());
+    /**
+     * Indexes a batch of the datasets created by a harvest run. Harvested
+     * datasets have a single, released, version, and are always new (a
+     * dataset harvested again is destroyed, and created anew), so none of the
+     * clean up of {@link #indexDataset(Dataset, boolean)} is needed: the
+     * documents of all the datasets in the batch, of their files, and their
+     * permission documents, are sent to Solr in one request, and are not
+     * committed. The harvest calls {@link #commitHarvestedDocuments()} once,
+     * when it is done.
+     *
+     * @param datasetIds the ids of the datasets created by the harvest
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public void indexHarvestedDatasets(List<Long> datasetIds) {
+        Collection<SolrInputDocument> docs = new ArrayList<>();
+        List<Long> indexedIds = new ArrayList<>();
+        for (Long id : datasetIds) {
+            Dataset dataset = datasetService.findDeep(id);
+            if (dataset == null || dataset.getReleasedVersion() == null) {
+                continue;
             }
-            logger.fine("attempting to delete the following datafiles from the index: " + StringUtils.join(solrIdsOfDatafilesToDelete, ","));
-            IndexResponse resultOfAttemptToDeleteFiles = solrIndexService.deleteMultipleSolrIds(solrIdsOfDatafilesToDelete);
-            logger.fine("result of an attempted delete of the harvested files associated with the dataset " + harvestedDataset.getId() + ": " + resultOfAttemptToDeleteFiles);
+            try {
+                docs.addAll(toSolrDocs(new IndexableDataset(dataset.getReleasedVersion()), null).getDocuments());
+                docs.addAll(solrIndexService.constructPermissionDocsForDatasetAndFiles(dataset));
+                indexedIds.add(id);
+            } catch (SolrServerException | IOException | RuntimeException ex) {
+                logger.warning("Failed to index harvested dataset " + id + ": " + ex.getMessage());
+            }
+        }
+        if (docs.isEmpty()) {
+            return;
+        }
 
+        try {
+            solrClientService.getSolrClient().add(docs);
+        } catch (SolrServerException | IOException ex) {
+            logger.warning("Failed to index harvested datasets " + indexedIds + ": " + ex.getMessage()
+                    + ". They are indexed again with: curl http://localhost:8080/api/admin/index/continue");
+            return;
         }
 
-        logger.fine("attempting to delete the following datasets from the index: " + StringUtils.join(solrIdsOfDatasetsToDelete, ","));
-        IndexResponse resultOfAttemptToDeleteDatasets = solrIndexService.deleteMultipleSolrIds(solrIdsOfDatasetsToDelete);
-        logger.fine("result of attempt to delete harvested datasets associated with the client: " + resultOfAttemptToDeleteDatasets + "\n");
+        Timestamp indexTime = new Timestamp(new Date().getTime());
+        em.createQuery("UPDATE DvObject o SET o.indexTime = :indexTime, o.permissionIndexTime = :indexTime WHERE o.id IN :ids")
+                .setParameter("indexTime", indexTime)
+                .setParameter("ids", indexedIds)
+                .executeUpdate();
+        for (Long id : indexedIds) {
+            fileSearchCache.invalidateDataset(id);
+        }
+        logger.fine("indexed " + indexedIds.size() + " harvested datasets as " + docs.size() + " Solr documents");
+    }
 
+    /**
+     * Commits the documents added by {@link #indexHarvestedDatasets(List)},
+     * once, at the end of a harvest run.
+     */
+    public void commitHarvestedDocuments() {
+        try {
+            solrClientService.getSolrClient().commit();
+        } catch (SolrServerException | IOException ex) {
+            logger.warning("Failed to commit the harvested documents to the index: " + ex.getMessage());
+        }
     }
 
     // Another convenience method, for deleting all the SOLR documents (dataset_
@@ -426,6 +426,20 @@ public class SolrIndexServiceBean {
         );
     }
 
+    /**
+     * Builds the permission documents of a dataset and of its files, without
+     * sending them to Solr; for when many datasets are indexed in one batch.
+     */
+    public List<SolrInputDocument> constructPermissionDocsForDatasetAndFiles(Dataset dataset) {
+        List<SolrInputDocument> docs = new ArrayList<>();
+        List<DvObjectSolrDoc> definitionPoints = new ArrayList<>(constructDatasetSolrDocs(dataset));
+        definitionPoints.addAll(constructDatafileSolrDocsFromDataset(dataset));
+        for (DvObjectSolrDoc dvObjectSolrDoc : definitionPoints) {
+            docs.add(SearchUtil.createSolrDoc(dvObjectSolrDoc));
+        }
+        return docs;
+    }
+
     private String reindexFilesInBatches(List<DataFile> filesToReindexPermissionsFor) {
         List<SolrInputDocument> docs = new ArrayList<>();
         Map<Long, List<Long>> byParentId = new HashMap<>();
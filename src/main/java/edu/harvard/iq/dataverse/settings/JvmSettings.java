@@ -52,6 +52,14 @@ public enum JvmSettings {
     GUESTBOOK_AT_REQUEST(SCOPE_FILES, "guestbook-at-request"),
     GLOBUS_CACHE_MAXAGE(SCOPE_FILES, "globus-cache-maxage"),
     GLOBUS_TASK_MONITORING_SERVER(SCOPE_FILES, "globus-monitoring-server"),
+    GLOBUS_TASK_MONITORING_BATCH_SIZE(SCOPE_FILES, "globus-monitoring-batch-size"),
+    GLOBUS_METADATA_THREADS(SCOPE_FILES, "globus-metadata-threads"),
+    GLOBUS_TRANSFER_API_URL(SCOPE_FILES, "globus-transfer-api-url"),
+    GLOBUS_AUTH_API_URL(SCOPE_FILES, "globus-auth-api-url"),
+    FORMAT_CONVERSION_THREADS(SCOPE_FILES, "format-conversion-threads"),
+    THUMBNAIL_THREADS(SCOPE_FILES, "thumbnail-threads"),
+    FORMAT_CONVERSION_PREGENERATE(SCOPE_FILES, "format-conversion-pregenerate"),
+    FORMAT_CONVERSION_NATIVE(SCOPE_FILES, "format-conversion-native"),
 
     //STORAGE DRIVER SETTINGS
     SCOPE_DRIVER(SCOPE_FILES),
@@ -64,6 +72,7 @@ public enum JvmSettings {
     SOLR_PROT(SCOPE_SOLR, "protocol"),
     SOLR_CORE(SCOPE_SOLR, "core"),
     SOLR_PATH(SCOPE_SOLR, "path"),
+    SOLR_FILE_SEARCH_CACHE_SIZE(SCOPE_SOLR, "file-search-cache-size"),
 
     // INDEX CONCURENCY
     SCOPE_SOLR_CONCURENCY(SCOPE_SOLR, "concurrency"),
@@ -81,6 +90,8 @@ public enum JvmSettings {
     SCOPE_API(PREFIX, "api"),
     API_SIGNING_SECRET(SCOPE_API, "signing-secret"),
     API_ALLOW_INCOMPLETE_METADATA(SCOPE_API, "allow-incomplete-metadata"),
+    API_TOKEN_CACHE_TTL(SCOPE_API, "token-cache-ttl"),
+    API_LAST_USE_FLUSH_INTERVAL(SCOPE_API, "last-use-flush-interval"),
 
     // SIGNPOSTING SETTINGS
     SCOPE_SIGNPOSTING(PREFIX, "signposting"),
@@ -219,6 +230,12 @@ public enum JvmSettings {
     MAIL_MTA_SUPPORT_UTF8(SCOPE_MAIL_MTA, "allow-utf8-addresses"),
     // Placeholder setting for a large list of extra settings
     MAIL_MTA_SETTING(SCOPE_MAIL_MTA),
+    // Outbox of the messages to send
+    SCOPE_MAIL_OUTBOX(SCOPE_MAIL, "outbox"),
+    MAIL_OUTBOX_ENABLED(SCOPE_MAIL_OUTBOX, "enabled"),
+    MAIL_OUTBOX_INTERVAL(SCOPE_MAIL_OUTBOX, "interval"),
+    MAIL_OUTBOX_BATCH_SIZE(SCOPE_MAIL_OUTBOX, "batch-size"),
+    MAIL_OUTBOX_MAX_ATTEMPTS(SCOPE_MAIL_OUTBOX, "max-attempts"),
     
     // AUTH SETTINGS
     SCOPE_AUTH(PREFIX, "auth"),
@@ -252,10 +269,51 @@ public enum JvmSettings {
     BAGIT_SOURCE_ORG_NAME(SCOPE_BAGIT_SOURCEORG, "name"),
     BAGIT_SOURCEORG_ADDRESS(SCOPE_BAGIT_SOURCEORG, "address"),
     BAGIT_SOURCEORG_EMAIL(SCOPE_BAGIT_SOURCEORG, "email"),
+    BAGIT_DIRECT_STORAGE(SCOPE_BAGIT, "direct-storage"),
 
     // STORAGE USE SETTINGS
     SCOPE_STORAGEUSE(PREFIX, "storageuse"),
     STORAGEUSE_DISABLE_UPDATES(SCOPE_STORAGEUSE, "disable-storageuse-increments"),
+    STORAGEUSE_ROLLUP_INTERVAL(SCOPE_STORAGEUSE, "rollup-interval"),
+
+    // MAKE DATA COUNT SETTINGS
+    SCOPE_MDC(PREFIX, "mdc"),
+    MDC_LOG_QUEUE_SIZE(SCOPE_MDC, "log-queue-size"),
+    MDC_LOG_FLUSH_INTERVAL(SCOPE_MDC, "log-flush-interval"),
+
+    // METRICS SETTINGS
+    SCOPE_METRICS(PREFIX, "metrics"),
+    METRICS_REFRESH_INTERVAL(SCOPE_METRICS, "refresh-interval"),
+
+    // HARVESTING SETTINGS
+    SCOPE_HARVEST(PREFIX, "harvest"),
+    SCOPE_HARVEST_CLIENT(SCOPE_HARVEST, "client"),
+    HARVEST_CLIENT_FETCH_THREADS(SCOPE_HARVEST_CLIENT, "fetch-threads"),
+    HARVEST_CLIENT_FETCH_RETRIES(SCOPE_HARVEST_CLIENT, "fetch-retries"),
+    HARVEST_CLIENT_LIST_RECORDS(SCOPE_HARVEST_CLIENT, "list-records"),
+    HARVEST_CLIENT_INDEX_BATCH_SIZE(SCOPE_HARVEST_CLIENT, "index-batch-size"),
+
+    // JSON-LD SETTINGS
+    SCOPE_JSONLD(PREFIX, "jsonld"),
+    JSONLD_CONTEXT_CACHE_SIZE(SCOPE_JSONLD, "context-cache-size"),
+    JSONLD_REMOTE_CONTEXTS(SCOPE_JSONLD, "remote-contexts"),
+    JSONLD_CONTEXT_DIRECTORY(SCOPE_JSONLD, "context-directory"),
+
+    // EXPORT SETTINGS
+    SCOPE_EXPORT(PREFIX, "export"),
+    EXPORT_ALL_THREADS(SCOPE_EXPORT, "all-threads"),
+    SCOPE_EXPORT_CACHE(SCOPE_EXPORT, "cache"),
+    EXPORT_CACHE_SIZE(SCOPE_EXPORT_CACHE, "size"),
+    EXPORT_CACHE_MAX_ENTRY_SIZE(SCOPE_EXPORT_CACHE, "max-entry-size"),
+    EXPORT_CACHE_DIRECTORY(SCOPE_EXPORT_CACHE, "directory"),
+    EXPORT_CACHE_DISK_SIZE(SCOPE_EXPORT_CACHE, "disk-size"),
+
+    // EXTERNAL VOCABULARY SETTINGS
+    SCOPE_CVOC(PREFIX, "cvoc"),
+    CVOC_MAX_CONNECTIONS(SCOPE_CVOC, "max-connections"),
+    CVOC_MAX_CONNECTIONS_PER_HOST(SCOPE_CVOC, "max-connections-per-host"),
+    CVOC_TIMEOUT(SCOPE_CVOC, "timeout"),
+    CVOC_CACHE_SIZE(SCOPE_CVOC, "cache-size"),
     ;
 
     private static final String SCOPE_SEPARATOR = ".";
@@ -0,0 +1,95 @@
+package edu.harvard.iq.dataverse.storageuse;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * A pending change of the storage use of a DvObjectContainer, not yet rolled
+ * up into its StorageUse record. Adding a file appends one delta for the
+ * dataset and one for each of its ancestor collections; the deltas are
+ * periodically summed up and added to the StorageUse records, all at once, by
+ * {@link StorageUseServiceBean#rollUpStorageUseDeltas()}. Since appending a
+ * delta doesn't update (and lock) the StorageUse rows, uploads into different
+ * datasets no longer have to wait for each other on the records of the shared
+ * ancestors, e.g. the root collection.
+ * 
+ * The container id is deliberately not a foreign key, so that the pending
+ * deltas don't get in the way of deleting a dataset or a collection; the
+ * deltas of deleted containers are simply discarded by the next roll-up.
+ */
+@Entity
+@Table(indexes = {@Index(columnList="dvobjectcontainer_id")})
+public class StorageUseDelta implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "dvobjectcontainer_id", nullable = false)
+    private Long dvObjectContainerId;
+
+    @Column(nullable = false)
+    private Long sizeDelta;
+
+    public StorageUseDelta() {}
+
+    public StorageUseDelta(Long dvObjectContainerId, Long sizeDelta) {
+        this.dvObjectContainerId = dvObjectContainerId;
+        this.sizeDelta = sizeDelta;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getDvObjectContainerId() {
+        return dvObjectContainerId;
+    }
+
+    public void setDvObjectContainerId(Long dvObjectContainerId) {
+        this.dvObjectContainerId = dvObjectContainerId;
+    }
+
+    public Long getSizeDelta() {
+        return sizeDelta;
+    }
+
+    public void setSizeDelta(Long sizeDelta) {
+        this.sizeDelta = sizeDelta;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        hash += (id != null ? id.hashCode() : 0);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof StorageUseDelta)) {
+            return false;
+        }
+        StorageUseDelta other = (StorageUseDelta) object;
+        if ((this.id == null && other.id != null) || (this.id != null && !this.id.equals(other.id))) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "edu.harvard.iq.dataverse.storageuse.StorageUseDelta[ id=" + id + " ]";
+    }
+}
@@ -0,0 +1,58 @@
+package edu.harvard.iq.dataverse.storageuse;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically rolls up the pending storage use deltas (see 
+ * {@link StorageUseDelta}) into the StorageUse records. The interval is 
+ * configured with the dataverse.storageuse.rollup-interval JVM option, in 
+ * seconds; with 0, the deltas are not journaled in the first place, and the 
+ * StorageUse records are updated directly on every upload, as before.
+ */
+@Singleton
+@Startup
+public class StorageUseRollUpServiceBean {
+    private static final Logger logger = Logger.getLogger(StorageUseRollUpServiceBean.class.getCanonicalName());
+    
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+    
+    @EJB
+    StorageUseServiceBean storageUseService;
+    
+    @PostConstruct
+    public void init() {
+        long interval = StorageUseServiceBean.getRollUpInterval();
+        // The deltas left over from before a restart are rolled up right away,
+        // including when the journal has since been disabled:
+        scheduler.schedule(this::rollUp, 0, TimeUnit.SECONDS);
+        if (interval > 0) {
+            logger.fine("Rolling up the storage use deltas every " + interval + " seconds");
+            scheduler.scheduleWithFixedDelay(this::rollUp, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        rollUp();
+    }
+    
+    public void rollUp() {
+        try {
+            int updated = storageUseService.rollUpStorageUseDeltas();
+            logger.fine("Rolled up the storage use deltas of " + updated + " containers");
+        } catch (RuntimeException e) {
+            // the deltas stay in the journal, and will be rolled up next time
+            logger.log(Level.WARNING, "Failed to roll up the storage use deltas: " + e.getMessage(), e);
+        }
+    }
+}
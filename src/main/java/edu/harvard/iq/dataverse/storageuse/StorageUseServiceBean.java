@@ -19,6 +19,12 @@ import java.util.logging.Logger;
 public class StorageUseServiceBean  implements java.io.Serializable {
     private static final Logger logger = Logger.getLogger(StorageUseServiceBean.class.getCanonicalName());
     
+    /**
+     * How often (in seconds) the pending storage use deltas are rolled up, 
+     * unless configured otherwise.
+     */
+    static final long DEFAULT_ROLLUP_INTERVAL = 60;
+    
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
     
@@ -27,20 +33,30 @@ public class StorageUseServiceBean  implements java.io.Serializable {
     }
     
     /**
-     * Looks up the current storage use size, using a named query in a new 
-     * transaction
+     * Looks up the current storage use size, using a native query in a new 
+     * transaction. The deltas that haven't been rolled up into the StorageUse
+     * record yet are included, so the size is always up to date (e.g. for the
+     * quota checks of the uploads).
      * @param dvObjectId
      * @return 
      */
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public Long findStorageSizeByDvContainerId(Long dvObjectId) {
-        Long res = em.createNamedQuery("StorageUse.findByteSizeByDvContainerId", Long.class).setParameter("dvObjectId", dvObjectId).getSingleResult();
-        return res == null ? 0L : res;
+        Number res = (Number) em.createNativeQuery(getStorageSizeQuery(dvObjectId)).getSingleResult();
+        return res == null ? 0L : res.longValue();
+    }
+    
+    static String getStorageSizeQuery(Long dvObjectId) {
+        return "SELECT COALESCE((SELECT sizeinbytes FROM storageuse WHERE dvobjectcontainer_id=" + dvObjectId + "),0)\n"
+                + " + COALESCE((SELECT SUM(sizedelta) FROM storageusedelta WHERE dvobjectcontainer_id=" + dvObjectId + "),0)";
     }
     
     /**
      * Increments the recorded storage size for all the dvobject parents of a
-     * datafile, recursively. 
+     * datafile, recursively. Unless the roll-up is disabled (by setting the
+     * dataverse.storageuse.rollup-interval to 0), the increment is appended
+     * to the StorageUseDelta journal for the parent and each of its ancestors,
+     * rather than applied to their StorageUse records directly.
      * @param dvObjectContainerId database id of the immediate parent (dataset)
      * @param increment size in bytes of the file(s) being added 
      */
@@ -49,19 +65,7 @@ public class StorageUseServiceBean  implements java.io.Serializable {
         if (dvObjectContainerId != null && increment != null) {
             Optional<Boolean> allow = JvmSettings.STORAGEUSE_DISABLE_UPDATES.lookupOptional(Boolean.class);
             if (!(allow.isPresent() && allow.get())) {
-                String queryString = "WITH RECURSIVE uptree (id, owner_id) AS\n"
-                        + "("
-                        + "    SELECT id, owner_id\n"
-                        + "    FROM dvobject\n"
-                        + "    WHERE id=" + dvObjectContainerId + "\n"
-                        + "    UNION ALL\n"
-                        + "    SELECT dvobject.id, dvobject.owner_id\n"
-                        + "    FROM dvobject\n"
-                        + "    JOIN uptree ON dvobject.id = uptree.owner_id)\n"
-                        + "UPDATE storageuse SET sizeinbytes=COALESCE(sizeinbytes,0)+" + increment + "\n"
-                        + "FROM uptree\n"
-                        + "WHERE dvobjectcontainer_id = uptree.id;";
-
+                String queryString = getIncrementQuery(dvObjectContainerId, increment, isRollUpEnabled());
                 int parentsUpdated = em.createNativeQuery(queryString).executeUpdate();
             }
         }
@@ -69,4 +73,61 @@ public class StorageUseServiceBean  implements java.io.Serializable {
         // the query is < 2 - ? 
     }
     
+    /**
+     * @param journal whether the increment is appended to the StorageUseDelta
+     *                journal, rather than applied to the StorageUse records
+     */
+    static String getIncrementQuery(Long dvObjectContainerId, Long increment, boolean journal) {
+        String queryString = "WITH RECURSIVE uptree (id, owner_id) AS\n"
+                + "("
+                + "    SELECT id, owner_id\n"
+                + "    FROM dvobject\n"
+                + "    WHERE id=" + dvObjectContainerId + "\n"
+                + "    UNION ALL\n"
+                + "    SELECT dvobject.id, dvobject.owner_id\n"
+                + "    FROM dvobject\n"
+                + "    JOIN uptree ON dvobject.id = uptree.owner_id)\n";
+        if (journal) {
+            queryString += "INSERT INTO storageusedelta (dvobjectcontainer_id, sizedelta)\n"
+                    + "SELECT id, " + increment + " FROM uptree;";
+        } else {
+            queryString += "UPDATE storageuse SET sizeinbytes=COALESCE(sizeinbytes,0)+" + increment + "\n"
+                    + "FROM uptree\n"
+                    + "WHERE dvobjectcontainer_id = uptree.id;";
+        }
+        return queryString;
+    }
+    
+    /**
+     * Moves all the pending deltas into the StorageUse records: the deltas are
+     * deleted from the journal, summed up by container and added to the sizes,
+     * in one statement - so a concurrent lookup sees any given delta either in 
+     * the journal or in the StorageUse record, never in both or neither, and
+     * concurrent roll-ups (e.g. on different nodes of a cluster) never apply 
+     * the same delta twice. This is the only place where the StorageUse rows 
+     * are updated (and locked), once per roll-up rather than once per upload.
+     * @return the number of StorageUse records updated
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int rollUpStorageUseDeltas() {
+        return em.createNativeQuery(ROLL_UP_QUERY).executeUpdate();
+    }
+    
+    static final String ROLL_UP_QUERY = "WITH rolledup AS (\n"
+            + "    DELETE FROM storageusedelta\n"
+            + "    RETURNING dvobjectcontainer_id, sizedelta)\n"
+            + "UPDATE storageuse SET sizeinbytes=COALESCE(sizeinbytes,0)+totals.total\n"
+            + "FROM (SELECT dvobjectcontainer_id, SUM(sizedelta) AS total\n"
+            + "      FROM rolledup\n"
+            + "      GROUP BY dvobjectcontainer_id) totals\n"
+            + "WHERE storageuse.dvobjectcontainer_id = totals.dvobjectcontainer_id;";
+    
+    public static long getRollUpInterval() {
+        return JvmSettings.STORAGEUSE_ROLLUP_INTERVAL.lookupOptional(Long.class).orElse(DEFAULT_ROLLUP_INTERVAL);
+    }
+    
+    private static boolean isRollUpEnabled() {
+        return getRollUpInterval() > 0;
+    }
+    
 }
@@ -0,0 +1,127 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks on another executor (typically the ManagedExecutorService of the
+ * application server), at most a given number at a time, with a bounded queue
+ * for the tasks waiting their turn. The threads are those of the underlying
+ * executor, so they are managed (and stopped on undeploy) by the container;
+ * this class only limits how many of them a given kind of task can take, and
+ * how many tasks can pile up waiting for them.
+ *
+ * @see java.util.concurrent.ThreadPoolExecutor for the equivalent with
+ *      threads of its own
+ */
+public class BoundedExecutor implements Executor {
+
+    private static final Logger logger = Logger.getLogger(BoundedExecutor.class.getCanonicalName());
+
+    private final Executor delegate;
+    private final int maxRunning;
+    private final BlockingQueue<Runnable> queue;
+
+    // the number of workers submitted to the delegate; guarded by this
+    private int running = 0;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param delegate   the executor running the tasks
+     * @param maxRunning the number of tasks run at a time
+     * @param maxQueued  the number of tasks waiting to be run, beyond which
+     *                   new tasks are rejected
+     */
+    public BoundedExecutor(Executor delegate, int maxRunning, int maxQueued) {
+        this.delegate = delegate;
+        this.maxRunning = Math.max(1, maxRunning);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, maxQueued));
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue is full, or the executor
+     *                                    has been shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor has been shut down");
+        }
+        if (!queue.offer(task)) {
+            throw new RejectedExecutionException("The queue is full (" + queue.size() + " tasks waiting)");
+        }
+        try {
+            startWorker();
+        } catch (RejectedExecutionException ex) {
+            queue.remove(task);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting to be run
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Stops taking tasks, and drops the ones waiting to be run; the ones
+     * running are left to finish.
+     *
+     * @return the tasks that were waiting
+     */
+    public List<Runnable> shutdown() {
+        shutdown = true;
+        List<Runnable> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        return dropped;
+    }
+
+    private void startWorker() {
+        synchronized (this) {
+            if (shutdown || running >= maxRunning || queue.isEmpty()) {
+                return;
+            }
+            running++;
+        }
+        try {
+            delegate.execute(this::work);
+        } catch (RuntimeException ex) {
+            synchronized (this) {
+                running--;
+            }
+            throw ex;
+        }
+    }
+
+    private void work() {
+        try {
+            Runnable task;
+            while (!shutdown && (task = queue.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Task failed", ex);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                running--;
+            }
+            // A task may have been queued after the last poll, while this
+            // worker was still counted as running
+            try {
+                startWorker();
+            } catch (RuntimeException ex) {
+                logger.warning("Could not start a worker for the " + queue.size() + " tasks waiting: " + ex.getMessage());
+            }
+        }
+    }
+}
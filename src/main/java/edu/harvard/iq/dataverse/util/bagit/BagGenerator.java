@@ -15,7 +15,9 @@ import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.security.KeyManagementException;
+import java.security.DigestInputStream;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -24,9 +26,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -36,6 +41,8 @@ import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 
 import edu.harvard.iq.dataverse.util.BundleUtil;
+import edu.harvard.iq.dataverse.util.FileUtil;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
 import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
@@ -73,6 +80,7 @@ import com.google.gson.JsonSyntaxException;
 
 import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.DataFile.ChecksumType;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.json.JsonLDTerm;
@@ -124,6 +132,16 @@ public class BagGenerator {
 
     private OREMap oremap;
 
+    // The datafiles of the version, by the @id of their aggregated resource;
+    // null when the files are to be retrieved through the Access API
+    private Map<String, DataFile> dataFilesById = null;
+    private List<StorageEntry> storageEntries = new ArrayList<StorageEntry>();
+    // The data files whose hash was checked as they were written into the zip,
+    // and those among them whose hash didn't match
+    private Set<String> inlineHashedPaths = ConcurrentHashMap.newKeySet();
+    private Set<String> invalidFiles = ConcurrentHashMap.newKeySet();
+    private boolean failOnInvalidHashes = false;
+
     static PrintWriter pw = null;
 
     /**
@@ -134,10 +152,15 @@ public class BagGenerator {
      * submitted OAI-ORE Map file, using the metadata therein to create required
      * BagIt metadata, and using the schema.org/sameAs entries for
      * AggregatedResources as a way to retrieve these files and store them in the
-     * /data directory within the BagIt structure. The Bag is zipped. File retrieval
-     * and zipping are done in parallel, using a connection pool. The required space
-     * on disk is ~ n+1/n of the final bag size, e.g. 125% of the bag size for a
-     * 4-way parallel zip operation.
+     * /data directory within the BagIt structure. The Bag is zipped.
+     * 
+     * Unless dataverse.bagit.direct-storage is false, the datafiles of the version
+     * are read directly from their StorageIO, once, and streamed into the zip as
+     * it is written, with their hashes computed on the way. Otherwise (and for any
+     * file that can't be read from storage), file retrieval and zipping are done in
+     * parallel, using a connection pool. The required space on disk is then ~ n+1/n
+     * of the final bag size, e.g. 125% of the bag size for a 4-way parallel zip
+     * operation.
      * @throws Exception 
      * @throws JsonSyntaxException 
      */
@@ -147,6 +170,9 @@ public class BagGenerator {
         this.oremapObject = oreMap.getOREMap();
                 //(JsonObject) new JsonParser().parse(oreMap.getOREMap().toString());
         this.dataciteXml = dataciteXml;
+        if (JvmSettings.BAGIT_DIRECT_STORAGE.lookupOptional(Boolean.class).orElse(true)) {
+            dataFilesById = oreMap.getDataFilesByResourceId();
+        }
 
         try {
             // Using Dataverse, all the URLs to be retrieved should be on the current server, so allowing self-signed certs and not verifying hostnames are useful in testing and 
@@ -184,6 +210,16 @@ public class BagGenerator {
     public void setDefaultCheckSumType(ChecksumType type) {
     	hashtype=type;
     }
+
+    /**
+     * When set, generateBag(OutputStream) returns false, without closing the
+     * stream, if a data file doesn't match its hash. For callers that can't
+     * validate the bag once it is written (as it is not kept locally) and can
+     * discard what was written to the stream.
+     */
+    public void setFailOnInvalidHashes(boolean val) {
+        failOnInvalidHashes = val;
+    }
     
     public static void println(String s) {
         System.out.println(s);
@@ -241,6 +277,12 @@ public class BagGenerator {
             // children
             processContainer(aggregation, currentPath);
         }
+
+        ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(outputStream);
+        // The files read from storage are written first, as their hashes are
+        // needed for the manifest
+        writeFilesFromStorage(zipArchiveOutputStream);
+
         // Create manifest files
         // pid-mapping.txt - a DataOne recommendation to connect ids and
         // in-bag path/names
@@ -311,8 +353,6 @@ public class BagGenerator {
 
         logger.fine("Creating bag: " + bagName);
 
-        ZipArchiveOutputStream zipArchiveOutputStream = new ZipArchiveOutputStream(outputStream);
-
         /*
          * Add all the waiting contents - dirs created first, then data files are
          * retrieved via URLs in parallel (defaults to one thread per processor)
@@ -321,6 +361,15 @@ public class BagGenerator {
         logger.fine("Starting write");
         writeTo(zipArchiveOutputStream);
         logger.fine("Zipfile Written");
+        logger.info("Data Count: " + dataCount);
+        logger.info("Data Size: " + totalDataSize);
+        if (!invalidFiles.isEmpty()) {
+            logger.severe("Invalid " + hashtype.name() + " for " + invalidFiles.size() + " file(s) in bag: " + bagName);
+            if (failOnInvalidHashes) {
+                client.close();
+                return false;
+            }
+        }
         // Finish
         zipArchiveOutputStream.close();
         logger.fine("Closed");
@@ -466,11 +515,13 @@ public class BagGenerator {
         // Run a confirmation test - should verify all files and hashes
         
         // Check files calculates the hashes and file sizes and reports on
-        // whether hashes are correct
-        checkFiles(checksumMap, bagFile);
-
-        logger.info("Data Count: " + dataCount);
-        logger.info("Data Size: " + totalDataSize);
+        // whether hashes are correct. The data files were checked as they
+        // were written, so only the files not checked then are read again.
+        HashMap<String, String> retrievedFiles = new LinkedHashMap<String, String>(checksumMap);
+        retrievedFiles.keySet().removeAll(inlineHashedPaths);
+        if (!retrievedFiles.isEmpty()) {
+            checkFiles(retrievedFiles, bagFile);
+        }
     }
 
     public static String getValidName(String bagName) {
@@ -571,8 +622,9 @@ public class BagGenerator {
                     // Pick sha512 when ignoring hashes or none exist
                     hashtype = DataFile.ChecksumType.SHA512;
                 }
+                DataFile dataFile = dataFilesById == null ? null : dataFilesById.get(child.get("@id").getAsString());
                 try {
-                    if ((childHash == null) | ignorehashes) {
+                    if (dataFile == null && ((childHash == null) | ignorehashes)) {
                         // Generate missing hashInputStream inputStream = null;
                         InputStream inputStream = null;
                         try {
@@ -607,8 +659,13 @@ public class BagGenerator {
                             logger.warning("Unable to calculate a " + hashtype + " for " + dataUrl);
                         }
                     }
-                    logger.fine("Requesting: " + childPath + " from " + dataUrl);
-                    createFileFromURL(childPath, dataUrl);
+                    if (dataFile != null) {
+                        // read, and hashed, when the bag is written
+                        storageEntries.add(new StorageEntry(childPath, dataUrl, dataFile, child, ignorehashes ? null : childHash));
+                    } else {
+                        logger.fine("Requesting: " + childPath + " from " + dataUrl);
+                        createFileFromURL(childPath, dataUrl, checksumMap.get(childPath));
+                    }
                     dataCount++;
                     if (dataCount % 1000 == 0) {
                         logger.info("Retrieval in progress: " + dataCount + " files retrieved");
@@ -693,13 +750,121 @@ public class BagGenerator {
         addEntry(archiveEntry, supp);
     }
 
-    private void createFileFromURL(final String relPath, final String uri)
+    /**
+     * Adds a data file retrieved through the Access API, computing its hash as it
+     * is read, to check it against the expected one (if any).
+     */
+    private void createFileFromURL(final String relPath, final String uri, final String expectedHash)
             throws IOException, ExecutionException, InterruptedException {
 
         ZipArchiveEntry archiveEntry = new ZipArchiveEntry(bagName + "/" + relPath);
         archiveEntry.setMethod(ZipEntry.DEFLATED);
-        InputStreamSupplier supp = getInputStreamSupplier(uri);
-        addEntry(archiveEntry, supp);
+        final InputStreamSupplier supp = getInputStreamSupplier(uri);
+        final ChecksumType type = hashtype;
+        addEntry(archiveEntry, new InputStreamSupplier() {
+            public InputStream get() {
+                InputStream inputStream = supp.get();
+                if (inputStream == null || expectedHash == null) {
+                    return inputStream;
+                }
+                return new DigestInputStream(inputStream, DigestUtils.getDigest(type.toString())) {
+                    private boolean closed = false;
+
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        if (!closed) {
+                            closed = true;
+                            checkHash(relPath, expectedHash, Hex.encodeHexString(getMessageDigest().digest()));
+                        }
+                    }
+                };
+            }
+        });
+    }
+
+    private void checkHash(String path, String expectedHash, String hash) {
+        if (expectedHash.equals(hash)) {
+            logger.fine("Valid hash for " + path);
+        } else {
+            logger.severe("Invalid " + hashtype.name() + " for " + path);
+            logger.fine("As sent: " + expectedHash);
+            logger.fine("As calculated: " + hash);
+            invalidFiles.add(path);
+        }
+        inlineHashedPaths.add(path);
+    }
+
+    /**
+     * Streams the files to be read directly from storage into the zip, computing
+     * their hashes as they are read. The hashes are added to the manifest if the
+     * files had none, or are checked against the ones they have.
+     */
+    private void writeFilesFromStorage(ZipArchiveOutputStream zipArchiveOutputStream) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int i = 0;
+        for (StorageEntry entry : storageEntries) {
+            MessageDigest digest = DigestUtils.getDigest(hashtype.toString());
+            ZipArchiveEntry archiveEntry = new ZipArchiveEntry(bagName + "/" + entry.path);
+            archiveEntry.setMethod(ZipEntry.DEFLATED);
+            try (InputStream in = new DigestInputStream(openFromStorage(entry), digest)) {
+                zipArchiveOutputStream.putArchiveEntry(archiveEntry);
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    zipArchiveOutputStream.write(buffer, 0, read);
+                }
+                zipArchiveOutputStream.closeArchiveEntry();
+            }
+            String hash = Hex.encodeHexString(digest.digest());
+            if (entry.expectedHash == null) {
+                JsonObject childHashObject = new JsonObject();
+                childHashObject.addProperty("@type", hashtype.toString());
+                childHashObject.addProperty("@value", hash);
+                entry.child.add(JsonLDTerm.checksum.getLabel(), (JsonElement) childHashObject);
+                checksumMap.put(entry.path, hash);
+                inlineHashedPaths.add(entry.path);
+            } else {
+                checkHash(entry.path, entry.expectedHash, hash);
+            }
+            i++;
+            if (i % 1000 == 0) {
+                logger.info("Retrieval in progress: " + i + " files written from storage");
+            }
+        }
+    }
+
+    private InputStream openFromStorage(StorageEntry entry) throws IOException {
+        try {
+            StorageIO<DataFile> storageIO = entry.dataFile.getStorageIO();
+            return FileUtil.getOriginalFileInputStream(storageIO, entry.dataFile.isTabularData());
+        } catch (IOException e) {
+            logger.warning("Could not read " + entry.path + " from storage, retrieving it from " + entry.dataUrl + " instead: " + e.getMessage());
+        }
+        InputStream inputStream = getInputStreamSupplier(entry.dataUrl).get();
+        if (inputStream == null) {
+            throw new IOException("Could not read " + entry.dataUrl);
+        }
+        return inputStream;
+    }
+
+    /**
+     * A datafile of the bag, to be read directly from storage.
+     */
+    private static class StorageEntry {
+        final String path;
+        final String dataUrl;
+        final DataFile dataFile;
+        final JsonObject child;
+        // the hash the file should have; null if it is to be computed
+        final String expectedHash;
+
+        StorageEntry(String path, String dataUrl, DataFile dataFile, JsonObject child, String expectedHash) {
+            this.path = path;
+            this.dataUrl = dataUrl;
+            this.dataFile = dataFile;
+            this.child = child;
+            this.expectedHash = expectedHash;
+        }
     }
 
     private void checkFiles(HashMap<String, String> shaMap, File bagFile) {
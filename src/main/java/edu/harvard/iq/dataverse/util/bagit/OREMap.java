@@ -13,6 +13,7 @@ import edu.harvard.iq.dataverse.util.json.JsonPrinter;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -252,14 +253,12 @@ public class OREMap {
                 }
                 addIfNotNull(aggRes, JsonLDTerm.categories, catArray);
                 // File DOI if it exists
-                String fileId = null;
+                String fileId = getAggregatedResourceId(df);
                 String fileSameAs = null;
                 if (df.getGlobalId()!=null) {
-                    fileId = df.getGlobalId().asString();
                     fileSameAs = SystemConfig.getDataverseSiteUrlStatic()
                             + "/api/access/datafile/:persistentId?persistentId=" + fileId + (ingested ? "&format=original":"");
                 } else {
-                    fileId = SystemConfig.getDataverseSiteUrlStatic() + "/file.xhtml?fileId=" + df.getId();
                     fileSameAs = SystemConfig.getDataverseSiteUrlStatic() + "/api/access/datafile/" + df.getId() + (ingested ? "?format=original":"");
                 }
                 aggRes.add("@id", fileId);
@@ -382,6 +381,25 @@ public class OREMap {
         }
     }
 
+    /**
+     * @return the datafiles of the version, by the @id of their aggregated
+     * resource in the map; for reading the files directly from storage
+     */
+    public Map<String, DataFile> getDataFilesByResourceId() {
+        Map<String, DataFile> dataFiles = new HashMap<>();
+        for (FileMetadata fmd : version.getFileMetadatas()) {
+            dataFiles.put(getAggregatedResourceId(fmd.getDataFile()), fmd.getDataFile());
+        }
+        return dataFiles;
+    }
+
+    private static String getAggregatedResourceId(DataFile df) {
+        if (df.getGlobalId() != null) {
+            return df.getGlobalId().asString();
+        }
+        return SystemConfig.getDataverseSiteUrlStatic() + "/file.xhtml?fileId=" + df.getId();
+    }
+
     public JsonLDTerm getContactTerm() {
         return getTermFor(DatasetFieldConstant.datasetContact);
     }
@@ -504,6 +504,9 @@ public class JSONLDUtil {
     }
 
     static Map<String, String> localContext = new TreeMap<String, String>();
+    // The localContext, parsed once it has been populated
+    private static volatile JsonDocument localContextDocument = null;
+    private static final JsonDocument emptyContextDocument = JsonDocument.of(JsonValue.EMPTY_JSON_OBJECT);
     static Map<String, DatasetFieldType> dsftMap = new TreeMap<String, DatasetFieldType>();
 
     //A map if DatasetFieldTypes by decontextualized URL
@@ -519,7 +522,7 @@ public class JSONLDUtil {
         }
     }
 
-    public static void populateContext(MetadataBlockServiceBean metadataBlockSvc) {
+    public static synchronized void populateContext(MetadataBlockServiceBean metadataBlockSvc) {
         if (localContext.isEmpty()) {
 
             List<MetadataBlock> mdbList = metadataBlockSvc.listMetadataBlocks();
@@ -535,6 +538,7 @@ public class JSONLDUtil {
             }
             JsonLDNamespace.addNamespacesToContext(localContext);
             logger.fine("LocalContext keys: " + String.join(", ", localContext.keySet()));
+            localContextDocument = JsonDocument.of(getContext(localContext));
         }
     }
 
@@ -546,8 +550,10 @@ public class JSONLDUtil {
             try (JsonReader jsonReader = Json.createReader(rdr)) {
                 JsonObject jsonld = jsonReader.readObject();
                 JsonDocument doc = JsonDocument.of(jsonld);
-                JsonArray array = JsonLd.expand(doc).get();
-                jsonld = JsonLd.compact(JsonDocument.of(array), JsonDocument.of(Json.createObjectBuilder().build())).get();
+                // Remote contexts are retrieved through the shared (caching) loader
+                JsonArray array = JsonLd.expand(doc).loader(JsonLDDocumentLoader.getInstance()).get();
+                jsonld = JsonLd.compact(JsonDocument.of(array), emptyContextDocument)
+                        .loader(JsonLDDocumentLoader.getInstance()).get();
                 // jsonld = array.getJsonObject(0);
                 logger.fine("Decontextualized object: " + jsonld);
                 return jsonld;
@@ -566,10 +572,10 @@ public class JSONLDUtil {
         JsonDocument doc = JsonDocument.of(jsonldObj);
         JsonArray array = null;
         try {
-            array = JsonLd.expand(doc).get();
+            array = JsonLd.expand(doc).loader(JsonLDDocumentLoader.getInstance()).get();
 
-            jsonldObj = JsonLd.compact(JsonDocument.of(array), JsonDocument.of(JSONLDUtil.getContext(localContext)))
-                    .get();
+            jsonldObj = JsonLd.compact(JsonDocument.of(array), localContextDocument)
+                    .loader(JsonLDDocumentLoader.getInstance()).get();
             logger.fine("Compacted: " + jsonldObj.toString());
             return jsonldObj;
         } catch (JsonLdError e) {
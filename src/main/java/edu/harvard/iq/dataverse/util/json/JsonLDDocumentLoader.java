@@ -0,0 +1,162 @@
+package edu.harvard.iq.dataverse.util.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import com.apicatalog.jsonld.JsonLdError;
+import com.apicatalog.jsonld.JsonLdErrorCode;
+import com.apicatalog.jsonld.document.Document;
+import com.apicatalog.jsonld.document.JsonDocument;
+import com.apicatalog.jsonld.http.media.MediaType;
+import com.apicatalog.jsonld.loader.DocumentLoader;
+import com.apicatalog.jsonld.loader.DocumentLoaderOptions;
+import com.apicatalog.jsonld.loader.SchemeRouter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+
+/**
+ * The process-wide JSON-LD document loader used by JSONLDUtil, so that the
+ * remote @context documents referenced by JSON-LD sent to the semantic API (or
+ * to the LDN inbox) are retrieved once and reused, instead of being fetched
+ * again on every expansion.
+ *
+ * Documents are looked up, in order:
+ * <ul>
+ * <li>in a bounded cache of the documents already loaded,</li>
+ * <li>in the local copies of contexts listed in the contexts.properties file
+ * of the directory set with dataverse.jsonld.context-directory, if any,</li>
+ * <li>in the copies of well-known contexts bundled with the application,</li>
+ * <li>on the network, unless dataverse.jsonld.remote-contexts is false (e.g.
+ * in an installation without internet access), in which case documents that
+ * are not available locally can't be loaded.</li>
+ * </ul>
+ * A contexts.properties file maps the URL of a context to the name of the file
+ * holding its copy, relative to the properties file.
+ */
+public class JsonLDDocumentLoader implements DocumentLoader {
+
+    private static final Logger logger = Logger.getLogger(JsonLDDocumentLoader.class.getCanonicalName());
+
+    static final String CONTEXTS_FILE = "contexts.properties";
+    private static final String BUNDLED_CONTEXTS = "jsonld-contexts/" + CONTEXTS_FILE;
+
+    private static JsonLDDocumentLoader instance = null;
+
+    private final Cache<String, Document> documents;
+    private final Map<String, LocalContext> localContexts = new HashMap<>();
+    private final boolean remoteContexts;
+    private final DocumentLoader remoteLoader = SchemeRouter.defaultInstance();
+
+    /**
+     * A local copy of a context: either a file in the context directory or a
+     * resource bundled with the application.
+     */
+    private record LocalContext(Path file, String resource) {
+    }
+
+    JsonLDDocumentLoader(int cacheSize, boolean remoteContexts, Path contextDirectory) {
+        this.documents = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofHours(24))
+                .build();
+        this.remoteContexts = remoteContexts;
+        loadBundledContexts();
+        if (contextDirectory != null) {
+            loadContextDirectory(contextDirectory);
+        }
+    }
+
+    public static synchronized JsonLDDocumentLoader getInstance() {
+        if (instance == null) {
+            instance = new JsonLDDocumentLoader(
+                    JvmSettings.JSONLD_CONTEXT_CACHE_SIZE.lookupOptional(Integer.class).orElse(100),
+                    JvmSettings.JSONLD_REMOTE_CONTEXTS.lookupOptional(Boolean.class).orElse(true),
+                    JvmSettings.JSONLD_CONTEXT_DIRECTORY.lookupOptional().map(Path::of).orElse(null));
+        }
+        return instance;
+    }
+
+    private void loadBundledContexts() {
+        try (InputStream in = JsonLDDocumentLoader.class.getResourceAsStream(BUNDLED_CONTEXTS)) {
+            if (in == null) {
+                logger.warning("No bundled JSON-LD contexts found");
+                return;
+            }
+            Properties contexts = new Properties();
+            contexts.load(in);
+            for (String url : contexts.stringPropertyNames()) {
+                localContexts.put(url, new LocalContext(null, "jsonld-contexts/" + contexts.getProperty(url)));
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to read the bundled JSON-LD contexts: " + e.getMessage());
+        }
+    }
+
+    private void loadContextDirectory(Path contextDirectory) {
+        Path contextsFile = contextDirectory.resolve(CONTEXTS_FILE);
+        try (Reader reader = Files.newBufferedReader(contextsFile, StandardCharsets.UTF_8)) {
+            Properties contexts = new Properties();
+            contexts.load(reader);
+            for (String url : contexts.stringPropertyNames()) {
+                localContexts.put(url, new LocalContext(contextDirectory.resolve(contexts.getProperty(url)), null));
+            }
+            logger.fine("Local JSON-LD contexts: " + String.join(", ", contexts.stringPropertyNames()));
+        } catch (IOException e) {
+            logger.warning("Failed to read the JSON-LD contexts listed in " + contextsFile + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Document loadDocument(URI url, DocumentLoaderOptions options) throws JsonLdError {
+        String key = url.toString();
+        Document document = documents.getIfPresent(key);
+        if (document != null) {
+            return document;
+        }
+        LocalContext localContext = localContexts.get(key);
+        if (localContext != null) {
+            document = loadLocalContext(url, localContext);
+        } else if (remoteContexts) {
+            logger.fine("Retrieving JSON-LD document " + key);
+            document = remoteLoader.loadDocument(url, options);
+        } else {
+            throw new JsonLdError(JsonLdErrorCode.LOADING_DOCUMENT_FAILED,
+                    "No local copy of " + key + ", and the retrieval of remote JSON-LD contexts is disabled");
+        }
+        if (document != null) {
+            documents.put(key, document);
+        }
+        return document;
+    }
+
+    private static Document loadLocalContext(URI url, LocalContext localContext) throws JsonLdError {
+        try (InputStream in = localContext.file() != null ? Files.newInputStream(localContext.file())
+                : JsonLDDocumentLoader.class.getResourceAsStream(localContext.resource())) {
+            if (in == null) {
+                throw new IOException("missing resource " + localContext.resource());
+            }
+            Document document = JsonDocument.of(MediaType.JSON_LD, in);
+            document.setDocumentUrl(url);
+            return document;
+        } catch (IOException e) {
+            throw new JsonLdError(JsonLdErrorCode.LOADING_DOCUMENT_FAILED,
+                    "Failed to read the local copy of " + url + ": " + e.getMessage());
+        }
+    }
+
+    void invalidateAll() {
+        documents.invalidateAll();
+    }
+}
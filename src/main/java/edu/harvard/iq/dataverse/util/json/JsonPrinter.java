@@ -28,6 +28,7 @@ import edu.harvard.iq.dataverse.datavariable.VariableMetadata;
 import edu.harvard.iq.dataverse.datavariable.VariableRange;
 import edu.harvard.iq.dataverse.license.License;
 import edu.harvard.iq.dataverse.globus.FileDetailsHolder;
+import edu.harvard.iq.dataverse.harvest.client.HarvestThroughput;
 import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
 import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
@@ -56,6 +57,7 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.Singleton;
 import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
+import jakarta.json.stream.JsonGenerator;
 
 /**
  * Convert objects to Json.
@@ -483,6 +485,30 @@ public class JsonPrinter {
         return bld;
     }
 
+    /**
+     * Writes the same JSON object as {@link #json(DatasetVersion, List, boolean, boolean)},
+     * but with the files taken from the given Iterable, and written out one at
+     * a time, so that the metadata of all the files of a large version never
+     * have to be in memory at once.
+     *
+     * @param generator     the generator to write to, positioned where a value
+     *                      is expected
+     * @param versionJson   the version, as built with includeFiles set to false
+     * @param fileMetadatas the files of the version, or null to leave them out
+     */
+    public static void writeJson(JsonGenerator generator, JsonObject versionJson, Iterable<FileMetadata> fileMetadatas) {
+        generator.writeStartObject();
+        versionJson.forEach(generator::write);
+        if (fileMetadatas != null) {
+            generator.writeStartArray("files");
+            for (FileMetadata fmd : fileMetadatas) {
+                generator.write(json(fmd).build());
+            }
+            generator.writeEnd();
+        }
+        generator.writeEnd();
+    }
+
     public static JsonObjectBuilder jsonDataFileList(List<DataFile> dataFiles){
 
         if (dataFiles==null){
@@ -997,6 +1023,7 @@ public class JsonPrinter {
             return null;
         }
 
+        HarvestThroughput throughput = HarvestThroughput.get(harvestingClient.getName());
         return jsonObjectBuilder().add("nickName", harvestingClient.getName()).
                 add("dataverseAlias", harvestingClient.getDataverse().getAlias()).
                 add("type", harvestingClient.getHarvestType()).
@@ -1016,7 +1043,8 @@ public class JsonPrinter {
                 add("lastNonEmpty", harvestingClient.getLastNonEmptyHarvestTime() == null ? null : harvestingClient.getLastNonEmptyHarvestTime().toString()).
                 add("lastDatasetsHarvested", harvestingClient.getLastHarvestedDatasetCount()). // == null ? "N/A" : harvestingClient.getLastHarvestedDatasetCount().toString()).
                 add("lastDatasetsDeleted", harvestingClient.getLastDeletedDatasetCount()). // == null ? "N/A" : harvestingClient.getLastDeletedDatasetCount().toString()).
-                add("lastDatasetsFailed", harvestingClient.getLastFailedDatasetCount()); // == null ? "N/A" : harvestingClient.getLastFailedDatasetCount().toString());
+                add("lastDatasetsFailed", harvestingClient.getLastFailedDatasetCount()). // == null ? "N/A" : harvestingClient.getLastFailedDatasetCount().toString());
+                add("lastHarvestThroughput", throughput == null ? null : throughput.toJson());
     }
 
     public static String format(Date d) {
@@ -0,0 +1,38 @@
+-- Download counts are kept in two counter tables, per file and per dataset,
+-- both broken down by month ('YYYY-MM'; '' for the historic guestbook records
+-- without a date). They are incremented when guestbook responses are saved,
+-- and can be recalculated from guestbookresponse with the
+-- /api/admin/downloadCounts/rebuild API. The counters of a file or dataset are
+-- deleted with it, like its guestbook responses; DeleteDataFileCommand also
+-- takes the downloads of a deleted file off the counters of its dataset.
+CREATE TABLE IF NOT EXISTS filedownloadcount (
+    datafile_id bigint NOT NULL REFERENCES dvobject(id) ON DELETE CASCADE,
+    dataset_id bigint NOT NULL REFERENCES dvobject(id) ON DELETE CASCADE,
+    month varchar(7) NOT NULL,
+    downloadcount bigint NOT NULL,
+    PRIMARY KEY (datafile_id, month)
+);
+CREATE INDEX IF NOT EXISTS index_filedownloadcount_dataset_id ON filedownloadcount (dataset_id);
+--
+CREATE TABLE IF NOT EXISTS datasetdownloadcount (
+    dataset_id bigint NOT NULL REFERENCES dvobject(id) ON DELETE CASCADE,
+    month varchar(7) NOT NULL,
+    downloadcount bigint NOT NULL,
+    PRIMARY KEY (dataset_id, month)
+);
+--
+-- Populate the counters from the existing guestbook responses. Any response
+-- that is not an access request is counted as a download.
+DELETE FROM filedownloadcount;
+INSERT INTO filedownloadcount (datafile_id, dataset_id, month, downloadcount)
+SELECT datafile_id, MIN(dataset_id), COALESCE(to_char(responsetime, 'YYYY-MM'), ''), COUNT(id)
+FROM guestbookresponse
+WHERE eventtype != 'AccessRequest'
+GROUP BY datafile_id, COALESCE(to_char(responsetime, 'YYYY-MM'), '');
+--
+DELETE FROM datasetdownloadcount;
+INSERT INTO datasetdownloadcount (dataset_id, month, downloadcount)
+SELECT dataset_id, COALESCE(to_char(responsetime, 'YYYY-MM'), ''), COUNT(id)
+FROM guestbookresponse
+WHERE eventtype != 'AccessRequest'
+GROUP BY dataset_id, COALESCE(to_char(responsetime, 'YYYY-MM'), '');
@@ -0,0 +1,173 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DatasetVersion.VersionState;
+import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DatasetServiceBeanTest {
+
+    private DatasetServiceBean datasetService;
+    private TypedQuery<Long> countQuery;
+    private Query updateQuery;
+
+    @BeforeEach
+    public void setUp() {
+        datasetService = new DatasetServiceBean();
+        datasetService.em = mock(EntityManager.class);
+        countQuery = mock(TypedQuery.class, RETURNS_SELF);
+        when(countQuery.getSingleResult()).thenReturn(2L);
+        when(datasetService.em.createQuery(anyString(), eq(Long.class))).thenReturn(countQuery);
+        updateQuery = mock(Query.class, RETURNS_SELF);
+        when(updateQuery.executeUpdate()).thenReturn(2);
+        when(datasetService.em.createQuery(anyString())).thenReturn(updateQuery);
+    }
+
+    @Test
+    public void testCountByOwnersWithGuestbookNotIn() {
+        assertEquals(2L, datasetService.countByOwnersWithGuestbookNotIn(List.of(1L, 2L), List.of(3L)));
+
+        verify(datasetService.em).createQuery("SELECT COUNT(d) FROM Dataset d WHERE d.owner.id IN :ownerIds AND d.guestbook IS NOT NULL"
+                + " AND d.guestbook.id NOT IN :guestbookIds", Long.class);
+        verify(countQuery).setParameter("ownerIds", List.of(1L, 2L));
+        verify(countQuery).setParameter("guestbookIds", List.of(3L));
+    }
+
+    @Test
+    public void testCountByOwnersWithAnyGuestbook() {
+        // an empty NOT IN list is not valid JPQL: all guestbooks are counted
+        datasetService.countByOwnersWithGuestbookNotIn(List.of(1L), List.of());
+
+        verify(datasetService.em).createQuery("SELECT COUNT(d) FROM Dataset d WHERE d.owner.id IN :ownerIds AND d.guestbook IS NOT NULL", Long.class);
+        verify(countQuery, never()).setParameter(eq("guestbookIds"), any());
+    }
+
+    @Test
+    public void testRemoveGuestbooksNotIn() {
+        assertEquals(2, datasetService.removeGuestbooksNotIn(List.of(1L, 2L), List.of(3L)));
+
+        verify(datasetService.em).createQuery("UPDATE Dataset d SET d.guestbook = NULL WHERE d.owner.id IN :ownerIds AND d.guestbook IS NOT NULL"
+                + " AND d.guestbook.id NOT IN :guestbookIds");
+        verify(updateQuery).setParameter("ownerIds", List.of(1L, 2L));
+        verify(updateQuery).setParameter("guestbookIds", List.of(3L));
+    }
+
+    @Test
+    public void testRemoveAnyGuestbooks() {
+        datasetService.removeGuestbooksNotIn(List.of(1L), List.of());
+
+        verify(datasetService.em).createQuery("UPDATE Dataset d SET d.guestbook = NULL WHERE d.owner.id IN :ownerIds AND d.guestbook IS NOT NULL");
+        verify(updateQuery, never()).setParameter(eq("guestbookIds"), any());
+    }
+
+    @Test
+    public void testFindIdsToExport() {
+        when(countQuery.getResultList()).thenReturn(List.of(1L));
+
+        assertEquals(List.of(1L), datasetService.findIdsToExport(false));
+
+        verify(datasetService.em).createQuery("SELECT o.id FROM Dataset o WHERE o.harvestedFrom IS null AND o.publicationDate IS NOT null"
+                + " AND EXISTS (SELECT v.id FROM DatasetVersion v WHERE v.dataset = o AND v.versionState = :released"
+                + " AND v.releaseTime IS NOT NULL AND (o.lastExportTime IS NULL OR o.lastExportTime < v.releaseTime)) ORDER BY o.id", Long.class);
+        verify(countQuery).setParameter("released", VersionState.RELEASED);
+    }
+
+    @Test
+    public void testFindIdsToReExport() {
+        datasetService.findIdsToExport(true);
+
+        verify(datasetService.em).createQuery("SELECT o.id FROM Dataset o WHERE o.harvestedFrom IS null AND o.publicationDate IS NOT null"
+                + " AND EXISTS (SELECT v.id FROM DatasetVersion v WHERE v.dataset = o AND v.versionState = :released) ORDER BY o.id", Long.class);
+        verify(countQuery).setParameter("released", VersionState.RELEASED);
+    }
+
+    /**
+     * The WHERE clause of the findIdsToExport() query, as pinned above,
+     * evaluated on a dataset in memory.
+     */
+    private static boolean isSelectedForExport(Dataset dataset, boolean forceReExport) {
+        return dataset.getHarvestedFrom() == null && dataset.getPublicationDate() != null
+                && dataset.getVersions().stream().anyMatch(v -> v.getVersionState() == VersionState.RELEASED
+                        && (forceReExport || (v.getReleaseTime() != null
+                                && (dataset.getLastExportTime() == null || dataset.getLastExportTime().before(v.getReleaseTime())))));
+    }
+
+    private static void assertSelectedForExport(boolean expected, boolean expectedForced, Dataset dataset) {
+        // the query selects the same datasets as the test exportAllDatasets()
+        // used to run on each local dataset, after loading it
+        boolean local = dataset.getHarvestedFrom() == null;
+        assertEquals(local && DatasetServiceBean.isExportNeeded(dataset, false), isSelectedForExport(dataset, false));
+        assertEquals(local && DatasetServiceBean.isExportNeeded(dataset, true), isSelectedForExport(dataset, true));
+        assertEquals(expected, isSelectedForExport(dataset, false));
+        assertEquals(expectedForced, isSelectedForExport(dataset, true));
+    }
+
+    // the versions, latest first, in the given states, released at 1000, 2000...
+    // (in the order they were created), and the dataset last exported at lastExportTime
+    private static Dataset makeDataset(Long lastExportTime, VersionState... states) {
+        Dataset dataset = new Dataset();
+        List<DatasetVersion> versions = new ArrayList<>();
+        for (int i = 0; i < states.length; i++) {
+            DatasetVersion version = new DatasetVersion();
+            version.setDataset(dataset);
+            version.setVersionState(states[i]);
+            if (states[i] != VersionState.DRAFT) {
+                version.setReleaseTime(new Date(1000L * (states.length - i)));
+                dataset.setPublicationDate(new Timestamp(1000L));
+            }
+            versions.add(version);
+        }
+        dataset.setVersions(versions);
+        dataset.setLastExportTime(lastExportTime == null ? null : new Date(lastExportTime));
+        return dataset;
+    }
+
+    @Test
+    public void testSelectedForExport() {
+        // never published
+        assertSelectedForExport(false, false, makeDataset(null, VersionState.DRAFT));
+        // released, and not exported since
+        assertSelectedForExport(true, true, makeDataset(null, VersionState.RELEASED));
+        assertSelectedForExport(true, true, makeDataset(500L, VersionState.RELEASED));
+        assertSelectedForExport(true, true, makeDataset(1500L, VersionState.RELEASED, VersionState.RELEASED));
+        assertSelectedForExport(true, true, makeDataset(500L, VersionState.DEACCESSIONED, VersionState.RELEASED));
+        // released, and exported since
+        assertSelectedForExport(false, true, makeDataset(1500L, VersionState.RELEASED));
+        assertSelectedForExport(false, true, makeDataset(2500L, VersionState.RELEASED, VersionState.RELEASED));
+        assertSelectedForExport(false, true, makeDataset(1500L, VersionState.DRAFT, VersionState.RELEASED));
+        // entirely deaccessioned
+        assertSelectedForExport(false, false, makeDataset(null, VersionState.DEACCESSIONED));
+        assertSelectedForExport(false, false, makeDataset(null, VersionState.DRAFT, VersionState.DEACCESSIONED));
+    }
+
+    @Test
+    public void testHarvestedNotSelectedForExport() {
+        Dataset harvested = makeDataset(null, VersionState.RELEASED);
+        harvested.setHarvestedFrom(new HarvestingClient());
+
+        assertTrue(DatasetServiceBean.isExportNeeded(harvested, false));
+        assertFalse(isSelectedForExport(harvested, false));
+        assertFalse(isSelectedForExport(harvested, true));
+    }
+}
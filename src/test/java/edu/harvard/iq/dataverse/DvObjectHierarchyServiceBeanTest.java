@@ -0,0 +1,211 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.DvObjectHierarchyServiceBean.Change;
+import edu.harvard.iq.dataverse.DvObjectHierarchyServiceBean.ChangeType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DvObjectHierarchyServiceBeanTest {
+
+    private static DvObjectHierarchyServiceBean.Hierarchy makeHierarchy() {
+        // 1 is the root; 2 and 3 are top level collections; 4 is in 2; 5 is in 4
+        Map<Long, Long> owners = new HashMap<>();
+        owners.put(1L, null);
+        owners.put(2L, 1L);
+        owners.put(3L, 1L);
+        owners.put(4L, 2L);
+        owners.put(5L, 4L);
+        return new DvObjectHierarchyServiceBean.Hierarchy("test", owners,
+                Map.of(4L, Set.of(3L)), Map.of(10L, Set.of(3L, 5L)));
+    }
+
+    @Test
+    public void testFindPathIds() {
+        DvObjectHierarchyServiceBean.Hierarchy hierarchy = makeHierarchy();
+        assertEquals(List.of(), hierarchy.findPathIds(1L));
+        assertEquals(List.of(2L), hierarchy.findPathIds(2L));
+        assertEquals(List.of(2L, 4L, 5L), hierarchy.findPathIds(5L));
+        assertNull(hierarchy.findPathIds(6L));
+    }
+
+    @Test
+    public void testFindPathIdsWithCycle() {
+        Map<Long, Long> owners = new HashMap<>();
+        owners.put(1L, null);
+        owners.put(2L, 3L);
+        owners.put(3L, 2L);
+        DvObjectHierarchyServiceBean.Hierarchy hierarchy = new DvObjectHierarchyServiceBean.Hierarchy("test", owners, Map.of(), Map.of());
+        assertNull(hierarchy.findPathIds(2L));
+    }
+
+    @Test
+    public void testFindLinkingCollectionIds() {
+        DvObjectHierarchyServiceBean.Hierarchy hierarchy = makeHierarchy();
+        assertEquals(Set.of(3L), hierarchy.findLinkingCollectionIds(4L));
+        assertEquals(Set.of(), hierarchy.findLinkingCollectionIds(5L));
+        assertEquals(Set.of(3L, 5L), hierarchy.findDatasetLinkingCollectionIds(10L));
+        assertEquals(Set.of(), hierarchy.findDatasetLinkingCollectionIds(11L));
+    }
+
+    @Test
+    public void testInvalidateWithoutContainer() {
+        // outside of the application server there is neither a transaction
+        // nor a shared cache to record the invalidation in
+        assertDoesNotThrow(() -> new DvObjectHierarchyServiceBean().invalidate());
+    }
+
+    @Test
+    public void testApplyChanges() {
+        DvObjectHierarchyServiceBean.Hierarchy hierarchy = makeHierarchy();
+
+        DvObjectHierarchyServiceBean.Hierarchy updated = hierarchy.apply(List.of(
+                // 6 created in 3, 5 moved to 3, 4 deleted
+                new Change(ChangeType.COLLECTION_SAVED, 6L, 3L),
+                new Change(ChangeType.COLLECTION_SAVED, 5L, 3L),
+                new Change(ChangeType.COLLECTION_DELETED, 4L, null),
+                // 10 unlinked from 3, linked to 6; 11 linked to 5, then destroyed
+                new Change(ChangeType.DATASET_UNLINKED, 10L, 3L),
+                new Change(ChangeType.DATASET_LINKED, 10L, 6L),
+                new Change(ChangeType.DATASET_LINKED, 11L, 5L),
+                new Change(ChangeType.DATASET_DELETED, 11L, null),
+                new Change(ChangeType.COLLECTION_LINKED, 2L, 6L)), "next");
+
+        assertEquals("next", updated.generation);
+        assertEquals(hierarchy.builtAt, updated.builtAt);
+        assertEquals(List.of(3L, 6L), updated.findPathIds(6L));
+        assertEquals(List.of(3L, 5L), updated.findPathIds(5L));
+        assertNull(updated.findPathIds(4L));
+        assertEquals(Set.of(), updated.findLinkingCollectionIds(4L));
+        assertEquals(Set.of(6L), updated.findLinkingCollectionIds(2L));
+        assertEquals(Set.of(5L, 6L), updated.findDatasetLinkingCollectionIds(10L));
+        assertEquals(Set.of(), updated.findDatasetLinkingCollectionIds(11L));
+
+        // the snapshot is left as it was
+        assertEquals(List.of(2L, 4L, 5L), hierarchy.findPathIds(5L));
+        assertEquals(Set.of(3L, 5L), hierarchy.findDatasetLinkingCollectionIds(10L));
+
+        // unlinking, and deleting the linking collection
+        updated = updated.apply(List.of(new Change(ChangeType.COLLECTION_UNLINKED, 2L, 6L),
+                new Change(ChangeType.COLLECTION_DELETED, 5L, null)), "last");
+        assertEquals(Set.of(), updated.findLinkingCollectionIds(2L));
+        assertEquals(Set.of(6L), updated.findDatasetLinkingCollectionIds(10L));
+    }
+
+    @Test
+    public void testEncodeChanges() {
+        List<Change> changes = List.of(new Change(ChangeType.COLLECTION_SAVED, 6L, null),
+                new Change(ChangeType.DATASET_LINKED, 10L, 6L));
+
+        String encoded = DvObjectHierarchyServiceBean.encodeChanges(changes);
+
+        assertEquals("COLLECTION_SAVED:6:;DATASET_LINKED:10:6", encoded);
+        assertEquals(changes, DvObjectHierarchyServiceBean.decodeChanges(encoded));
+    }
+
+    /**
+     * @return a node of a cluster, with the caches shared by the nodes, and
+     *         the hierarchy of makeHierarchy() in the database
+     */
+    private static DvObjectHierarchyServiceBean makeNode(Map<String, Map<String, String>> caches) {
+        DvObjectHierarchyServiceBean node = new DvObjectHierarchyServiceBean();
+        node.manager = mock(CacheManager.class);
+        for (String name : List.of(DvObjectHierarchyServiceBean.HIERARCHY_CACHE, DvObjectHierarchyServiceBean.HIERARCHY_CHANGES_CACHE)) {
+            Map<String, String> entries = caches.computeIfAbsent(name, k -> new HashMap<>());
+            Cache<String, String> cache = mock(Cache.class);
+            when(cache.get(anyString())).thenAnswer(invocation -> entries.get(invocation.getArgument(0)));
+            when(cache.putIfAbsent(anyString(), anyString())).thenAnswer(invocation -> entries.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+            when(cache.replace(anyString(), anyString(), anyString())).thenAnswer(invocation -> entries.replace(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+            doAnswer(invocation -> entries.put(invocation.getArgument(0), invocation.getArgument(1))).when(cache).put(anyString(), anyString());
+            when(node.manager.<String, String>getCache(name)).thenReturn(cache);
+        }
+        node.init();
+
+        node.em = mock(EntityManager.class);
+        Query owners = mock(Query.class);
+        List<Object[]> ownerRows = new ArrayList<>();
+        makeHierarchy().collectionOwners.forEach((id, ownerId) -> ownerRows.add(new Object[] { id, ownerId }));
+        when(owners.getResultList()).thenReturn(ownerRows);
+        Query collectionLinks = mock(Query.class);
+        when(collectionLinks.getResultList()).thenReturn(List.<Object[]>of(new Object[] { 4L, 3L }));
+        Query datasetLinks = mock(Query.class);
+        when(datasetLinks.getResultList()).thenReturn(List.<Object[]>of(new Object[] { 10L, 3L }, new Object[] { 10L, 5L }));
+        when(node.em.createNativeQuery(eq("SELECT id, owner_id FROM dvobject WHERE dtype='Dataverse'"))).thenReturn(owners);
+        when(node.em.createNativeQuery(eq("SELECT dataverse_id, linkingdataverse_id FROM dataverselinkingdataverse"))).thenReturn(collectionLinks);
+        when(node.em.createNativeQuery(eq("SELECT dataset_id, linkingdataverse_id FROM datasetlinkingdataverse"))).thenReturn(datasetLinks);
+        return node;
+    }
+
+    @Test
+    public void testChangesAppliedOnOtherNodes() {
+        Map<String, Map<String, String>> caches = new HashMap<>();
+        DvObjectHierarchyServiceBean node1 = makeNode(caches);
+        DvObjectHierarchyServiceBean node2 = makeNode(caches);
+        assertEquals(List.of(2L, 4L, 5L), node1.findPathIds(5L));
+        assertEquals(List.of(2L, 4L, 5L), node2.findPathIds(5L));
+
+        // outside of a transaction, published at once
+        node1.collectionSaved(5L, 3L);
+        node1.datasetLinked(10L, 2L);
+        node2.collectionUnlinked(4L, 3L);
+
+        for (DvObjectHierarchyServiceBean node : List.of(node1, node2)) {
+            assertEquals(List.of(3L, 5L), node.findPathIds(5L));
+            assertEquals(Set.of(2L, 3L, 5L), node.findDatasetLinkingCollectionIds(10L));
+            assertEquals(Set.of(), node.findLinkingCollectionIds(4L));
+            // without reloading the hierarchy
+            verify(node.em, times(3)).createNativeQuery(anyString());
+        }
+    }
+
+    @Test
+    public void testReloadedAfterInvalidate() {
+        Map<String, Map<String, String>> caches = new HashMap<>();
+        DvObjectHierarchyServiceBean node1 = makeNode(caches);
+        DvObjectHierarchyServiceBean node2 = makeNode(caches);
+        node1.findPathIds(5L);
+        node2.findPathIds(5L);
+
+        node1.collectionSaved(5L, 3L);
+        node2.invalidate();
+
+        // reloaded from the database
+        assertEquals(List.of(2L, 4L, 5L), node1.findPathIds(5L));
+        verify(node1.em, times(6)).createNativeQuery(anyString());
+    }
+
+    @Test
+    public void testReloadedWhenAChangeIsMissing() {
+        Map<String, Map<String, String>> caches = new HashMap<>();
+        DvObjectHierarchyServiceBean node1 = makeNode(caches);
+        DvObjectHierarchyServiceBean node2 = makeNode(caches);
+        node1.findPathIds(5L);
+
+        node2.collectionSaved(5L, 3L);
+        // e.g. expired
+        caches.get(DvObjectHierarchyServiceBean.HIERARCHY_CHANGES_CACHE).clear();
+
+        assertEquals(List.of(2L, 4L, 5L), node1.findPathIds(5L));
+        verify(node1.em, times(6)).createNativeQuery(anyString());
+    }
+}
@@ -0,0 +1,151 @@
+package edu.harvard.iq.dataverse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.harvard.iq.dataverse.ExternalVocabularyClient.Retrieval;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.json.Json;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Retrieves terms from a local stub of a vocabulary service.
+ */
+public class ExternalVocabularyClientTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ExternalVocabularyClient client;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger gatewayTimeoutsToSimulate = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> lastHeaders = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/term/", exchange -> {
+            requests.incrementAndGet();
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            lastHeaders.put("Accept", String.valueOf(exchange.getRequestHeaders().getFirst("Accept")));
+            lastHeaders.put("X-Api-Key", String.valueOf(exchange.getRequestHeaders().getFirst("X-Api-Key")));
+            int now = active.incrementAndGet();
+            maxActive.accumulateAndGet(now, Math::max);
+            try {
+                String term = exchange.getRequestURI().getPath().substring("/term/".length());
+                if (term.startsWith("slow")) {
+                    Thread.sleep(50);
+                }
+                if (term.equals("missing")) {
+                    respond(exchange, 404, "not found");
+                } else if (term.equals("busy") && gatewayTimeoutsToSimulate.getAndDecrement() > 0) {
+                    respond(exchange, 504, "gateway timeout");
+                } else {
+                    respond(exchange, 200, "{\"termName\":\"" + term + "\"}");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        client = new ExternalVocabularyClient(2, 2, 5);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String uri(String term) {
+        return "http://localhost:" + server.getAddress().getPort() + "/term/" + term;
+    }
+
+    @Test
+    public void retrieveSendsTheConfiguredHeaders() throws IOException {
+        String data = client.retrieve(new Retrieval(uri("bee"), Json.createObjectBuilder().add("X-Api-Key", "secret").build()));
+
+        assertEquals("{\"termName\":\"bee\"}", data);
+        assertEquals("application/ld+json, application/json+ld, application/json", lastHeaders.get("Accept"));
+        assertEquals("secret", lastHeaders.get("X-Api-Key"));
+    }
+
+    @Test
+    public void retrieveRetriesGatewayTimeouts() throws IOException {
+        gatewayTimeoutsToSimulate.set(2);
+
+        assertEquals("{\"termName\":\"busy\"}", client.retrieve(new Retrieval(uri("busy"), null)));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void retrieveFailsOnOtherErrors() {
+        assertThrows(IOException.class, () -> client.retrieve(new Retrieval(uri("missing"), null)));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void retrievalsReuseTheConnection() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            client.retrieve(new Retrieval(uri("term" + i), null));
+        }
+
+        assertEquals(5, requests.get());
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void retrieveAllRetrievesInParallelWithinTheLimit() {
+        Map<String, Retrieval> retrievals = new LinkedHashMap<>();
+        for (int i = 0; i < 10; i++) {
+            retrievals.put("t" + i, new Retrieval(uri("slow" + i), null));
+        }
+        retrievals.put("missing", new Retrieval(uri("missing"), null));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Map<String, String> responses = client.retrieveAll(retrievals, executor);
+
+            assertEquals(10, responses.size());
+            assertEquals("{\"termName\":\"slow3\"}", responses.get("t3"));
+            assertTrue(maxActive.get() > 1, "retrieved one at a time");
+            assertTrue(maxActive.get() <= 2, "more concurrent requests than connections: " + maxActive.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
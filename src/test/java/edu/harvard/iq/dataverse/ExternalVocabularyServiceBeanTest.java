@@ -0,0 +1,86 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExternalVocabularyServiceBeanTest {
+
+    private static final String TERM = "https://vocab.example.org/term/1";
+    private static final JsonObject VALUE = Json.createObjectBuilder().add("termName", "Term").build();
+
+    private ExternalVocabularyServiceBean service;
+    // the resources of the mocked transaction
+    private final Map<Object, Object> resources = new HashMap<>();
+
+    @BeforeEach
+    public void setUp() {
+        service = new ExternalVocabularyServiceBean();
+        service.init();
+        service.transactionRegistry = mock(TransactionSynchronizationRegistry.class);
+        when(service.transactionRegistry.getResource(anyString())).thenAnswer(invocation -> resources.get(invocation.getArgument(0)));
+        doAnswer(invocation -> resources.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(service.transactionRegistry).putResource(any(), any());
+    }
+
+    private Synchronization inTransaction() {
+        when(service.transactionRegistry.getTransactionStatus()).thenReturn(Status.STATUS_ACTIVE);
+        service.cacheValueAfterCommit(TERM, VALUE);
+        service.cacheValueAfterCommit(TERM + "/2", null);
+        ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        // once per transaction
+        verify(service.transactionRegistry, times(1)).registerInterposedSynchronization(synchronization.capture());
+        return synchronization.getValue();
+    }
+
+    @Test
+    public void testCachedOnCommit() {
+        // a value cached before the transaction is not used during it
+        service.cacheValue(TERM, null);
+
+        Synchronization synchronization = inTransaction();
+
+        assertNull(service.getCachedValue(TERM));
+        synchronization.afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals(Optional.of(VALUE), service.getCachedValue(TERM));
+        assertEquals(Optional.empty(), service.getCachedValue(TERM + "/2"));
+    }
+
+    @Test
+    public void testNotCachedOnRollback() {
+        Synchronization synchronization = inTransaction();
+
+        synchronization.afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertNull(service.getCachedValue(TERM));
+        assertNull(service.getCachedValue(TERM + "/2"));
+    }
+
+    @Test
+    public void testCachedAtOnceWithoutATransaction() {
+        when(service.transactionRegistry.getTransactionStatus()).thenReturn(Status.STATUS_NO_TRANSACTION);
+
+        service.cacheValueAfterCommit(TERM, VALUE);
+
+        assertEquals(Optional.of(VALUE), service.getCachedValue(TERM));
+    }
+}
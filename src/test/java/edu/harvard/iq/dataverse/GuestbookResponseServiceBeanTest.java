@@ -0,0 +1,180 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GuestbookResponseServiceBeanTest {
+
+    private GuestbookResponseServiceBean serviceBean;
+    // the native queries run, in order, with their parameters
+    private final List<String> queries = new ArrayList<>();
+    private final List<Map<Integer, Object>> parameters = new ArrayList<>();
+    private Object result = 0L;
+
+    @BeforeEach
+    public void setUp() {
+        serviceBean = new GuestbookResponseServiceBean();
+        serviceBean.em = mock(EntityManager.class);
+        when(serviceBean.em.createNativeQuery(anyString())).thenAnswer(invocation -> {
+            queries.add(invocation.getArgument(0));
+            Map<Integer, Object> queryParameters = new HashMap<>();
+            parameters.add(queryParameters);
+            Query query = mock(Query.class, RETURNS_SELF);
+            when(query.setParameter(anyInt(), any())).thenAnswer(set -> {
+                queryParameters.put(set.getArgument(0), set.getArgument(1));
+                return query;
+            });
+            when(query.executeUpdate()).thenReturn(1);
+            when(query.getSingleResult()).thenAnswer(get -> result);
+            return query;
+        });
+    }
+
+    private static GuestbookResponse makeResponse(String eventType, LocalDateTime responseTime) {
+        Dataset dataset = new Dataset();
+        dataset.setId(1L);
+        DataFile dataFile = new DataFile();
+        dataFile.setId(2L);
+        GuestbookResponse response = new GuestbookResponse();
+        response.setDataset(dataset);
+        response.setDataFile(dataFile);
+        response.setEventType(eventType);
+        response.setResponseTime(responseTime == null ? null : Timestamp.valueOf(responseTime));
+        return response;
+    }
+
+    @Test
+    public void testToDownloadCountMonth() {
+        assertEquals("2024-03", GuestbookResponseServiceBean.toDownloadCountMonth(Timestamp.valueOf(LocalDateTime.of(2024, 3, 31, 23, 59))));
+        assertEquals("2024-12", GuestbookResponseServiceBean.toDownloadCountMonth(Timestamp.valueOf(LocalDateTime.of(2024, 12, 1, 0, 0))));
+        // historic records without a date
+        assertEquals("", GuestbookResponseServiceBean.toDownloadCountMonth(null));
+    }
+
+    @Test
+    public void testIsCountedAsDownload() {
+        GuestbookResponse response = new GuestbookResponse();
+        response.setEventType(GuestbookResponse.DOWNLOAD);
+        assertTrue(GuestbookResponseServiceBean.isCountedAsDownload(response));
+        response.setEventType(GuestbookResponse.SUBSET);
+        assertTrue(GuestbookResponseServiceBean.isCountedAsDownload(response));
+        // previewers and explore tools
+        response.setEventType("Text Previewer");
+        assertTrue(GuestbookResponseServiceBean.isCountedAsDownload(response));
+
+        response.setEventType(GuestbookResponse.ACCESS_REQUEST);
+        assertFalse(GuestbookResponseServiceBean.isCountedAsDownload(response));
+        response.setEventType(null);
+        assertFalse(GuestbookResponseServiceBean.isCountedAsDownload(response));
+    }
+
+    @Test
+    public void testToDownloadCountMonthInTheLocalTimeZone() {
+        // responsetime is a timestamp without time zone, written in the time
+        // zone of the JVM, which to_char(responsetime, 'YYYY-MM') buckets as is
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Auckland"));
+            assertEquals("2024-03", GuestbookResponseServiceBean.toDownloadCountMonth(Timestamp.valueOf(LocalDateTime.of(2024, 3, 31, 23, 30))));
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+            assertEquals("2024-04", GuestbookResponseServiceBean.toDownloadCountMonth(Timestamp.valueOf(LocalDateTime.of(2024, 4, 1, 0, 30))));
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    @Test
+    public void testSaveIncrementsTheCounters() {
+        GuestbookResponse response = makeResponse(GuestbookResponse.DOWNLOAD, LocalDateTime.of(2024, 3, 15, 12, 0));
+
+        serviceBean.save(response);
+
+        // the file counter first, then the dataset counter, of the month
+        assertEquals(2, queries.size());
+        assertTrue(queries.get(0).startsWith("INSERT INTO filedownloadcount"));
+        assertEquals(Map.of(1, 2L, 2, 1L, 3, "2024-03"), parameters.get(0));
+        assertTrue(queries.get(1).startsWith("INSERT INTO datasetdownloadcount"));
+        assertEquals(Map.of(1, 1L, 2, "2024-03"), parameters.get(1));
+    }
+
+    @Test
+    public void testSaveCountsUndatedResponsesInTheEmptyMonth() {
+        serviceBean.save(makeResponse(GuestbookResponse.DOWNLOAD, null));
+
+        assertEquals("", parameters.get(0).get(3));
+        assertEquals("", parameters.get(1).get(2));
+    }
+
+    @Test
+    public void testSaveDoesntCountAccessRequests() {
+        serviceBean.save(makeResponse(GuestbookResponse.ACCESS_REQUEST, LocalDateTime.of(2024, 3, 15, 12, 0)));
+
+        assertTrue(queries.isEmpty());
+    }
+
+    @Test
+    public void testGetDownloadCountByDatasetId() {
+        result = 42L;
+        assertEquals(42L, serviceBean.getDownloadCountByDatasetId(1L));
+        assertTrue(queries.get(0).contains("from datasetdownloadcount"));
+        assertEquals(Map.of(1, 1L), parameters.get(0));
+
+        // no queries without an id
+        assertEquals(0L, serviceBean.getDownloadCountByDatasetId(null));
+        assertEquals(0L, serviceBean.getDownloadCountByDataFileId(null));
+        assertEquals(1, queries.size());
+    }
+
+    @Test
+    public void testGetDownloadCountByDatasetIdBeforeADate() {
+        result = 7L;
+
+        assertEquals(7L, serviceBean.getDownloadCountByDatasetId(1L, LocalDate.of(2024, 3, 10)));
+
+        // the counters of the months before, and the responses of the month
+        // up to the date
+        assertEquals(1, queries.size());
+        assertEquals(Map.of(1, 1L, 2, "2024-03", 3, 1L,
+                4, Timestamp.valueOf(LocalDateTime.of(2024, 3, 1, 0, 0)),
+                5, Timestamp.valueOf(LocalDateTime.of(2024, 3, 10, 0, 0))), parameters.get(0));
+    }
+
+    @Test
+    public void testDeleteDownloadCounts() {
+        DataFile dataFile = new DataFile();
+        dataFile.setId(2L);
+        serviceBean.deleteDownloadCounts(dataFile);
+
+        assertTrue(queries.get(0).contains("DELETE FROM filedownloadcount WHERE datafile_id = ?"));
+        assertTrue(queries.get(0).contains("UPDATE datasetdownloadcount"));
+        assertEquals(Map.of(1, 2L), parameters.get(0));
+
+        Dataset dataset = new Dataset();
+        dataset.setId(1L);
+        serviceBean.deleteDownloadCounts(dataset);
+
+        assertEquals(3, queries.size());
+        assertEquals(Map.of(1, 1L), parameters.get(1));
+        assertEquals(Map.of(1, 1L), parameters.get(2));
+    }
+}
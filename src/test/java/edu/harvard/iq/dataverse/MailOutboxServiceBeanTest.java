@@ -0,0 +1,160 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MailOutboxServiceBeanTest {
+
+    private MailOutboxServiceBean serviceBean;
+    private final List<Long> due = new ArrayList<>();
+    private final List<String> attempted = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        serviceBean = new MailOutboxServiceBean();
+        serviceBean.em = mock(EntityManager.class);
+        Query query = mock(Query.class, RETURNS_SELF);
+        when(query.getResultList()).thenReturn(due);
+        when(serviceBean.em.createNativeQuery(anyString())).thenReturn(query);
+    }
+
+    private MailOutboxMessage addMessage(long id, String to) throws MessagingException {
+        MimeMessage message = new MimeMessage((Session) null);
+        message.setFrom(new InternetAddress("dataverse@example.edu"));
+        message.setRecipients(Message.RecipientType.TO, to);
+        message.setSubject("Test");
+        message.setText("Test message");
+        MailOutboxMessage outboxMessage = new MailOutboxMessage(to, MailOutboxServiceBean.toContent(message));
+        outboxMessage.setId(id);
+        when(serviceBean.em.find(MailOutboxMessage.class, id)).thenReturn(outboxMessage);
+        due.add(id);
+        return outboxMessage;
+    }
+
+    private static SendFailedException rejected(String to, int code) throws MessagingException {
+        InternetAddress address = new InternetAddress(to);
+        SMTPAddressFailedException failure = new SMTPAddressFailedException(address, "RCPT TO:<" + to + ">", code, code + " rejected");
+        return new SendFailedException("Invalid Addresses", failure, new Address[0], new Address[0], new Address[] { address });
+    }
+
+    /**
+     * Sends the messages, failing the one to the given recipient with the
+     * given exception.
+     */
+    private MailOutboxServiceBean.MessageSender sender(String failingRecipient, MessagingException failure) {
+        return message -> {
+            String to = message.getAllRecipients()[0].toString();
+            attempted.add(to);
+            if (to.equals(failingRecipient)) {
+                throw failure;
+            }
+        };
+    }
+
+    @Test
+    public void testRetryDelay() {
+        assertEquals(MailOutboxServiceBean.FIRST_RETRY_DELAY, MailOutboxServiceBean.getRetryDelay(1));
+        assertEquals(2 * MailOutboxServiceBean.FIRST_RETRY_DELAY, MailOutboxServiceBean.getRetryDelay(2));
+        assertEquals(4 * MailOutboxServiceBean.FIRST_RETRY_DELAY, MailOutboxServiceBean.getRetryDelay(3));
+        // capped
+        assertEquals(MailOutboxServiceBean.MAX_RETRY_DELAY, MailOutboxServiceBean.getRetryDelay(10));
+        assertEquals(MailOutboxServiceBean.MAX_RETRY_DELAY, MailOutboxServiceBean.getRetryDelay(100));
+    }
+
+    @Test
+    public void testIsTransient() throws MessagingException {
+        assertTrue(MailOutboxServiceBean.isTransient(rejected("a@example.edu", 450)));
+        assertFalse(MailOutboxServiceBean.isTransient(rejected("a@example.edu", 550)));
+        assertTrue(MailOutboxServiceBean.isTransient(new SMTPSendFailedException("DATA", 452, "452 insufficient storage", null, null, null, null)));
+        assertFalse(MailOutboxServiceBean.isTransient(new SMTPSendFailedException("MAIL FROM", 553, "553 not allowed", null, null, null, null)));
+        // no reply code
+        assertFalse(MailOutboxServiceBean.isTransient(new SendFailedException("No recipient addresses")));
+        // one of the recipients rejected for good
+        SMTPAddressFailedException second = new SMTPAddressFailedException(new InternetAddress("b@example.edu"), "RCPT TO:<b@example.edu>", 550, "550 unknown");
+        SMTPAddressFailedException first = new SMTPAddressFailedException(new InternetAddress("a@example.edu"), "RCPT TO:<a@example.edu>", 451, "451 try later");
+        first.setNextException(second);
+        assertFalse(MailOutboxServiceBean.isTransient(new SendFailedException("Invalid Addresses", first)));
+    }
+
+    @Test
+    public void testDeliverDueSendsTheMessages() throws MessagingException {
+        MailOutboxMessage first = addMessage(1L, "a@example.edu");
+        MailOutboxMessage second = addMessage(2L, "b@example.edu");
+
+        MailOutboxServiceBean.Delivery delivery = serviceBean.deliverDue(10, sender(null, null));
+
+        assertEquals(new MailOutboxServiceBean.Delivery(2, 0, 0), delivery);
+        assertEquals(List.of("a@example.edu", "b@example.edu"), attempted);
+        verify(serviceBean.em).remove(first);
+        verify(serviceBean.em).remove(second);
+    }
+
+    @Test
+    public void testDeliverDueDropsPermanentlyRejectedMessages() throws MessagingException {
+        MailOutboxMessage first = addMessage(1L, "a@example.edu");
+        MailOutboxMessage second = addMessage(2L, "b@example.edu");
+
+        MailOutboxServiceBean.Delivery delivery = serviceBean.deliverDue(10, sender("a@example.edu", rejected("a@example.edu", 550)));
+
+        assertEquals(new MailOutboxServiceBean.Delivery(1, 0, 1), delivery);
+        verify(serviceBean.em).remove(first);
+        verify(serviceBean.em).remove(second);
+    }
+
+    @Test
+    public void testDeliverDueRetriesTransientlyRejectedMessages() throws MessagingException {
+        MailOutboxMessage first = addMessage(1L, "a@example.edu");
+        MailOutboxMessage second = addMessage(2L, "b@example.edu");
+        Date before = new Date();
+
+        MailOutboxServiceBean.Delivery delivery = serviceBean.deliverDue(10, sender("a@example.edu", rejected("a@example.edu", 450)));
+
+        // the next messages are still sent
+        assertEquals(new MailOutboxServiceBean.Delivery(1, 1, 0), delivery);
+        assertEquals(List.of("a@example.edu", "b@example.edu"), attempted);
+        verify(serviceBean.em, never()).remove(first);
+        verify(serviceBean.em).remove(second);
+        assertEquals(1, first.getAttempts());
+        assertNotNull(first.getLastError());
+        assertTrue(first.getNextAttemptTime().after(before));
+    }
+
+    @Test
+    public void testDeliverDueStopsWhenTheServerFails() throws MessagingException {
+        MailOutboxMessage first = addMessage(1L, "a@example.edu");
+        MailOutboxMessage second = addMessage(2L, "b@example.edu");
+
+        MailOutboxServiceBean.Delivery delivery = serviceBean.deliverDue(10, sender("a@example.edu", new MessagingException("Connection refused")));
+
+        assertEquals(new MailOutboxServiceBean.Delivery(0, 1, 0), delivery);
+        assertEquals(List.of("a@example.edu"), attempted);
+        verify(serviceBean.em, never()).remove(first);
+        verify(serviceBean.em, never()).remove(second);
+        assertEquals(1, first.getAttempts());
+    }
+}
@@ -8,8 +8,11 @@ import edu.harvard.iq.dataverse.util.testing.JvmSetting;
 import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
 import edu.harvard.iq.dataverse.util.testing.Tags;
 import io.restassured.RestAssured;
+import jakarta.mail.Message;
 import jakarta.mail.Session;
 import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -140,4 +143,34 @@ class MailServiceBeanIT {
         assertFalse(mailer.sendSystemEmail(to, "Test", "Test", false));
     }
     
+    @Test
+    @JvmSetting(key = JvmSettings.MAIL_MTA_SUPPORT_UTF8, value = "true")
+    void sendOutboxMessagesOverOneConnection() throws Exception {
+        // given
+        Session session = new MailSessionProducer().getSession();
+        MailOutboxSenderServiceBean sender = new MailOutboxSenderServiceBean(session);
+        
+        // when
+        for (int i = 0; i < 3; i++) {
+            MimeMessage msg = new MimeMessage(session);
+            msg.setFrom(new InternetAddress("noreply@example.org"));
+            msg.setRecipients(Message.RecipientType.TO, "outbox" + i + "@example.org");
+            msg.setSubject("Outbox " + i, "UTF-8");
+            msg.setText("Test üüü", "UTF-8");
+            // as stored in, and read back from, the outbox
+            sender.send(MailOutboxServiceBean.fromContent(session, MailOutboxServiceBean.toContent(msg)));
+            // the connection is kept open for the next message
+            assertTrue(sender.isConnected());
+        }
+        sender.closeTransport();
+        
+        // then
+        assertFalse(sender.isConnected());
+        given().when().get("/messages")
+            .then()
+            .statusCode(200)
+            .body("last().recipients.first()", equalTo("<outbox2@example.org>"))
+            .body("last().subject", equalTo("Outbox 2"));
+    }
+    
 }
\ No newline at end of file
@@ -0,0 +1,334 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetadataFieldRegistryServiceBeanTest {
+
+    private MetadataFieldRegistryServiceBean serviceBean;
+    // the shared cache of the cluster
+    private final Map<String, String> cache = new HashMap<>();
+    // the result rows of the native queries, by table
+    private final Map<String, List<Object[]>> tables = new HashMap<>();
+    private final List<String> queries = new ArrayList<>();
+    private final TestTransactionRegistry transactionRegistry = new TestTransactionRegistry();
+
+    /**
+     * A transaction synchronization registry of a single transaction, active
+     * once begun.
+     */
+    private static class TestTransactionRegistry implements TransactionSynchronizationRegistry {
+        Object transactionKey = null;
+        final Map<Object, Object> resources = new HashMap<>();
+        final List<Synchronization> synchronizations = new ArrayList<>();
+
+        void begin() {
+            transactionKey = new Object();
+        }
+
+        void complete() {
+            transactionKey = null;
+            resources.clear();
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(Status.STATUS_COMMITTED);
+            }
+            synchronizations.clear();
+        }
+
+        @Override
+        public Object getTransactionKey() {
+            return transactionKey;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            checkActive();
+            resources.put(key, value);
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            checkActive();
+            return resources.get(key);
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            checkActive();
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return transactionKey == null ? Status.STATUS_NO_TRANSACTION : Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+
+        private void checkActive() {
+            if (transactionKey == null) {
+                throw new IllegalStateException("No transaction");
+            }
+        }
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        serviceBean = new MetadataFieldRegistryServiceBean();
+        serviceBean.em = mock(EntityManager.class);
+        when(serviceBean.em.createNativeQuery(anyString())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            queries.add(sql);
+            Query query = mock(Query.class);
+            List<Object[]> rows = new ArrayList<>();
+            tables.forEach((table, tableRows) -> {
+                if (sql.contains("FROM " + table + " ")) {
+                    rows.addAll(tableRows);
+                }
+            });
+            when(query.getResultList()).thenReturn(rows);
+            return query;
+        });
+
+        Cache<String, String> generationCache = mock(Cache.class);
+        when(generationCache.get(anyString())).thenAnswer(invocation -> cache.get((String) invocation.getArgument(0)));
+        when(generationCache.putIfAbsent(anyString(), anyString()))
+                .thenAnswer(invocation -> cache.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        doAnswer(invocation -> cache.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(generationCache).put(anyString(), anyString());
+        serviceBean.manager = mock(CacheManager.class);
+        when(serviceBean.manager.getCache(MetadataFieldRegistryServiceBean.REGISTRY_CACHE)).thenReturn(generationCache);
+        serviceBean.transactionRegistry = transactionRegistry;
+        serviceBean.init();
+
+        // the citation block, with the title and subject field types; the
+        // subject has the values Other and Medicine, with Health as an
+        // alternate of Medicine
+        tables.put("metadatablock", List.<Object[]>of(new Object[] { 1L, "citation" }));
+        tables.put("datasetfieldtype", List.<Object[]>of(new Object[] { 1L, "title" }, new Object[] { 2L, "subject" },
+                // a duplicate name: the first one wins
+                new Object[] { 3L, "title" }));
+        tables.put("controlledvocabularyvalue", List.<Object[]>of(new Object[] { 10L, 2L, "Other", null },
+                new Object[] { 11L, 2L, "Medicine", "D01" }, new Object[] { 12L, null, DatasetField.NA_VALUE, null }));
+        tables.put("controlledvocabalternate", List.<Object[]>of(new Object[] { 20L, 2L, 11L, "Health" }));
+        tables.put("foreignmetadatafieldmapping", List.<Object[]>of(new Object[] { 30L, "dcterms", "title" },
+                new Object[] { 31L, "dcterms", null }));
+    }
+
+    private void resetMinRebuildInterval() {
+        serviceBean.lastBuildTime = 0;
+    }
+
+    private static MetadataFieldRegistryServiceBean.Registry makeRegistry() {
+        // field type 2 (subject) has the values 10 (Other) and 11 (Medicine),
+        // with "Health" as an alternate of 11; 12 is the N/A value
+        return new MetadataFieldRegistryServiceBean.Registry("test",
+                Map.of("citation", 1L),
+                Map.of("title", 1L, "subject", 2L),
+                Map.of(new MetadataFieldRegistryServiceBean.Registry.Value(2L, "Other"), 10L,
+                        new MetadataFieldRegistryServiceBean.Registry.Value(2L, "Medicine"), 11L,
+                        new MetadataFieldRegistryServiceBean.Registry.Value(null, DatasetField.NA_VALUE), 12L),
+                Map.of(new MetadataFieldRegistryServiceBean.Registry.Value(2L, "D01"), 11L),
+                Map.of(new MetadataFieldRegistryServiceBean.Registry.Value(2L, "Health"), 11L),
+                Map.of(new MetadataFieldRegistryServiceBean.Registry.Value(11L, "Health"), 20L),
+                Map.of(new MetadataFieldRegistryServiceBean.Registry.FieldPath("dcterms", "title"), 30L));
+    }
+
+    @Test
+    public void testFindFieldTypeId() {
+        MetadataFieldRegistryServiceBean.Registry registry = makeRegistry();
+        assertEquals(1L, registry.findMetadataBlockId("citation"));
+        assertNull(registry.findMetadataBlockId("geospatial"));
+        assertEquals(2L, registry.findFieldTypeId("subject"));
+        assertNull(registry.findFieldTypeId("nonexistent"));
+        assertNull(registry.findFieldTypeId(null));
+    }
+
+    @Test
+    public void testFindVocabularyValueId() {
+        MetadataFieldRegistryServiceBean.Registry registry = makeRegistry();
+        assertEquals(10L, registry.findVocabularyValueId(2L, "Other"));
+        // by alternate
+        assertEquals(11L, registry.findVocabularyValueId(2L, "Health"));
+        // of another field type
+        assertNull(registry.findVocabularyValueId(1L, "Other"));
+        assertNull(registry.findVocabularyValueId(2L, null));
+        assertEquals(12L, registry.findVocabularyValueId(null, DatasetField.NA_VALUE));
+        assertEquals(11L, registry.findVocabularyValueIdByIdentifier(2L, "D01"));
+        assertNull(registry.findVocabularyValueIdByIdentifier(2L, "D02"));
+        assertEquals(20L, registry.findAlternateId(11L, "Health"));
+        assertNull(registry.findAlternateId(10L, "Health"));
+    }
+
+    @Test
+    public void testFindFieldMappingId() {
+        MetadataFieldRegistryServiceBean.Registry registry = makeRegistry();
+        assertEquals(30L, registry.findFieldMappingId("dcterms", "title"));
+        assertNull(registry.findFieldMappingId("ddi", "title"));
+        assertNull(registry.findFieldMappingId("dcterms", null));
+    }
+
+    @Test
+    public void testInvalidateWithoutContainer() {
+        // outside of the application server there is neither a transaction
+        // nor a shared cache to record the invalidation in
+        assertDoesNotThrow(() -> new MetadataFieldRegistryServiceBean().invalidate());
+    }
+
+    @Test
+    public void testGetRegistryBuildsTheRegistry() {
+        MetadataFieldRegistryServiceBean.Registry registry = serviceBean.getRegistry();
+
+        assertNotNull(registry);
+        assertEquals(5, queries.size());
+        assertEquals(1L, registry.findMetadataBlockId("citation"));
+        assertEquals(1L, registry.findFieldTypeId("title"));
+        assertEquals(2L, registry.findFieldTypeId("subject"));
+        assertEquals(10L, registry.findVocabularyValueId(2L, "Other"));
+        assertEquals(11L, registry.findVocabularyValueId(2L, "Health"));
+        assertEquals(12L, registry.findVocabularyValueId(null, DatasetField.NA_VALUE));
+        assertEquals(11L, registry.findVocabularyValueIdByIdentifier(2L, "D01"));
+        assertEquals(20L, registry.findAlternateId(11L, "Health"));
+        assertEquals(30L, registry.findFieldMappingId("dcterms", "title"));
+        assertEquals(Map.of(new MetadataFieldRegistryServiceBean.Registry.FieldPath("dcterms", "title"), 30L),
+                registry.fieldMappings);
+        assertEquals(cache.get("generation"), registry.generation);
+
+        // up to date: not rebuilt
+        assertSame(registry, serviceBean.getRegistry());
+        assertEquals(5, queries.size());
+    }
+
+    @Test
+    public void testInvalidateBumpsTheGeneration() {
+        MetadataFieldRegistryServiceBean.Registry registry = serviceBean.getRegistry();
+        String generation = cache.get("generation");
+
+        serviceBean.invalidate();
+
+        assertNotNull(cache.get("generation"));
+        assertNotEquals(generation, cache.get("generation"));
+        resetMinRebuildInterval();
+        MetadataFieldRegistryServiceBean.Registry rebuilt = serviceBean.getRegistry();
+        assertNotNull(rebuilt);
+        assertNotSame(registry, rebuilt);
+        assertEquals(cache.get("generation"), rebuilt.generation);
+        assertEquals(10, queries.size());
+    }
+
+    @Test
+    public void testRebuildsWhenInvalidatedOnAnotherNode() {
+        MetadataFieldRegistryServiceBean.Registry registry = serviceBean.getRegistry();
+
+        cache.put("generation", "changed on another node");
+
+        resetMinRebuildInterval();
+        MetadataFieldRegistryServiceBean.Registry rebuilt = serviceBean.getRegistry();
+        assertNotSame(registry, rebuilt);
+        assertEquals("changed on another node", rebuilt.generation);
+    }
+
+    @Test
+    public void testRebuildsAtMostEveryMinRebuildInterval() {
+        serviceBean.getRegistry();
+
+        serviceBean.invalidate();
+
+        // built just now: out of date, but not rebuilt yet
+        assertNull(serviceBean.getRegistry());
+        assertEquals(5, queries.size());
+        resetMinRebuildInterval();
+        assertNotNull(serviceBean.getRegistry());
+        assertEquals(10, queries.size());
+    }
+
+    @Test
+    public void testInvalidateInATransaction() {
+        MetadataFieldRegistryServiceBean.Registry registry = serviceBean.getRegistry();
+        transactionRegistry.begin();
+
+        serviceBean.invalidate();
+        serviceBean.invalidate();
+
+        // not used for the rest of the transaction, whatever its age
+        resetMinRebuildInterval();
+        assertNull(serviceBean.getRegistry());
+        assertEquals(5, queries.size());
+        // invalidated again once the transaction has completed
+        assertEquals(1, transactionRegistry.synchronizations.size());
+        String generation = cache.get("generation");
+        transactionRegistry.complete();
+        assertNotEquals(generation, cache.get("generation"));
+
+        MetadataFieldRegistryServiceBean.Registry rebuilt = serviceBean.getRegistry();
+        assertNotNull(rebuilt);
+        assertNotSame(registry, rebuilt);
+        assertEquals(cache.get("generation"), rebuilt.generation);
+    }
+
+    @Test
+    public void testNotUsedInATransactionOnceInvalidated() {
+        transactionRegistry.begin();
+        MetadataFieldRegistryServiceBean.Registry registry = serviceBean.getRegistry();
+
+        // usable within a transaction, until it changes the metadata blocks
+        assertNotNull(registry);
+        assertSame(registry, serviceBean.getRegistry());
+        serviceBean.invalidate();
+        assertNull(serviceBean.getRegistry());
+    }
+
+    @Test
+    public void testGetRegistryWithoutTheSharedCache() {
+        MetadataFieldRegistryServiceBean withoutCache = new MetadataFieldRegistryServiceBean();
+        withoutCache.em = serviceBean.em;
+        withoutCache.manager = mock(CacheManager.class);
+        when(withoutCache.manager.getCache(anyString())).thenThrow(new IllegalStateException("No cache"));
+        withoutCache.init();
+
+        MetadataFieldRegistryServiceBean.Registry registry = withoutCache.getRegistry();
+        assertNotNull(registry);
+        assertEquals("", registry.generation);
+        assertSame(registry, withoutCache.getRegistry());
+
+        withoutCache.invalidate();
+        withoutCache.lastBuildTime = 0;
+        assertNotSame(registry, withoutCache.getRegistry());
+    }
+
+    @Test
+    public void testGetRegistryWhenTheQueriesFail() {
+        doThrow(new IllegalStateException("No database")).when(serviceBean.em).createNativeQuery(anyString());
+
+        assertNull(serviceBean.getRegistry());
+    }
+}
@@ -0,0 +1,84 @@
+package edu.harvard.iq.dataverse;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserServiceBeanTest {
+
+    private UserServiceBean userService;
+    private Query query;
+
+    @BeforeEach
+    public void setUp() {
+        userService = new UserServiceBean();
+        userService.em = mock(EntityManager.class);
+        query = mock(Query.class);
+        when(userService.em.createNativeQuery(anyString())).thenReturn(query);
+    }
+
+    @Test
+    public void testGetLastApiUseTimesUpdate() {
+        assertEquals("UPDATE authenticateduser SET lastapiusetime = v.t FROM (VALUES "
+                + "(CAST(? AS BIGINT), CAST(? AS TIMESTAMP)), (CAST(? AS BIGINT), CAST(? AS TIMESTAMP))"
+                + ") AS v (id, t) WHERE authenticateduser.id = v.id"
+                + " AND (authenticateduser.lastapiusetime IS NULL OR authenticateduser.lastapiusetime < v.t)",
+                UserServiceBean.getLastApiUseTimesUpdate(2));
+    }
+
+    @Test
+    public void testUpdateLastApiUseTimesInOneStatement() {
+        Timestamp first = new Timestamp(1000L);
+        Timestamp second = new Timestamp(2000L);
+        Map<Long, Timestamp> times = new LinkedHashMap<>();
+        times.put(1L, first);
+        times.put(2L, second);
+
+        userService.updateLastApiUseTimes(times);
+
+        verify(userService.em, times(1)).createNativeQuery(UserServiceBean.getLastApiUseTimesUpdate(2));
+        verify(query).setParameter(1, 1L);
+        verify(query).setParameter(2, first);
+        verify(query).setParameter(3, 2L);
+        verify(query).setParameter(4, second);
+        verify(query, times(1)).executeUpdate();
+    }
+
+    @Test
+    public void testUpdateLastApiUseTimesInChunks() {
+        Map<Long, Timestamp> times = new LinkedHashMap<>();
+        for (long id = 1; id <= UserServiceBean.LAST_API_USE_TIMES_PER_UPDATE + 1; id++) {
+            times.put(id, new Timestamp(id));
+        }
+
+        userService.updateLastApiUseTimes(times);
+
+        verify(userService.em).createNativeQuery(UserServiceBean.getLastApiUseTimesUpdate(UserServiceBean.LAST_API_USE_TIMES_PER_UPDATE));
+        verify(userService.em).createNativeQuery(UserServiceBean.getLastApiUseTimesUpdate(1));
+        verify(query, times(2)).executeUpdate();
+        // the parameters of each statement are numbered from 1
+        verify(query).setParameter(1, 1L);
+        verify(query).setParameter(1, 1L + UserServiceBean.LAST_API_USE_TIMES_PER_UPDATE);
+    }
+
+    @Test
+    public void testUpdateNoLastApiUseTimes() {
+        userService.updateLastApiUseTimes(Map.of());
+
+        verify(userService.em, never()).createNativeQuery(anyString());
+    }
+}
@@ -0,0 +1,106 @@
+package edu.harvard.iq.dataverse.api;
+
+import io.restassured.RestAssured;
+import io.restassured.path.json.JsonPath;
+import io.restassured.response.Response;
+import java.util.logging.Logger;
+import static jakarta.ws.rs.core.Response.Status.ACCEPTED;
+import static jakarta.ws.rs.core.Response.Status.CREATED;
+import static jakarta.ws.rs.core.Response.Status.NOT_FOUND;
+import static jakarta.ws.rs.core.Response.Status.OK;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class MetadataIT {
+
+    private static final Logger logger = Logger.getLogger(MetadataIT.class.getCanonicalName());
+
+    // how long an export all job is waited for, in seconds
+    private static final int MAXIMUM_EXPORT_ALL_DURATION = 300;
+
+    @BeforeAll
+    public static void setUpClass() {
+        RestAssured.baseURI = UtilIT.getRestAssuredBaseUri();
+    }
+
+    @Test
+    public void testExportAllStatus() throws InterruptedException {
+
+        Response createUser = UtilIT.createRandomUser();
+        createUser.then().assertThat()
+                .statusCode(OK.getStatusCode());
+        String apiToken = UtilIT.getApiTokenFromResponse(createUser);
+
+        Response createDataverse = UtilIT.createRandomDataverse(apiToken);
+        createDataverse.then().assertThat()
+                .statusCode(CREATED.getStatusCode());
+        String dataverseAlias = UtilIT.getAliasFromResponse(createDataverse);
+
+        Response createDataset = UtilIT.createRandomDatasetViaNativeApi(dataverseAlias, apiToken);
+        createDataset.then().assertThat()
+                .statusCode(CREATED.getStatusCode());
+        String datasetPid = JsonPath.from(createDataset.asString()).getString("data.persistentId");
+
+        UtilIT.publishDataverseViaNativeApi(dataverseAlias, apiToken).then().assertThat()
+                .statusCode(OK.getStatusCode());
+        UtilIT.publishDatasetViaNativeApi(datasetPid, "major", apiToken).then().assertThat()
+                .statusCode(OK.getStatusCode());
+
+        // a forced export all job exports every published, local dataset
+        String previousStarted = getStartedOfLastJob();
+        UtilIT.reExportAllDatasets().then().assertThat()
+                .statusCode(ACCEPTED.getStatusCode());
+        JsonPath reExport = waitForExportAll(previousStarted);
+        assertTrue(reExport.getBoolean("data.forceReExport"));
+        assertTrue(reExport.getInt("data.total") >= 1);
+        assertEquals(reExport.getInt("data.total"), reExport.getInt("data.processed"));
+        assertEquals(reExport.getInt("data.processed"), reExport.getInt("data.succeeded") + reExport.getInt("data.failed"));
+        assertTrue(reExport.getInt("data.threads") >= 1);
+        assertNotNull(reExport.getString("data.started"));
+        assertFalse(reExport.getMap("data").containsKey("estimatedSecondsRemaining"));
+
+        // right after it, only the datasets it failed to export are left
+        UtilIT.exportAllDatasets().then().assertThat()
+                .statusCode(ACCEPTED.getStatusCode());
+        JsonPath export = waitForExportAll(reExport.getString("data.started"));
+        assertFalse(export.getBoolean("data.forceReExport"));
+        assertTrue(export.getInt("data.total") <= reExport.getInt("data.failed"));
+        assertEquals(export.getInt("data.total"), export.getInt("data.processed"));
+    }
+
+    private static String getStartedOfLastJob() {
+        Response status = UtilIT.getExportAllStatus();
+        if (status.getStatusCode() == NOT_FOUND.getStatusCode()) {
+            // no job ran on this server since it was started
+            return null;
+        }
+        status.then().assertThat()
+                .statusCode(OK.getStatusCode());
+        return JsonPath.from(status.asString()).getString("data.started");
+    }
+
+    /**
+     * @return the status of the job started after previousStarted, once it is
+     *         finished
+     */
+    private static JsonPath waitForExportAll(String previousStarted) throws InterruptedException {
+        for (int i = 0; i < MAXIMUM_EXPORT_ALL_DURATION; i++) {
+            Response status = UtilIT.getExportAllStatus();
+            if (status.getStatusCode() == OK.getStatusCode()) {
+                JsonPath json = JsonPath.from(status.asString());
+                if (!json.getString("data.started").equals(previousStarted) && json.getString("data.finished") != null) {
+                    logger.info("export all job: " + status.asString());
+                    return json;
+                }
+            }
+            Thread.sleep(1000);
+        }
+        fail("The export all job did not finish in " + MAXIMUM_EXPORT_ALL_DURATION + " seconds");
+        return null;
+    }
+}
@@ -312,6 +312,74 @@ public class MoveIT {
 
     }
     
+    @Test
+    public void testMoveLinkedDataverse() {
+
+        Response createSuperUser = UtilIT.createRandomUser();
+        createSuperUser.then().assertThat()
+                .statusCode(OK.getStatusCode());
+        String superuserUsername = UtilIT.getUsernameFromResponse(createSuperUser);
+        String superuserApiToken = UtilIT.getApiTokenFromResponse(createSuperUser);
+        UtilIT.makeSuperUser(superuserUsername).then().assertThat()
+                .statusCode(OK.getStatusCode());
+
+        // dataverse1 contains a dataset, both linked by dataverse2
+        Response createDataverse1 = UtilIT.createRandomDataverse(superuserApiToken);
+        createDataverse1.then().assertThat()
+                .statusCode(CREATED.getStatusCode());
+        String dataverse1Alias = UtilIT.getAliasFromResponse(createDataverse1);
+
+        Response createDataset = UtilIT.createRandomDatasetViaNativeApi(dataverse1Alias, superuserApiToken);
+        createDataset.then().assertThat()
+                .statusCode(CREATED.getStatusCode());
+        String datasetPid = JsonPath.from(createDataset.asString()).getString("data.persistentId");
+
+        Response createDataverse2 = UtilIT.createRandomDataverse(superuserApiToken);
+        createDataverse2.then().assertThat()
+                .statusCode(CREATED.getStatusCode());
+        String dataverse2Alias = UtilIT.getAliasFromResponse(createDataverse2);
+
+        UtilIT.publishDataverseViaNativeApi(dataverse1Alias, superuserApiToken).then().assertThat()
+                .statusCode(OK.getStatusCode());
+        UtilIT.publishDataverseViaNativeApi(dataverse2Alias, superuserApiToken).then().assertThat()
+                .statusCode(OK.getStatusCode());
+        UtilIT.publishDatasetViaNativeApi(datasetPid, "major", superuserApiToken).then().assertThat()
+                .statusCode(OK.getStatusCode());
+
+        UtilIT.createDataverseLink(dataverse1Alias, dataverse2Alias, superuserApiToken).then().assertThat()
+                .statusCode(OK.getStatusCode());
+        UtilIT.linkDataset(datasetPid, dataverse2Alias, superuserApiToken).then().assertThat()
+                .statusCode(OK.getStatusCode());
+
+        Response moveWithoutForce = UtilIT.moveDataverse(dataverse1Alias, dataverse2Alias, false, superuserApiToken);
+        moveWithoutForce.prettyPrint();
+        moveWithoutForce.then().assertThat()
+                .statusCode(FORBIDDEN.getStatusCode())
+                .body("message", CoreMatchers.containsString("Dataverse is linked to target dataverse or one of its parents."))
+                .body("message", CoreMatchers.containsString("Dataset is linked to target dataverse or one of its parents."));
+
+        Response linksBefore = UtilIT.listDataverseLinks(dataverse2Alias, superuserApiToken);
+        linksBefore.prettyPrint();
+        linksBefore.then().assertThat()
+                .statusCode(OK.getStatusCode());
+        JsonObject linksBeforeData = Json.createReader(new StringReader(linksBefore.asString())).readObject().getJsonObject("data");
+        assertEquals(1, linksBeforeData.getJsonArray("dataverses that the " + dataverse2Alias + " dataverse has linked to").size());
+        assertEquals(1, linksBeforeData.getJsonArray("datasets that the " + dataverse2Alias + " has linked to").size());
+
+        Response moveWithForce = UtilIT.moveDataverse(dataverse1Alias, dataverse2Alias, true, superuserApiToken);
+        moveWithForce.prettyPrint();
+        moveWithForce.then().assertThat()
+                .statusCode(OK.getStatusCode());
+
+        Response linksAfter = UtilIT.listDataverseLinks(dataverse2Alias, superuserApiToken);
+        linksAfter.prettyPrint();
+        linksAfter.then().assertThat()
+                .statusCode(OK.getStatusCode());
+        JsonObject linksAfterData = Json.createReader(new StringReader(linksAfter.asString())).readObject().getJsonObject("data");
+        assertEquals(0, linksAfterData.getJsonArray("dataverses that the " + dataverse2Alias + " dataverse has linked to").size());
+        assertEquals(0, linksAfterData.getJsonArray("datasets that the " + dataverse2Alias + " has linked to").size());
+    }
+
     @Test
     public void testMoveDatasetsPerms() {
 
@@ -1883,6 +1883,13 @@ public class UtilIT {
         return response;
     }
     
+    static Response listDataverseLinks(String dataverseAlias, String apiToken) {
+        Response response = given()
+            .header(API_TOKEN_HTTP_HEADER, apiToken)
+            .get("api/dataverses/" + dataverseAlias + "/links");
+        return response;
+    }
+
     static Response deleteDataverseLink(String linkedDataverseAlias, String linkingDataverseAlias, String apiToken) {
         Response response = given()
             .header(API_TOKEN_HTTP_HEADER, apiToken)
@@ -2139,6 +2146,21 @@ public class UtilIT {
                 .get("/api/datasets/export" + "?persistentId=" + datasetPersistentId + "&exporter=" + exporter);
     }
 
+    static Response exportAllDatasets() {
+        return given()
+                .get("/api/admin/metadata/exportAll");
+    }
+
+    static Response reExportAllDatasets() {
+        return given()
+                .get("/api/admin/metadata/reExportAll");
+    }
+
+    static Response getExportAllStatus() {
+        return given()
+                .get("/api/admin/metadata/exportAll/status");
+    }
+
     static Response reexportDatasetAllFormats(String idOrPersistentId) {
         String idInPath = idOrPersistentId; // Assume it's a number.
         String optionalQueryParam = ""; // If idOrPersistentId is a number we'll just put it in the path.
@@ -0,0 +1,79 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.authorization.users.ApiToken;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+
+import java.sql.Timestamp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@LocalJvmSettings
+public class ApiTokenCacheServiceBeanTest {
+
+    private static ApiToken makeToken(String tokenString, Long userId, long expireTime) {
+        AuthenticatedUser user = new AuthenticatedUser();
+        user.setId(userId);
+        ApiToken token = new ApiToken();
+        token.setTokenString(tokenString);
+        token.setAuthenticatedUser(user);
+        token.setExpireTime(new Timestamp(expireTime));
+        return token;
+    }
+
+    private static ApiTokenCacheServiceBean makeCache() {
+        ApiTokenCacheServiceBean cache = new ApiTokenCacheServiceBean();
+        cache.init();
+        return cache;
+    }
+
+    @Test
+    public void testPutAndGet() {
+        ApiTokenCacheServiceBean cache = makeCache();
+        assertTrue(cache.isEnabled());
+        assertNull(cache.get("token"));
+
+        cache.put(makeToken("token", 1L, System.currentTimeMillis() + 60000));
+
+        ApiTokenCacheServiceBean.CachedApiToken cached = cache.get("token");
+        assertNotNull(cached);
+        assertEquals(1L, cached.userId());
+        assertFalse(cached.isExpired());
+    }
+
+    @Test
+    public void testExpiredToken() {
+        ApiTokenCacheServiceBean cache = makeCache();
+        cache.put(makeToken("token", 1L, System.currentTimeMillis() - 1000));
+        assertTrue(cache.get("token").isExpired());
+    }
+
+    @Test
+    public void testInvalidate() {
+        ApiTokenCacheServiceBean cache = makeCache();
+        cache.put(makeToken("token1", 1L, System.currentTimeMillis() + 60000));
+        cache.put(makeToken("token2", 2L, System.currentTimeMillis() + 60000));
+        cache.put(makeToken("token3", 2L, System.currentTimeMillis() + 60000));
+
+        cache.invalidate("token1");
+        assertNull(cache.get("token1"));
+        assertNotNull(cache.get("token2"));
+
+        cache.invalidateUser(2L);
+        assertNull(cache.get("token2"));
+        assertNull(cache.get("token3"));
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.API_TOKEN_CACHE_TTL, value = "0")
+    public void testDisabled() {
+        ApiTokenCacheServiceBean cache = makeCache();
+        assertFalse(cache.isEnabled());
+        cache.put(makeToken("token", 1L, System.currentTimeMillis() + 60000));
+        assertNull(cache.get("token"));
+    }
+}
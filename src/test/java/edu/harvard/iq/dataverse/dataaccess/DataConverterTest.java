@@ -0,0 +1,136 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DataConverterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ExecutorService threads = Executors.newFixedThreadPool(2);
+    private final ExecutorService conversionThreads = Executors.newCachedThreadPool();
+    private final BoundedExecutor conversionExecutor = new BoundedExecutor(conversionThreads, 1, 1);
+
+    @BeforeEach
+    public void setUp() {
+        DataConverter.setExecutor(conversionExecutor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        DataConverter.setExecutor(null);
+        threads.shutdownNow();
+        conversionThreads.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneConversion() throws Exception {
+        Path tabFile = Files.writeString(tempDir.resolve("data.tab"), "1\t2\n");
+        DataFile dataFile = new DataFile();
+        dataFile.setId(1L);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StorageIO<DataFile> storageIO = mock(StorageIO.class);
+        when(storageIO.isLocalFile()).thenReturn(true);
+        when(storageIO.getFileSystemPath()).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return tabFile;
+        });
+
+        Future<File> first = threads.submit(() -> DataConverter.convertAndCache(dataFile, storageIO, DataConverter.FILE_TYPE_TAB));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        AtomicReference<Thread> secondThread = new AtomicReference<>();
+        Future<File> second = threads.submit(() -> {
+            secondThread.set(Thread.currentThread());
+            return DataConverter.convertAndCache(dataFile, storageIO, DataConverter.FILE_TYPE_TAB);
+        });
+        // wait for the second request to be waiting for the first conversion
+        long deadline = System.currentTimeMillis() + 10000;
+        while (secondThread.get() == null || secondThread.get().getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertEquals(tabFile.toFile(), first.get(10, TimeUnit.SECONDS));
+        assertEquals(tabFile.toFile(), second.get(10, TimeUnit.SECONDS));
+        verify(storageIO, times(1)).getFileSystemPath();
+        verify(storageIO, times(1)).savePathAsAux(any(Path.class), eq(DataConverter.FILE_TYPE_TAB));
+    }
+
+    @Test
+    public void testConversionsBeyondTheQueueAreRejected() throws Exception {
+        Path tabFile = Files.writeString(tempDir.resolve("data.tab"), "1\t2\n");
+        CountDownLatch release = new CountDownLatch(1);
+        StorageIO<DataFile> storageIO = mock(StorageIO.class);
+        when(storageIO.isLocalFile()).thenReturn(true);
+        when(storageIO.getFileSystemPath()).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return tabFile;
+        });
+        DataFile running = new DataFile();
+        running.setId(3L);
+        DataFile queued = new DataFile();
+        queued.setId(4L);
+        DataFile rejected = new DataFile();
+        rejected.setId(5L);
+
+        // one conversion running, one waiting in the queue...
+        Future<File> first = threads.submit(() -> DataConverter.convertAndCache(running, storageIO, DataConverter.FILE_TYPE_TAB));
+        Future<File> second = threads.submit(() -> DataConverter.convertAndCache(queued, storageIO, DataConverter.FILE_TYPE_TAB));
+        verify(storageIO, timeout(10000)).getFileSystemPath();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (conversionExecutor.getQueued() < 1) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        // ...so there is no room for another one
+        assertNull(DataConverter.convertAndCache(rejected, storageIO, DataConverter.FILE_TYPE_TAB));
+
+        release.countDown();
+        assertEquals(tabFile.toFile(), first.get(10, TimeUnit.SECONDS));
+        assertEquals(tabFile.toFile(), second.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedConversionReturnsNull() throws Exception {
+        DataFile dataFile = new DataFile();
+        dataFile.setId(2L);
+        StorageIO<DataFile> storageIO = mock(StorageIO.class);
+        when(storageIO.isLocalFile()).thenReturn(true);
+        when(storageIO.getFileSystemPath()).thenThrow(new IOException("not found"));
+
+        assertNull(DataConverter.convertAndCache(dataFile, storageIO, DataConverter.FILE_TYPE_TAB));
+    }
+}
@@ -0,0 +1,114 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class DataPreprocessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testFormatNumber() {
+        assertEquals("1234567", DataPreprocessor.formatNumber(1234567, 7));
+        assertEquals("0.3333333", DataPreprocessor.formatNumber(1.0 / 3, 7));
+        assertEquals("1e+20", DataPreprocessor.formatNumber(1e20, 15));
+        assertEquals("NA", DataPreprocessor.formatNumber(Double.NaN, 7));
+        assertEquals("-Inf", DataPreprocessor.formatNumber(Double.NEGATIVE_INFINITY, 7));
+    }
+
+    @Test
+    public void testStatistics() {
+        assertEquals(2.5, DataPreprocessor.median(new double[]{4, 1, 3, 2}));
+        assertEquals(1.75, DataPreprocessor.quantile(new double[]{1, 2, 3, 4}, 0.25));
+        assertEquals(Math.sqrt(5.0 / 3), DataPreprocessor.standardDeviation(new double[]{1, 2, 3, 4}), 1e-12);
+    }
+
+    @Test
+    public void testWritePrep() throws Exception {
+        Path tabFile = Files.writeString(tempDir.resolve("data.tab"),
+                "id\tname\tscore\n1\t\"a\"\t1.5\n2\t\"b\"\t2.5\n3\t\"a\"\t\n4\t\"c\"\t3.5\n");
+        DataPreprocessor preprocessor = new DataPreprocessor(List.of(
+                variable("id", DataVariable.VariableType.NUMERIC),
+                variable("name", DataVariable.VariableType.CHARACTER),
+                variable("score", DataVariable.VariableType.NUMERIC)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TabularColumnFiles columns = new TabularColumnFiles(tabFile.toFile(), 3, true)) {
+            preprocessor.write(columns, out);
+        }
+
+        JsonObject json = Json.createReader(new ByteArrayInputStream(out.toByteArray())).readObject();
+        assertFalse(json.getJsonObject("dataset").getBoolean("private"));
+        JsonObject variables = json.getJsonObject("variables");
+        assertEquals(List.of("id", "name", "score"), List.copyOf(variables.keySet()));
+
+        JsonObject id = variables.getJsonObject("id");
+        assertEquals("numeric", id.getString("numchar"));
+        assertEquals("discrete", id.getString("interval"));
+        assertEquals("ordinal", id.getString("nature"));
+        assertEquals("no", id.getString("binary"));
+        assertEquals("id", id.getString("varnamesSumStat"));
+        assertEquals("id", id.getString("varnamesTypes"));
+        assertEquals("bar", id.getString("plottype"));
+        assertEquals(Json.createObjectBuilder().add("1", 1).add("2", 1).add("3", 1).add("4", 1).build(),
+                id.getJsonObject("plotvalues"));
+        assertEquals(2.5, id.getJsonNumber("median").doubleValue());
+        assertEquals(2.5, id.getJsonNumber("mean").doubleValue());
+        assertEquals(1.0, id.getJsonNumber("min").doubleValue());
+        assertEquals(4.0, id.getJsonNumber("max").doubleValue());
+        assertEquals(Math.sqrt(5.0 / 3), id.getJsonNumber("sd").doubleValue(), 1e-12);
+        assertEquals(4, id.getInt("valid"));
+        assertEquals(0, id.getInt("invalid"));
+        assertEquals(4, id.getInt("uniques"));
+        assertEquals("1", id.getString("mode"));
+
+        JsonObject name = variables.getJsonObject("name");
+        assertEquals("character", name.getString("numchar"));
+        assertEquals("nominal", name.getString("nature"));
+        assertEquals("bar", name.getString("plottype"));
+        assertEquals(Json.createObjectBuilder().add("a", 2).add("b", 1).add("c", 1).build(),
+                name.getJsonObject("plotvalues"));
+        assertEquals("NA", name.getString("mean"));
+        assertEquals("a", name.getString("mode"));
+        assertEquals(2, name.getInt("freqmode"));
+        assertEquals("b", name.getString("fewest"));
+        assertEquals(3, name.getInt("uniques"));
+        assertEquals(4, name.getInt("valid"));
+
+        // the missing value is invalid, and left out of the statistics
+        JsonObject score = variables.getJsonObject("score");
+        assertEquals("numeric", score.getString("numchar"));
+        assertEquals("continuous", score.getString("interval"));
+        assertEquals("ratio", score.getString("nature"));
+        assertEquals(Json.createObjectBuilder().add("1.5", 1).add("2.5", 1).add("3.5", 1).build(),
+                score.getJsonObject("plotvalues"));
+        assertEquals(1, score.getInt("invalid"));
+        assertEquals(3, score.getInt("valid"));
+        assertEquals(2.5, score.getJsonNumber("mean").doubleValue());
+        assertEquals(1.0, score.getJsonNumber("sd").doubleValue(), 1e-12);
+        assertEquals(1.5, score.getJsonNumber("min").doubleValue());
+        assertEquals(3.5, score.getJsonNumber("max").doubleValue());
+    }
+
+    private static DataVariable variable(String name, DataVariable.VariableType type) {
+        DataVariable variable = new DataVariable();
+        variable.setName(name);
+        variable.setType(type);
+        return variable;
+    }
+}
@@ -0,0 +1,188 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.util.BoundedExecutor;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ImageThumbConverterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ExecutorService threads = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    public void tearDown() {
+        ImageThumbConverter.setExecutor(null, null);
+        threads.shutdownNow();
+    }
+
+    private File writeImage(String name, int width, int height) throws Exception {
+        File file = tempDir.resolve(name).toFile();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", file);
+        return file;
+    }
+
+    @Test
+    public void testSubsampling() {
+        assertEquals(1, ImageThumbConverter.getSubsampling(50, 40, 64));
+        assertEquals(1, ImageThumbConverter.getSubsampling(127, 40, 64));
+        assertEquals(2, ImageThumbConverter.getSubsampling(128, 40, 64));
+        assertEquals(312, ImageThumbConverter.getSubsampling(20000, 20000, 64));
+        assertEquals(50, ImageThumbConverter.getSubsampling(1000, 20000, 400));
+    }
+
+    @Test
+    public void testReadImageForThumbnailKeepsOnlyTheNeededPixels() throws Exception {
+        File original = writeImage("large.png", 3000, 1000);
+
+        BufferedImage image = ImageThumbConverter.readImageForThumbnail(original, 64);
+        assertTrue(image.getWidth() >= 64 && image.getWidth() < 128, "width " + image.getWidth());
+
+        try (InputStream in = new FileInputStream(original)) {
+            image = ImageThumbConverter.readImageForThumbnail(in, 400);
+        }
+        assertTrue(image.getWidth() >= 400 && image.getWidth() < 800, "width " + image.getWidth());
+    }
+
+    @Test
+    public void testReadImageForThumbnailOfNonImage() throws Exception {
+        assertNull(ImageThumbConverter.readImageForThumbnail(new ByteArrayInputStream("not an image".getBytes()), 64));
+    }
+
+    @Test
+    public void testGenerateImageThumbnailFromFile() throws Exception {
+        File original = writeImage("wide.png", 1000, 500);
+
+        String thumbnail = ImageThumbConverter.generateImageThumbnailFromFile(original.getAbsolutePath(), 64);
+
+        assertNotNull(thumbnail);
+        BufferedImage image = ImageIO.read(new File(thumbnail));
+        assertEquals(64, image.getWidth());
+        assertEquals(32, image.getHeight());
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneGeneration() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB), "png", png);
+
+        DataFile dataFile = new DataFile();
+        dataFile.setId(1L);
+        dataFile.setContentType("image/png");
+        dataFile.setFilesize(png.size());
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ByteArrayOutputStream thumbnail = new ByteArrayOutputStream();
+        StorageIO<DataFile> storageIO = mock(StorageIO.class);
+        when(storageIO.getDataFile()).thenReturn(dataFile);
+        when(storageIO.isAuxObjectCached("thumb64")).thenReturn(false);
+        when(storageIO.getInputStream()).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return new ByteArrayInputStream(png.toByteArray());
+        });
+        when(storageIO.openAuxChannel(eq("thumb64"), any(DataAccessOption.class)))
+                .thenReturn(Channels.newChannel(thumbnail));
+
+        Future<Boolean> first = threads.submit(() -> ImageThumbConverter.generateThumbnail(dataFile, storageIO, 64));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        AtomicReference<Thread> secondThread = new AtomicReference<>();
+        Future<Boolean> second = threads.submit(() -> {
+            secondThread.set(Thread.currentThread());
+            return ImageThumbConverter.generateThumbnail(dataFile, storageIO, 64);
+        });
+        // wait for the second request to be waiting for the first generation
+        long deadline = System.currentTimeMillis() + 10000;
+        while (secondThread.get() == null || secondThread.get().getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        assertTrue(second.get(10, TimeUnit.SECONDS));
+        assertFalse(dataFile.isPreviewImageFail());
+        verify(storageIO, times(1)).getInputStream();
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail.toByteArray()));
+        assertEquals(64, image.getWidth());
+        assertEquals(32, image.getHeight());
+    }
+
+    @Test
+    public void testBackgroundGenerationRecordsTheStatus() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB), "png", png);
+
+        DataFile dataFile = spy(new DataFile());
+        dataFile.setId(2L);
+        dataFile.setStorageIdentifier("file://18b39722140-50eb7d3c5ece");
+        dataFile.setContentType("image/png");
+        dataFile.setFilesize(png.size());
+
+        StorageIO<DataFile> storageIO = mock(StorageIO.class);
+        when(storageIO.getDataFile()).thenReturn(dataFile);
+        when(storageIO.isAuxObjectCached("thumb64")).thenReturn(false);
+        when(storageIO.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(png.toByteArray()));
+        when(storageIO.openAuxChannel(eq("thumb64"), any(DataAccessOption.class)))
+                .thenReturn(Channels.newChannel(new ByteArrayOutputStream()));
+        doReturn(storageIO).when(dataFile).getStorageIO();
+
+        DataFileServiceBean dataFileService = mock(DataFileServiceBean.class);
+        ImageThumbConverter.setExecutor(new BoundedExecutor(threads, 1, 10), dataFileService);
+
+        ImageThumbConverter.generateThumbnailsInBackground(dataFile, 64);
+
+        verify(dataFileService, timeout(10000)).setPreviewImageStatus(2L, true);
+    }
+
+    @Test
+    public void testNoBackgroundGenerationWithoutAnExecutor() throws Exception {
+        DataFile dataFile = spy(new DataFile());
+        dataFile.setId(3L);
+        dataFile.setStorageIdentifier("file://18b39722140-50eb7d3c5ecf");
+        dataFile.setContentType("image/png");
+
+        ImageThumbConverter.generateThumbnailsInBackground(dataFile, 64);
+
+        verify(dataFile, times(0)).getStorageIO();
+    }
+}
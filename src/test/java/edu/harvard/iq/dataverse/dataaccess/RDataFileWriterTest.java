@@ -0,0 +1,345 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
+import edu.harvard.iq.dataverse.rserve.RJobRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class RDataFileWriterTest {
+
+    // SEXP types, and the flags of the serialization format
+    private static final int SYMSXP = 1;
+    private static final int LISTSXP = 2;
+    private static final int CHARSXP = 9;
+    private static final int LGLSXP = 10;
+    private static final int INTSXP = 13;
+    private static final int REALSXP = 14;
+    private static final int STRSXP = 16;
+    private static final int VECSXP = 19;
+    private static final int NILVALUE_SXP = 254;
+    private static final int REFSXP = 255;
+    private static final int IS_OBJECT = 1 << 8;
+    private static final int HAS_ATTR = 1 << 9;
+    private static final int HAS_TAG = 1 << 10;
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * An object read back from the serialized data: its type and flags, its
+     * value (a String for a CHARSXP or a symbol, an int[], double[] or
+     * String[] for the atomic vectors, a List for a VECSXP), its attributes,
+     * and for a pairlist, its tag, value and the rest of the list.
+     */
+    private static class RObject {
+        int type;
+        int flags;
+        Object value;
+        String tag;
+        RObject next;
+        Map<String, RObject> attributes = new LinkedHashMap<>();
+
+        boolean hasFlag(int flag) {
+            return (flags & flag) != 0;
+        }
+
+        RObject attribute(String name) {
+            RObject attribute = attributes.get(name);
+            if (attribute == null) {
+                fail("No attribute " + name + " in " + attributes.keySet());
+            }
+            return attribute;
+        }
+    }
+
+    /**
+     * Reads the objects of the XDR serialization format, as unserialize()
+     * would, failing on anything the writer isn't meant to write.
+     */
+    private static class RReader {
+        private final DataInputStream in;
+        private final List<String> symbols = new ArrayList<>();
+
+        RReader(DataInputStream in) {
+            this.in = in;
+        }
+
+        RObject read() throws IOException {
+            RObject object = new RObject();
+            object.flags = in.readInt();
+            object.type = object.flags & 0xFF;
+            switch (object.type) {
+                case NILVALUE_SXP:
+                    return object;
+                case REFSXP:
+                    object.type = SYMSXP;
+                    object.value = symbols.get((object.flags >>> 8) - 1);
+                    return object;
+                case SYMSXP:
+                    RObject name = read();
+                    assertEquals(CHARSXP, name.type);
+                    object.value = name.value;
+                    symbols.add((String) name.value);
+                    return object;
+                case LISTSXP:
+                    if (object.hasFlag(HAS_ATTR)) {
+                        object.attributes = toMap(read());
+                    }
+                    if (object.hasFlag(HAS_TAG)) {
+                        RObject tag = read();
+                        assertEquals(SYMSXP, tag.type);
+                        object.tag = (String) tag.value;
+                    }
+                    object.value = read();
+                    object.next = read();
+                    return object;
+                case CHARSXP:
+                    int length = in.readInt();
+                    object.value = length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8);
+                    return object;
+                case LGLSXP:
+                case INTSXP:
+                    int[] ints = new int[in.readInt()];
+                    for (int i = 0; i < ints.length; i++) {
+                        ints[i] = in.readInt();
+                    }
+                    object.value = ints;
+                    break;
+                case REALSXP:
+                    double[] doubles = new double[in.readInt()];
+                    for (int i = 0; i < doubles.length; i++) {
+                        doubles[i] = in.readDouble();
+                    }
+                    object.value = doubles;
+                    break;
+                case STRSXP:
+                    String[] strings = new String[in.readInt()];
+                    for (int i = 0; i < strings.length; i++) {
+                        RObject string = read();
+                        assertEquals(CHARSXP, string.type);
+                        strings[i] = (String) string.value;
+                    }
+                    object.value = strings;
+                    break;
+                case VECSXP:
+                    List<RObject> elements = new ArrayList<>();
+                    int size = in.readInt();
+                    for (int i = 0; i < size; i++) {
+                        elements.add(read());
+                    }
+                    object.value = elements;
+                    break;
+                default:
+                    fail("Unexpected SEXP type " + object.type);
+            }
+            if (object.hasFlag(HAS_ATTR)) {
+                object.attributes = toMap(read());
+            }
+            return object;
+        }
+
+        /**
+         * @return the values of a pairlist, by tag
+         */
+        private static Map<String, RObject> toMap(RObject list) {
+            Map<String, RObject> map = new LinkedHashMap<>();
+            for (RObject node = list; node.type != NILVALUE_SXP; node = node.next) {
+                assertEquals(LISTSXP, node.type);
+                map.put(node.tag, (RObject) node.value);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Checks the header of the .RData file.
+     *
+     * @return the data frame saved in it, as "x"
+     */
+    private static RObject readDataFrame(byte[] gzipped) throws IOException {
+        byte[] data = new GZIPInputStream(new ByteArrayInputStream(gzipped)).readAllBytes();
+        assertEquals("RDX2\nX\n", new String(data, 0, 7, StandardCharsets.US_ASCII));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 7, data.length - 7));
+        // format version 2, written by R 3.6.0, readable by R 2.3.0
+        assertEquals(2, in.readInt());
+        assertEquals(0x030600, in.readInt());
+        assertEquals(0x020300, in.readInt());
+
+        RReader reader = new RReader(in);
+        RObject saved = reader.read();
+        assertEquals(LISTSXP, saved.type);
+        assertEquals(RDataFileWriter.DATA_FRAME_NAME, saved.tag);
+        // one object saved
+        assertEquals(NILVALUE_SXP, saved.next.type);
+        assertEquals(-1, in.read());
+
+        RObject frame = (RObject) saved.value;
+        assertEquals(VECSXP, frame.type);
+        assertTrue(frame.hasFlag(IS_OBJECT));
+        assertTrue(frame.hasFlag(HAS_ATTR));
+        assertArrayEquals(new String[]{"data.frame"}, (String[]) frame.attribute("class").value);
+        return frame;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<RObject> columns(RObject frame) {
+        return (List<RObject>) frame.value;
+    }
+
+    @Test
+    public void testWriteDataFrame() throws Exception {
+        Path tabFile = Files.writeString(tempDir.resolve("data.tab"), "id\tname\n1\t\"a\"\n2\t\"b \\\"c\\\"\"\n3\t\n");
+        RJobRequest request = new RJobRequest(List.of(
+                variable(1L, "id", DataVariable.VariableType.NUMERIC),
+                variable(2L, "name", DataVariable.VariableType.CHARACTER)), new HashMap<>());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TabularColumnFiles columns = new TabularColumnFiles(tabFile.toFile(), 2, true)) {
+            assertEquals(3, columns.getCaseCount());
+            new RDataFileWriter(request).write(columns, out);
+        }
+
+        byte[] data = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes();
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        assertTrue(text.startsWith("RDX2\nX\n"));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 7, data.length - 7));
+        assertEquals(2, in.readInt());
+        // the escapes of the tab file are resolved
+        assertTrue(text.contains("b \"c\""));
+        assertTrue(text.contains("data.frame"));
+        assertTrue(text.contains("Rsafe2raw"));
+
+        RObject frame = readDataFrame(out.toByteArray());
+        assertEquals(List.of("names", "row.names", "class", "var.type", "var.labels", "orig.names", "Rsafe2raw"),
+                new ArrayList<>(frame.attributes.keySet()));
+        assertArrayEquals(new String[]{"id", "name"}, (String[]) frame.attribute("names").value);
+        // the compact row names 1:3
+        RObject rowNames = frame.attribute("row.names");
+        assertEquals(INTSXP, rowNames.type);
+        assertArrayEquals(new int[]{RDataFileWriter.NA_INTEGER, -3}, (int[]) rowNames.value);
+        assertArrayEquals(new int[]{1, 0}, (int[]) frame.attribute("var.type").value);
+        assertArrayEquals(new String[]{"id label", "name label"}, (String[]) frame.attribute("var.labels").value);
+        RObject safeToRaw = frame.attribute("Rsafe2raw");
+        assertEquals(VECSXP, safeToRaw.type);
+        assertTrue(columns(safeToRaw).isEmpty());
+
+        List<RObject> columns = columns(frame);
+        assertEquals(2, columns.size());
+        RObject id = columns.get(0);
+        assertEquals(INTSXP, id.type);
+        assertFalse(id.hasFlag(IS_OBJECT));
+        assertArrayEquals(new int[]{1, 2, 3}, (int[]) id.value);
+        assertEquals(List.of("comment"), new ArrayList<>(id.attributes.keySet()));
+        assertArrayEquals(new String[]{"id label"}, (String[]) id.attribute("comment").value);
+        RObject name = columns.get(1);
+        assertEquals(STRSXP, name.type);
+        // the missing value is NA
+        assertArrayEquals(new String[]{"a", "b \"c\"", null}, (String[]) name.value);
+        assertArrayEquals(new String[]{"name label"}, (String[]) name.attribute("comment").value);
+    }
+
+    @Test
+    public void testWriteTypedColumns() throws Exception {
+        Path tabFile = Files.writeString(tempDir.resolve("data.tab"),
+                "grade\tscore\tflag\tday\n1\t1.5\t1\t\"2020-01-02\"\n3\tNA\t0\t\n4\t-2\t\t\"1970-01-02\"\n");
+        Map<String, Map<String, String>> valueTable = new HashMap<>();
+        valueTable.put("v1", Map.of("1", "low", "2", "mid", "3", "high"));
+        DataTable dataTable = new DataTable();
+        dataTable.setOriginalFileFormat("application/x-rlang-transport");
+        DataVariable flag = variable(3L, "flag", DataVariable.VariableType.NUMERIC);
+        flag.setFormatCategory("Boolean");
+        flag.setDataTable(dataTable);
+        DataVariable day = variable(4L, "day", DataVariable.VariableType.CHARACTER);
+        day.setFormatCategory("date");
+        day.setFormat("yyyy-MM-dd");
+        day.setDataTable(dataTable);
+        RJobRequest request = new RJobRequest(List.of(
+                variable(1L, "grade", DataVariable.VariableType.NUMERIC),
+                variable(2L, "score", DataVariable.VariableType.NUMERIC),
+                flag, day), valueTable);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TabularColumnFiles columns = new TabularColumnFiles(tabFile.toFile(), 4, true)) {
+            new RDataFileWriter(request).write(columns, out);
+        }
+
+        RObject frame = readDataFrame(out.toByteArray());
+        assertArrayEquals(new int[]{1, 1, 3, 1}, (int[]) frame.attribute("var.type").value);
+        List<RObject> columns = columns(frame);
+
+        // an ordered factor, with the labels as levels, in the order of the
+        // values; the values without a label are NA
+        RObject grade = columns.get(0);
+        assertEquals(INTSXP, grade.type);
+        assertTrue(grade.hasFlag(IS_OBJECT));
+        assertEquals(List.of("levels", "class", "comment"), new ArrayList<>(grade.attributes.keySet()));
+        assertArrayEquals(new String[]{"low", "mid", "high"}, (String[]) grade.attribute("levels").value);
+        assertArrayEquals(new String[]{"ordered", "factor"}, (String[]) grade.attribute("class").value);
+        assertArrayEquals(new int[]{1, 3, RDataFileWriter.NA_INTEGER}, (int[]) grade.value);
+
+        RObject score = columns.get(1);
+        assertEquals(REALSXP, score.type);
+        double[] scores = (double[]) score.value;
+        assertEquals(1.5, scores[0]);
+        assertEquals(Double.doubleToRawLongBits(RDataFileWriter.NA_REAL), Double.doubleToRawLongBits(scores[1]));
+        assertEquals(-2.0, scores[2]);
+
+        RObject logical = columns.get(2);
+        assertEquals(LGLSXP, logical.type);
+        assertArrayEquals(new int[]{1, 0, RDataFileWriter.NA_INTEGER}, (int[]) logical.value);
+
+        // the days since 1970-01-01, of class Date
+        RObject date = columns.get(3);
+        assertEquals(REALSXP, date.type);
+        assertTrue(date.hasFlag(IS_OBJECT));
+        assertArrayEquals(new String[]{"Date"}, (String[]) date.attribute("class").value);
+        double[] days = (double[]) date.value;
+        assertEquals(18263.0, days[0]);
+        assertEquals(Double.doubleToRawLongBits(RDataFileWriter.NA_REAL), Double.doubleToRawLongBits(days[1]));
+        assertEquals(1.0, days[2]);
+    }
+
+    @Test
+    public void testParseValues() {
+        assertEquals(12, RDataFileWriter.parseInteger("+12"));
+        assertEquals(RDataFileWriter.NA_INTEGER, RDataFileWriter.parseInteger("NA"));
+        assertEquals(RDataFileWriter.NA_INTEGER, RDataFileWriter.parseInteger("1.5"));
+        assertEquals(1.5, RDataFileWriter.parseReal("1.5"));
+        assertEquals(Double.NEGATIVE_INFINITY, RDataFileWriter.parseReal("-Inf"));
+        assertEquals(Double.doubleToRawLongBits(RDataFileWriter.NA_REAL), Double.doubleToRawLongBits(RDataFileWriter.parseReal("1d")));
+        assertEquals(1.0, RDataFileWriter.parseDate("1970-01-02"));
+        assertEquals(Double.doubleToRawLongBits(RDataFileWriter.NA_REAL), Double.doubleToRawLongBits(RDataFileWriter.parseDate("yesterday")));
+    }
+
+    private static DataVariable variable(Long id, String name, DataVariable.VariableType type) {
+        DataVariable variable = new DataVariable();
+        variable.setId(id);
+        variable.setName(name);
+        variable.setLabel(name + " label");
+        variable.setType(type);
+        variable.setInterval(DataVariable.VariableInterval.DISCRETE);
+        return variable;
+    }
+}
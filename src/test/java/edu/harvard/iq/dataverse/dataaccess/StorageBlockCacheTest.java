@@ -0,0 +1,147 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StorageBlockCacheTest {
+
+    private static final int BLOCK_SIZE = 1000;
+
+    @TempDir
+    Path directory;
+
+    private byte[] content;
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private final StorageBlockCache.RangeFetcher fetcher = (start, end) -> {
+        fetches.incrementAndGet();
+        return new ByteArrayInputStream(content, (int) start, (int) (end - start + 1));
+    };
+
+    @BeforeEach
+    public void setUp() {
+        content = new byte[3500];
+        new Random(42).nextBytes(content);
+        fetches.set(0);
+    }
+
+    @Test
+    public void testReadThrough() throws IOException {
+        StorageBlockCache cache = new StorageBlockCache(directory, 10 * BLOCK_SIZE, BLOCK_SIZE, 30);
+        StorageBlockCache.ObjectInfo info = new StorageBlockCache.ObjectInfo(content.length, "etag1");
+
+        try (InputStream in = cache.getInputStream("bucket/key", info, fetcher)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertEquals(4, fetches.get());
+        assertEquals(content.length, cache.getTotalSize());
+
+        // the second read is served from the cached blocks
+        try (InputStream in = cache.getInputStream("bucket/key", info, fetcher)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertEquals(4, fetches.get());
+
+        // a new version of the object is read again
+        try (InputStream in = cache.getInputStream("bucket/key", new StorageBlockCache.ObjectInfo(content.length, "etag2"), fetcher)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertEquals(8, fetches.get());
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        StorageBlockCache cache = new StorageBlockCache(directory, 10 * BLOCK_SIZE, BLOCK_SIZE, 30);
+        StorageBlockCache.ObjectInfo info = new StorageBlockCache.ObjectInfo(content.length, "etag1");
+
+        try (InputStream in = cache.getInputStream("bucket/key", info, fetcher)) {
+            assertEquals(2500, in.skip(2500));
+            byte[] bytes = in.readNBytes(100);
+            assertEquals(content[2500], bytes[0]);
+            assertEquals(content[2599], bytes[99]);
+        }
+        // only the block holding the bytes read was retrieved
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        StorageBlockCache cache = new StorageBlockCache(directory, 2 * BLOCK_SIZE, BLOCK_SIZE, 30);
+        StorageBlockCache.ObjectInfo info = new StorageBlockCache.ObjectInfo(content.length, "etag1");
+
+        try (InputStream in = cache.getInputStream("bucket/key", info, fetcher)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertTrue(cache.getTotalSize() <= 2 * BLOCK_SIZE);
+
+        // the evicted blocks are retrieved again
+        try (InputStream in = cache.getInputStream("bucket/key", info, fetcher)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertTrue(fetches.get() > 4);
+        assertTrue(cache.getTotalSize() <= 2 * BLOCK_SIZE);
+    }
+
+    @Test
+    public void testObjectInfo() throws IOException {
+        StorageBlockCache cache = new StorageBlockCache(directory, 2 * BLOCK_SIZE, BLOCK_SIZE, 30);
+        AtomicInteger lookups = new AtomicInteger();
+        StorageBlockCache.MetadataFetcher metadataFetcher = () -> {
+            lookups.incrementAndGet();
+            return StorageBlockCache.ObjectInfo.MISSING;
+        };
+
+        assertFalse(cache.getObjectInfo("bucket/key", metadataFetcher).exists());
+        assertFalse(cache.getObjectInfo("bucket/key", metadataFetcher).exists());
+        assertEquals(1, lookups.get());
+
+        cache.invalidate("bucket/key");
+        cache.getObjectInfo("bucket/key", metadataFetcher);
+        assertEquals(2, lookups.get());
+        assertFalse(StorageBlockCache.isCacheable(StorageBlockCache.ObjectInfo.MISSING));
+        assertFalse(StorageBlockCache.isCacheable(new StorageBlockCache.ObjectInfo(10, null)));
+    }
+
+    @Test
+    public void testModifiedObjectIsNotCached() throws IOException {
+        StorageBlockCache cache = new StorageBlockCache(directory, 10 * BLOCK_SIZE, BLOCK_SIZE, 30);
+        AtomicInteger lookups = new AtomicInteger();
+        StorageBlockCache.MetadataFetcher metadataFetcher = () -> {
+            lookups.incrementAndGet();
+            return new StorageBlockCache.ObjectInfo(content.length, "etag1");
+        };
+        StorageBlockCache.ObjectInfo info = cache.getObjectInfo("bucket/key", metadataFetcher);
+        StorageBlockCache.RangeFetcher staleFetcher = (start, end) -> {
+            fetches.incrementAndGet();
+            throw new StorageBlockCache.StaleObjectException("ETag is no longer etag1");
+        };
+
+        try (InputStream in = cache.getInputStream("bucket/key", info, staleFetcher)) {
+            assertThrows(StorageBlockCache.StaleObjectException.class, () -> in.read());
+        }
+        assertEquals(0, cache.getTotalSize());
+        // the metadata is retrieved again on the next access
+        cache.getObjectInfo("bucket/key", metadataFetcher);
+        assertEquals(2, lookups.get());
+
+        // and the block is fetched again, rather than served from the cache
+        try (InputStream in = cache.getInputStream("bucket/key", info, fetcher)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertEquals(5, fetches.get());
+    }
+}
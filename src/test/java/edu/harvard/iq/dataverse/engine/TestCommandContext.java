@@ -246,6 +246,11 @@ public class TestCommandContext implements CommandContext {
         return null;
     }
 
+    @Override
+    public DvObjectHierarchyServiceBean dvObjectHierarchy() {
+        return new DvObjectHierarchyServiceBean();
+    }
+
     @Override
     public void beginCommandSequence() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
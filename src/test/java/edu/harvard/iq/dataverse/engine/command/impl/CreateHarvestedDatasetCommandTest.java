@@ -0,0 +1,50 @@
+package edu.harvard.iq.dataverse.engine.command.impl;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.engine.TestCommandContext;
+import edu.harvard.iq.dataverse.engine.command.CommandContext;
+import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static edu.harvard.iq.dataverse.mocks.MocksFactory.makeDataset;
+import static edu.harvard.iq.dataverse.mocks.MocksFactory.makeRequest;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class CreateHarvestedDatasetCommandTest {
+
+    private Dataset dataset;
+    private IndexServiceBean indexService;
+    private CommandContext ctxt;
+
+    @BeforeEach
+    public void setUp() {
+        dataset = makeDataset();
+        indexService = mock(IndexServiceBean.class);
+        ctxt = new TestCommandContext() {
+            @Override
+            public IndexServiceBean index() {
+                return indexService;
+            }
+        };
+    }
+
+    @Test
+    public void testIndexedOnCreation() {
+        new CreateHarvestedDatasetCommand(dataset, makeRequest()).indexDataset(dataset, ctxt);
+
+        verify(indexService).asyncIndexDataset(dataset, true);
+    }
+
+    @Test
+    public void testDeferIndexing() {
+        // the harvester indexes the datasets of a run in batches instead
+        new CreateHarvestedDatasetCommand(dataset, makeRequest(), true).indexDataset(dataset, ctxt);
+
+        verify(indexService, never()).asyncIndexDataset(any(), anyBoolean());
+    }
+}
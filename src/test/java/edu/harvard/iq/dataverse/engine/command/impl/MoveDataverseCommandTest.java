@@ -1,8 +1,11 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
 import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetLinkingDataverse;
 import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DatasetLinkingServiceBean;
+import edu.harvard.iq.dataverse.DataverseLinkingDataverse;
 import edu.harvard.iq.dataverse.DataverseLinkingServiceBean;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.Guestbook;
@@ -19,6 +22,7 @@ import edu.harvard.iq.dataverse.engine.command.exception.PermissionException;
 import static edu.harvard.iq.dataverse.mocks.MocksFactory.makeAuthenticatedUser;
 import edu.harvard.iq.dataverse.search.IndexBatchServiceBean;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.util.BundleUtil;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -41,7 +45,12 @@ import org.junit.jupiter.api.Test;
 public class MoveDataverseCommandTest {
 
     Dataverse root, childA, childB, grandchildAA, childC, grandchildCC, childD, grandchildDD, childE, grandchildEE, childF;
-    Dataset datasetC, datasetCC;
+    Dataset datasetC, datasetCC, datasetAA;
+    // the links in the database
+    List<DataverseLinkingDataverse> dvLinks;
+    List<DatasetLinkingDataverse> dsLinks;
+    DataverseLinkingDataverse linkBtoAA, linkCtoAA;
+    DatasetLinkingDataverse linkBtoDatasetAA;
     Guestbook gbA;
     Template templateA;
     MetadataBlock mbA, mbB;
@@ -108,6 +117,26 @@ public class MoveDataverseCommandTest {
         datasetCC.setOwner(grandchildCC);
         datasetCC.setId(2l);
         
+        datasetAA = new Dataset();
+        datasetAA.setOwner(grandchildAA);
+        datasetAA.setId(3l);
+        
+        // Links: ChildB links GrandchildAA and its dataset, ChildC links GrandchildAA
+        linkBtoAA = new DataverseLinkingDataverse();
+        linkBtoAA.setId(1l);
+        linkBtoAA.setDataverse(grandchildAA);
+        linkBtoAA.setLinkingDataverse(childB);
+        linkCtoAA = new DataverseLinkingDataverse();
+        linkCtoAA.setId(2l);
+        linkCtoAA.setDataverse(grandchildAA);
+        linkCtoAA.setLinkingDataverse(childC);
+        linkBtoDatasetAA = new DatasetLinkingDataverse();
+        linkBtoDatasetAA.setId(1l);
+        linkBtoDatasetAA.setDataset(datasetAA);
+        linkBtoDatasetAA.setLinkingDataverse(childB);
+        dvLinks = new ArrayList<>();
+        dsLinks = new ArrayList<>();
+        
         // Guestbooks
         gbA= new Guestbook();
         gbA.setId(1l);
@@ -185,6 +214,9 @@ public class MoveDataverseCommandTest {
                             if ((Long)pk == 10) {
                                 return grandchildEE;
                             }
+                            if ((Long)pk == 4) {
+                                return grandchildAA;
+                            }
                         }
                         return new Dataverse();
                     }
@@ -199,6 +231,9 @@ public class MoveDataverseCommandTest {
                         if (dvId == 9){ 
                             fakeChildren.add(grandchildEE.getId());
                         }
+                        if (dvId == 2) {
+                            fakeChildren.add(grandchildAA.getId());
+                        }
                         return fakeChildren;
                     }
                     @Override
@@ -240,6 +275,10 @@ public class MoveDataverseCommandTest {
                     @Override
                     public void indexDataverseRecursively(Dataverse dataverse) {
 
+                    }
+                    @Override
+                    public void indexDataverseRecursively(Dataverse dataverse, List<Long> otherDatasetIds) {
+
                     }
                 };
 
@@ -261,6 +300,16 @@ public class MoveDataverseCommandTest {
                         }
                         return new Dataset();
                     }
+                    @Override
+                    public long countByOwnersWithGuestbookNotIn(List<Long> ownerIds, List<Long> guestbookIds) {
+                        return datasetsWithGuestbookNotIn(ownerIds, guestbookIds).size();
+                    }
+                    @Override
+                    public int removeGuestbooksNotIn(List<Long> ownerIds, List<Long> guestbookIds) {
+                        List<Dataset> datasets = datasetsWithGuestbookNotIn(ownerIds, guestbookIds);
+                        datasets.forEach(ds -> ds.setGuestbook(null));
+                        return datasets.size();
+                    }
                 };
             }
             @Override
@@ -270,12 +319,74 @@ public class MoveDataverseCommandTest {
             @Override
             public DataverseLinkingServiceBean dvLinking() {
                 return new DataverseLinkingServiceBean() {
-                    
+                    @Override
+                    public long countLinks(List<Long> dataverseIds, List<Long> linkingDataverseIds) {
+                        return dvLinks.stream().filter(l -> dataverseIds.contains(l.getDataverse().getId())
+                                && linkingDataverseIds.contains(l.getLinkingDataverse().getId())).count();
+                    }
+                    @Override
+                    public List<Long> deleteLinks(List<Long> dataverseIds, List<Long> linkingDataverseIds) {
+                        // like the bulk delete, leaves the collections of the entities alone
+                        List<Long> linkedIds = new ArrayList<>();
+                        dvLinks.removeIf(l -> {
+                            if (dataverseIds.contains(l.getDataverse().getId()) && linkingDataverseIds.contains(l.getLinkingDataverse().getId())) {
+                                linkedIds.add(l.getDataverse().getId());
+                                return true;
+                            }
+                            return false;
+                        });
+                        return linkedIds.stream().distinct().toList();
+                    }
+                };
+            }
+            @Override
+            public DatasetLinkingServiceBean dsLinking() {
+                return new DatasetLinkingServiceBean() {
+                    @Override
+                    public long countLinks(List<Long> datasetOwnerIds, List<Long> linkingDataverseIds) {
+                        return dsLinks.stream().filter(l -> datasetOwnerIds.contains(l.getDataset().getOwner().getId())
+                                && linkingDataverseIds.contains(l.getLinkingDataverse().getId())).count();
+                    }
+                    @Override
+                    public List<Long> deleteLinks(List<Long> datasetOwnerIds, List<Long> linkingDataverseIds) {
+                        List<Long> datasetIds = new ArrayList<>();
+                        dsLinks.removeIf(l -> {
+                            if (datasetOwnerIds.contains(l.getDataset().getOwner().getId()) && linkingDataverseIds.contains(l.getLinkingDataverse().getId())) {
+                                datasetIds.add(l.getDataset().getId());
+                                return true;
+                            }
+                            return false;
+                        });
+                        return datasetIds.stream().distinct().toList();
+                    }
                 };
             }
         });
     }
 
+    // the links, in the database and in the collections of the entities
+    private void addLinks() {
+        dvLinks.addAll(List.of(linkBtoAA, linkCtoAA));
+        dsLinks.add(linkBtoDatasetAA);
+        grandchildAA.setDataverseLinkingDataverses(new ArrayList<>(List.of(linkBtoAA, linkCtoAA)));
+        childB.setDataverseLinkedDataverses(new ArrayList<>(List.of(linkBtoAA)));
+        childC.setDataverseLinkedDataverses(new ArrayList<>(List.of(linkCtoAA)));
+        childB.setDatasetLinkingDataverses(new ArrayList<>(List.of(linkBtoDatasetAA)));
+        datasetAA.setDatasetLinkingDataverses(new ArrayList<>(List.of(linkBtoDatasetAA)));
+    }
+
+    // fake the set-based guestbook queries on the datasets
+    private List<Dataset> datasetsWithGuestbookNotIn(List<Long> ownerIds, List<Long> guestbookIds) {
+        List<Dataset> datasets = new ArrayList<>();
+        for (Dataset ds : Arrays.asList(datasetC, datasetCC)) {
+            if (ownerIds.contains(ds.getOwner().getId()) && ds.getGuestbook() != null
+                    && !guestbookIds.contains(ds.getGuestbook().getId())) {
+                datasets.add(ds);
+            }
+        }
+        return datasets;
+    }
+
     /**
      * Moving ChildB to ChildA
      * @throws Exception - should not throw an exception
@@ -444,4 +555,45 @@ public class MoveDataverseCommandTest {
                         new MoveDataverseCommand(aRequest, grandchildEE, childE, true));
         assertEquals( childE, grandchildEE.getOwner() );
     }
+
+    /**
+     * Moving ChildA to ChildB, which links GrandchildAA and its dataset
+     */
+    @Test
+    void testRemoveLinksWithoutForce() {
+        System.out.println("testRemoveLinksWithoutForce");
+        addLinks();
+        DataverseRequest aRequest = new DataverseRequest(auth, httpRequest);
+        IllegalCommandException e = assertThrows(IllegalCommandException.class,
+            () -> testEngine.submit(new MoveDataverseCommand(aRequest, childA, childB, null)));
+        assertTrue(e.getMessage().contains(BundleUtil.getStringFromBundle("dataverses.api.move.dataverse.error.dataverseLink")));
+        assertTrue(e.getMessage().contains(BundleUtil.getStringFromBundle("dataverses.api.move.dataverse.error.datasetLink")));
+        assertEquals( root, childA.getOwner() );
+        assertEquals(List.of(linkBtoAA, linkCtoAA), dvLinks);
+        assertEquals(List.of(linkBtoDatasetAA), dsLinks);
+        assertEquals(List.of(linkBtoAA, linkCtoAA), grandchildAA.getDataverseLinkingDataverses());
+    }
+
+    @Test
+    public void testRemoveLinks() throws Exception {
+        System.out.println("testRemoveLinks");
+        addLinks();
+        DataverseRequest aRequest = new DataverseRequest(auth, httpRequest);
+        testEngine.submit(
+                        new MoveDataverseCommand(aRequest, childA, childB, true));
+        assertEquals( childB, childA.getOwner() );
+        // only the links by the new owners are deleted, also from the entities
+        assertEquals(List.of(linkCtoAA), dvLinks);
+        assertTrue(dsLinks.isEmpty());
+        assertEquals(List.of(linkCtoAA), grandchildAA.getDataverseLinkingDataverses());
+        assertTrue(childB.getDataverseLinkedDataverses().isEmpty());
+        assertEquals(List.of(linkCtoAA), childC.getDataverseLinkedDataverses());
+        assertTrue(childB.getDatasetLinkingDataverses().isEmpty());
+
+        // move back
+        testEngine.submit(
+                        new MoveDataverseCommand(aRequest, childA, root, true));
+        assertEquals( root, childA.getOwner() );
+        assertEquals(List.of(linkCtoAA), dvLinks);
+    }
 }
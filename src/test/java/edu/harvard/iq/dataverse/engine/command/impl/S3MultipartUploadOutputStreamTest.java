@@ -0,0 +1,166 @@
+package edu.harvard.iq.dataverse.engine.command.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class S3MultipartUploadOutputStreamTest {
+
+    private static final int PART_SIZE = S3MultipartUploadOutputStream.DEFAULT_PART_SIZE;
+
+    private AmazonS3 s3;
+    // the content of the uploaded parts, in order
+    private final List<byte[]> parts = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        s3 = mock(AmazonS3.class);
+        InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("upload");
+        when(s3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+        when(s3.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            assertEquals("upload", request.getUploadId());
+            assertEquals(parts.size() + 1, request.getPartNumber());
+            byte[] content = request.getInputStream().readAllBytes();
+            assertEquals(request.getPartSize(), content.length);
+            parts.add(content);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag" + request.getPartNumber());
+            return result;
+        });
+        when(s3.completeMultipartUpload(any(CompleteMultipartUploadRequest.class))).thenReturn(new CompleteMultipartUploadResult());
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        return content;
+    }
+
+    @Test
+    public void testGetPartSize() {
+        assertEquals(PART_SIZE, S3MultipartUploadOutputStream.getPartSize(0));
+        assertEquals(PART_SIZE, S3MultipartUploadOutputStream.getPartSize(1024L * 1024 * 1024));
+        // 1 TB in 9000 parts
+        long terabyte = 1024L * 1024 * 1024 * 1024;
+        int partSize = S3MultipartUploadOutputStream.getPartSize(terabyte);
+        assertEquals(terabyte / 9000 + 1, partSize);
+        // capped
+        assertEquals(S3MultipartUploadOutputStream.MAX_PART_SIZE, S3MultipartUploadOutputStream.getPartSize(100 * terabyte));
+    }
+
+    @Test
+    public void testUploadsInParts() throws IOException {
+        byte[] content = content(2 * PART_SIZE + 1000);
+
+        try (S3MultipartUploadOutputStream out = new S3MultipartUploadOutputStream(s3, "bucket", "bag.zip", content.length)) {
+            // in writes that straddle the parts, and a single byte
+            out.write(content, 0, 1000);
+            out.write(content, 1000, content.length - 1001);
+            out.write(content[content.length - 1]);
+        }
+
+        assertEquals(3, parts.size());
+        assertEquals(PART_SIZE, parts.get(0).length);
+        assertEquals(PART_SIZE, parts.get(1).length);
+        assertEquals(1000, parts.get(2).length);
+        ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            uploaded.write(part);
+        }
+        assertArrayEquals(content, uploaded.toByteArray());
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3).completeMultipartUpload(complete.capture());
+        assertEquals("bucket", complete.getValue().getBucketName());
+        assertEquals("bag.zip", complete.getValue().getKey());
+        assertEquals("upload", complete.getValue().getUploadId());
+        List<String> etags = new ArrayList<>();
+        for (PartETag partETag : complete.getValue().getPartETags()) {
+            etags.add(partETag.getETag());
+        }
+        assertEquals(Arrays.asList("etag1", "etag2", "etag3"), etags);
+        verify(s3, never()).abortMultipartUpload(any());
+    }
+
+    @Test
+    public void testUploadsAnEmptyObject() throws IOException {
+        new S3MultipartUploadOutputStream(s3, "bucket", "bag.zip", 0).close();
+
+        assertEquals(1, parts.size());
+        assertEquals(0, parts.get(0).length);
+        verify(s3).completeMultipartUpload(any());
+    }
+
+    @Test
+    public void testAbortDeletesTheUploadedParts() throws IOException {
+        S3MultipartUploadOutputStream out = new S3MultipartUploadOutputStream(s3, "bucket", "bag.zip", 0);
+        out.write(content(PART_SIZE + 10));
+
+        out.abort();
+
+        assertEquals(1, parts.size());
+        ArgumentCaptor<AbortMultipartUploadRequest> abort = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(s3).abortMultipartUpload(abort.capture());
+        assertEquals("upload", abort.getValue().getUploadId());
+        // neither completed when closed, nor writable
+        out.close();
+        verify(s3, never()).completeMultipartUpload(any());
+        assertThrows(IOException.class, () -> out.write(1));
+    }
+
+    @Test
+    public void testAbortsWhenAPartFails() throws IOException {
+        S3MultipartUploadOutputStream out = new S3MultipartUploadOutputStream(s3, "bucket", "bag.zip", 0);
+        out.write(content(PART_SIZE));
+        doThrow(new SdkClientException("Connection reset")).when(s3).uploadPart(any(UploadPartRequest.class));
+        out.write(content(10));
+
+        assertThrows(IOException.class, out::close);
+
+        verify(s3).abortMultipartUpload(any());
+        verify(s3, never()).completeMultipartUpload(any());
+    }
+
+    @Test
+    public void testAbortsWhenTheCompletionFails() throws IOException {
+        doThrow(new SdkClientException("Internal error")).when(s3).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        S3MultipartUploadOutputStream out = new S3MultipartUploadOutputStream(s3, "bucket", "bag.zip", 0);
+        out.write(content(10));
+
+        assertThrows(IOException.class, out::close);
+
+        verify(s3).abortMultipartUpload(any());
+    }
+}
@@ -0,0 +1,63 @@
+package edu.harvard.iq.dataverse.export;
+
+import java.time.Instant;
+
+import jakarta.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExportAllProgressTest {
+
+    @Test
+    public void testStarted() {
+        JsonObject json = new ExportAllProgress(true, 3, 2).toJson().build();
+
+        assertTrue(json.getBoolean("forceReExport"));
+        assertEquals(2, json.getInt("threads"));
+        assertNotNull(Instant.parse(json.getString("started")));
+        assertEquals(3, json.getInt("total"));
+        assertEquals(0, json.getInt("processed"));
+        assertEquals(0, json.getInt("succeeded"));
+        assertEquals(0, json.getInt("failed"));
+        // nothing to estimate from yet
+        assertFalse(json.containsKey("estimatedSecondsRemaining"));
+        assertFalse(json.containsKey("finished"));
+    }
+
+    @Test
+    public void testInProgress() {
+        ExportAllProgress progress = new ExportAllProgress(false, 3, 2);
+        progress.succeeded();
+        progress.failed();
+
+        JsonObject json = progress.toJson().build();
+
+        assertFalse(json.getBoolean("forceReExport"));
+        assertEquals(2, json.getInt("processed"));
+        assertEquals(1, json.getInt("succeeded"));
+        assertEquals(1, json.getInt("failed"));
+        assertTrue(json.getJsonNumber("estimatedSecondsRemaining").longValue() >= 0);
+        assertFalse(json.containsKey("finished"));
+    }
+
+    @Test
+    public void testFinished() {
+        ExportAllProgress progress = new ExportAllProgress(false, 1, 2);
+        progress.succeeded();
+        progress.finish();
+
+        JsonObject json = progress.toJson().build();
+
+        assertTrue(progress.isFinished());
+        assertNull(progress.getEstimatedTimeRemaining());
+        assertEquals(1, json.getInt("processed"));
+        assertFalse(Instant.parse(json.getString("finished")).isBefore(Instant.parse(json.getString("started"))));
+        assertFalse(json.containsKey("estimatedSecondsRemaining"));
+    }
+}
@@ -0,0 +1,162 @@
+package edu.harvard.iq.dataverse.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.harvard.iq.dataverse.Dataset;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExportCacheTest {
+
+    @Test
+    public void testKeyFor() {
+        Dataset dataset = new Dataset();
+        assertNull(ExportCache.keyFor(dataset, "oai_ddi"));
+        dataset.setId(1L);
+        assertNull(ExportCache.keyFor(dataset, "oai_ddi"));
+        dataset.setLastExportTime(new Date(1000));
+        assertEquals(new ExportCache.Key(1L, "oai_ddi", 1000), ExportCache.keyFor(dataset, "oai_ddi"));
+    }
+
+    @Test
+    public void testMemory() throws IOException {
+        ExportCache cache = new ExportCache(1000, 100, null, 0);
+        ExportCache.Key key = new ExportCache.Key(1L, "oai_ddi", 1000);
+        byte[] export = bytes(50);
+
+        assertNull(cache.get(key));
+        try (InputStream in = cache.put(key, new ByteArrayInputStream(export))) {
+            assertArrayEquals(export, in.readAllBytes());
+        }
+        try (InputStream in = cache.get(key)) {
+            assertArrayEquals(export, in.readAllBytes());
+        }
+        // a new export time is a different export
+        assertNull(cache.get(new ExportCache.Key(1L, "oai_ddi", 2000)));
+
+        cache.invalidate(1L, "oai_ddi");
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testLargeExportWithoutDirectory() throws IOException {
+        ExportCache cache = new ExportCache(1000, 100, null, 0);
+        ExportCache.Key key = new ExportCache.Key(1L, "oai_ddi", 1000);
+        byte[] export = bytes(500);
+
+        try (InputStream in = cache.put(key, new ByteArrayInputStream(export))) {
+            assertArrayEquals(export, in.readAllBytes());
+        }
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getMemorySize());
+    }
+
+    @Test
+    public void testLargeExportOnDisk(@TempDir Path directory) throws IOException {
+        ExportCache cache = new ExportCache(1000, 100, directory, 1024 * 1024);
+        ExportCache.Key key = new ExportCache.Key(1L, "oai_ddi", 1000);
+        byte[] export = bytes(5000);
+
+        try (InputStream in = cache.put(key, new ByteArrayInputStream(export))) {
+            assertArrayEquals(export, in.readAllBytes());
+        }
+        try (InputStream in = cache.get(key)) {
+            assertNotNull(in);
+            assertArrayEquals(export, in.readAllBytes());
+        }
+        assertEquals(0, cache.getMemorySize());
+
+        cache.invalidate(1L, "oai_ddi");
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testMemoryLimit() throws IOException {
+        ExportCache cache = new ExportCache(1000, 100, null, 0);
+        for (long id = 0; id < 100; id++) {
+            cache.put(new ExportCache.Key(id, "oai_ddi", 1000), new ByteArrayInputStream(bytes(100))).close();
+        }
+        assertTrue(cache.getMemorySize() <= 1000);
+    }
+
+    @Test
+    public void testInvalidateOneExport(@TempDir Path directory) throws IOException {
+        ExportCache cache = new ExportCache(1000, 100, directory, 1024 * 1024);
+        ExportCache.Key ddi = new ExportCache.Key(1L, "oai_ddi", 1000);
+        ExportCache.Key newerDdi = new ExportCache.Key(1L, "oai_ddi", 2000);
+        ExportCache.Key dc = new ExportCache.Key(1L, "oai_dc", 1000);
+        ExportCache.Key otherDdi = new ExportCache.Key(2L, "oai_ddi", 1000);
+        cache.put(ddi, new ByteArrayInputStream(bytes(50))).close();
+        cache.put(newerDdi, new ByteArrayInputStream(bytes(5000))).close();
+        cache.put(dc, new ByteArrayInputStream(bytes(50))).close();
+        cache.put(otherDdi, new ByteArrayInputStream(bytes(5000))).close();
+        assertEquals(4, cache.getIndexedKeyCount());
+
+        cache.invalidate(1L, "oai_ddi");
+
+        // in memory and on disk
+        assertNull(cache.get(ddi));
+        assertNull(cache.get(newerDdi));
+        try (InputStream in = cache.get(dc)) {
+            assertNotNull(in);
+        }
+        try (InputStream in = cache.get(otherDdi)) {
+            assertNotNull(in);
+        }
+        assertEquals(2, cache.getIndexedKeyCount());
+    }
+
+    @Test
+    public void testEvictedKeysNotIndexed() throws IOException {
+        ExportCache cache = new ExportCache(1000, 100, null, 0);
+        for (long id = 0; id < 100; id++) {
+            cache.put(new ExportCache.Key(id, "oai_ddi", 1000), new ByteArrayInputStream(bytes(100))).close();
+        }
+        // only the exports that fit in memory are left
+        assertTrue(cache.getIndexedKeyCount() <= 10);
+    }
+
+    @Test
+    public void testNextEmbargoEnd() throws IOException {
+        ExportCache cache = new ExportCache(1000, 100, null, 0);
+        AtomicInteger scans = new AtomicInteger();
+        LocalDate end = LocalDate.of(2030, 1, 1);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Optional.of(end), cache.getNextEmbargoEnd(1L, 1000, () -> {
+                scans.incrementAndGet();
+                return Optional.of(end);
+            }));
+        }
+        assertEquals(1, scans.get());
+        // after a new export, the files are scanned again
+        cache.getNextEmbargoEnd(1L, 2000, () -> {
+            scans.incrementAndGet();
+            return Optional.empty();
+        });
+        assertEquals(2, scans.get());
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+}
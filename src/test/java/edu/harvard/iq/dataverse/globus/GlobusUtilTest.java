@@ -21,9 +21,13 @@ import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.GlobusAccessibleStore;
 import edu.harvard.iq.dataverse.mocks.MocksFactory;
 import edu.harvard.iq.dataverse.pidproviders.doi.AbstractDOIProvider;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
 import edu.harvard.iq.dataverse.util.json.JsonUtil;
 import jakarta.json.JsonObject;
 
+@LocalJvmSettings
 public class GlobusUtilTest {
 
     private Dataset dataset;
@@ -85,4 +89,16 @@ public class GlobusUtilTest {
         assertEquals(jo.getString(Long.toString(mDatafile.getId())), "d7c42580-6538-4605-9ad8-116a61982644/hdc1/10.5072/F2ABCDEF/182ad2bda2f-c3508e719076");
         assertEquals(jo.getString(Long.toString(rDatafile.getId())), logoPath);
     }
+
+    @Test
+    public void testGetTransferApiUrlDefault() {
+        assertEquals(GlobusUtil.DEFAULT_TRANSFER_API_URL, GlobusUtil.getTransferApiUrl());
+        assertEquals(GlobusUtil.DEFAULT_AUTH_API_URL, GlobusUtil.getAuthApiUrl());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.GLOBUS_TRANSFER_API_URL, value = "http://localhost:8999/v0.10/")
+    public void testGetTransferApiUrlOverridden() {
+        assertEquals("http://localhost:8999/v0.10", GlobusUtil.getTransferApiUrl());
+    }
 }
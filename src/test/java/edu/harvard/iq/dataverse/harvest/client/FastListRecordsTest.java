@@ -0,0 +1,129 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FastListRecordsTest {
+
+    private static final String OAI_HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\" xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\" "
+            + "xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><responseDate>2024-01-01T00:00:00Z</responseDate>"
+            + "<request verb=\"ListRecords\">http://localhost/oai</request>";
+
+    private static final String PAGE_1 = OAI_HEAD + "<ListRecords>"
+            + "<record><header><identifier>doi:10.5072/FK2/AAAAAA</identifier><datestamp>2024-01-02</datestamp><setSpec>s</setSpec></header>"
+            + "<metadata><oai_dc:dc><dc:title>First</dc:title><dc:identifier>doi:10.5072/FK2/AAAAAA</dc:identifier></oai_dc:dc></metadata>"
+            + "<about><provenance><identifier>other</identifier></provenance></about></record>"
+            + "<record><header status=\"deleted\"><identifier>doi:10.5072/FK2/BBBBBB</identifier><datestamp>2024-01-03T10:00:00Z</datestamp></header></record>"
+            + "<resumptionToken cursor=\"0\">page/2:x</resumptionToken></ListRecords></OAI-PMH>";
+
+    private static final String PAGE_2 = OAI_HEAD + "<ListRecords>"
+            + "<record><header><identifier>doi:10.5072/FK2/CCCCCC</identifier><datestamp>2024-01-04</datestamp></header>"
+            + "<metadata><oai_dc:dc><dc:title>Third</dc:title></oai_dc:dc></metadata></record>"
+            + "<resumptionToken cursor=\"2\"/></ListRecords></OAI-PMH>";
+
+    private HttpServer server;
+    private final AtomicInteger failuresToSimulate = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/oai", exchange -> {
+            requests.incrementAndGet();
+            String query = exchange.getRequestURI().getQuery();
+            String body;
+            if (query.contains("resumptionToken=page/2:x")) {
+                if (failuresToSimulate.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                body = PAGE_2;
+            } else if (query.contains("metadataPrefix=oai_dc")) {
+                body = PAGE_1;
+            } else {
+                body = OAI_HEAD + "<error code=\"cannotDisseminateFormat\">no such format</error></OAI-PMH>";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/oai";
+    }
+
+    @Test
+    public void testListRecordsPages() throws Exception {
+        // the second page fails once, and is retried
+        failuresToSimulate.set(1);
+        FastListRecords listRecords = new FastListRecords(new OaiHandler(baseUrl(), "oai_dc"), HttpClient.newHttpClient(), 1);
+
+        List<HarvestedRecord> page = listRecords.nextPage();
+        assertEquals(2, page.size());
+
+        HarvestedRecord first = page.get(0);
+        assertEquals("doi:10.5072/FK2/AAAAAA", first.identifier());
+        assertFalse(first.deleted());
+        assertNull(first.errorMessage());
+        assertEquals(FastListRecords.parseDateStamp("2024-01-02"), first.dateStamp());
+        String metadata = Files.readString(first.metadataFile().toPath());
+        assertTrue(metadata.contains("First"));
+        // the namespaces declared on the OAI-PMH element are declared in the copy
+        assertTrue(metadata.contains("http://www.openarchives.org/OAI/2.0/oai_dc/"));
+        assertTrue(metadata.contains("http://purl.org/dc/elements/1.1/"));
+        assertFalse(metadata.contains("metadata>"));
+        first.discard();
+
+        HarvestedRecord second = page.get(1);
+        assertEquals("doi:10.5072/FK2/BBBBBB", second.identifier());
+        assertTrue(second.deleted());
+        assertNull(second.metadataFile());
+
+        page = listRecords.nextPage();
+        assertEquals(1, page.size());
+        assertEquals("doi:10.5072/FK2/CCCCCC", page.get(0).identifier());
+        page.get(0).discard();
+        assertEquals(3, requests.get());
+
+        assertNull(listRecords.nextPage());
+    }
+
+    @Test
+    public void testOaiErrorIsNotRetried() throws Exception {
+        FastListRecords listRecords = new FastListRecords(new OaiHandler(baseUrl(), "oai_ddi"), HttpClient.newHttpClient(), 3);
+
+        IOException ex = assertThrows(IOException.class, listRecords::nextPage);
+        assertTrue(ex.getMessage().contains("cannotDisseminateFormat"));
+        assertEquals(1, requests.get());
+    }
+}
@@ -0,0 +1,287 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.api.imports.ImportServiceBean;
+import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
+import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@LocalJvmSettings
+public class HarvesterServiceBeanTest {
+
+    private static final String OAI_HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\"><responseDate>2024-01-01T00:00:00Z</responseDate>";
+
+    private static final String ID_A = "doi:10.5072/FK2/AAAAAA";
+    private static final String ID_B = "doi:10.5072/FK2/BBBBBB";
+    private static final String ID_C = "doi:10.5072/FK2/CCCCCC";
+
+    private HttpServer server;
+    // the identifiers listed by ListIdentifiers; the deleted ones, and the
+    // GetRecord failures and delays to simulate, by identifier
+    private final List<String> identifiers = new ArrayList<>();
+    private final Set<String> deleted = new HashSet<>();
+    private final Map<String, AtomicInteger> failuresToSimulate = new ConcurrentHashMap<>();
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> getRecordRequests = new ConcurrentHashMap<>();
+
+    private ExecutorService threads;
+    private HarvesterServiceBean harvesterService;
+    private HarvestingClient harvestingClient;
+    private final Logger hdLogger = Logger.getLogger(HarvesterServiceBeanTest.class.getCanonicalName());
+    private final HarvestThroughput throughput = new HarvestThroughput();
+    // the imported records: identifier -> content of the metadata file
+    private final Map<String, String> imported = new LinkedHashMap<>();
+    private final List<File> importedFiles = new ArrayList<>();
+
+    private final List<String> failedIdentifiers = new ArrayList<>();
+    private final List<String> deletedIdentifiers = new ArrayList<>();
+    private final List<Long> harvestedDatasetIds = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/oai", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            String body;
+            if (query.contains("verb=ListIdentifiers")) {
+                StringBuilder headers = new StringBuilder();
+                for (String identifier : identifiers) {
+                    headers.append(deleted.contains(identifier) ? "<header status=\"deleted\">" : "<header>")
+                            .append("<identifier>").append(identifier).append("</identifier>")
+                            .append("<datestamp>2024-01-02T00:00:00Z</datestamp></header>");
+                }
+                body = OAI_HEAD + "<request verb=\"ListIdentifiers\">http://localhost/oai</request><ListIdentifiers>"
+                        + headers + "</ListIdentifiers></OAI-PMH>";
+            } else {
+                String identifier = query.substring(query.indexOf("identifier=") + "identifier=".length(), query.indexOf("&metadataPrefix"));
+                getRecordRequests.computeIfAbsent(identifier, id -> new AtomicInteger()).incrementAndGet();
+                if (failuresToSimulate.getOrDefault(identifier, new AtomicInteger()).getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                if (delays.containsKey(identifier)) {
+                    try {
+                        Thread.sleep(delays.get(identifier));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                // the metadata section on lines of its own, as FastGetRecord expects
+                body = OAI_HEAD + "<request verb=\"GetRecord\">http://localhost/oai</request><GetRecord><record><header>"
+                        + "<identifier>" + identifier + "</identifier><datestamp>2024-01-02T00:00:00Z</datestamp></header><metadata>\n"
+                        + "<oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+                        + "<dc:title>Title of " + identifier + "</dc:title></oai_dc:dc>\n"
+                        + "</metadata></record></GetRecord></OAI-PMH>\n";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+
+        // the managed executor, on threads of the test
+        threads = Executors.newCachedThreadPool();
+        harvesterService = new HarvesterServiceBean();
+        harvesterService.executor = mock(ManagedExecutorService.class);
+        doAnswer(invocation -> {
+            threads.execute(invocation.getArgument(0));
+            return null;
+        }).when(harvesterService.executor).execute(any(Runnable.class));
+
+        harvesterService.importService = mock(ImportServiceBean.class);
+        when(harvesterService.importService.doImportHarvestedDataset(any(), any(), anyString(), anyString(), any(File.class), any(Date.class), any()))
+                .thenAnswer(invocation -> {
+                    String identifier = invocation.getArgument(2);
+                    File metadataFile = invocation.getArgument(4);
+                    imported.put(identifier, Files.readString(metadataFile.toPath()));
+                    importedFiles.add(metadataFile);
+                    Dataset dataset = new Dataset();
+                    dataset.setId((long) imported.size());
+                    return dataset;
+                });
+        harvesterService.datasetService = mock(DatasetServiceBean.class);
+        harvesterService.indexService = mock(IndexServiceBean.class);
+
+        harvestingClient = new HarvestingClient();
+        harvestingClient.setName("test");
+        harvestingClient.setHarvestingUrl("http://localhost:" + server.getAddress().getPort() + "/oai");
+        harvestingClient.setMetadataPrefix("oai_dc");
+        harvestingClient.setDataverse(new Dataverse());
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        server.stop(0);
+        threads.shutdownNow();
+        threads.awaitTermination(10, TimeUnit.SECONDS);
+        System.clearProperty("com.sun.aas.instanceRoot");
+    }
+
+    private void harvest() throws Exception {
+        harvesterService.harvestWithGetRecord(null, harvestingClient, hdLogger, new PrintWriter(new StringWriter()),
+                new OaiHandler(harvestingClient), HttpClient.newHttpClient(), throughput,
+                failedIdentifiers, deletedIdentifiers, harvestedDatasetIds);
+    }
+
+    private static Set<Path> listTempFiles() throws IOException {
+        Set<Path> tempFiles = new HashSet<>();
+        try (var paths = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            paths.filter(path -> path.getFileName().toString().matches("meta.*\\.tmp")).forEach(tempFiles::add);
+        }
+        return tempFiles;
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.HARVEST_CLIENT_FETCH_RETRIES, value = "1")
+    public void testHarvestWithGetRecord() throws Exception {
+        identifiers.addAll(List.of(ID_A, ID_B, ID_C));
+        deleted.add(ID_B);
+        // the first record fails once, and is retried
+        failuresToSimulate.put(ID_A, new AtomicInteger(1));
+        Dataset deletedDataset = new Dataset();
+        when(harvesterService.datasetService.getDatasetByHarvestInfo(any(Dataverse.class), eq(ID_B))).thenReturn(deletedDataset);
+
+        harvest();
+
+        // imported in the order they were listed
+        assertEquals(Arrays.asList(ID_A, ID_C), new ArrayList<>(imported.keySet()));
+        assertTrue(imported.get(ID_A).contains("Title of " + ID_A));
+        assertTrue(imported.get(ID_C).contains("Title of " + ID_C));
+        assertEquals(Arrays.asList(1L, 2L), harvestedDatasetIds);
+        assertEquals(List.of(ID_B), deletedIdentifiers);
+        verify(harvesterService.datasetService).deleteHarvestedDataset(deletedDataset, null, hdLogger);
+        assertTrue(failedIdentifiers.isEmpty());
+
+        // the deleted record is not retrieved
+        assertEquals(2, getRecordRequests.get(ID_A).get());
+        assertEquals(1, getRecordRequests.get(ID_C).get());
+        assertFalse(getRecordRequests.containsKey(ID_B));
+        assertEquals(2, throughput.getRecordsRetrieved());
+        assertEquals(1, throughput.toJson().build().getInt("retrievalRetries"));
+        assertEquals(2, throughput.getDatasetsImported());
+
+        // the temp files are deleted once imported
+        for (File metadataFile : importedFiles) {
+            assertFalse(metadataFile.exists());
+        }
+    }
+
+    @Test
+    public void testFetchRecordRetries() throws Exception {
+        failuresToSimulate.put(ID_A, new AtomicInteger(2));
+
+        HarvestedRecord record = harvesterService.fetchRecord(hdLogger, new OaiHandler(harvestingClient), ID_A, new Date(), HttpClient.newHttpClient(), 2, throughput);
+
+        assertNull(record.errorMessage());
+        assertTrue(Files.readString(record.metadataFile().toPath()).contains("Title of " + ID_A));
+        record.discard();
+        assertEquals(3, getRecordRequests.get(ID_A).get());
+        assertEquals(2, throughput.toJson().build().getInt("retrievalRetries"));
+    }
+
+    @Test
+    public void testFetchRecordGivesUp() throws Exception {
+        failuresToSimulate.put(ID_A, new AtomicInteger(5));
+
+        HarvestedRecord record = harvesterService.fetchRecord(hdLogger, new OaiHandler(harvestingClient), ID_A, new Date(), HttpClient.newHttpClient(), 1, throughput);
+
+        assertTrue(record.errorMessage().contains("503"));
+        assertNull(record.metadataFile());
+        assertEquals(2, getRecordRequests.get(ID_A).get());
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.HARVEST_CLIENT_FETCH_RETRIES, value = "0")
+    public void testAFailedRecordIsNotImported() throws Exception {
+        identifiers.addAll(List.of(ID_A, ID_C));
+        failuresToSimulate.put(ID_A, new AtomicInteger(1));
+
+        harvest();
+
+        assertEquals(List.of(ID_C), new ArrayList<>(imported.keySet()));
+        assertEquals(List.of(ID_A), failedIdentifiers);
+    }
+
+    @Test
+    public void testStoppedHarvestDiscardsTheRetrievedRecords(@TempDir Path instanceRoot) throws Exception {
+        for (int i = 0; i < 6; i++) {
+            identifiers.add("doi:10.5072/FK2/STOP0" + i);
+        }
+        // still being retrieved when the harvest is stopped
+        delays.put("doi:10.5072/FK2/STOP05", 1000L);
+        Files.createDirectories(instanceRoot.resolve("logs"));
+        System.setProperty("com.sun.aas.instanceRoot", instanceRoot.toString());
+        Path stopFile = instanceRoot.resolve("logs").resolve("stopharvest_test." + ProcessHandle.current().pid());
+        // the harvest is stopped once the first record is imported
+        doAnswer(invocation -> {
+            Files.createFile(stopFile);
+            return null;
+        }).when(harvesterService.importService).doImportHarvestedDataset(any(), any(), anyString(), anyString(), any(File.class), any(Date.class), any());
+        Set<Path> tempFiles = listTempFiles();
+
+        assertThrows(StopHarvestException.class, this::harvest);
+
+        verify(harvesterService.importService, times(1)).doImportHarvestedDataset(any(), any(), anyString(), anyString(), any(File.class), any(Date.class), any());
+        assertFalse(Files.exists(stopFile));
+        // once the retrievals still running are done, none of their temp files is left
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+        Set<Path> leftOver = listTempFiles();
+        leftOver.removeAll(tempFiles);
+        assertEquals(Set.of(), leftOver);
+    }
+}
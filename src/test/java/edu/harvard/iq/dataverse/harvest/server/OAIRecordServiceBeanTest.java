@@ -0,0 +1,214 @@
+package edu.harvard.iq.dataverse.harvest.server;
+
+import edu.harvard.iq.dataverse.pidproviders.PidUtil;
+import edu.harvard.iq.dataverse.pidproviders.doi.UnmanagedDOIProvider;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OAIRecordServiceBeanTest {
+
+    private static final Logger logger = Logger.getLogger(OAIRecordServiceBeanTest.class.getCanonicalName());
+
+    private static final Date EXPORTED = new Date(2000000);
+    private static final Date BEFORE_EXPORT = new Date(1000000);
+    private static final Date AFTER_EXPORT = new Date(3000000);
+
+    private OAIRecordServiceBean serviceBean;
+
+    // the published and exported datasets, by id: protocol, authority, identifier
+    private final Map<Long, Object[]> exportedDatasets = new HashMap<>();
+    // the records of the set: id, global id, last update time, removed
+    private final List<Object[]> records = new ArrayList<>();
+    // the ids passed to the queries, by query
+    private final Map<String, List<Object>> queryIds = new HashMap<>();
+
+    @BeforeAll
+    public static void setUpClass() {
+        PidUtil.clearPidProviders();
+        PidUtil.addAllToUnmanagedProviderList(List.of(new UnmanagedDOIProvider()));
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        PidUtil.clearPidProviders();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        serviceBean = new OAIRecordServiceBean();
+        serviceBean.em = mock(EntityManager.class);
+
+        when(serviceBean.em.createQuery(anyString(), eq(Object[].class))).thenAnswer(invocation -> {
+            String jpql = invocation.getArgument(0);
+            TypedQuery<Object[]> query = mock(TypedQuery.class, RETURNS_SELF);
+            List<Object> ids = new ArrayList<>();
+            when(query.setParameter(eq("ids"), any())).thenAnswer(set -> {
+                ids.addAll(set.getArgument(1));
+                queryIds.computeIfAbsent(jpql, k -> new ArrayList<>()).addAll(set.getArgument(1));
+                return query;
+            });
+            when(query.getResultList()).thenAnswer(get -> {
+                if (jpql.contains("FROM OAIRecord")) {
+                    return records;
+                }
+                List<Object[]> found = new ArrayList<>();
+                for (Map.Entry<Long, Object[]> dataset : exportedDatasets.entrySet()) {
+                    Object[] pid = dataset.getValue();
+                    if (jpql.contains("o.id IN") ? ids.contains(dataset.getKey()) : ids.contains(pid[2])) {
+                        found.add(new Object[] { dataset.getKey(), pid[0], pid[1], pid[2], EXPORTED });
+                    }
+                }
+                return found;
+            });
+            return query;
+        });
+        when(serviceBean.em.createQuery(anyString())).thenAnswer(invocation -> {
+            String jpql = invocation.getArgument(0);
+            Query query = mock(Query.class, RETURNS_SELF);
+            when(query.setParameter(eq("ids"), any())).thenAnswer(set -> {
+                queryIds.computeIfAbsent(jpql, k -> new ArrayList<>()).addAll(set.getArgument(1));
+                return query;
+            });
+            return query;
+        });
+        EntityManagerFactory emf = mock(EntityManagerFactory.class);
+        when(emf.getCache()).thenReturn(mock(Cache.class));
+        when(serviceBean.em.getEntityManagerFactory()).thenReturn(emf);
+    }
+
+    private void addDataset(long id, String identifier) {
+        exportedDatasets.put(id, new Object[] { "doi", "10.5072", identifier });
+    }
+
+    private void addRecord(long id, String identifier, Date lastUpdateTime, boolean removed) {
+        records.add(new Object[] { id, "doi:10.5072/" + identifier, lastUpdateTime, removed });
+    }
+
+    /**
+     * @return the ids of the records updated with these assignments
+     */
+    private Set<Object> updated(String assignments) {
+        List<Object> ids = queryIds.get("UPDATE OAIRecord r SET " + assignments + " WHERE r.id IN :ids");
+        return ids == null ? Set.of() : new HashSet<>(ids);
+    }
+
+    /**
+     * @return the ids (or identifiers) the datasets were looked up with
+     */
+    private Set<Object> lookedUp(String condition) {
+        Set<Object> ids = new HashSet<>();
+        queryIds.forEach((jpql, values) -> {
+            if (jpql.contains("FROM Dataset o") && jpql.contains(condition)) {
+                ids.addAll(values);
+            }
+        });
+        return ids;
+    }
+
+    @Test
+    public void testCreatesRecordsForNewMembers() {
+        addDataset(1L, "FK2/AAAAAA");
+        addDataset(2L, "FK2/BBBBBB");
+        addDataset(3L, "FK2/CCCCCC");
+
+        serviceBean.updateOaiRecords("set", List.of(1L, 2L, 4L), new Date(), false, true, logger);
+
+        ArgumentCaptor<OAIRecord> created = ArgumentCaptor.forClass(OAIRecord.class);
+        verify(serviceBean.em, times(2)).persist(created.capture());
+        Set<String> globalIds = new HashSet<>();
+        for (OAIRecord record : created.getAllValues()) {
+            assertEquals("set", record.getSetName());
+            assertFalse(record.isRemoved());
+            globalIds.add(record.getGlobalId());
+        }
+        assertEquals(Set.of("doi:10.5072/FK2/AAAAAA", "doi:10.5072/FK2/BBBBBB"), globalIds);
+        // only the candidates are looked up
+        assertEquals(Set.of(1L, 2L, 4L), lookedUp("o.id IN :ids"));
+    }
+
+    @Test
+    public void testUndeletesAndUpdatesExistingRecords() {
+        addDataset(1L, "FK2/AAAAAA");
+        addDataset(2L, "FK2/BBBBBB");
+        addDataset(3L, "FK2/CCCCCC");
+        addRecord(10L, "FK2/AAAAAA", AFTER_EXPORT, true);
+        addRecord(20L, "FK2/BBBBBB", BEFORE_EXPORT, false);
+        addRecord(30L, "FK2/CCCCCC", AFTER_EXPORT, false);
+
+        serviceBean.updateOaiRecords("set", List.of(1L, 2L, 3L), new Date(), false, true, logger);
+
+        verify(serviceBean.em, never()).persist(any());
+        assertEquals(Set.of(10L), updated("r.removed = false, r.lastUpdateTime = :time"));
+        assertEquals(Set.of(20L), updated("r.lastUpdateTime = :time"));
+        assertTrue(updated("r.removed = true, r.lastUpdateTime = :time").isEmpty());
+    }
+
+    @Test
+    public void testRemovesRecordsNotInTheConfirmedSet() {
+        addDataset(1L, "FK2/AAAAAA");
+        addDataset(3L, "FK2/CCCCCC");
+        addRecord(10L, "FK2/AAAAAA", AFTER_EXPORT, false);
+        // still published and exported, but no longer in the set
+        addRecord(30L, "FK2/CCCCCC", AFTER_EXPORT, false);
+        addRecord(40L, "FK2/DDDDDD", AFTER_EXPORT, false);
+        addRecord(50L, "FK2/EEEEEE", AFTER_EXPORT, true);
+
+        serviceBean.updateOaiRecords("set", List.of(1L), new Date(), false, true, logger);
+
+        assertEquals(Set.of(30L, 40L), updated("r.removed = true, r.lastUpdateTime = :time"));
+        // no need to check whether the records left are still exported
+        assertEquals(Set.of(1L), lookedUp("o.id IN :ids"));
+        assertTrue(lookedUp("o.identifier IN :ids").isEmpty());
+    }
+
+    @Test
+    public void testKeepsRecordsOfExportedDatasetsInAnUnconfirmedSet() {
+        addDataset(1L, "FK2/AAAAAA");
+        addDataset(3L, "FK2/CCCCCC");
+        addRecord(10L, "FK2/AAAAAA", AFTER_EXPORT, false);
+        // still published and exported: may just be missing from the index
+        addRecord(30L, "FK2/CCCCCC", AFTER_EXPORT, false);
+        addRecord(40L, "FK2/DDDDDD", AFTER_EXPORT, false);
+        addRecord(50L, "FK2/EEEEEE", AFTER_EXPORT, true);
+
+        serviceBean.updateOaiRecords("set", List.of(1L), new Date(), false, false, logger);
+
+        assertEquals(Set.of(40L), updated("r.removed = true, r.lastUpdateTime = :time"));
+        assertNull(queryIds.get("UPDATE OAIRecord r SET r.lastUpdateTime = :time WHERE r.id IN :ids"));
+        // only the datasets of the records left over are looked up
+        assertEquals(Set.of("FK2/CCCCCC", "FK2/DDDDDD"), lookedUp("o.identifier IN :ids"));
+    }
+}
@@ -0,0 +1,81 @@
+package edu.harvard.iq.dataverse.makedatacount;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MakeDataCountLogWriterServiceBeanTest {
+
+    private static final String HEADER = "#Fields: a\tb\n";
+
+    @TempDir
+    Path logDir;
+
+    private final MakeDataCountLogWriterServiceBean writer = new MakeDataCountLogWriterServiceBean();
+
+    @AfterEach
+    public void tearDown() {
+        writer.shutdown();
+    }
+
+    @Test
+    public void testLinesAreWrittenWithHeaderOnDrain() throws IOException {
+        writer.append(logDir.toString(), "counter_2024-01-01.log", HEADER, "1\t2\n");
+        writer.append(logDir.toString(), "counter_2024-01-01.log", HEADER, "3\t4\n");
+        Path logFile = logDir.resolve("counter_2024-01-01.log");
+        assertFalse(Files.exists(logFile));
+
+        writer.drain();
+        assertEquals(List.of("#Fields: a\tb", "1\t2", "3\t4"), Files.readAllLines(logFile, StandardCharsets.UTF_8));
+
+        writer.append(logDir.toString(), "counter_2024-01-01.log", HEADER, "5\t6\n");
+        writer.drain();
+        assertEquals(List.of("#Fields: a\tb", "1\t2", "3\t4", "5\t6"), Files.readAllLines(logFile, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRotation() throws IOException {
+        writer.append(logDir.toString(), "counter_2024-01-01.log", HEADER, "1\n");
+        writer.append(logDir.toString(), "counter_2024-01-02.log", HEADER, "2\n");
+        writer.drain();
+
+        assertEquals(List.of("#Fields: a\tb", "1"), Files.readAllLines(logDir.resolve("counter_2024-01-01.log")));
+        assertEquals(List.of("#Fields: a\tb", "2"), Files.readAllLines(logDir.resolve("counter_2024-01-02.log")));
+    }
+
+    @Test
+    public void testMissingDirectoryIsCreated() throws IOException {
+        Path subDir = logDir.resolve("mdc");
+        writer.append(subDir.toString(), "counter.log", null, "1\n");
+        writer.drain();
+        assertEquals(List.of("1"), Files.readAllLines(subDir.resolve("counter.log")));
+    }
+
+    @Test
+    public void testConcurrentLinesDoNotInterleave() throws Exception {
+        String line = "x".repeat(1000) + "\n";
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 800; i++) {
+            executor.submit(() -> writer.append(logDir.toString(), "counter.log", null, line));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        writer.drain();
+
+        List<String> lines = Files.readAllLines(logDir.resolve("counter.log"));
+        assertEquals(800, lines.size());
+        assertTrue(lines.stream().allMatch(l -> l.length() == 1000));
+        assertEquals(0, writer.getDroppedCount());
+    }
+}
@@ -0,0 +1,137 @@
+package edu.harvard.iq.dataverse.metrics;
+
+import edu.harvard.iq.dataverse.Metric;
+import edu.harvard.iq.dataverse.metrics.MetricsRefreshServiceBean.Expiry;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricsRefreshServiceBeanTest {
+
+    private MetricsRefreshServiceBean refreshSvc;
+    private MetricsServiceBean metricsSvc;
+    private ManagedScheduledExecutorService scheduler;
+    private ExecutorService threads;
+
+    @BeforeEach
+    public void setUp() {
+        metricsSvc = mock(MetricsServiceBean.class);
+        scheduler = mock(ManagedScheduledExecutorService.class);
+        refreshSvc = new MetricsRefreshServiceBean();
+        refreshSvc.metricsSvc = metricsSvc;
+        refreshSvc.scheduler = scheduler;
+        threads = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void testCalculatesAndSavesMissingMetric() {
+        AtomicInteger queries = new AtomicInteger();
+
+        String value = refreshSvc.get("filesToMonth", "2024-05", null, null, Expiry.MONTHLY, () -> {
+            queries.incrementAndGet();
+            return "{\"count\":42}";
+        });
+
+        assertEquals("{\"count\":42}", value);
+        assertEquals(1, queries.get());
+        verify(metricsSvc).save(any(Metric.class));
+    }
+
+    @Test
+    public void testReturnsCachedMetric() {
+        Metric cached = new Metric("filesToMonth", "2024-05", null, null, "{\"count\":41}");
+        when(metricsSvc.getMetric(eq("filesToMonth"), isNull(), eq("2024-05"), isNull())).thenReturn(cached);
+        when(metricsSvc.doWeQueryAgainMonthly(cached)).thenReturn(false);
+        AtomicInteger queries = new AtomicInteger();
+
+        String value = refreshSvc.get("filesToMonth", "2024-05", null, null, Expiry.MONTHLY, () -> {
+            queries.incrementAndGet();
+            return "{\"count\":42}";
+        });
+
+        assertEquals("{\"count\":41}", value);
+        assertEquals(0, queries.get());
+        verify(scheduler, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testReturnsExpiredMetricAndRefreshesInBackground() {
+        Metric cached = new Metric("files", null, null, null, "[]");
+        when(metricsSvc.getMetric(eq("files"), isNull(), isNull(), isNull())).thenReturn(cached);
+        when(metricsSvc.doWeQueryAgainAllTime(cached)).thenReturn(true);
+        AtomicInteger queries = new AtomicInteger();
+
+        String value = refreshSvc.get("files", null, null, null, Expiry.ALL_TIME, () -> {
+            queries.incrementAndGet();
+            return "[{\"date\":\"2024-05\",\"count\":1}]";
+        });
+
+        assertEquals("[]", value);
+        assertEquals(0, queries.get());
+        verify(scheduler).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneQuery() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger queries = new AtomicInteger();
+
+        Future<String> first = threads.submit(() -> refreshSvc.get("downloads", null, null, null, Expiry.ALL_TIME, () -> {
+            queries.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "[1]";
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        AtomicReference<Thread> secondThread = new AtomicReference<>();
+        Future<String> second = threads.submit(() -> {
+            secondThread.set(Thread.currentThread());
+            return refreshSvc.get("downloads", null, null, null, Expiry.ALL_TIME, () -> {
+                queries.incrementAndGet();
+                return "[2]";
+            });
+        });
+        // wait for the second request to be waiting for the first one
+        long deadline = System.currentTimeMillis() + 10000;
+        while (secondThread.get() == null || secondThread.get().getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertEquals("[1]", first.get(10, TimeUnit.SECONDS));
+        assertEquals("[1]", second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, queries.get());
+        verify(metricsSvc, times(1)).save(any(Metric.class));
+    }
+}
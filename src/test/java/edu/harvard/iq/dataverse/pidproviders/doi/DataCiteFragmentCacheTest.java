@@ -0,0 +1,66 @@
+package edu.harvard.iq.dataverse.pidproviders.doi;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetVersion;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataCiteFragmentCacheTest {
+
+    private Dataset dataset;
+    private DatasetVersion version;
+
+    @BeforeEach
+    public void setUp() {
+        DataCiteFragmentCache.invalidateAll();
+        dataset = new Dataset();
+        dataset.setId(42L);
+        version = new DatasetVersion();
+        version.setId(7L);
+        version.setLastUpdateTime(new Date(1000L));
+    }
+
+    @Test
+    public void testFragmentIsRenderedOncePerVersion() {
+        AtomicInteger renderings = new AtomicInteger();
+        DataCiteFragmentCache.Key key = DataCiteFragmentCache.keyFor(DataCiteFragmentCache.CREATORS, dataset, version);
+
+        for (int i = 0; i < 5; i++) {
+            String fragment = DataCiteFragmentCache.getFragment(key, () -> {
+                renderings.incrementAndGet();
+                return "<creators></creators>";
+            });
+            assertEquals("<creators></creators>", fragment);
+        }
+        assertEquals(1, renderings.get());
+        assertEquals(1, DataCiteFragmentCache.size());
+
+        // An edit of the version produces a new key:
+        version.setLastUpdateTime(new Date(2000L));
+        DataCiteFragmentCache.Key newKey = DataCiteFragmentCache.keyFor(DataCiteFragmentCache.CREATORS, dataset, version);
+        assertNotEquals(key, newKey);
+        DataCiteFragmentCache.getFragment(newKey, () -> {
+            renderings.incrementAndGet();
+            return "<creators><creator></creator></creators>";
+        });
+        assertEquals(2, renderings.get());
+    }
+
+    @Test
+    public void testUnsavedObjectsAreNotCached() {
+        assertNull(DataCiteFragmentCache.keyFor(DataCiteFragmentCache.CREATORS, new Dataset(), version));
+        assertNull(DataCiteFragmentCache.keyFor(DataCiteFragmentCache.CREATORS, dataset, new DatasetVersion()));
+
+        AtomicInteger renderings = new AtomicInteger();
+        DataCiteFragmentCache.getFragment(null, () -> "x" + renderings.incrementAndGet());
+        DataCiteFragmentCache.getFragment(null, () -> "x" + renderings.incrementAndGet());
+        assertEquals(2, renderings.get());
+        assertEquals(0, DataCiteFragmentCache.size());
+    }
+}
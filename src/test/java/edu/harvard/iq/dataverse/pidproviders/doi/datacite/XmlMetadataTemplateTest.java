@@ -1,8 +1,10 @@
 package edu.harvard.iq.dataverse.pidproviders.doi.datacite;
 
+import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetAuthor;
 import edu.harvard.iq.dataverse.DatasetField;
+import edu.harvard.iq.dataverse.DatasetFieldCompoundValue;
 import edu.harvard.iq.dataverse.DatasetFieldConstant;
 import edu.harvard.iq.dataverse.DatasetFieldType;
 import edu.harvard.iq.dataverse.DatasetFieldType.FieldType;
@@ -15,6 +17,7 @@ import edu.harvard.iq.dataverse.branding.BrandingUtil;
 import edu.harvard.iq.dataverse.dataset.DatasetType;
 import edu.harvard.iq.dataverse.pidproviders.PidProviderFactoryBean;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
+import edu.harvard.iq.dataverse.pidproviders.doi.DataCiteFragmentCache;
 import edu.harvard.iq.dataverse.pidproviders.doi.DoiMetadata;
 import edu.harvard.iq.dataverse.pidproviders.doi.XmlMetadataTemplate;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
@@ -28,6 +31,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -146,4 +150,114 @@ public class XmlMetadataTemplateTest {
         
     }
 
+    /**
+     * The dataset-level sections of the DataCite XML of a file are cached (see
+     * DataCiteFragmentCache): the document must be the same as without the
+     * cache, also after the dataset has been edited or published.
+     */
+    @Test
+    public void testDataFileXMLWithCachedFragments() {
+        DataCiteFragmentCache.invalidateAll();
+
+        Dataset d = new Dataset();
+        d.setId(1L);
+        d.setGlobalId(new GlobalId("doi", "10.5072", "FK2/ABCDEF", null, null, null));
+        DatasetType dType = new DatasetType();
+        dType.setName(DatasetType.DATASET_TYPE_DATASET);
+        d.setDatasetType(dType);
+        // the draft is the latest version, the funders are taken from the released one
+        DatasetVersion released = makeVersion(d, 1L, VersionState.RELEASED, "First Funder");
+        released.setVersionNumber(1L);
+        released.setMinorVersionNumber(0L);
+        DatasetVersion draft = makeVersion(d, 2L, VersionState.DRAFT, "Second Funder");
+        d.setVersions(new ArrayList<>(List.of(draft, released)));
+
+        DataFile df = Mockito.mock(DataFile.class);
+        Mockito.when(df.getGlobalId()).thenReturn(new GlobalId("doi", "10.5072", "FK2/ABCDEF/F1", null, null, null));
+        Mockito.when(df.getOwner()).thenReturn(d);
+
+        DoiMetadata doiMetadata = new DoiMetadata();
+        doiMetadata.setTitle("A Title");
+        doiMetadata.setPublisher("Dataverse");
+        doiMetadata.setAuthors(List.of(makeAuthor("Alice")));
+        doiMetadata.setAuthorsVersion(draft);
+
+        String xml = generateFileXML(doiMetadata, df);
+        assertTrue(xml.contains("Alice"));
+        assertTrue(xml.contains("First Funder"));
+        assertFalse(xml.contains("Second Funder"));
+        // the second time, the fragments come from the cache
+        assertEquals(xml, generateFileXML(doiMetadata, df));
+
+        // editing the draft
+        doiMetadata.setAuthors(List.of(makeAuthor("Bob")));
+        draft.setLastUpdateTime(new Date(2000L));
+        xml = generateFileXML(doiMetadata, df);
+        assertTrue(xml.contains("Bob"));
+        assertFalse(xml.contains("Alice"));
+        assertTrue(xml.contains("First Funder"));
+
+        // publishing it: the funders are now taken from the new version
+        draft.setVersionState(VersionState.RELEASED);
+        draft.setVersionNumber(2L);
+        draft.setMinorVersionNumber(0L);
+        draft.setLastUpdateTime(new Date(3000L));
+        xml = generateFileXML(doiMetadata, df);
+        assertTrue(xml.contains("Second Funder"));
+        assertFalse(xml.contains("First Funder"));
+    }
+
+    /**
+     * @return the DataCite XML of the file, after checking that it's the same
+     *         as the one generated without the cached fragments
+     */
+    private static String generateFileXML(DoiMetadata doiMetadata, DataFile df) {
+        String xml = new XmlMetadataTemplate(doiMetadata).generateXML(df);
+        DataCiteFragmentCache.invalidateAll();
+        String uncachedXml = new XmlMetadataTemplate(doiMetadata).generateXML(df);
+        assertEquals(uncachedXml, xml);
+        // as it would be cached, for the next call
+        assertEquals(xml, new XmlMetadataTemplate(doiMetadata).generateXML(df));
+        return xml;
+    }
+
+    private static DatasetVersion makeVersion(Dataset d, Long id, VersionState state, String funder) {
+        DatasetVersion dv = new DatasetVersion();
+        dv.setId(id);
+        dv.setDataset(d);
+        dv.setVersionState(state);
+        dv.setLastUpdateTime(new Date(1000L));
+        TermsOfUseAndAccess toa = new TermsOfUseAndAccess();
+        toa.setTermsOfUse("Some terms");
+        dv.setTermsOfUseAndAccess(toa);
+
+        DatasetField contributor = new DatasetField();
+        contributor.setDatasetFieldType(new DatasetFieldType(DatasetFieldConstant.contributor, FieldType.NONE, true));
+        DatasetFieldCompoundValue value = new DatasetFieldCompoundValue();
+        value.setParentDatasetField(contributor);
+        value.setChildDatasetFields(List.of(
+                makePrimitive(DatasetFieldConstant.contributorName, funder),
+                makePrimitive(DatasetFieldConstant.contributorType, "Funder")));
+        contributor.setDatasetFieldCompoundValues(List.of(value));
+        contributor.setDatasetVersion(dv);
+        dv.setDatasetFields(new ArrayList<>(List.of(contributor)));
+        return dv;
+    }
+
+    private static DatasetAuthor makeAuthor(String name) {
+        DatasetAuthor author = new DatasetAuthor();
+        author.setName(makePrimitive(DatasetFieldConstant.authorName, name));
+        author.setAffiliation(makePrimitive(DatasetFieldConstant.authorAffiliation, "Harvard University"));
+        return author;
+    }
+
+    private static DatasetField makePrimitive(String fieldName, String value) {
+        DatasetFieldType type = new DatasetFieldType(fieldName, FieldType.TEXT, false);
+        type.setDisplayFormat("#VALUE");
+        DatasetField field = new DatasetField();
+        field.setDatasetFieldType(type);
+        field.setSingleValue(value);
+        return field;
+    }
+
 }
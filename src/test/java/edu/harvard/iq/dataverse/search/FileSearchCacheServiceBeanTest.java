@@ -0,0 +1,93 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.Dataset;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@LocalJvmSettings
+public class FileSearchCacheServiceBeanTest {
+
+    private Dataset dataset;
+    private DatasetVersion version;
+
+    @BeforeEach
+    public void setUp() {
+        dataset = new Dataset();
+        dataset.setId(1L);
+        dataset.setIndexTime(new Timestamp(1000L));
+        version = new DatasetVersion();
+        version.setId(2L);
+        version.setDataset(dataset);
+        version.setLastUpdateTime(new Date(500L));
+    }
+
+    private static FileSearchCacheServiceBean makeCache() {
+        FileSearchCacheServiceBean cache = new FileSearchCacheServiceBean();
+        cache.init();
+        return cache;
+    }
+
+    @Test
+    public void testPutAndGet() {
+        FileSearchCacheServiceBean cache = makeCache();
+        FileSearchCacheServiceBean.Key key = cache.keyFor(version, null, null, null, null);
+        assertNull(cache.get(key));
+
+        cache.put(key, Set.of(3L, 4L), Map.of("fileAccess", List.of(new FacetLabel("Public", 2L))));
+
+        FileSearchCacheServiceBean.Result result = cache.get(cache.keyFor(version, "", null, null, null));
+        assertNotNull(result);
+        assertEquals(Set.of(3L, 4L), result.fileIds());
+        assertEquals(1, result.facetLabels().get("fileAccess").size());
+        assertNull(cache.get(cache.keyFor(version, "data", null, null, null)));
+        assertNull(cache.get(cache.keyFor(version, null, "Tabular", null, null)));
+    }
+
+    @Test
+    public void testReindexedDatasetIsNotServedFromCache() {
+        FileSearchCacheServiceBean cache = makeCache();
+        cache.put(cache.keyFor(version, null, null, null, null), Set.of(3L), Map.of());
+
+        dataset.setIndexTime(new Timestamp(2000L));
+        assertNull(cache.get(cache.keyFor(version, null, null, null, null)));
+    }
+
+    @Test
+    public void testInvalidateDataset() {
+        FileSearchCacheServiceBean cache = makeCache();
+        FileSearchCacheServiceBean.Key key = cache.keyFor(version, null, null, null, null);
+        cache.put(key, Set.of(3L), Map.of());
+
+        cache.invalidateDataset(1L);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testUnindexedVersionIsNotCached() {
+        FileSearchCacheServiceBean cache = makeCache();
+        dataset.setIndexTime(null);
+        assertNull(cache.keyFor(version, null, null, null, null));
+    }
+
+    @Test
+    @JvmSetting(key = JvmSettings.SOLR_FILE_SEARCH_CACHE_SIZE, value = "0")
+    public void testDisabled() {
+        FileSearchCacheServiceBean cache = makeCache();
+        FileSearchCacheServiceBean.Key key = cache.keyFor(version, null, null, null, null);
+        cache.put(key, Set.of(3L), Map.of());
+        assertNull(cache.get(key));
+    }
+}
@@ -4,6 +4,7 @@ import edu.harvard.iq.dataverse.*;
 import edu.harvard.iq.dataverse.Dataverse.DataverseType;
 import edu.harvard.iq.dataverse.branding.BrandingUtil;
 import edu.harvard.iq.dataverse.dataset.DatasetType;
+import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
 import edu.harvard.iq.dataverse.mocks.MocksFactory;
 import edu.harvard.iq.dataverse.pidproviders.doi.AbstractDOIProvider;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
@@ -11,12 +12,14 @@ import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import edu.harvard.iq.dataverse.util.testing.JvmSetting;
 import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.common.SolrInputDocument;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -26,9 +29,12 @@ import java.io.IOException;
 import java.util.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @LocalJvmSettings
 @ExtendWith(MockitoExtension.class)
@@ -53,6 +59,7 @@ public class IndexServiceBeanTest {
         indexService.dataverseService = Mockito.mock(DataverseServiceBean.class);
         indexService.datasetFieldService = Mockito.mock(DatasetFieldServiceBean.class);
         indexService.datasetVersionService = Mockito.mock(DatasetVersionServiceBean.class);
+        indexService.dvObjectHierarchy = Mockito.mock(DvObjectHierarchyServiceBean.class);
         BrandingUtil.injectServices(indexService.dataverseService, indexService.settingsService);
 
         Mockito.when(indexService.dataverseService.findRootDataverse()).thenReturn(dataverse);
@@ -128,6 +135,43 @@ public class IndexServiceBeanTest {
         assertTrue(!doc.get().containsKey("geolocation"));
         assertTrue(!doc.get().containsKey("boundingBox"));
     }
+    @Test
+    public void testDeleteHarvestedDocumentsInChunks() throws SolrServerException, IOException {
+        HarvestingClient harvestingClient = new HarvestingClient();
+        harvestingClient.setId(1L);
+        harvestingClient.setName("harvested");
+        // 1500 datasets and 1001 files: three queries of 1000, 1000 and 501 ids
+        List<Long> datasetIds = LongStream.rangeClosed(1, 1500).boxed().collect(Collectors.toList());
+        List<Long> fileIds = LongStream.rangeClosed(1501, 2501).boxed().collect(Collectors.toList());
+        indexService.datasetService = Mockito.mock(DatasetServiceBean.class);
+        indexService.dataFileService = Mockito.mock(DataFileServiceBean.class);
+        indexService.solrClientService = Mockito.mock(SolrClientService.class);
+        SolrClient solrClient = Mockito.mock(SolrClient.class);
+        Mockito.when(indexService.datasetService.findIdsByHarvestingClient(1L)).thenReturn(datasetIds);
+        Mockito.when(indexService.dataFileService.findHarvestedFileIdsByClient(harvestingClient)).thenReturn(fileIds);
+        Mockito.when(indexService.solrClientService.getSolrClient()).thenReturn(solrClient);
+
+        indexService.deleteHarvestedDocuments(harvestingClient);
+
+        ArgumentCaptor<String> queries = ArgumentCaptor.forClass(String.class);
+        verify(solrClient, times(6)).deleteByQuery(queries.capture());
+        String chunk1 = joinIds(1, 1000);
+        String chunk2 = joinIds(1001, 2000);
+        String chunk3 = joinIds(2001, 2501);
+        assertEquals(List.of(
+                "{!terms f=" + SearchFields.ENTITY_ID + "}" + chunk1,
+                "{!terms f=" + SearchFields.DEFINITION_POINT_DVOBJECT_ID + "}" + chunk1,
+                "{!terms f=" + SearchFields.ENTITY_ID + "}" + chunk2,
+                "{!terms f=" + SearchFields.DEFINITION_POINT_DVOBJECT_ID + "}" + chunk2,
+                "{!terms f=" + SearchFields.ENTITY_ID + "}" + chunk3,
+                "{!terms f=" + SearchFields.DEFINITION_POINT_DVOBJECT_ID + "}" + chunk3),
+                queries.getAllValues());
+    }
+
+    private static String joinIds(long first, long last) {
+        return LongStream.rangeClosed(first, last).mapToObj(Long::toString).collect(Collectors.joining(","));
+    }
+
     private DatasetField constructBoundingBoxValue(String datasetFieldTypeName, String value) {
         DatasetField retVal = new DatasetField();
         retVal.setDatasetFieldType(new DatasetFieldType(datasetFieldTypeName, DatasetFieldType.FieldType.TEXT, false));
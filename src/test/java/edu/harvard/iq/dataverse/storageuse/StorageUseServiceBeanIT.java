@@ -0,0 +1,193 @@
+package edu.harvard.iq.dataverse.storageuse;
+
+import edu.harvard.iq.dataverse.util.testing.Tags;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the native queries of {@link StorageUseServiceBean} against a
+ * PostgreSQL database with the relevant parts of the schema: a root
+ * collection (1) containing a collection (2) with two datasets (3 and 4).
+ */
+@Tag(Tags.INTEGRATION_TEST)
+@Tag(Tags.USES_TESTCONTAINERS)
+@Testcontainers(disabledWithoutDocker = true)
+class StorageUseServiceBeanIT {
+
+    private static final String DEADLOCK_DETECTED = "40P01";
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16");
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS dvobject, storageuse, storageusedelta");
+            statement.execute("CREATE TABLE dvobject (id BIGINT PRIMARY KEY, owner_id BIGINT)");
+            statement.execute("CREATE TABLE storageuse (id SERIAL PRIMARY KEY, dvobjectcontainer_id BIGINT NOT NULL, sizeinbytes BIGINT)");
+            statement.execute("CREATE TABLE storageusedelta (id SERIAL PRIMARY KEY, dvobjectcontainer_id BIGINT NOT NULL, sizedelta BIGINT NOT NULL)");
+            statement.execute("INSERT INTO dvobject VALUES (1, NULL), (2, 1), (3, 2), (4, 2)");
+            statement.execute("INSERT INTO storageuse (dvobjectcontainer_id, sizeinbytes) VALUES (1, 0), (2, 0), (3, 0), (4, 0)");
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+    }
+
+    private static long queryLong(Connection connection, String query) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(query)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static long storageSize(Long id) throws SQLException {
+        try (Connection connection = connect()) {
+            return queryLong(connection, StorageUseServiceBean.getStorageSizeQuery(id));
+        }
+    }
+
+    private static long recordedSize(Long id) throws SQLException {
+        try (Connection connection = connect()) {
+            return queryLong(connection, "SELECT sizeinbytes FROM storageuse WHERE dvobjectcontainer_id=" + id);
+        }
+    }
+
+    private static long pendingDeltas() throws SQLException {
+        try (Connection connection = connect()) {
+            return queryLong(connection, "SELECT COUNT(*) FROM storageusedelta");
+        }
+    }
+
+    private static int increment(Long id, Long increment, boolean journal) throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            return statement.executeUpdate(StorageUseServiceBean.getIncrementQuery(id, increment, journal));
+        }
+    }
+
+    private static int rollUp() throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            return statement.executeUpdate(StorageUseServiceBean.ROLL_UP_QUERY);
+        }
+    }
+
+    @Test
+    void testJournalAndRollUp() throws SQLException {
+        // one delta for the dataset and each of its ancestors
+        assertEquals(3, increment(3L, 100L, true));
+        assertEquals(3, increment(4L, 10L, true));
+        assertEquals(3, increment(4L, 20L, true));
+
+        // the pending deltas are counted, before the records are updated
+        assertEquals(0, recordedSize(1L));
+        assertEquals(130, storageSize(1L));
+        assertEquals(130, storageSize(2L));
+        assertEquals(100, storageSize(3L));
+        assertEquals(30, storageSize(4L));
+
+        // summed up by container, one update per record
+        assertEquals(4, rollUp());
+        assertEquals(0, pendingDeltas());
+        assertEquals(130, recordedSize(1L));
+        assertEquals(130, recordedSize(2L));
+        assertEquals(100, recordedSize(3L));
+        assertEquals(30, recordedSize(4L));
+        assertEquals(130, storageSize(1L));
+
+        // nothing left to roll up
+        assertEquals(0, rollUp());
+        assertEquals(130, recordedSize(1L));
+    }
+
+    @Test
+    void testDirectIncrement() throws SQLException {
+        assertEquals(3, increment(3L, 100L, false));
+
+        assertEquals(0, pendingDeltas());
+        assertEquals(100, recordedSize(1L));
+        assertEquals(100, recordedSize(3L));
+        assertEquals(0, recordedSize(4L));
+    }
+
+    @Test
+    void testIncrementsDoNotWaitForEachOther() throws SQLException {
+        try (Connection first = connect(); Connection second = connect()) {
+            first.setAutoCommit(false);
+            try (Statement statement = first.createStatement()) {
+                statement.executeUpdate(StorageUseServiceBean.getIncrementQuery(3L, 100L, true));
+            }
+            // while the first upload is not committed, a second one into the
+            // same collection goes through, instead of waiting on the
+            // records of the shared ancestors
+            try (Statement statement = second.createStatement()) {
+                statement.execute("SET lock_timeout = '2s'");
+                assertEquals(3, statement.executeUpdate(StorageUseServiceBean.getIncrementQuery(4L, 10L, true)));
+            }
+            first.commit();
+        }
+        assertEquals(110, storageSize(1L));
+    }
+
+    @Test
+    void testConcurrentIncrementsAndRollUps() throws Exception {
+        int increments = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < increments; i++) {
+                Long dataset = i % 2 == 0 ? 3L : 4L;
+                futures.add(executor.submit(() -> increment(dataset, 1L, true)));
+                if (i % 20 == 0) {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            return rollUp();
+                        } catch (SQLException e) {
+                            // two roll-ups may deadlock on the records; as in
+                            // StorageUseRollUpServiceBean, the aborted one is
+                            // rolled back and its deltas are left for the next
+                            if (!DEADLOCK_DETECTED.equals(e.getSQLState())) {
+                                throw e;
+                            }
+                            return 0;
+                        }
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // every delta is counted exactly once, rolled up or not
+        assertEquals(increments, storageSize(1L));
+        assertEquals(increments / 2, storageSize(3L));
+
+        rollUp();
+        assertEquals(0, pendingDeltas());
+        assertEquals(increments, recordedSize(1L));
+        assertEquals(increments, recordedSize(2L));
+        assertEquals(increments / 2, recordedSize(3L));
+        assertEquals(increments / 2, recordedSize(4L));
+    }
+}
@@ -0,0 +1,128 @@
+package edu.harvard.iq.dataverse.util;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BoundedExecutorTest {
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void testRunsAtMostMaxRunningTasksAtATime() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(threads, 2, 100);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(() -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, maxActive.get());
+    }
+
+    @Test
+    public void testRejectsTasksBeyondTheQueue() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(threads, 1, 2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.execute(done::countDown);
+        executor.execute(done::countDown);
+        assertEquals(2, executor.getQueued());
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(done::countDown));
+
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // room again, once the queue has been worked through
+        CountDownLatch later = new CountDownLatch(1);
+        executor.execute(later::countDown);
+        assertTrue(later.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testKeepsRunningAfterAFailedTask() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(threads, 1, 10);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            throw new IllegalStateException("failed");
+        });
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownDropsTheQueuedTasks() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(threads, 1, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger run = new AtomicInteger();
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.execute(run::incrementAndGet);
+        executor.execute(run::incrementAndGet);
+
+        List<Runnable> dropped = executor.shutdown();
+
+        assertEquals(2, dropped.size());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(run::incrementAndGet));
+        release.countDown();
+        Thread.sleep(50);
+        assertEquals(0, run.get());
+    }
+
+    @Test
+    public void testRejectedByTheUnderlyingExecutor() {
+        BoundedExecutor executor = new BoundedExecutor(task -> {
+            throw new RejectedExecutionException("stopped");
+        }, 1, 10);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        assertEquals(0, executor.getQueued());
+    }
+}
@@ -0,0 +1,165 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import edu.harvard.iq.dataverse.pidproviders.PidUtil;
+import edu.harvard.iq.dataverse.pidproviders.doi.UnmanagedDOIProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BagGeneratorTest {
+
+    private static final String DATASET_ID = "doi:10.5072/FK2/ABCDEF";
+
+    // the files of the dataset: @id -> name, content
+    private final Map<String, String[]> files = new HashMap<>();
+    // the hashes the ORE map records for them, when not that of their content
+    private final Map<String, String> recordedHashes = new HashMap<>();
+    private final Map<String, DataFile> dataFiles = new HashMap<>();
+
+    @BeforeAll
+    public static void setUpClass() {
+        PidUtil.clearPidProviders();
+        PidUtil.addAllToUnmanagedProviderList(List.of(new UnmanagedDOIProvider()));
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        PidUtil.clearPidProviders();
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        addFile(DATASET_ID + "/F1", "a.txt", "first file");
+        addFile(DATASET_ID + "/F2", "b.txt", "second file");
+    }
+
+    private void addFile(String id, String name, String content) throws IOException {
+        files.put(id, new String[] { name, content });
+        StorageIO<DataFile> storageIO = mock(StorageIO.class);
+        when(storageIO.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        DataFile dataFile = mock(DataFile.class);
+        when(dataFile.getStorageIO()).thenReturn(storageIO);
+        dataFiles.put(id, dataFile);
+    }
+
+    private OREMap makeOREMap() {
+        JsonArrayBuilder aggregates = Json.createArrayBuilder();
+        JsonArrayBuilder hasPart = Json.createArrayBuilder();
+        files.forEach((id, file) -> {
+            String hash = recordedHashes.getOrDefault(id, DigestUtils.md5Hex(file[1]));
+            aggregates.add(Json.createObjectBuilder()
+                    .add("@id", id)
+                    .add("schema:name", file[0])
+                    .add("schema:sameAs", "https://localhost/api/access/datafile/" + file[0])
+                    .add("schema:fileFormat", "text/plain")
+                    .add("dvcore:filesize", file[1].length())
+                    .add("dvcore:checksum", Json.createObjectBuilder().add("@type", "MD5").add("@value", hash)));
+            hasPart.add(id);
+        });
+        JsonObjectBuilder aggregation = Json.createObjectBuilder()
+                .add("@id", DATASET_ID)
+                .add("schema:name", "Test dataset")
+                .add("schema:version", "1.0")
+                .add("ore:aggregates", aggregates)
+                .add("schema:hasPart", hasPart);
+        JsonObject oreMap = Json.createObjectBuilder().add("ore:describes", aggregation).build();
+
+        OREMap oremap = mock(OREMap.class);
+        when(oremap.getOREMap()).thenReturn(oreMap);
+        when(oremap.getDataFilesByResourceId()).thenReturn(dataFiles);
+        return oremap;
+    }
+
+    /**
+     * @return the content of the entries of the zip, by path within the bag
+     */
+    private static Map<String, String> readZip(byte[] zip) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                String name = entry.getName();
+                entries.put(name.substring(name.indexOf('/') + 1), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void testWritesTheFilesFromStorage() throws Exception {
+        BagGenerator bagger = new BagGenerator(makeOREMap(), "<resource/>");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertTrue(bagger.generateBag(out));
+
+        Map<String, String> entries = readZip(out.toByteArray());
+        assertEquals("first file", entries.get("data/Test dataset/a.txt"));
+        assertEquals("second file", entries.get("data/Test dataset/b.txt"));
+        String manifest = entries.get("manifest-md5.txt");
+        assertNotNull(manifest);
+        assertTrue(manifest.contains(DigestUtils.md5Hex("first file") + " data/Test dataset/a.txt"));
+        assertTrue(manifest.contains(DigestUtils.md5Hex("second file") + " data/Test dataset/b.txt"));
+        assertTrue(entries.get("bag-info.txt").contains("Payload-Oxum: 21.2"));
+        assertEquals("<resource/>", entries.get("metadata/datacite.xml"));
+    }
+
+    @Test
+    public void testLogsAnInvalidHash() throws Exception {
+        recordedHashes.put(DATASET_ID + "/F2", DigestUtils.md5Hex("something else"));
+        BagGenerator bagger = new BagGenerator(makeOREMap(), "<resource/>");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // as before, the bag is still created
+        assertTrue(bagger.generateBag(out));
+
+        Map<String, String> entries = readZip(out.toByteArray());
+        assertEquals("second file", entries.get("data/Test dataset/b.txt"));
+    }
+
+    @Test
+    public void testFailsOnAnInvalidHash() throws Exception {
+        recordedHashes.put(DATASET_ID + "/F2", DigestUtils.md5Hex("something else"));
+        BagGenerator bagger = new BagGenerator(makeOREMap(), "<resource/>");
+        bagger.setFailOnInvalidHashes(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertFalse(bagger.generateBag(out));
+    }
+
+    @Test
+    public void testValidHashesWithFailOnInvalidHashes() throws Exception {
+        BagGenerator bagger = new BagGenerator(makeOREMap(), "<resource/>");
+        bagger.setFailOnInvalidHashes(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertTrue(bagger.generateBag(out));
+        assertEquals("first file", readZip(out.toByteArray()).get("data/Test dataset/a.txt"));
+    }
+}
@@ -0,0 +1,51 @@
+package edu.harvard.iq.dataverse.util.bagit;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DatasetVersion;
+import edu.harvard.iq.dataverse.FileMetadata;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.testing.JvmSetting;
+import edu.harvard.iq.dataverse.util.testing.LocalJvmSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@LocalJvmSettings
+public class OREMapTest {
+
+    @Test
+    @JvmSetting(key = JvmSettings.SITE_URL, value = "https://librascholar.org")
+    public void testGetDataFilesByResourceId() {
+        // a file with a PID, and one without
+        DataFile withPid = new DataFile();
+        withPid.setId(1L);
+        withPid.setProtocol("doi");
+        withPid.setAuthority("10.5072");
+        withPid.setIdentifier("FK2/ABCDEF/F1");
+        DataFile withoutPid = new DataFile();
+        withoutPid.setId(2L);
+
+        DatasetVersion version = new DatasetVersion();
+        List<FileMetadata> fileMetadatas = new ArrayList<>();
+        for (DataFile dataFile : List.of(withPid, withoutPid)) {
+            FileMetadata fileMetadata = new FileMetadata();
+            fileMetadata.setDataFile(dataFile);
+            fileMetadata.setDatasetVersion(version);
+            fileMetadatas.add(fileMetadata);
+        }
+        version.setFileMetadatas(fileMetadatas);
+
+        Map<String, DataFile> dataFiles = new OREMap(version).getDataFilesByResourceId();
+
+        // keyed as the @id of the aggregated resources of the ORE map
+        assertEquals(2, dataFiles.size());
+        assertSame(withPid, dataFiles.get("doi:10.5072/FK2/ABCDEF/F1"));
+        assertSame(withoutPid, dataFiles.get("https://librascholar.org/file.xhtml?fileId=2"));
+    }
+}
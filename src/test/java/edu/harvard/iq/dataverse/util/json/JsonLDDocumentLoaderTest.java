@@ -0,0 +1,78 @@
+package edu.harvard.iq.dataverse.util.json;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.apicatalog.jsonld.JsonLd;
+import com.apicatalog.jsonld.JsonLdError;
+import com.apicatalog.jsonld.document.Document;
+import com.apicatalog.jsonld.document.JsonDocument;
+import com.apicatalog.jsonld.loader.DocumentLoaderOptions;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JsonLDDocumentLoaderTest {
+
+    private static final URI COAR_NOTIFY = URI.create("https://purl.org/coar/notify");
+
+    @Test
+    public void testBundledContextIsLoadedOffline() throws JsonLdError {
+        JsonLDDocumentLoader loader = new JsonLDDocumentLoader(10, false, null);
+
+        Document document = loader.loadDocument(COAR_NOTIFY, new DocumentLoaderOptions());
+        assertTrue(document.getJsonContent().get().asJsonObject().containsKey("@context"));
+        assertEquals(COAR_NOTIFY, document.getDocumentUrl());
+        // the document is only parsed once
+        assertSame(document, loader.loadDocument(COAR_NOTIFY, new DocumentLoaderOptions()));
+    }
+
+    @Test
+    public void testExpandWithBundledContext() throws JsonLdError {
+        JsonLDDocumentLoader loader = new JsonLDDocumentLoader(10, false, null);
+        JsonObject jsonld = Json.createObjectBuilder()
+                .add("@context", COAR_NOTIFY.toString())
+                .add("@type", "ReviewAction")
+                .add("ietf:cite-as", "https://doi.org/10.5072/FK2/AAAAAA")
+                .build();
+
+        JsonArray expanded = JsonLd.expand(JsonDocument.of(jsonld)).loader(loader).get();
+        JsonObject object = expanded.getJsonObject(0);
+        assertEquals("http://purl.org/coar/notify_vocabulary/ReviewAction", object.getJsonArray("@type").getString(0));
+        assertEquals("https://doi.org/10.5072/FK2/AAAAAA", object.getJsonArray("http://www.iana.org/assignments/relation/cite-as")
+                .getJsonObject(0).getString("@id"));
+    }
+
+    @Test
+    public void testUnknownContextWithoutRemoteContexts() {
+        JsonLDDocumentLoader loader = new JsonLDDocumentLoader(10, false, null);
+
+        assertThrows(JsonLdError.class,
+                () -> loader.loadDocument(URI.create("https://example.org/no-such-context"), new DocumentLoaderOptions()));
+    }
+
+    @Test
+    public void testContextDirectory(@TempDir Path contextDirectory) throws IOException, JsonLdError {
+        Files.writeString(contextDirectory.resolve(JsonLDDocumentLoader.CONTEXTS_FILE),
+                "https\\://example.org/context=example.jsonld\n");
+        Files.writeString(contextDirectory.resolve("example.jsonld"), "{\"@context\": {\"ex\": \"https://example.org/terms/\"}}");
+        JsonLDDocumentLoader loader = new JsonLDDocumentLoader(10, false, contextDirectory);
+
+        Document document = loader.loadDocument(URI.create("https://example.org/context"), new DocumentLoaderOptions());
+        assertEquals("https://example.org/terms/", document.getJsonContent().get().asJsonObject()
+                .getJsonObject("@context").getString("ex"));
+        // the bundled contexts are still available
+        loader.loadDocument(COAR_NOTIFY, new DocumentLoaderOptions());
+    }
+}
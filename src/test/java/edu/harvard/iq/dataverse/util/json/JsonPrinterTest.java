@@ -10,6 +10,7 @@ import edu.harvard.iq.dataverse.privateurl.PrivateUrl;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.UserNotification.Type;
 
+import java.io.StringWriter;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,10 +20,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.json.JsonString;
+import jakarta.json.stream.JsonGenerator;
 
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import org.junit.jupiter.api.Test;
@@ -183,6 +186,47 @@ public class JsonPrinterTest {
         assertEquals("Some reason", jsonObject.getJsonObject("dataFile").getJsonObject("embargo").getString("reason"));
     }
 
+    @Test
+    public void testWriteJsonStreamsTheFilesOfAVersion() {
+        DatasetVersion dsVersion = new DatasetVersion();
+        dsVersion.setId(42L);
+        List<FileMetadata> fileMetadatas = new ArrayList<>();
+        for (long i = 1; i <= 3; i++) {
+            DataFile dataFile = new DataFile();
+            dataFile.setId(i);
+            dataFile.setProtocol("doi");
+            dataFile.setAuthority("10.5072/FK2");
+            dataFile.setIdentifier("ABC12" + i);
+            FileMetadata fmd = new FileMetadata();
+            fmd.setId(i);
+            fmd.setLabel("file" + i + ".txt");
+            fmd.setDatasetVersion(dsVersion);
+            fmd.setDataFile(dataFile);
+            fileMetadatas.add(fmd);
+        }
+        JsonObject versionJson = Json.createObjectBuilder()
+                .add("id", 42)
+                .add("versionState", "DRAFT")
+                .add("metadataBlocks", Json.createObjectBuilder())
+                .build();
+
+        StringWriter written = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(written)) {
+            JsonPrinter.writeJson(generator, versionJson, fileMetadatas);
+        }
+
+        JsonObject expected = Json.createObjectBuilder(versionJson)
+                .add("files", JsonPrinter.jsonFileMetadatas(fileMetadatas))
+                .build();
+        assertEquals(expected, JsonUtil.getJsonObject(written.toString()));
+
+        written = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(written)) {
+            JsonPrinter.writeJson(generator, versionJson, null);
+        }
+        assertEquals(versionJson, JsonUtil.getJsonObject(written.toString()));
+    }
+
     @Test
     public void testDatasetContactOutOfBoxNoPrivacy() {
         MetadataBlock block = new MetadataBlock();